@@ -0,0 +1,130 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=AdmissionControl")
+public class AdmissionControlSupport {
+
+  private static final String ATTRIBUTE_KEY = AdmissionControlSupport.class.getName() + ".admitted";
+
+  private final ApiStubProperties.Admission admission;
+  private final long targetDelayNanos;
+  private final long intervalNanos;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong intervalEndNanoTime = new AtomicLong(System.nanoTime());
+  private final AtomicLong minDelayNanos = new AtomicLong(Long.MAX_VALUE);
+  private final LongAdder shedCount = new LongAdder();
+  private final List<QueueDelayRecordingExecutor> executors = new CopyOnWriteArrayList<>();
+  private volatile boolean overloaded;
+
+  public AdmissionControlSupport(ApiStubProperties properties) {
+    this.admission = properties.getAdmission();
+    this.targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(admission.getTargetDelayMsec());
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(admission.getIntervalMsec());
+  }
+
+  // Replace the worker pool of the connector that serves stub requests for measuring queue delays
+  public void customizeConnector(Connector connector) {
+    if (!admission.isEnabled()) {
+      return;
+    }
+    AbstractProtocol<?> protocol = (AbstractProtocol<?>) connector.getProtocolHandler();
+    QueueDelayRecordingExecutor executor = QueueDelayRecordingExecutor.create(protocol.getName());
+    executor.setCorePoolSize(protocol.getMinSpareThreads());
+    executor.setMaximumPoolSize(protocol.getMaxThreads());
+    protocol.setExecutor(executor);
+    executors.add(executor);
+  }
+
+  // Return false when the request should be shed because the stub is overloaded
+  public boolean admit(HttpServletRequest request) {
+    if (!admission.isEnabled()) {
+      return true;
+    }
+    int current = inFlight.incrementAndGet();
+    if ((admission.getMaxInFlight() > 0 && current > admission.getMaxInFlight())
+        || isQueueDelayExceeded(QueueDelayRecordingExecutor.takeQueueDelayNanos())) {
+      inFlight.decrementAndGet();
+      shedCount.increment();
+      return false;
+    }
+    request.setAttribute(ATTRIBUTE_KEY, Boolean.TRUE);
+    return true;
+  }
+
+  public void release(HttpServletRequest request) {
+    if (request.getAttribute(ATTRIBUTE_KEY) != null) {
+      request.removeAttribute(ATTRIBUTE_KEY);
+      inFlight.decrementAndGet();
+    }
+  }
+
+  public int getRejectedStatus() {
+    return admission.getStatus().value();
+  }
+
+  // CoDel style: when the minimum queue delay during the last interval exceeded the target (i.e. a standing queue),
+  // requests that waited longer than the target are shed, otherwise only requests that waited longer than the interval
+  private boolean isQueueDelayExceeded(long delayNanos) {
+    long now = System.nanoTime();
+    long min = minDelayNanos.get();
+    while (delayNanos < min && !minDelayNanos.compareAndSet(min, delayNanos)) {
+      min = minDelayNanos.get();
+    }
+    long intervalEnd = intervalEndNanoTime.get();
+    if (now - intervalEnd >= 0 && intervalEndNanoTime.compareAndSet(intervalEnd, now + intervalNanos)) {
+      overloaded = minDelayNanos.getAndSet(Long.MAX_VALUE) > targetDelayNanos;
+    }
+    return delayNanos > (overloaded ? targetDelayNanos : intervalNanos);
+  }
+
+  @ManagedAttribute
+  public long getShedCount() {
+    return shedCount.sum();
+  }
+
+  @ManagedAttribute
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  @ManagedAttribute
+  public boolean isOverloaded() {
+    return overloaded;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executors.forEach(QueueDelayRecordingExecutor::shutdown);
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Reject requests other than stub requests on the dedicated connector for stub requests (e.g. manager ui requests)
+class ApiStubConnectorFilter extends OncePerRequestFilter {
+
+  private final ApiStubProperties properties;
+
+  ApiStubConnectorFilter(ApiStubProperties properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    Integer stubPort = properties.getServer().getPort();
+    if (stubPort != null && stubPort == request.getLocalPort()
+        && !request.getServletPath().startsWith(properties.getRootPath() + "/")) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    filterChain.doFilter(request, response);
+  }
+
+}
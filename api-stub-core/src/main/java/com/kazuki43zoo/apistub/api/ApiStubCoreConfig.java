@@ -15,8 +15,12 @@
  */
 package com.kazuki43zoo.apistub.api;
 
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,8 +28,12 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.core.Ordered;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
 @Configuration
 public class ApiStubCoreConfig {
 
@@ -45,6 +53,14 @@ public class ApiStubCoreConfig {
     return restTemplateBuilder.build();
   }
 
+  @Bean(destroyMethod = "shutdownNow")
+  ScheduledExecutorService apiStubResponseTimer(ApiStubProperties properties) {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+        properties.getResponse().getTimerPoolSize(), new CustomizableThreadFactory("api-stub-timer-"));
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
   @Bean
   FilterRegistrationBean<ApiStubFilter> apiStubFilterRegistrationBean(ApiStubFilter apiStubFilter, ApiStubProperties properties) {
     FilterRegistrationBean<ApiStubFilter> filterRegistrationBean = new FilterRegistrationBean<>();
@@ -54,4 +70,39 @@ public class ApiStubCoreConfig {
     return filterRegistrationBean;
   }
 
+  @Bean
+  FilterRegistrationBean<ApiStubConnectorFilter> apiStubConnectorFilterRegistrationBean(ApiStubProperties properties) {
+    FilterRegistrationBean<ApiStubConnectorFilter> filterRegistrationBean = new FilterRegistrationBean<>();
+    filterRegistrationBean.setFilter(new ApiStubConnectorFilter(properties));
+    filterRegistrationBean.setEnabled(properties.getServer().getPort() != null);
+    filterRegistrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return filterRegistrationBean;
+  }
+
+  // Add the dedicated connector for stub requests, it has own worker pool (and JMX ThreadPool metrics) and own accept queue
+  @Bean
+  WebServerFactoryCustomizer<TomcatServletWebServerFactory> apiStubConnectorCustomizer(
+      ApiStubProperties properties, AdmissionControlSupport admissionControlSupport) {
+    return factory -> {
+      ApiStubProperties.Server server = properties.getServer();
+      if (server.getPort() == null) {
+        factory.addConnectorCustomizers(admissionControlSupport::customizeConnector);
+        return;
+      }
+      Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+      connector.setPort(server.getPort());
+      AbstractHttp11Protocol<?> protocol = (AbstractHttp11Protocol<?>) connector.getProtocolHandler();
+      protocol.setMaxThreads(server.getMaxThreads());
+      protocol.setMinSpareThreads(server.getMinSpareThreads());
+      protocol.setAcceptCount(server.getAcceptCount());
+      protocol.setMaxConnections(server.getMaxConnections());
+      protocol.setMaxKeepAliveRequests(server.getMaxKeepAliveRequests());
+      if (server.getKeepAliveTimeoutMsec() != null) {
+        protocol.setKeepAliveTimeout(server.getKeepAliveTimeoutMsec());
+      }
+      admissionControlSupport.customizeConnector(connector);
+      factory.addAdditionalTomcatConnectors(connector);
+    };
+  }
+
 }
@@ -16,8 +16,15 @@
 package com.kazuki43zoo.apistub.api;
 
 import com.kazuki43zoo.apistub.api.handler.ApiStubRequestHandler;
+import com.kazuki43zoo.apistub.domain.model.FaultType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.ServletServerHttpRequest;
@@ -26,21 +33,69 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.filter.GenericFilterBean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class ApiStubFilter extends GenericFilterBean {
 
+  private static final Logger log = LoggerFactory.getLogger(ApiStubFilter.class);
+  private static final byte[] MALFORMED_CHUNKED_BODY = "zz\r\nmalformed chunk\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final int PARTIAL_BODY_SIZE = 1024;
+  private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
   private final ApiStubRequestHandler requestHandler;
+  private final ResponseWaitingSupport responseWaitingSupport;
+  private final ResponseLatencySupport responseLatencySupport;
+  private final ResponseThrottlingSupport responseThrottlingSupport;
+  private final FaultInjectionSupport faultInjectionSupport;
+  private final RequestLimitSupport requestLimitSupport;
+  private final RequestExecutionSupport requestExecutionSupport;
+  private final AdmissionControlSupport admissionControlSupport;
+  private final ApiStubProperties properties;
+  private final ScheduledExecutorService responseTimer;
 
-  public ApiStubFilter(ApiStubRequestHandler requestHandler) {
+  public ApiStubFilter(ApiStubRequestHandler requestHandler, ResponseWaitingSupport responseWaitingSupport,
+                       ResponseLatencySupport responseLatencySupport, ResponseThrottlingSupport responseThrottlingSupport,
+                       FaultInjectionSupport faultInjectionSupport, RequestLimitSupport requestLimitSupport,
+                       RequestExecutionSupport requestExecutionSupport,
+                       AdmissionControlSupport admissionControlSupport, ApiStubProperties properties,
+                       @Qualifier("apiStubResponseTimer") ScheduledExecutorService responseTimer) {
     this.requestHandler = requestHandler;
+    this.responseWaitingSupport = responseWaitingSupport;
+    this.responseLatencySupport = responseLatencySupport;
+    this.responseThrottlingSupport = responseThrottlingSupport;
+    this.faultInjectionSupport = faultInjectionSupport;
+    this.requestLimitSupport = requestLimitSupport;
+    this.requestExecutionSupport = requestExecutionSupport;
+    this.admissionControlSupport = admissionControlSupport;
+    this.properties = properties;
+    this.responseTimer = responseTimer;
   }
 
   @Override
@@ -51,24 +106,397 @@ public class ApiStubFilter extends GenericFilterBean {
 
     HttpServletRequest httpRequest = (HttpServletRequest) request;
     HttpServletResponse httpResponse = (HttpServletResponse) response;
+    Integer stubPort = properties.getServer().getPort();
+    if (stubPort != null && stubPort != httpRequest.getLocalPort()) {
+      // Stub requests are served only on the dedicated connector
+      chain.doFilter(request, response);
+      return;
+    }
+    if (!admissionControlSupport.admit(httpRequest)) {
+      // Fail fast without handling when the stub is overloaded
+      httpResponse.setStatus(admissionControlSupport.getRejectedStatus());
+      return;
+    }
+    try {
+      if (!RequestBodyReader.isAcceptable(httpRequest.getContentLengthLong(), getMaxRequestBodySize())) {
+        rejectRequestBody(httpResponse);
+        return;
+      }
+      if (requestExecutionSupport.isEnabled() && httpRequest.isAsyncSupported()) {
+        handleRequestOnExecutor(httpRequest, httpResponse);
+      } else if (httpRequest.isAsyncSupported() && isReadableBodyLater(httpRequest)) {
+        readRequestBodyLater(httpRequest, httpResponse);
+      } else {
+        handleRequest(httpRequest, httpResponse, null, null);
+      }
+    } finally {
+      // The permits of asynchronous response are released on completion
+      if (!httpRequest.isAsyncStarted()) {
+        releasePermits(httpRequest);
+      }
+    }
+  }
+
+  private AsyncContext startAsync(HttpServletRequest request, HttpServletResponse response) {
+    AsyncContext asyncContext = request.startAsync(request, response);
+    asyncContext.setTimeout(0);
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onComplete(AsyncEvent event) {
+        releasePermits(request);
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        // NOP
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        // NOP
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+        // NOP
+      }
+    });
+    return asyncContext;
+  }
+
+  private void releasePermits(HttpServletRequest request) {
+    requestLimitSupport.release(request);
+    admissionControlSupport.release(request);
+  }
+
+  private void handleRequestOnExecutor(HttpServletRequest request, HttpServletResponse response) {
+    // Release the container thread, and handle the request including blocking operations on the execution thread
+    AsyncContext asyncContext = startAsync(request, response);
+    Runnable handling = () -> handleRequestOnAsyncContext(request, response, asyncContext, null);
+    try {
+      requestExecutionSupport.execute(handling);
+    } catch (RejectedExecutionException e) {
+      handling.run();
+    }
+  }
+
+  private void readRequestBodyLater(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Read the request body with non-blocking reads, and handle the request on a container thread after reading all data
+    AsyncContext asyncContext = startAsync(request, response);
+    new RequestBodyReader(request.getInputStream(), request.getContentLength(), getMaxRequestBodySize(),
+        body -> handleRequestOnAsyncContext(request, response, asyncContext, body),
+        () -> {
+          rejectRequestBody(response);
+          asyncContext.complete();
+        },
+        e -> {
+          log.debug("Could not read a request body.", e);
+          asyncContext.complete();
+        }).start();
+  }
+
+  private boolean isReadableBodyLater(HttpServletRequest request) {
+    if (HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod())) {
+      return false;
+    }
+    // A form body may be consumed as request parameters, so it is read via ServletServerHttpRequest
+    String contentType = request.getContentType();
+    if (contentType != null && contentType.contains(MediaType.APPLICATION_FORM_URLENCODED_VALUE)) {
+      return false;
+    }
+    return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+  }
+
+  private void handleRequestOnAsyncContext(HttpServletRequest request, HttpServletResponse response,
+                                           AsyncContext asyncContext, byte[] body) {
+    boolean writingLater = false;
+    try {
+      writingLater = handleRequest(request, response, asyncContext, body);
+    } catch (IOException | ServletException | RuntimeException e) {
+      log.error("Could not handle a stub request.", e);
+      sendServerError(response);
+    } finally {
+      if (!writingLater) {
+        asyncContext.complete();
+      }
+    }
+  }
+
+  // Return true when the response is written later on the async context
+  private boolean handleRequest(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                                AsyncContext currentAsyncContext, byte[] body) throws IOException, ServletException {
+    long startNanoTime = System.nanoTime();
 
     ServletServerHttpRequest serverRequest = new ServletServerHttpRequest(httpRequest);
     RequestEntity<byte[]> requestEntity;
     if (serverRequest.getMethod() == HttpMethod.GET || serverRequest.getMethod() == HttpMethod.HEAD) {
       requestEntity = new RequestEntity<>(serverRequest.getHeaders(), serverRequest.getMethod(), serverRequest.getURI());
     } else {
-      requestEntity = new RequestEntity<>(StreamUtils.copyToByteArray(serverRequest.getBody()),
+      byte[] requestBody = body != null ? body
+          : RequestBodyReader.readBlocking(serverRequest.getBody(), getMaxRequestBodySize());
+      if (requestBody == null) {
+        rejectRequestBody(httpResponse);
+        return false;
+      }
+      requestEntity = new RequestEntity<>(requestBody,
           serverRequest.getHeaders(), serverRequest.getMethod(), serverRequest.getURI());
     }
 
     ResponseEntity<Resource> responseEntity = requestHandler.handleApiRequest(httpRequest, httpResponse, requestEntity);
 
-    ServletServerHttpResponse serverResponse = new ServletServerHttpResponse(httpResponse);
+    long waitingMsec = responseWaitingSupport.getWaitingMsec(httpRequest);
+    ResponseThrottlingSupport.Throttling throttling = responseThrottlingSupport.getThrottling(httpRequest);
+    FaultType fault = faultInjectionSupport.getFault(httpRequest);
+    if (waitingMsec > 0 || throttling != null || fault == FaultType.STALLED_BODY) {
+      if (httpRequest.isAsyncSupported()) {
+        writeResponseLater(httpRequest, httpResponse, currentAsyncContext, responseEntity, waitingMsec, throttling,
+            fault, startNanoTime);
+        return true;
+      }
+      sleep(waitingMsec);
+    }
+
+    if (isConnectionFault(fault)) {
+      writeFaultyResponse(httpResponse, responseEntity, fault, null);
+      return false;
+    }
+    writeResponse(httpRequest, httpResponse, responseEntity, throttling);
+    responseLatencySupport.recordLatency(httpRequest, startNanoTime);
+    return false;
+  }
+
+  private void writeResponseLater(HttpServletRequest request, HttpServletResponse response,
+                                  AsyncContext currentAsyncContext, ResponseEntity<Resource> responseEntity,
+                                  long waitingMsec, ResponseThrottlingSupport.Throttling throttling, FaultType fault,
+                                  long startNanoTime) {
+    // Release the request thread while waiting, and write the response on a container thread after the waiting time
+    AsyncContext asyncContext = currentAsyncContext != null ? currentAsyncContext : startAsync(request, response);
+    Runnable writing;
+    if (isConnectionFault(fault)) {
+      writing = () -> {
+        try {
+          writeFaultyResponse(response, responseEntity, fault, asyncContext);
+        } catch (IOException | RuntimeException e) {
+          log.debug("Could not write a faulty response.", e);
+          asyncContext.complete();
+        }
+      };
+    } else if (throttling == null) {
+      writing = () -> {
+        try {
+          writeResponse(request, response, responseEntity, null);
+          responseLatencySupport.recordLatency(request, startNanoTime);
+        } catch (IOException | RuntimeException e) {
+          log.debug("Could not write a waiting response.", e);
+        } finally {
+          asyncContext.complete();
+        }
+      };
+    } else {
+      // Write the body with non-blocking writes, and the shared timer resumes the writing per chunk
+      writing = () -> {
+        try {
+          ServletServerHttpResponse serverResponse = createServerResponse(response, responseEntity);
+          new ThrottledResponseWriter(asyncContext, (ServletOutputStream) serverResponse.getBody(),
+              getBodyStream(responseEntity), throttling, responseTimer,
+              () -> responseLatencySupport.recordLatency(request, startNanoTime)).start();
+        } catch (IOException | RuntimeException e) {
+          log.debug("Could not write a throttled response.", e);
+          asyncContext.complete();
+        }
+      };
+    }
+    if (waitingMsec <= 0) {
+      asyncContext.start(writing);
+      return;
+    }
+    try {
+      responseTimer.schedule(() -> asyncContext.start(writing), waitingMsec, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      writing.run();
+    }
+  }
+
+  private void writeResponse(HttpServletRequest request, HttpServletResponse response,
+                             ResponseEntity<Resource> responseEntity,
+                             ResponseThrottlingSupport.Throttling throttling) throws IOException {
+    if (throttling == null && responseEntity.getBody() != null && responseEntity.getBody().isFile()) {
+      writeFileResponse(request, response, responseEntity, responseEntity.getBody().getFile());
+      return;
+    }
+    ServletServerHttpResponse serverResponse = createServerResponse(response, responseEntity);
+    try (InputStream body = getBodyStream(responseEntity)) {
+      if (throttling != null) {
+        ThrottledResponseWriter.writeBlocking(serverResponse.getBody(), body, throttling);
+      } else if (body != null) {
+        StreamUtils.copy(body, serverResponse.getBody());
+      }
+    }
+    serverResponse.close();
+  }
+
+  private void writeFileResponse(HttpServletRequest request, HttpServletResponse response,
+                                 ResponseEntity<Resource> responseEntity, File file) throws IOException {
+    // Serve the file without copying it through the heap, and support a single byte range
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(responseEntity.getHeaders());
+    int status = responseEntity.getStatusCodeValue();
+    long length = file.length();
+    long start = 0;
+    long end = length;
+    if (status == HttpServletResponse.SC_OK) {
+      headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+      List<HttpRange> ranges;
+      try {
+        ranges = HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE));
+      } catch (IllegalArgumentException e) {
+        // Ignore a malformed range, and respond the whole file
+        ranges = Collections.emptyList();
+      }
+      if (ranges.size() == 1) {
+        HttpRange range = ranges.get(0);
+        start = range.getRangeStart(length);
+        if (start >= length) {
+          response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+          response.setContentLength(0);
+          return;
+        }
+        end = range.getRangeEnd(length) + 1;
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+      }
+    }
+    response.setStatus(status);
+    // The length of the whole file may be set by the handler, and it is replaced with the length of the range
+    headers.remove(HttpHeaders.CONTENT_LENGTH);
+    headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+    response.setContentLengthLong(end - start);
+
+    if (!request.isAsyncStarted() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+      // The container sends the file with sendfile after the request processing
+      request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getAbsolutePath());
+      request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+      request.setAttribute(SENDFILE_END_ATTRIBUTE, end);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+      long position = start;
+      while (position < end) {
+        position += channel.transferTo(position, end - position, out);
+      }
+    }
+    response.flushBuffer();
+  }
+
+  private void writeFaultyResponse(HttpServletResponse response, ResponseEntity<Resource> responseEntity,
+                                   FaultType fault, AsyncContext asyncContext) throws IOException {
+    switch (fault) {
+      case EMPTY_REPLY:
+        break;
+      case MALFORMED_CHUNKED:
+        // The body is written as is until the connection is closed, because the container does not chunk it
+        // when the connection is closed after the response
+        ServletServerHttpResponse serverResponse = createServerResponse(response, responseEntity);
+        serverResponse.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+        serverResponse.getHeaders().set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+        serverResponse.getHeaders().set(HttpHeaders.CONNECTION, "close");
+        serverResponse.getBody().write(MALFORMED_CHUNKED_BODY);
+        serverResponse.getBody().flush();
+        break;
+      case STALLED_BODY:
+        writePartialBody(response, responseEntity);
+        if (asyncContext != null) {
+          closeConnectionLater(response, asyncContext);
+          return;
+        }
+        sleep(properties.getResponse().getStalledBodyMsec());
+        break;
+      default:
+        writePartialBody(response, responseEntity);
+        break;
+    }
+    faultInjectionSupport.closeConnection(response);
+    if (asyncContext != null) {
+      asyncContext.complete();
+    }
+  }
+
+  private void writePartialBody(HttpServletResponse response, ResponseEntity<Resource> responseEntity) throws IOException {
+    ServletServerHttpResponse serverResponse = createServerResponse(response, responseEntity);
+    OutputStream out = serverResponse.getBody();
+    try (InputStream body = getBodyStream(responseEntity)) {
+      if (body != null) {
+        byte[] buffer = new byte[PARTIAL_BODY_SIZE];
+        int length = body.read(buffer);
+        if (length > 1) {
+          out.write(buffer, 0, length / 2);
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private void closeConnectionLater(HttpServletResponse response, AsyncContext asyncContext) {
+    Runnable closing = () -> {
+      try {
+        faultInjectionSupport.closeConnection(response);
+      } catch (IOException e) {
+        log.debug("Could not close a connection.", e);
+      } finally {
+        asyncContext.complete();
+      }
+    };
+    try {
+      responseTimer.schedule(closing, properties.getResponse().getStalledBodyMsec(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      closing.run();
+    }
+  }
+
+  private long getMaxRequestBodySize() {
+    return properties.getServer().getMaxRequestBodySize();
+  }
+
+  private void rejectRequestBody(HttpServletResponse response) {
+    // The rest of the body is not read, so the connection is not reused
+    response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+    response.setHeader(HttpHeaders.CONNECTION, "close");
+  }
+
+  private void sendServerError(HttpServletResponse response) {
+    if (response.isCommitted()) {
+      return;
+    }
+    try {
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    } catch (IOException e) {
+      log.debug("Could not send an error response.", e);
+    }
+  }
+
+  private boolean isConnectionFault(FaultType fault) {
+    return fault != null && fault != FaultType.RANDOM_5XX;
+  }
+
+  private void sleep(long msec) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(msec);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private ServletServerHttpResponse createServerResponse(HttpServletResponse response, ResponseEntity<Resource> responseEntity) {
+    ServletServerHttpResponse serverResponse = new ServletServerHttpResponse(response);
     serverResponse.setStatusCode(responseEntity.getStatusCode());
     serverResponse.getHeaders().addAll(responseEntity.getHeaders());
-    if (responseEntity.getBody() != null) {
-      StreamUtils.copy(responseEntity.getBody().getInputStream(), serverResponse.getBody());
-    }
+    return serverResponse;
+  }
+
+  private InputStream getBodyStream(ResponseEntity<Resource> responseEntity) throws IOException {
+    return responseEntity.getBody() == null ? null : responseEntity.getBody().getInputStream();
   }
 
 }
@@ -44,6 +44,18 @@ public class ApiStubProperties {
   @NestedConfigurationProperty
   private Proxy proxy = new Proxy();
 
+  @NestedConfigurationProperty
+  private Scenario scenario = new Scenario();
+
+  @NestedConfigurationProperty
+  private Execution execution = new Execution();
+
+  @NestedConfigurationProperty
+  private Server server = new Server();
+
+  @NestedConfigurationProperty
+  private Admission admission = new Admission();
+
   public String getCorrelationIdKey() {
     return correlationIdKey;
   }
@@ -84,15 +96,60 @@ public class ApiStubProperties {
     this.proxy = proxy;
   }
 
+  public Scenario getScenario() {
+    return scenario;
+  }
+
+  public void setScenario(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  public Execution getExecution() {
+    return execution;
+  }
+
+  public void setExecution(Execution execution) {
+    this.execution = execution;
+  }
+
+  public Server getServer() {
+    return server;
+  }
+
+  public void setServer(Server server) {
+    this.server = server;
+  }
+
+  public Admission getAdmission() {
+    return admission;
+  }
+
+  public void setAdmission(Admission admission) {
+    this.admission = admission;
+  }
+
   public static class Response {
     /**
      * HTTP status to respond when a mock response not found
      */
     private HttpStatus httpStatusForMockNotFound = HttpStatus.NOT_FOUND;
 
+    /**
+     * Pool size of the timer that resumes waiting responses
+     */
+    private int timerPoolSize = 1;
+
+    /**
+     * Time to stall a body before closing the connection on the STALLED_BODY fault
+     */
+    private long stalledBodyMsec = 30000;
+
     @NestedConfigurationProperty
     private Template template = new Template();
 
+    @NestedConfigurationProperty
+    private Compression compression = new Compression();
+
     public HttpStatus getHttpStatusForMockNotFound() {
       return httpStatusForMockNotFound;
     }
@@ -101,6 +158,22 @@ public class ApiStubProperties {
       this.httpStatusForMockNotFound = httpStatusForMockNotFound;
     }
 
+    public int getTimerPoolSize() {
+      return timerPoolSize;
+    }
+
+    public void setTimerPoolSize(int timerPoolSize) {
+      this.timerPoolSize = timerPoolSize;
+    }
+
+    public long getStalledBodyMsec() {
+      return stalledBodyMsec;
+    }
+
+    public void setStalledBodyMsec(long stalledBodyMsec) {
+      this.stalledBodyMsec = stalledBodyMsec;
+    }
+
     public Template getTemplate() {
       return template;
     }
@@ -109,6 +182,14 @@ public class ApiStubProperties {
       this.template = template;
     }
 
+    public Compression getCompression() {
+      return compression;
+    }
+
+    public void setCompression(Compression compression) {
+      this.compression = compression;
+    }
+
     public static class Template {
       /**
        * Flag for indicating to disable template feature.
@@ -150,6 +231,47 @@ public class ApiStubProperties {
       }
     }
 
+    public static class Compression {
+      /**
+       * Flag for indicating to respond a static body with the precompressed gzip body.
+       */
+      private boolean enabled = false;
+
+      /**
+       * Minimum size of a body to compress.
+       */
+      private long minSize = 1024;
+
+      /**
+       * Maximum total size of the cached compressed bodies.
+       */
+      private long cacheSize = 64L * 1024 * 1024;
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public long getMinSize() {
+        return minSize;
+      }
+
+      public void setMinSize(long minSize) {
+        this.minSize = minSize;
+      }
+
+      public long getCacheSize() {
+        return cacheSize;
+      }
+
+      public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+      }
+    }
+
   }
 
   public static class Evidence {
@@ -233,4 +355,207 @@ public class ApiStubProperties {
 
   }
 
+  public static class Scenario {
+    /**
+     * Interval to save a snapshot of scenario states into the database (disabled if 0)
+     */
+    private long snapshotIntervalMsec = 0;
+
+    public long getSnapshotIntervalMsec() {
+      return snapshotIntervalMsec;
+    }
+
+    public void setSnapshotIntervalMsec(long snapshotIntervalMsec) {
+      this.snapshotIntervalMsec = snapshotIntervalMsec;
+    }
+  }
+
+  public static class Execution {
+    /**
+     * Whether handle stub requests on virtual threads (requires Java 21 or later)
+     */
+    private boolean virtualThreads = false;
+
+    public boolean isVirtualThreads() {
+      return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+    }
+  }
+
+  public static class Server {
+    /**
+     * Port of the dedicated connector for stub requests (stub requests are served on the main port if not specified)
+     */
+    private Integer port;
+
+    /**
+     * Maximum number of worker threads of the dedicated connector
+     */
+    private int maxThreads = 200;
+
+    /**
+     * Minimum number of idle worker threads of the dedicated connector
+     */
+    private int minSpareThreads = 10;
+
+    /**
+     * Maximum queue length of incoming connections when all worker threads are busy
+     */
+    private int acceptCount = 100;
+
+    /**
+     * Maximum number of connections that the dedicated connector accepts
+     */
+    private int maxConnections = 10000;
+
+    /**
+     * Time to wait for another request on a keep-alive connection (the connection timeout is used if not specified)
+     */
+    private Integer keepAliveTimeoutMsec;
+
+    /**
+     * Maximum number of requests on a keep-alive connection (unlimited if -1)
+     */
+    private int maxKeepAliveRequests = 100;
+
+    /**
+     * Maximum size in bytes of a stub request body that is buffered for the handling (unlimited if -1)
+     */
+    private long maxRequestBodySize = 10L * 1024 * 1024;
+
+    public Integer getPort() {
+      return port;
+    }
+
+    public void setPort(Integer port) {
+      this.port = port;
+    }
+
+    public int getMaxThreads() {
+      return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+      this.maxThreads = maxThreads;
+    }
+
+    public int getMinSpareThreads() {
+      return minSpareThreads;
+    }
+
+    public void setMinSpareThreads(int minSpareThreads) {
+      this.minSpareThreads = minSpareThreads;
+    }
+
+    public int getAcceptCount() {
+      return acceptCount;
+    }
+
+    public void setAcceptCount(int acceptCount) {
+      this.acceptCount = acceptCount;
+    }
+
+    public int getMaxConnections() {
+      return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+      this.maxConnections = maxConnections;
+    }
+
+    public Integer getKeepAliveTimeoutMsec() {
+      return keepAliveTimeoutMsec;
+    }
+
+    public void setKeepAliveTimeoutMsec(Integer keepAliveTimeoutMsec) {
+      this.keepAliveTimeoutMsec = keepAliveTimeoutMsec;
+    }
+
+    public int getMaxKeepAliveRequests() {
+      return maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+      this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    public long getMaxRequestBodySize() {
+      return maxRequestBodySize;
+    }
+
+    public void setMaxRequestBodySize(long maxRequestBodySize) {
+      this.maxRequestBodySize = maxRequestBodySize;
+    }
+  }
+
+  public static class Admission {
+    /**
+     * Whether shed stub requests when the stub is overloaded
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of in-flight stub requests (unlimited if 0)
+     */
+    private int maxInFlight = 0;
+
+    /**
+     * Acceptable queue delay of a stub request in the worker pool
+     */
+    private long targetDelayMsec = 5;
+
+    /**
+     * Interval to decide whether the worker pool has a standing queue
+     */
+    private long intervalMsec = 100;
+
+    /**
+     * HTTP status to respond when a stub request is shed
+     */
+    private HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxInFlight() {
+      return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+    }
+
+    public long getTargetDelayMsec() {
+      return targetDelayMsec;
+    }
+
+    public void setTargetDelayMsec(long targetDelayMsec) {
+      this.targetDelayMsec = targetDelayMsec;
+    }
+
+    public long getIntervalMsec() {
+      return intervalMsec;
+    }
+
+    public void setIntervalMsec(long intervalMsec) {
+      this.intervalMsec = intervalMsec;
+    }
+
+    public HttpStatus getStatus() {
+      return status;
+    }
+
+    public void setStatus(HttpStatus status) {
+      this.status = status;
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.util.Sha256;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component
+public class ConditionalRequestSupport {
+
+  private static final int ETAG_LENGTH = 32;
+
+  private final ConcurrentMap<Integer, EntityTag> entityTags = new ConcurrentHashMap<>();
+
+  // Return the strong entity tag of the response, or null when the response has no version.
+  // The entity tag is computed once per version (updated time) of the response.
+  public String getETag(ApiResponse apiResponse) {
+    if (apiResponse.getUpdatedAt() == null) {
+      return null;
+    }
+    EntityTag entityTag = entityTags.get(apiResponse.getId());
+    if (entityTag == null || !entityTag.updatedAt.equals(apiResponse.getUpdatedAt())) {
+      entityTag = new EntityTag(apiResponse.getUpdatedAt(), computeETag(apiResponse));
+      entityTags.put(apiResponse.getId(), entityTag);
+    }
+    return entityTag.value;
+  }
+
+  public String toEncodedETag(String etag, String contentCoding) {
+    return etag.substring(0, etag.length() - 1) + "-" + contentCoding + "\"";
+  }
+
+  public boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      // If-None-Match uses the weak comparison, and If-Modified-Since is ignored when it is present
+      return Stream.of(ifNoneMatch.split(",")).map(String::trim)
+          .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+          .anyMatch(tag -> "*".equals(tag) || tag.equals(etag));
+    }
+    if (lastModified < 0) {
+      return false;
+    }
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    // The HTTP date has no milliseconds
+    return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  private String computeETag(ApiResponse apiResponse) {
+    String version = Stream.of(apiResponse.getId(), apiResponse.getUpdatedAt(), apiResponse.getStatusCode(),
+        apiResponse.getHeader(), apiResponse.getBodyDigest(), apiResponse.getBodyLength(),
+        apiResponse.getAttachmentFileRef(), apiResponse.getAttachmentFileLength(), apiResponse.getFileName())
+        .map(Objects::toString).collect(Collectors.joining("\n"));
+    return "\"" + Sha256.digestAsHex(version.getBytes(StandardCharsets.UTF_8)).substring(0, ETAG_LENGTH) + "\"";
+  }
+
+  private static class EntityTag {
+    private final LocalDateTime updatedAt;
+    private final String value;
+
+    private EntityTag(LocalDateTime updatedAt, String value) {
+      this.updatedAt = updatedAt;
+      this.value = value;
+    }
+  }
+
+}
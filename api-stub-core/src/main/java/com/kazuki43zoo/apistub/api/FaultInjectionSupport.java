@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.FaultProfile;
+import com.kazuki43zoo.apistub.domain.model.FaultType;
+import com.kazuki43zoo.apistub.domain.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=FaultInjection")
+public class FaultInjectionSupport {
+
+  private static final Logger log = LoggerFactory.getLogger(FaultInjectionSupport.class);
+  private static final String ATTRIBUTE_KEY = FaultInjectionSupport.class.getName() + ".fault";
+  private static final int MAX_CACHED_PROFILES = 1024;
+  private static final int[] RANDOM_5XX_STATUSES = {500, 502, 503, 504};
+  private static final String TOMCAT_RESPONSE_FACADE_CLASS = "org.apache.catalina.connector.ResponseFacade";
+
+  private final LruCache<String, FaultProfile> profiles = new LruCache<>(MAX_CACHED_PROFILES);
+  private final AtomicLongArray injectedCounts = new AtomicLongArray(FaultType.values().length);
+  private final ConnectionCloser connectionCloser = ConnectionCloser.create();
+
+  public FaultType decideFault(Api api, ApiResponse apiResponse, HttpServletRequest request) {
+    // The fault profile of response is prior to the fault profile of api
+    String profile = StringUtils.hasText(apiResponse.getFaultProfile()) ? apiResponse.getFaultProfile()
+        : api == null ? null : api.getFaultProfile();
+    if (!StringUtils.hasText(profile)) {
+      return null;
+    }
+    FaultType fault = getProfile(profile).select(ThreadLocalRandom.current().nextDouble());
+    if (fault != null) {
+      injectedCounts.incrementAndGet(fault.ordinal());
+      request.setAttribute(ATTRIBUTE_KEY, fault);
+    }
+    return fault;
+  }
+
+  public FaultType getFault(HttpServletRequest request) {
+    return (FaultType) request.getAttribute(ATTRIBUTE_KEY);
+  }
+
+  public int randomServerErrorStatus() {
+    return RANDOM_5XX_STATUSES[ThreadLocalRandom.current().nextInt(RANDOM_5XX_STATUSES.length)];
+  }
+
+  @ManagedAttribute
+  public Map<String, Long> getInjectedCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (FaultType fault : FaultType.values()) {
+      counts.put(fault.name(), injectedCounts.get(fault.ordinal()));
+    }
+    return counts;
+  }
+
+  public void closeConnection(HttpServletResponse response) throws IOException {
+    connectionCloser.close(response);
+  }
+
+  private FaultProfile getProfile(String profile) {
+    FaultProfile faultProfile = profiles.get(profile);
+    if (faultProfile == null) {
+      try {
+        faultProfile = FaultProfile.of(profile);
+      } catch (IllegalArgumentException e) {
+        log.warn("Ignore the invalid fault profile. profile: {} cause: {}", profile, e.getMessage());
+        faultProfile = FaultProfile.of(null);
+      }
+      profiles.put(profile, faultProfile);
+    }
+    return faultProfile;
+  }
+
+  // Close a connection immediately via the Tomcat internal api (ActionCode.CLOSE_NOW) if available.
+  // Otherwise the connection is closed after the response via the servlet api, and it is logged once.
+  private static class ConnectionCloser {
+
+    private final Field responseField;
+    private final Method getCoyoteResponseMethod;
+    private final Method actionMethod;
+    private final Object closeNowActionCode;
+    private final AtomicBoolean degraded = new AtomicBoolean();
+    private volatile boolean available;
+
+    private ConnectionCloser(Field responseField, Method getCoyoteResponseMethod, Method actionMethod, Object closeNowActionCode) {
+      this.responseField = responseField;
+      this.getCoyoteResponseMethod = getCoyoteResponseMethod;
+      this.actionMethod = actionMethod;
+      this.closeNowActionCode = closeNowActionCode;
+      this.available = responseField != null;
+    }
+
+    private static ConnectionCloser create() {
+      ClassLoader classLoader = FaultInjectionSupport.class.getClassLoader();
+      if (!ClassUtils.isPresent(TOMCAT_RESPONSE_FACADE_CLASS, classLoader)) {
+        return new ConnectionCloser(null, null, null, null);
+      }
+      try {
+        Field responseField = ReflectionUtils.findField(ClassUtils.forName(TOMCAT_RESPONSE_FACADE_CLASS, classLoader), "response");
+        Class<?> responseClass = ClassUtils.forName("org.apache.catalina.connector.Response", classLoader);
+        Class<?> actionCodeClass = ClassUtils.forName("org.apache.coyote.ActionCode", classLoader);
+        Class<?> coyoteResponseClass = ClassUtils.forName("org.apache.coyote.Response", classLoader);
+        Method getCoyoteResponseMethod = responseClass.getMethod("getCoyoteResponse");
+        Method actionMethod = coyoteResponseClass.getMethod("action", actionCodeClass, Object.class);
+        Object closeNowActionCode = actionCodeClass.getField("CLOSE_NOW").get(null);
+        ReflectionUtils.makeAccessible(responseField);
+        return new ConnectionCloser(responseField, getCoyoteResponseMethod, actionMethod, closeNowActionCode);
+      } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+        log.debug("Could not find the Tomcat internal api for closing a connection.", e);
+        return new ConnectionCloser(null, null, null, null);
+      }
+    }
+
+    private void close(HttpServletResponse response) throws IOException {
+      ServletResponse current = response;
+      while (current instanceof ServletResponseWrapper) {
+        current = ((ServletResponseWrapper) current).getResponse();
+      }
+      if (available && responseField.getDeclaringClass().isInstance(current)) {
+        try {
+          Object coyoteResponse = getCoyoteResponseMethod.invoke(responseField.get(current));
+          actionMethod.invoke(coyoteResponse, closeNowActionCode, null);
+          return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+          available = false;
+          degrade(e.toString());
+        }
+      } else {
+        degrade(available ? "The response is not a Tomcat response." : "The Tomcat internal api is not available.");
+      }
+      if (!response.isCommitted()) {
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+      }
+      try {
+        response.getOutputStream().close();
+      } catch (IllegalStateException e) {
+        response.getWriter().close();
+      }
+    }
+
+    private void degrade(String cause) {
+      if (degraded.compareAndSet(false, true)) {
+        log.warn("Could not close a connection immediately, so the connections of the faults are closed "
+            + "after the responses instead. cause: {}", cause);
+      }
+    }
+  }
+
+}
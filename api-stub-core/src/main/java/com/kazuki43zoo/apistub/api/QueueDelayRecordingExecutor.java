@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.apache.tomcat.util.threads.TaskQueue;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+// The worker pool of Tomcat connector that records how long each task waited in the queue
+class QueueDelayRecordingExecutor extends ThreadPoolExecutor {
+
+  private static final ThreadLocal<long[]> QUEUE_DELAY_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+  private QueueDelayRecordingExecutor(String name, TaskQueue taskQueue) {
+    super(10, 200, 60, TimeUnit.SECONDS, taskQueue, new TaskThreadFactory(name + "-exec-", true, Thread.NORM_PRIORITY));
+  }
+
+  static QueueDelayRecordingExecutor create(String name) {
+    TaskQueue taskQueue = new TaskQueue();
+    QueueDelayRecordingExecutor executor = new QueueDelayRecordingExecutor(name, taskQueue);
+    taskQueue.setParent(executor);
+    return executor;
+  }
+
+  // Return the queue delay of the task running on the current thread, and the delay is returned only once per task
+  static long takeQueueDelayNanos() {
+    long[] holder = QUEUE_DELAY_NANOS.get();
+    long delay = holder[0];
+    holder[0] = 0;
+    return delay;
+  }
+
+  @Override
+  public void execute(Runnable command, long timeout, TimeUnit unit) {
+    super.execute(new QueuedTask(command), timeout, unit);
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    super.beforeExecute(t, r);
+    QUEUE_DELAY_NANOS.get()[0] = r instanceof QueuedTask ? System.nanoTime() - ((QueuedTask) r).queuedNanoTime : 0;
+  }
+
+  private static class QueuedTask implements Runnable {
+    private final Runnable task;
+    private final long queuedNanoTime = System.nanoTime();
+
+    private QueuedTask(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      task.run();
+    }
+  }
+
+}
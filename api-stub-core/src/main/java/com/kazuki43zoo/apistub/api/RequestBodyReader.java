@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+class RequestBodyReader implements ReadListener {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final ServletInputStream in;
+  private final long maxSize;
+  private final Consumer<byte[]> completionCallback;
+  private final Runnable overflowCallback;
+  private final Consumer<Throwable> errorCallback;
+  private final ByteArrayOutputStream body;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private boolean overflowed;
+
+  // The max size is unlimited if negative
+  RequestBodyReader(ServletInputStream in, int contentLength, long maxSize, Consumer<byte[]> completionCallback,
+                    Runnable overflowCallback, Consumer<Throwable> errorCallback) {
+    this.in = in;
+    this.maxSize = maxSize;
+    this.completionCallback = completionCallback;
+    this.overflowCallback = overflowCallback;
+    this.errorCallback = errorCallback;
+    this.body = new ByteArrayOutputStream(contentLength > 0 && isAcceptable(contentLength, maxSize)
+        ? contentLength : BUFFER_SIZE);
+  }
+
+  void start() {
+    in.setReadListener(this);
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+    // Read only the data that has already arrived, and the container calls again when more data arrives
+    while (!overflowed && in.isReady()) {
+      int length = in.read(buffer);
+      if (length == -1) {
+        return;
+      }
+      if (!isAcceptable(body.size() + (long) length, maxSize)) {
+        // Reject without waiting for the rest of the body, e.g. a chunked body that has no content length
+        overflowed = true;
+        body.reset();
+        overflowCallback.run();
+        return;
+      }
+      body.write(buffer, 0, length);
+    }
+  }
+
+  @Override
+  public void onAllDataRead() {
+    if (!overflowed) {
+      completionCallback.accept(body.toByteArray());
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (!overflowed) {
+      errorCallback.accept(t);
+    }
+  }
+
+  // Read the body on the current thread, and return null when it exceeds the max size
+  static byte[] readBlocking(InputStream in, long maxSize) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int length;
+    while ((length = in.read(buffer)) != -1) {
+      if (!isAcceptable(body.size() + (long) length, maxSize)) {
+        return null;
+      }
+      body.write(buffer, 0, length);
+    }
+    return body.toByteArray();
+  }
+
+  static boolean isAcceptable(long size, long maxSize) {
+    return maxSize < 0 || size <= maxSize;
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+public class RequestExecutionSupport {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestExecutionSupport.class);
+
+  private final ExecutorService executor;
+
+  public RequestExecutionSupport(ApiStubProperties properties) {
+    this.executor = properties.getExecution().isVirtualThreads() ? createVirtualThreadExecutor() : null;
+  }
+
+  // Create an executor that starts a virtual thread per task via reflection because this application supports Java 8
+  private static ExecutorService createVirtualThreadExecutor() {
+    Method method = ReflectionUtils.findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+    if (method == null) {
+      log.warn("Virtual threads are not available on Java {}. Stub requests are handled on container threads.",
+          System.getProperty("java.version"));
+      return null;
+    }
+    log.info("Stub requests are handled on virtual threads.");
+    return (ExecutorService) ReflectionUtils.invokeMethod(method, null);
+  }
+
+  public boolean isEnabled() {
+    return executor != null;
+  }
+
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.service.ApiChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Component
+public class RequestLimitSupport {
+
+  private static final String ATTRIBUTE_KEY = RequestLimitSupport.class.getName() + ".limiter";
+  private static final int MAX_STRIPES = Math.min(16, Runtime.getRuntime().availableProcessors());
+  // Place each stripe on its own cache line for avoiding false sharing
+  private static final int STRIPE_PADDING = 8;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final ConcurrentMap<Integer, Limiter> limiters = new ConcurrentHashMap<>();
+
+  // Acquire a permit for the api, and return a rejected response when the request exceeds the limits
+  public ResponseEntity<Resource> acquire(Api api, HttpServletRequest request) {
+    if (api == null || (api.getRateLimit() == null && api.getMaxConcurrency() == null)) {
+      return null;
+    }
+    Limiter limiter = getLimiter(api);
+    long waitNanos = limiter.acquireRate(System.nanoTime());
+    if (waitNanos > 0) {
+      return reject(api, HttpStatus.TOO_MANY_REQUESTS, waitNanos);
+    }
+    if (!limiter.acquireConcurrency()) {
+      return reject(api, HttpStatus.SERVICE_UNAVAILABLE, NANOS_PER_SECOND);
+    }
+    if (limiter.maxConcurrency != null) {
+      request.setAttribute(ATTRIBUTE_KEY, limiter);
+    }
+    return null;
+  }
+
+  public void release(HttpServletRequest request) {
+    Limiter limiter = (Limiter) request.getAttribute(ATTRIBUTE_KEY);
+    if (limiter != null) {
+      request.removeAttribute(ATTRIBUTE_KEY);
+      limiter.inFlight.decrementAndGet();
+    }
+  }
+
+  // Evict the limiter of a deleted api or an api that has changed the limits.
+  // The requests in flight release the permits to the evicted limiter.
+  @EventListener
+  public void onApiChanged(ApiChangedEvent event) {
+    Api oldApi = event.getOldApi();
+    if (oldApi == null) {
+      return;
+    }
+    Limiter limiter = limiters.get(oldApi.getId());
+    if (limiter != null && (event.getNewApi() == null || !limiter.isSameDefinition(event.getNewApi()))) {
+      limiters.remove(oldApi.getId(), limiter);
+    }
+  }
+
+  private Limiter getLimiter(Api api) {
+    Limiter limiter = limiters.get(api.getId());
+    if (limiter == null || !limiter.isSameDefinition(api)) {
+      // Reset the state when the limit definition is changed
+      limiter = limiters.compute(api.getId(),
+          (id, current) -> current != null && current.isSameDefinition(api) ? current : new Limiter(api));
+    }
+    return limiter;
+  }
+
+  private ResponseEntity<Resource> reject(Api api, HttpStatus defaultStatus, long waitNanos) {
+    long retryAfterSeconds = Math.max(1, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    return ResponseEntity.status(api.getLimitStatusCode() == null ? defaultStatus.value() : api.getLimitStatusCode())
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+        .build();
+  }
+
+  // The rate limit is a token bucket implemented as GCRA (generic cell rate algorithm); the burst is split across
+  // stripes that hold their own theoretical arrival time, and a request falls back to other stripes when its stripe is empty
+  private static final class Limiter {
+    private final Double rateLimit;
+    private final Integer rateLimitBurst;
+    private final Integer maxConcurrency;
+    private final int stripes;
+    private final long emissionIntervalNanos;
+    private final long[] toleranceNanos;
+    private final AtomicLongArray theoreticalArrivalTimes;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Limiter(Api api) {
+      this.rateLimit = api.getRateLimit();
+      this.rateLimitBurst = api.getRateLimitBurst();
+      this.maxConcurrency = api.getMaxConcurrency();
+      if (rateLimit == null || rateLimit <= 0) {
+        this.stripes = 0;
+        this.emissionIntervalNanos = 0;
+        this.toleranceNanos = new long[0];
+        this.theoreticalArrivalTimes = new AtomicLongArray(0);
+        return;
+      }
+      int burst = rateLimitBurst == null || rateLimitBurst < 1 ? 1 : rateLimitBurst;
+      this.stripes = Math.min(MAX_STRIPES, burst);
+      this.emissionIntervalNanos = (long) (NANOS_PER_SECOND * stripes / rateLimit);
+      this.toleranceNanos = new long[stripes];
+      for (int i = 0; i < stripes; i++) {
+        int stripeBurst = burst / stripes + (i < burst % stripes ? 1 : 0);
+        toleranceNanos[i] = emissionIntervalNanos * (stripeBurst - 1);
+      }
+      this.theoreticalArrivalTimes = new AtomicLongArray(stripes * STRIPE_PADDING);
+      for (int i = 0; i < stripes; i++) {
+        theoreticalArrivalTimes.set(i * STRIPE_PADDING, Long.MIN_VALUE);
+      }
+    }
+
+    // Return 0 when a request is allowed, otherwise return nanoseconds until the next request is allowed
+    private long acquireRate(long now) {
+      if (stripes == 0) {
+        return 0;
+      }
+      long minWaitNanos = Long.MAX_VALUE;
+      int start = (int) (Thread.currentThread().getId() % stripes);
+      for (int n = 0; n < stripes; n++) {
+        int stripe = (start + n) % stripes;
+        int index = stripe * STRIPE_PADDING;
+        while (true) {
+          long arrivalTime = theoreticalArrivalTimes.get(index);
+          long base = Math.max(arrivalTime, now);
+          long waitNanos = base - toleranceNanos[stripe] - now;
+          if (waitNanos > 0) {
+            minWaitNanos = Math.min(minWaitNanos, waitNanos);
+            break;
+          }
+          if (theoreticalArrivalTimes.compareAndSet(index, arrivalTime, base + emissionIntervalNanos)) {
+            return 0;
+          }
+        }
+      }
+      return minWaitNanos;
+    }
+
+    private boolean acquireConcurrency() {
+      if (maxConcurrency == null) {
+        return true;
+      }
+      if (inFlight.incrementAndGet() > maxConcurrency) {
+        inFlight.decrementAndGet();
+        return false;
+      }
+      return true;
+    }
+
+    private boolean isSameDefinition(Api api) {
+      return Objects.equals(rateLimit, api.getRateLimit()) && Objects.equals(rateLimitBurst, api.getRateLimitBurst())
+          && Objects.equals(maxConcurrency, api.getMaxConcurrency());
+    }
+  }
+
+}
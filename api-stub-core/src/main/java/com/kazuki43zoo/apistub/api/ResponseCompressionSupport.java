@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+@Component
+public class ResponseCompressionSupport {
+
+  public static final String GZIP = "gzip";
+  private static final byte[] NOT_COMPRESSIBLE = new byte[0];
+
+  private final ApiStubProperties properties;
+  private final TemplateDetectionSupport templateDetectionSupport;
+  // Compressed bodies keyed by the body digest (guarded by itself)
+  private final Map<String, byte[]> compressedBodies = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedSize;
+
+  public ResponseCompressionSupport(ApiStubProperties properties, TemplateDetectionSupport templateDetectionSupport) {
+    this.properties = properties;
+    this.templateDetectionSupport = templateDetectionSupport;
+  }
+
+  public boolean isCompressible(ApiResponse apiResponse, HttpHeaders responseHeaders) {
+    ApiStubProperties.Response.Compression compression = properties.getResponse().getCompression();
+    return compression.isEnabled()
+        && apiResponse.getBodyDigest() != null
+        && apiResponse.getBodyLength() != null && apiResponse.getBodyLength() >= compression.getMinSize()
+        && !responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING);
+  }
+
+  public boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (!StringUtils.hasLength(acceptEncoding)) {
+      return false;
+    }
+    return Stream.of(acceptEncoding.split(",")).anyMatch(coding -> {
+      String[] elements = coding.split(";");
+      String name = elements[0].trim();
+      if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) {
+        return false;
+      }
+      // Reject the coding that is explicitly disabled by 'q=0'
+      return Stream.of(elements).skip(1).map(String::trim)
+          .noneMatch(parameter -> parameter.matches("[qQ]=0(\\.0*)?"));
+    });
+  }
+
+  // Return the gzip body of a static body, or null when the body is a template or is not reduced by compression.
+  // The body is compressed once per body digest, and the compressed body is reused while it is cached.
+  public byte[] getCompressedBody(ApiResponse apiResponse, Supplier<InputStream> bodySupplier) {
+    String digest = apiResponse.getBodyDigest();
+    byte[] compressedBody;
+    synchronized (compressedBodies) {
+      compressedBody = compressedBodies.get(digest);
+    }
+    if (compressedBody == null) {
+      compressedBody = compress(apiResponse, bodySupplier);
+      cache(digest, compressedBody);
+    }
+    return compressedBody == NOT_COMPRESSIBLE ? null : compressedBody;
+  }
+
+  private byte[] compress(ApiResponse apiResponse, Supplier<InputStream> bodySupplier) {
+    byte[] body;
+    try (InputStream in = bodySupplier.get()) {
+      body = StreamUtils.copyToByteArray(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (templateDetectionSupport.isTemplate(apiResponse, () -> new ByteArrayInputStream(body))) {
+      return NOT_COMPRESSIBLE;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(body.length / 4, 32));
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.size() < body.length ? out.toByteArray() : NOT_COMPRESSIBLE;
+  }
+
+  private void cache(String digest, byte[] compressedBody) {
+    long cacheSize = properties.getResponse().getCompression().getCacheSize();
+    if (compressedBody.length > cacheSize) {
+      return;
+    }
+    synchronized (compressedBodies) {
+      byte[] previous = compressedBodies.put(digest, compressedBody);
+      cachedSize += compressedBody.length - (previous == null ? 0 : previous.length);
+      Iterator<byte[]> iterator = compressedBodies.values().iterator();
+      while (cachedSize > cacheSize && iterator.hasNext()) {
+        cachedSize -= iterator.next().length;
+        iterator.remove();
+      }
+    }
+  }
+
+}
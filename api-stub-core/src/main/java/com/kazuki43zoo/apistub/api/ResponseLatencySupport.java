@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.LatencyDistribution;
+import com.kazuki43zoo.apistub.domain.model.LatencyProfile;
+import com.kazuki43zoo.apistub.domain.service.LatencyStatisticsService;
+import com.kazuki43zoo.apistub.domain.util.LruCache;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ResponseLatencySupport {
+
+  private static final String ATTRIBUTE_KEY = ResponseLatencySupport.class.getName() + ".responseId";
+  private static final int MAX_CACHED_PROFILES = 1024;
+
+  private final LatencyStatisticsService latencyStatisticsService;
+  private final LruCache<Integer, CachedProfile> profiles = new LruCache<>(MAX_CACHED_PROFILES);
+
+  public ResponseLatencySupport(LatencyStatisticsService latencyStatisticsService) {
+    this.latencyStatisticsService = latencyStatisticsService;
+  }
+
+  public void storeResponseId(int responseId, HttpServletRequest request) {
+    request.setAttribute(ATTRIBUTE_KEY, responseId);
+  }
+
+  public void recordLatency(HttpServletRequest request, long startNanoTime) {
+    Integer responseId = (Integer) request.getAttribute(ATTRIBUTE_KEY);
+    if (responseId != null) {
+      latencyStatisticsService.record(responseId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanoTime));
+    }
+  }
+
+  // The profile is parsed again when the latency definition of the response has been changed
+  public LatencyProfile getLatencyProfile(ApiResponse apiResponse) {
+    CachedProfile profile = profiles.get(apiResponse.getId());
+    if (profile == null || !profile.isSameDefinition(apiResponse)) {
+      profile = new CachedProfile(apiResponse);
+      profiles.put(apiResponse.getId(), profile);
+    }
+    return profile.get();
+  }
+
+  private static class CachedProfile {
+    private final LatencyDistribution distribution;
+    private final String parameters;
+    private final Long waitingMsec;
+    private final LatencyProfile profile;
+    private final String invalidReason;
+
+    private CachedProfile(ApiResponse apiResponse) {
+      this.distribution = apiResponse.getLatencyDistribution();
+      this.parameters = apiResponse.getLatencyParameters();
+      this.waitingMsec = apiResponse.getWaitingMsec();
+      LatencyProfile parsedProfile = null;
+      String reason = null;
+      try {
+        parsedProfile = LatencyProfile.of(distribution, parameters, waitingMsec);
+      } catch (IllegalArgumentException e) {
+        reason = e.getMessage();
+      }
+      this.profile = parsedProfile;
+      this.invalidReason = reason;
+    }
+
+    private boolean isSameDefinition(ApiResponse apiResponse) {
+      return distribution == apiResponse.getLatencyDistribution()
+          && Objects.equals(parameters, apiResponse.getLatencyParameters())
+          && Objects.equals(waitingMsec, apiResponse.getWaitingMsec());
+    }
+
+    private LatencyProfile get() {
+      if (profile == null) {
+        throw new IllegalArgumentException(invalidReason);
+      }
+      return profile;
+    }
+  }
+
+}
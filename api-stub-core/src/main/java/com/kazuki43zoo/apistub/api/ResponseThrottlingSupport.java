@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ResponseThrottlingSupport {
+
+  private static final String ATTRIBUTE_KEY = ResponseThrottlingSupport.class.getName() + ".throttling";
+  private static final int DEFAULT_CHUNK_SIZE = 8192;
+  private static final int CHUNKS_PER_SECOND = 10;
+
+  public void storeThrottling(Long bytesPerSec, Long firstByteMsec, Integer chunkSize, HttpServletRequest request) {
+    long actualBytesPerSec = bytesPerSec == null ? 0 : Math.max(0, bytesPerSec);
+    long actualFirstByteMsec = firstByteMsec == null ? 0 : Math.max(0, firstByteMsec);
+    int actualChunkSize = chunkSize == null ? 0 : Math.max(0, chunkSize);
+    if (actualBytesPerSec == 0 && actualFirstByteMsec == 0 && actualChunkSize == 0) {
+      return;
+    }
+    if (actualChunkSize == 0) {
+      // Split into small chunks to smooth the bandwidth when a chunk size is not specified
+      actualChunkSize = actualBytesPerSec == 0 ? DEFAULT_CHUNK_SIZE
+          : (int) Math.min(DEFAULT_CHUNK_SIZE, Math.max(1, actualBytesPerSec / CHUNKS_PER_SECOND));
+    }
+    request.setAttribute(ATTRIBUTE_KEY, new Throttling(actualBytesPerSec, actualFirstByteMsec, actualChunkSize));
+  }
+
+  public Throttling getThrottling(HttpServletRequest request) {
+    return (Throttling) request.getAttribute(ATTRIBUTE_KEY);
+  }
+
+  public static class Throttling {
+    private final long bytesPerSec;
+    private final long firstByteMsec;
+    private final int chunkSize;
+
+    private Throttling(long bytesPerSec, long firstByteMsec, int chunkSize) {
+      this.bytesPerSec = bytesPerSec;
+      this.firstByteMsec = firstByteMsec;
+      this.chunkSize = chunkSize;
+    }
+
+    public long getBytesPerSec() {
+      return bytesPerSec;
+    }
+
+    public long getFirstByteMsec() {
+      return firstByteMsec;
+    }
+
+    public int getChunkSize() {
+      return chunkSize;
+    }
+
+    long nanosToWrite(int length) {
+      return bytesPerSec == 0 ? 0 : TimeUnit.SECONDS.toNanos(length) / bytesPerSec;
+    }
+
+    @Override
+    public String toString() {
+      return "bytesPerSec=" + bytesPerSec + ", firstByteMsec=" + firstByteMsec + ", chunkSize=" + chunkSize;
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.ResponseVariants;
+import com.kazuki43zoo.apistub.domain.model.VariantStrategy;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class ResponseVariantSupport {
+
+  private final ConcurrentMap<Integer, VariantState> states = new ConcurrentHashMap<>();
+
+  // Return a data key of the selected variant, or null when the response itself is selected
+  public String selectVariant(ApiResponse apiResponse) {
+    if (apiResponse.getVariantStrategy() == null) {
+      return null;
+    }
+    VariantState state = states.get(apiResponse.getId());
+    if (state == null || !state.isSameDefinition(apiResponse)) {
+      // The counter is reset when the definition of variants has been changed
+      state = states.compute(apiResponse.getId(), (id, current) ->
+          current != null && current.isSameDefinition(apiResponse) ? current : new VariantState(apiResponse));
+    }
+    String dataKey = state.select();
+    return ResponseVariants.SELF.equals(dataKey) ? null : dataKey;
+  }
+
+  private static class VariantState {
+    private final VariantStrategy strategy;
+    private final String definition;
+    private final ResponseVariants variants;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private VariantState(ApiResponse apiResponse) {
+      this.strategy = apiResponse.getVariantStrategy();
+      this.definition = apiResponse.getVariants();
+      this.variants = ResponseVariants.of(strategy, definition);
+    }
+
+    private boolean isSameDefinition(ApiResponse apiResponse) {
+      return strategy == apiResponse.getVariantStrategy() && Objects.equals(definition, apiResponse.getVariants());
+    }
+
+    private String select() {
+      if (strategy == VariantStrategy.WEIGHTED) {
+        return variants.select(0, ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+      }
+      return variants.select(sequence.getAndIncrement(), 0);
+    }
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
+
+@Component
+public class ResponseWaitingSupport {
+
+  private static final String ATTRIBUTE_KEY = ResponseWaitingSupport.class.getName() + ".waitingMsec";
+
+  public void storeWaitingMsec(long waitingMsec, HttpServletRequest request) {
+    request.setAttribute(ATTRIBUTE_KEY, waitingMsec);
+  }
+
+  public long getWaitingMsec(HttpServletRequest request) {
+    return Optional.ofNullable((Long) request.getAttribute(ATTRIBUTE_KEY)).orElse(0L);
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.Scenario;
+import com.kazuki43zoo.apistub.domain.model.ScenarioState;
+import com.kazuki43zoo.apistub.domain.service.ApiChangedEvent;
+import com.kazuki43zoo.apistub.domain.service.ScenarioStateService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=Scenario")
+public class ScenarioSupport {
+
+  private static final Logger log = LoggerFactory.getLogger(ScenarioSupport.class);
+  private static final int MAX_CACHED_SCENARIOS = 1024;
+
+  private final ObjectMapper objectMapper;
+  private final ScenarioStateService scenarioStateService;
+  private final ApiStubProperties properties;
+  private final ConcurrentMap<String, Scenario> scenarios = new ConcurrentHashMap<>();
+  private final ConcurrentMap<StateKey, AtomicReference<String>> states = new ConcurrentHashMap<>();
+  private final AtomicBoolean changed = new AtomicBoolean();
+  private ScheduledExecutorService snapshotExecutor;
+
+  public ScenarioSupport(ObjectMapper objectMapper, ScenarioStateService scenarioStateService, ApiStubProperties properties) {
+    this.objectMapper = objectMapper;
+    this.scenarioStateService = scenarioStateService;
+    this.properties = properties;
+  }
+
+  // Restore after the application is ready because the database schema is migrated on startup
+  @EventListener(ApplicationReadyEvent.class)
+  public void restoreStates() {
+    long interval = properties.getScenario().getSnapshotIntervalMsec();
+    if (interval <= 0) {
+      return;
+    }
+    scenarioStateService.findAll().forEach(scenarioState -> states.put(
+        new StateKey(scenarioState.getScenarioName(), scenarioState.getDataKey()),
+        new AtomicReference<>(scenarioState.getState())));
+    snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("api-stub-scenario-"));
+    snapshotExecutor.scheduleWithFixedDelay(this::saveSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (snapshotExecutor != null) {
+      snapshotExecutor.shutdownNow();
+      saveSnapshot();
+    }
+  }
+
+  // Advance a state of scenario by a matched request, and return null when the api does not have a scenario
+  public Transition advance(Api api, String dataKey) {
+    if (api == null || !StringUtils.hasText(api.getScenario())) {
+      return null;
+    }
+    Scenario scenario = getScenario(api.getScenario());
+    StateKey key = new StateKey(scenario.getName(), dataKey == null ? "" : dataKey);
+    AtomicReference<String> state = states.get(key);
+    if (state == null) {
+      state = states.computeIfAbsent(key, k -> new AtomicReference<>(scenario.getInitialState()));
+    }
+    while (true) {
+      String current = state.get();
+      Scenario.State definition = scenario.getStates().get(current);
+      if (definition == null) {
+        return new Transition(scenario.getName(), current, current, null);
+      }
+      String next = definition.getNext() == null ? current : definition.getNext();
+      if (next.equals(current)) {
+        return new Transition(scenario.getName(), current, current, definition.getResponse());
+      }
+      if (state.compareAndSet(current, next)) {
+        changed.set(true);
+        return new Transition(scenario.getName(), current, next, definition.getResponse());
+      }
+    }
+  }
+
+  // The states of a scenario are reset when the definition of the api is changed, because they are kept per name
+  @EventListener
+  public void onApiChanged(ApiChangedEvent event) {
+    String oldDefinition = event.getOldApi() == null ? null : event.getOldApi().getScenario();
+    String newDefinition = event.getNewApi() == null ? null : event.getNewApi().getScenario();
+    if (Objects.equals(oldDefinition, newDefinition)) {
+      return;
+    }
+    Stream.of(oldDefinition, newDefinition)
+        .filter(StringUtils::hasText)
+        .map(this::findScenarioName)
+        .filter(Objects::nonNull)
+        .distinct()
+        .forEach(this::reset);
+  }
+
+  private String findScenarioName(String definition) {
+    try {
+      return objectMapper.readValue(definition, Scenario.class).getName();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @ManagedOperation
+  public void reset(String scenarioName) {
+    if (states.keySet().removeIf(key -> key.scenarioName.equals(scenarioName))) {
+      changed.set(true);
+    }
+  }
+
+  @ManagedOperation
+  public void resetAll() {
+    states.clear();
+    changed.set(true);
+  }
+
+  private Scenario getScenario(String definition) {
+    Scenario scenario = scenarios.get(definition);
+    if (scenario == null) {
+      try {
+        scenario = objectMapper.readValue(definition, Scenario.class);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("The scenario is not valid json. cause: " + e.getMessage(), e);
+      }
+      scenario.validate();
+      if (scenarios.size() >= MAX_CACHED_SCENARIOS) {
+        scenarios.clear();
+      }
+      scenarios.put(definition, scenario);
+    }
+    return scenario;
+  }
+
+  void saveSnapshot() {
+    if (!changed.getAndSet(false)) {
+      return;
+    }
+    List<ScenarioState> snapshot = states.entrySet().stream().map(entry -> {
+      ScenarioState scenarioState = new ScenarioState();
+      scenarioState.setScenarioName(entry.getKey().scenarioName);
+      scenarioState.setDataKey(entry.getKey().dataKey);
+      scenarioState.setState(entry.getValue().get());
+      return scenarioState;
+    }).collect(Collectors.toList());
+    try {
+      scenarioStateService.replaceAll(snapshot);
+    } catch (RuntimeException e) {
+      changed.set(true);
+      log.warn("Could not save a snapshot of scenario states.", e);
+    }
+  }
+
+  public static class Transition {
+    private final String scenarioName;
+    private final String fromState;
+    private final String toState;
+    private final String response;
+
+    private Transition(String scenarioName, String fromState, String toState, String response) {
+      this.scenarioName = scenarioName;
+      this.fromState = fromState;
+      this.toState = toState;
+      this.response = response;
+    }
+
+    public String getScenarioName() {
+      return scenarioName;
+    }
+
+    public String getFromState() {
+      return fromState;
+    }
+
+    public String getToState() {
+      return toState;
+    }
+
+    public String getResponse() {
+      return response;
+    }
+  }
+
+  private static final class StateKey {
+    private final String scenarioName;
+    private final String dataKey;
+    private final int hash;
+
+    private StateKey(String scenarioName, String dataKey) {
+      this.scenarioName = scenarioName;
+      this.dataKey = dataKey;
+      this.hash = Objects.hash(scenarioName, dataKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof StateKey)) {
+        return false;
+      }
+      StateKey other = (StateKey) o;
+      return scenarioName.equals(other.scenarioName) && dataKey.equals(other.dataKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Component
+public class TemplateDetectionSupport {
+
+  private static final int MAX_CACHED_RESULTS = 10000;
+  private static final String[] TEMPLATE_MARKERS = {"[[", "[(", "[#", "th:", "data-th-"};
+
+  private final ApiStubProperties properties;
+  // Detection results keyed by the body digest (guarded by itself)
+  private final Map<String, Boolean> results = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_CACHED_RESULTS;
+    }
+  };
+
+  public TemplateDetectionSupport(ApiStubProperties properties) {
+    this.properties = properties;
+  }
+
+  // Return whether the body may be rendered differently per request.
+  // The body is read once per body digest, and the result is reused while it is cached.
+  public boolean isTemplate(ApiResponse apiResponse, Supplier<InputStream> bodySupplier) {
+    if (properties.getResponse().getTemplate().isDisabled() || apiResponse.getBodyLength() == null) {
+      return false;
+    }
+    String digest = apiResponse.getBodyDigest();
+    if (digest != null) {
+      synchronized (results) {
+        Boolean result = results.get(digest);
+        if (result != null) {
+          return result;
+        }
+      }
+    }
+    boolean result = containsTemplateMarker(bodySupplier);
+    if (digest != null) {
+      synchronized (results) {
+        results.put(digest, result);
+      }
+    }
+    return result;
+  }
+
+  private boolean containsTemplateMarker(Supplier<InputStream> bodySupplier) {
+    byte[] body;
+    try (InputStream in = bodySupplier.get()) {
+      body = StreamUtils.copyToByteArray(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // The markers are ASCII, so the body can be searched without decoding by the response charset
+    String text = new String(body, StandardCharsets.ISO_8859_1);
+    return Stream.of(TEMPLATE_MARKERS).anyMatch(text::contains);
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class ThrottledResponseWriter implements WriteListener {
+
+  private static final Logger log = LoggerFactory.getLogger(ThrottledResponseWriter.class);
+
+  private final AsyncContext asyncContext;
+  private final ServletOutputStream out;
+  private final InputStream body;
+  private final ResponseThrottlingSupport.Throttling throttling;
+  private final ScheduledExecutorService timer;
+  private final Runnable completionCallback;
+  private final byte[] buffer;
+  private long nextWriteNanoTime;
+  private boolean headerFlushed;
+  private boolean finished;
+
+  ThrottledResponseWriter(AsyncContext asyncContext, ServletOutputStream out, InputStream body,
+                          ResponseThrottlingSupport.Throttling throttling, ScheduledExecutorService timer,
+                          Runnable completionCallback) {
+    this.asyncContext = asyncContext;
+    this.out = out;
+    this.body = body;
+    this.throttling = throttling;
+    this.timer = timer;
+    this.completionCallback = completionCallback;
+    this.buffer = new byte[throttling.getChunkSize()];
+  }
+
+  void start() {
+    nextWriteNanoTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(throttling.getFirstByteMsec());
+    try {
+      out.setWriteListener(this);
+    } catch (RuntimeException e) {
+      // The body is owned by this writer from here, and nobody closes it when the writing does not start
+      closeQuietly(body);
+      throw e;
+    }
+  }
+
+  @Override
+  public void onWritePossible() {
+    writeChunks();
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    log.debug("Could not write a throttled response.", t);
+    finish(false);
+  }
+
+  private synchronized void writeChunks() {
+    if (finished) {
+      return;
+    }
+    // Write chunks while the output stream can accept without blocking, and resume by the timer when it is too early.
+    // The headers are flushed after the first byte delay too, so that the client does not receive them earlier.
+    try {
+      while (out.isReady()) {
+        long now = System.nanoTime();
+        if (nextWriteNanoTime > now) {
+          timer.schedule(() -> asyncContext.start(this::writeChunks), nextWriteNanoTime - now, TimeUnit.NANOSECONDS);
+          return;
+        }
+        if (!headerFlushed) {
+          headerFlushed = true;
+          out.flush();
+          continue;
+        }
+        int length = body == null ? -1 : body.read(buffer);
+        if (length == -1) {
+          finish(true);
+          return;
+        }
+        out.write(buffer, 0, length);
+        nextWriteNanoTime = now + throttling.nanosToWrite(length);
+        if (!out.isReady()) {
+          return;
+        }
+        out.flush();
+      }
+    } catch (IOException | RejectedExecutionException e) {
+      log.debug("Could not write a throttled response.", e);
+      finish(false);
+    }
+  }
+
+  private void finish(boolean succeeded) {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    closeQuietly(body);
+    if (succeeded) {
+      completionCallback.run();
+    }
+    asyncContext.complete();
+  }
+
+  // The caller owns the body stream and closes it after writing
+  static void writeBlocking(OutputStream out, InputStream body, ResponseThrottlingSupport.Throttling throttling) throws IOException {
+    try {
+      TimeUnit.MILLISECONDS.sleep(throttling.getFirstByteMsec());
+      out.flush();
+      long nextWriteNanoTime = System.nanoTime();
+      byte[] buffer = new byte[throttling.getChunkSize()];
+      int length;
+      while (body != null && (length = body.read(buffer)) != -1) {
+        TimeUnit.NANOSECONDS.sleep(nextWriteNanoTime - System.nanoTime());
+        out.write(buffer, 0, length);
+        out.flush();
+        nextWriteNanoTime = System.nanoTime() + throttling.nanosToWrite(length);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void closeQuietly(InputStream body) {
+    if (body == null) {
+      return;
+    }
+    try {
+      body.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+}
@@ -20,6 +20,7 @@ import com.kazuki43zoo.apistub.api.evidence.ApiEvidenceFactory;
 import com.kazuki43zoo.apistub.api.key.DataKeySupport;
 import com.kazuki43zoo.apistub.api.PathVariableSupport;
 import com.kazuki43zoo.apistub.api.ApiStubProperties;
+import com.kazuki43zoo.apistub.api.RequestLimitSupport;
 import com.kazuki43zoo.apistub.domain.model.Api;
 import com.kazuki43zoo.apistub.domain.model.ApiProxy;
 import com.kazuki43zoo.apistub.domain.service.ApiService;
@@ -52,9 +53,10 @@ public class ApiStubRequestHandler {
   private final ProxyHandler proxyHandler;
   private final DataKeySupport dataKeySupport;
   private final PathVariableSupport pathVariableSupport;
+  private final RequestLimitSupport requestLimitSupport;
   private Pattern rootPathPattern;
 
-  public ApiStubRequestHandler(ApiService apiService, ApiStubProperties properties, ApiEvidenceFactory apiEvidenceFactory, MockResponseHandler mockResponseHandler, ProxyHandler proxyHandler, DataKeySupport dataKeySupport, PathVariableSupport pathVariableSupport) {
+  public ApiStubRequestHandler(ApiService apiService, ApiStubProperties properties, ApiEvidenceFactory apiEvidenceFactory, MockResponseHandler mockResponseHandler, ProxyHandler proxyHandler, DataKeySupport dataKeySupport, PathVariableSupport pathVariableSupport, RequestLimitSupport requestLimitSupport) {
     this.apiService = apiService;
     this.properties = properties;
     this.apiEvidenceFactory = apiEvidenceFactory;
@@ -62,6 +64,7 @@ public class ApiStubRequestHandler {
     this.proxyHandler = proxyHandler;
     this.dataKeySupport = dataKeySupport;
     this.pathVariableSupport = pathVariableSupport;
+    this.requestLimitSupport = requestLimitSupport;
   }
 
   @PostConstruct
@@ -101,8 +104,12 @@ public class ApiStubRequestHandler {
           .map(ApiProxy::getEnabled)
           .orElse(properties.getProxy().isDefaultEnabled());
 
+      final ResponseEntity<Resource> limitedResponseEntity = requestLimitSupport.acquire(api, request);
       final ResponseEntity<Resource> responseEntity;
-      if (enabledProxy) {
+      if (limitedResponseEntity != null) {
+        evidence.info("Reject the request because the request limit is exceeded.");
+        responseEntity = limitedResponseEntity;
+      } else if (enabledProxy) {
         responseEntity = proxyHandler.perform(request, requestEntity, path, method, dataKey, api, evidence);
       } else {
         responseEntity = mockResponseHandler.perform(path, method, dataKey, requestEntity, request, response, api, evidence);
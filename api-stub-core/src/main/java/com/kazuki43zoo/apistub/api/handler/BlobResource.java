@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api.handler;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+// The resource that opens a BLOB stream from the database when the response body is written
+class BlobResource extends AbstractResource {
+
+  private final Supplier<InputStream> inputStreamSupplier;
+  private final long contentLength;
+  private final String description;
+
+  BlobResource(Supplier<InputStream> inputStreamSupplier, long contentLength, String description) {
+    this.inputStreamSupplier = inputStreamSupplier;
+    this.contentLength = contentLength;
+    this.description = description;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    InputStream inputStream = inputStreamSupplier.get();
+    if (inputStream == null) {
+      throw new IOException(description + " is not found.");
+    }
+    return inputStream;
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+}
@@ -18,17 +18,29 @@ package com.kazuki43zoo.apistub.api.handler;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.ReadContext;
 import com.kazuki43zoo.apistub.api.ApiStubProperties;
+import com.kazuki43zoo.apistub.api.ConditionalRequestSupport;
 import com.kazuki43zoo.apistub.api.DownloadSupport;
+import com.kazuki43zoo.apistub.api.FaultInjectionSupport;
+import com.kazuki43zoo.apistub.api.ResponseCompressionSupport;
+import com.kazuki43zoo.apistub.api.ResponseLatencySupport;
+import com.kazuki43zoo.apistub.api.ResponseThrottlingSupport;
+import com.kazuki43zoo.apistub.api.ResponseVariantSupport;
+import com.kazuki43zoo.apistub.api.ResponseWaitingSupport;
+import com.kazuki43zoo.apistub.api.ScenarioSupport;
+import com.kazuki43zoo.apistub.api.TemplateDetectionSupport;
 import com.kazuki43zoo.apistub.api.util.Lazy;
 import com.kazuki43zoo.apistub.api.evidence.ApiEvidence;
 import com.kazuki43zoo.apistub.domain.model.Api;
 import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.FaultType;
 import com.kazuki43zoo.apistub.domain.service.ApiResponseService;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
@@ -62,9 +74,10 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -79,14 +92,32 @@ public class MockResponseHandler {
   private final ApplicationContext applicationContext;
   private final ApiResponseService apiResponseService;
   private final DownloadSupport downloadSupport;
+  private final ResponseWaitingSupport responseWaitingSupport;
+  private final ResponseLatencySupport responseLatencySupport;
+  private final ResponseThrottlingSupport responseThrottlingSupport;
+  private final FaultInjectionSupport faultInjectionSupport;
+  private final ResponseVariantSupport responseVariantSupport;
+  private final ScenarioSupport scenarioSupport;
+  private final ResponseCompressionSupport responseCompressionSupport;
+  private final TemplateDetectionSupport templateDetectionSupport;
+  private final ConditionalRequestSupport conditionalRequestSupport;
   private final ApiStubProperties properties;
   private final Set<IDialect> dialects;
   private ITemplateEngine templateEngine;
 
-  public MockResponseHandler(ApplicationContext applicationContext, ApiResponseService apiResponseService, DownloadSupport downloadSupport, ApiStubProperties properties, Set<IDialect> dialects) {
+  public MockResponseHandler(ApplicationContext applicationContext, ApiResponseService apiResponseService, DownloadSupport downloadSupport, ResponseWaitingSupport responseWaitingSupport, ResponseLatencySupport responseLatencySupport, ResponseThrottlingSupport responseThrottlingSupport, FaultInjectionSupport faultInjectionSupport, ResponseVariantSupport responseVariantSupport, ScenarioSupport scenarioSupport, ResponseCompressionSupport responseCompressionSupport, TemplateDetectionSupport templateDetectionSupport, ConditionalRequestSupport conditionalRequestSupport, ApiStubProperties properties, Set<IDialect> dialects) {
     this.applicationContext = applicationContext;
     this.apiResponseService = apiResponseService;
     this.downloadSupport = downloadSupport;
+    this.responseWaitingSupport = responseWaitingSupport;
+    this.responseLatencySupport = responseLatencySupport;
+    this.responseThrottlingSupport = responseThrottlingSupport;
+    this.faultInjectionSupport = faultInjectionSupport;
+    this.responseVariantSupport = responseVariantSupport;
+    this.scenarioSupport = scenarioSupport;
+    this.responseCompressionSupport = responseCompressionSupport;
+    this.templateDetectionSupport = templateDetectionSupport;
+    this.conditionalRequestSupport = conditionalRequestSupport;
     this.properties = properties;
     this.dialects = dialects;
   }
@@ -116,8 +147,9 @@ public class MockResponseHandler {
       Api api,
       ApiEvidence evidence) {
 
-    final ApiResponse apiResponse = apiResponseService.findOne(
-        path, Optional.ofNullable(api).map(Api::getPath).orElse(null), method, dataKey);
+    final String responseDataKey = advanceScenario(api, dataKey, evidence);
+    final ApiResponse apiResponse = resolveVariant(apiResponseService.findOne(
+        path, Optional.ofNullable(api).map(Api::getPath).orElse(null), method, responseDataKey), method, evidence);
 
     final Integer statusCode;
     if (apiResponse.getId() == 0) {
@@ -126,9 +158,21 @@ public class MockResponseHandler {
           .orElse(HttpStatus.OK).value();
     } else {
       evidence.info("Mock Response is {}.", () -> array(apiResponse.getId()));
+      responseLatencySupport.storeResponseId(apiResponse.getId(), request);
       statusCode = Optional.ofNullable(apiResponse.getStatusCode()).orElse(HttpStatus.OK.value());
     }
 
+    // Fault injection (the faults except RANDOM_5XX are applied on writing the response)
+    final FaultType fault = faultInjectionSupport.decideFault(api, apiResponse, request);
+    if (fault != null) {
+      evidence.warn("Inject the fault. fault = {}", () -> array(fault));
+      if (fault == FaultType.RANDOM_5XX) {
+        return ResponseEntity.status(faultInjectionSupport.randomServerErrorStatus())
+            .header(properties.getCorrelationIdKey(), evidence.getCorrelationId())
+            .build();
+      }
+    }
+
     final IWebContext templateContext = createTemplateWebContext(requestEntity, request, response);
 
     // Response Headers
@@ -150,40 +194,163 @@ public class MockResponseHandler {
     }
     responseHeaders.add(properties.getCorrelationIdKey(), evidence.getCorrelationId());
 
-    // Response Body
-    final InputStreamResource responseBody = Optional.ofNullable(apiResponse.getBody())
-        .map(body -> {
-          Charset responseCharset = Optional.ofNullable(responseHeaders.getContentType())
-              .map(MediaType::getCharset).orElse(StandardCharsets.UTF_8);
-          return processTemplate(body, responseCharset, templateContext, responseHeaders, evidence);
-        })
-        .orElse(Optional.ofNullable(apiResponse.getAttachmentFile())
-            .map(InputStreamResource::new)
-            .orElse(null));
-
-    // Wait processing
-    if (Optional.ofNullable(apiResponse.getWaitingMsec()).filter(value -> value > 0).isPresent()) {
-      evidence.info("Waiting {} msec.", () -> array(apiResponse.getWaitingMsec()));
-      try {
-        TimeUnit.MILLISECONDS.sleep(apiResponse.getWaitingMsec());
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
+    final byte[] compressedBody = compressBody(apiResponse, responseHeaders, request, evidence);
+
+    // Conditional request (the body is neither loaded nor rendered when it is not modified)
+    final boolean notModified = validate(apiResponse, method, statusCode, compressedBody != null, responseHeaders, request);
+    if (notModified) {
+      evidence.info("Mock Response is not modified. etag = {}", () -> array(responseHeaders.getETag()));
+      Stream.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_DISPOSITION, HttpHeaders.CONTENT_ENCODING)
+          .forEach(responseHeaders::remove);
+    }
+
+    // Response Body (the BLOB or the stored file is read when the response is written)
+    final Resource responseBody;
+    if (notModified) {
+      responseBody = null;
+    } else if (compressedBody != null) {
+      responseBody = new ByteArrayResource(compressedBody);
+    } else if (apiResponse.getBodyLength() != null) {
+      Charset responseCharset = Optional.ofNullable(responseHeaders.getContentType())
+          .map(MediaType::getCharset).orElse(StandardCharsets.UTF_8);
+      responseBody = processTemplate(apiResponse, responseCharset, templateContext, responseHeaders, evidence);
+    } else if (apiResponse.getAttachmentFileRef() != null) {
+      responseBody = apiResponseService.loadAttachmentFile(apiResponse.getAttachmentFileRef());
+    } else if (apiResponse.getAttachmentFileLength() != null) {
+      final int id = apiResponse.getId();
+      responseBody = new BlobResource(() -> apiResponseService.findAttachmentFile(id),
+          apiResponse.getAttachmentFileLength(), "Attachment file of mock response " + id);
+    } else {
+      responseBody = null;
+    }
+
+    // Wait processing (the waiting is performed on writing the response without blocking a request thread)
+    final long waitingMsec = sampleWaitingMsec(apiResponse, evidence);
+    if (waitingMsec > 0) {
+      evidence.info("Waiting {} msec.", () -> array(waitingMsec));
+      responseWaitingSupport.storeWaitingMsec(waitingMsec, request);
+    }
+
+    // Throttling processing (the body is written per chunk with non-blocking writes)
+    if (!notModified) {
+      responseThrottlingSupport.storeThrottling(
+          apiResponse.getBytesPerSec(), apiResponse.getFirstByteMsec(), apiResponse.getChunkSize(), request);
+      Optional.ofNullable(responseThrottlingSupport.getThrottling(request))
+          .ifPresent(throttling -> evidence.info("Throttling the response. {}", () -> array(throttling)));
     }
 
-    return ResponseEntity.status(statusCode)
+    return ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED.value() : statusCode)
         .headers(responseHeaders)
         .body(responseBody);
   }
 
-  private InputStreamResource processTemplate(InputStream body, Charset responseCharset, IWebContext templateContext, HttpHeaders responseHeaders, ApiEvidence evidence) {
+  // Set the validators of the response, and return whether the client has the same response
+  private boolean validate(ApiResponse apiResponse, String method, int statusCode, boolean compressed,
+                           HttpHeaders responseHeaders, HttpServletRequest request) {
+    if (apiResponse.getId() == 0 || statusCode != HttpStatus.OK.value()
+        || !(HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method))) {
+      return false;
+    }
+    // The entity tag defined by the mock header is used as is (a template opts in by defining it)
+    String etag = responseHeaders.getETag();
+    long lastModified = -1;
+    if (etag == null) {
+      final int id = apiResponse.getId();
+      if (templateDetectionSupport.isTemplate(apiResponse, () -> apiResponseService.findBody(id))) {
+        return false;
+      }
+      etag = conditionalRequestSupport.getETag(apiResponse);
+      if (etag == null) {
+        return false;
+      }
+      if (compressed) {
+        etag = conditionalRequestSupport.toEncodedETag(etag, ResponseCompressionSupport.GZIP);
+      }
+      lastModified = apiResponse.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+      responseHeaders.setETag(etag);
+      responseHeaders.setLastModified(lastModified);
+    }
+    return conditionalRequestSupport.isNotModified(request, etag, lastModified);
+  }
+
+  private byte[] compressBody(ApiResponse apiResponse, HttpHeaders responseHeaders,
+                              HttpServletRequest request, ApiEvidence evidence) {
+    if (!responseCompressionSupport.isCompressible(apiResponse, responseHeaders)) {
+      return null;
+    }
+    final int id = apiResponse.getId();
+    byte[] compressedBody = responseCompressionSupport.getCompressedBody(apiResponse, () -> apiResponseService.findBody(id));
+    if (compressedBody == null) {
+      return null;
+    }
+    responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (!responseCompressionSupport.acceptsGzip(request)) {
+      return null;
+    }
+    evidence.info("Respond the precompressed body. size = {}", () -> array(compressedBody.length));
+    responseHeaders.set(HttpHeaders.CONTENT_ENCODING, ResponseCompressionSupport.GZIP);
+    return compressedBody;
+  }
+
+  private String advanceScenario(Api api, String dataKey, ApiEvidence evidence) {
+    ScenarioSupport.Transition transition;
+    try {
+      transition = scenarioSupport.advance(api, dataKey);
+    } catch (IllegalArgumentException e) {
+      evidence.warn("Ignore the scenario because scenario is invalid. cause = {}", () -> array(e.getMessage()));
+      return dataKey;
+    }
+    if (transition == null) {
+      return dataKey;
+    }
+    evidence.info("Scenario '{}' state is changed from '{}' to '{}'.",
+        () -> array(transition.getScenarioName(), transition.getFromState(), transition.getToState()));
+    return transition.getResponse() == null ? dataKey : transition.getResponse();
+  }
+
+  private ApiResponse resolveVariant(ApiResponse apiResponse, String method, ApiEvidence evidence) {
+    String variantDataKey;
+    try {
+      variantDataKey = responseVariantSupport.selectVariant(apiResponse);
+    } catch (IllegalArgumentException e) {
+      evidence.warn("Ignore the variants because variants are invalid. cause = {}", () -> array(e.getMessage()));
+      return apiResponse;
+    }
+    if (variantDataKey == null) {
+      return apiResponse;
+    }
+    ApiResponse variant = apiResponseService.findOne(apiResponse.getPath(), null, method, variantDataKey);
+    if (variant.getId() == 0) {
+      evidence.warn("Use the original response because variant is not found. data key = {}", () -> array(variantDataKey));
+      return apiResponse;
+    }
+    evidence.info("Variant is selected. data key = {}", () -> array(variantDataKey));
+    return variant;
+  }
+
+  private long sampleWaitingMsec(ApiResponse apiResponse, ApiEvidence evidence) {
+    long waitingMsec = Optional.ofNullable(apiResponse.getWaitingMsec()).orElse(0L);
+    if (apiResponse.getLatencyDistribution() == null) {
+      return waitingMsec;
+    }
+    try {
+      return responseLatencySupport.getLatencyProfile(apiResponse).sample(ThreadLocalRandom.current());
+    } catch (IllegalArgumentException e) {
+      evidence.warn("Use the waiting msec because latency profile is invalid. cause = {}", () -> array(e.getMessage()));
+      return waitingMsec;
+    }
+  }
 
+  private Resource processTemplate(ApiResponse apiResponse, Charset responseCharset, IWebContext templateContext, HttpHeaders responseHeaders, ApiEvidence evidence) {
+
+    final int id = apiResponse.getId();
     if (templateContext == null) {
-      return new InputStreamResource(body);
+      return new BlobResource(() -> apiResponseService.findBody(id),
+          apiResponse.getBodyLength(), "Body of mock response " + id);
     }
 
     String template;
-    try {
+    try (InputStream body = apiResponseService.findBody(id)) {
       template = StreamUtils.copyToString(body, responseCharset);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
@@ -0,0 +1,22 @@
+--
+--    Copyright 2016 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+
+
+ALTER TABLE mock_api_response ADD COLUMN IF NOT EXISTS history_seq INTEGER DEFAULT 0 NOT NULL AFTER updated_at;
+UPDATE mock_api_response r SET history_seq = IFNULL((SELECT MAX(h.sub_id) FROM mock_api_response_history h WHERE h.id = r.id), 0);
+ALTER TABLE mock_api_response_history ADD COLUMN IF NOT EXISTS base_sub_id INTEGER AFTER sub_id;
+CREATE INDEX IF NOT EXISTS ix1_mock_api_response_history ON mock_api_response_history (id, base_sub_id);
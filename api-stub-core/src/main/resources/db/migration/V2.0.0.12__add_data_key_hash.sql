@@ -0,0 +1,21 @@
+--
+--    Copyright 2016 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+
+ALTER TABLE mock_api_response ADD COLUMN IF NOT EXISTS uk_hash BINARY(16) AS CAST(HASH('SHA256', STRINGTOUTF8(path || CHAR(10) || method || CHAR(10) || data_key), 1) AS BINARY(16)) AFTER data_key;
+ALTER TABLE mock_api_response ADD CONSTRAINT IF NOT EXISTS uk2_mock_api_response UNIQUE (uk_hash);
+ALTER TABLE mock_api_response DROP CONSTRAINT IF EXISTS uk1_mock_api_response;
+CREATE INDEX IF NOT EXISTS ix1_mock_api_response ON mock_api_response (path, method);
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlSupportTests {
+
+  private final ApiStubProperties properties = new ApiStubProperties();
+
+  @Test
+  public void testDisabled() {
+    properties.getAdmission().setMaxInFlight(1);
+    AdmissionControlSupport support = new AdmissionControlSupport(properties);
+
+    assertThat(support.admit(new MockHttpServletRequest())).isTrue();
+    assertThat(support.admit(new MockHttpServletRequest())).isTrue();
+    assertThat(support.getInFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMaxInFlight() {
+    properties.getAdmission().setEnabled(true);
+    properties.getAdmission().setMaxInFlight(2);
+    AdmissionControlSupport support = new AdmissionControlSupport(properties);
+    MockHttpServletRequest request1 = new MockHttpServletRequest();
+    MockHttpServletRequest request2 = new MockHttpServletRequest();
+    MockHttpServletRequest request3 = new MockHttpServletRequest();
+
+    assertThat(support.admit(request1)).isTrue();
+    assertThat(support.admit(request2)).isTrue();
+    assertThat(support.admit(request3)).isFalse();
+    assertThat(support.getInFlightCount()).isEqualTo(2);
+    assertThat(support.getShedCount()).isEqualTo(1);
+
+    // The shed request does not hold a slot, and the slot is returned only once per admitted request
+    support.release(request3);
+    assertThat(support.getInFlightCount()).isEqualTo(2);
+    support.release(request1);
+    support.release(request1);
+    assertThat(support.getInFlightCount()).isEqualTo(1);
+    assertThat(support.admit(request3)).isTrue();
+  }
+
+  @Test
+  public void testRejectedStatus() {
+    assertThat(new AdmissionControlSupport(properties).getRejectedStatus()).isEqualTo(503);
+  }
+
+  @Test
+  public void testQueueDelay() throws Exception {
+    properties.getAdmission().setEnabled(true);
+    // The target is loose enough for the task that did not wait on a busy machine
+    properties.getAdmission().setTargetDelayMsec(50);
+    AdmissionControlSupport support = new AdmissionControlSupport(properties);
+    QueueDelayRecordingExecutor executor = QueueDelayRecordingExecutor.create("test");
+    executor.setCorePoolSize(1);
+    executor.setMaximumPoolSize(1);
+    try {
+      // The prestarted core threads exit asynchronously, so wait for the single thread
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (executor.getPoolSize() > 1 && System.nanoTime() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      assertThat(executor.getPoolSize()).isLessThanOrEqualTo(1);
+      // A request that waited in the queue longer than the interval is shed
+      CountDownLatch blocking = new CountDownLatch(1);
+      executor.execute(() -> awaitQuietly(blocking));
+      CompletableFuture<Boolean> delayed = new CompletableFuture<>();
+      executor.execute(() -> delayed.complete(support.admit(new MockHttpServletRequest())));
+      TimeUnit.MILLISECONDS.sleep(300);
+      blocking.countDown();
+      assertThat(delayed.get(5, TimeUnit.SECONDS)).isFalse();
+
+      // A request that did not wait is admitted
+      CompletableFuture<Boolean> immediate = new CompletableFuture<>();
+      executor.execute(() -> immediate.complete(support.admit(new MockHttpServletRequest())));
+      assertThat(immediate.get(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(support.getShedCount()).isEqualTo(1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
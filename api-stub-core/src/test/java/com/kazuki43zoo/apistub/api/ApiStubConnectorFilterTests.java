@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApiStubConnectorFilterTests {
+
+  private final ApiStubProperties properties = new ApiStubProperties();
+  private final ApiStubConnectorFilter filter = new ApiStubConnectorFilter(properties);
+
+  @Test
+  public void testStubRequestOnDedicatedConnector() throws Exception {
+    properties.getServer().setPort(18081);
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request(18081, "/api/test"), new MockHttpServletResponse(), chain);
+
+    assertThat(chain.getRequest()).isNotNull();
+  }
+
+  @Test
+  public void testOtherRequestOnDedicatedConnector() throws Exception {
+    properties.getServer().setPort(18081);
+    MockFilterChain chain = new MockFilterChain();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request(18081, "/manager/apis"), response, chain);
+
+    assertThat(response.getStatus()).isEqualTo(404);
+    assertThat(chain.getRequest()).isNull();
+  }
+
+  @Test
+  public void testRootPathPrefixOnlyIsNotStubRequest() throws Exception {
+    properties.getServer().setPort(18081);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request(18081, "/apis"), response, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(404);
+  }
+
+  @Test
+  public void testOtherRequestOnMainConnector() throws Exception {
+    properties.getServer().setPort(18081);
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request(8080, "/manager/apis"), new MockHttpServletResponse(), chain);
+
+    assertThat(chain.getRequest()).isNotNull();
+  }
+
+  @Test
+  public void testWithoutDedicatedConnector() throws Exception {
+    MockFilterChain chain = new MockFilterChain();
+
+    filter.doFilter(request(8080, "/manager/apis"), new MockHttpServletResponse(), chain);
+
+    assertThat(chain.getRequest()).isNotNull();
+  }
+
+  private MockHttpServletRequest request(int localPort, String servletPath) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", servletPath);
+    request.setServletPath(servletPath);
+    request.setLocalPort(localPort);
+    return request;
+  }
+
+}
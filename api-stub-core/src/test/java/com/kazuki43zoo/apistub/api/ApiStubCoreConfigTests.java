@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.junit.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApiStubCoreConfigTests {
+
+  private final ApiStubCoreConfig config = new ApiStubCoreConfig();
+  private final ApiStubProperties properties = new ApiStubProperties();
+
+  @Test
+  public void testDedicatedConnector() {
+    ApiStubProperties.Server server = properties.getServer();
+    server.setPort(18081);
+    server.setMaxThreads(50);
+    server.setMinSpareThreads(5);
+    server.setAcceptCount(20);
+    server.setMaxConnections(500);
+    server.setMaxKeepAliveRequests(30);
+    server.setKeepAliveTimeoutMsec(3000);
+    TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+
+    config.apiStubConnectorCustomizer(properties, new AdmissionControlSupport(properties)).customize(factory);
+
+    assertThat(factory.getAdditionalTomcatConnectors()).hasSize(1);
+    Connector connector = factory.getAdditionalTomcatConnectors().get(0);
+    assertThat(connector.getPort()).isEqualTo(18081);
+    AbstractHttp11Protocol<?> protocol = (AbstractHttp11Protocol<?>) connector.getProtocolHandler();
+    assertThat(protocol.getMaxThreads()).isEqualTo(50);
+    assertThat(protocol.getMinSpareThreads()).isEqualTo(5);
+    assertThat(protocol.getAcceptCount()).isEqualTo(20);
+    assertThat(protocol.getMaxConnections()).isEqualTo(500);
+    assertThat(protocol.getMaxKeepAliveRequests()).isEqualTo(30);
+    assertThat(protocol.getKeepAliveTimeout()).isEqualTo(3000);
+    // The main connector is kept as is
+    assertThat(factory.getTomcatConnectorCustomizers()).isEmpty();
+    assertThat(config.apiStubConnectorFilterRegistrationBean(properties).isEnabled()).isTrue();
+  }
+
+  @Test
+  public void testWithoutDedicatedConnector() {
+    TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+
+    config.apiStubConnectorCustomizer(properties, new AdmissionControlSupport(properties)).customize(factory);
+
+    assertThat(factory.getAdditionalTomcatConnectors()).isEmpty();
+    // Stub requests are served on the main connector, so the admission control is applied to it
+    assertThat(factory.getTomcatConnectorCustomizers()).hasSize(1);
+    FilterRegistrationBean<ApiStubConnectorFilter> registrationBean = config.apiStubConnectorFilterRegistrationBean(properties);
+    assertThat(registrationBean.isEnabled()).isFalse();
+  }
+
+}
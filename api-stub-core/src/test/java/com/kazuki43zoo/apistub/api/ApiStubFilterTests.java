@@ -0,0 +1,317 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.api.handler.ApiStubRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApiStubFilterTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final ApiStubRequestHandler requestHandler = mock(ApiStubRequestHandler.class);
+  private final ResponseWaitingSupport responseWaitingSupport = new ResponseWaitingSupport();
+  private final ResponseThrottlingSupport responseThrottlingSupport = new ResponseThrottlingSupport();
+  private final RequestLimitSupport requestLimitSupport = mock(RequestLimitSupport.class);
+  private final AdmissionControlSupport admissionControlSupport = mock(AdmissionControlSupport.class);
+  private final RequestExecutionSupport requestExecutionSupport = mock(RequestExecutionSupport.class);
+  private final ApiStubProperties properties = new ApiStubProperties();
+  private final AtomicBoolean bodyClosed = new AtomicBoolean();
+  private ScheduledExecutorService responseTimer;
+  private ApiStubFilter filter;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  @Before
+  public void setup() {
+    responseTimer = Executors.newSingleThreadScheduledExecutor();
+    filter = new ApiStubFilter(requestHandler, responseWaitingSupport, mock(ResponseLatencySupport.class),
+        responseThrottlingSupport, mock(FaultInjectionSupport.class), requestLimitSupport,
+        requestExecutionSupport, admissionControlSupport, properties, responseTimer);
+    when(admissionControlSupport.admit(any())).thenReturn(true);
+    request = new MockHttpServletRequest("GET", "/api/blobs/1");
+    response = new MockHttpServletResponse();
+  }
+
+  @After
+  public void tearDown() {
+    responseTimer.shutdownNow();
+  }
+
+  @Test
+  public void testDelayedBlobResponseIsWrittenAndClosed() throws Exception {
+    byte[] body = new byte[100_000];
+    body[body.length - 1] = 1;
+    setupResponse(body, 50);
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    // The permits are released when the async context is completed after writing
+    verify(requestLimitSupport, timeout(5000)).release(request);
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    assertThat(bodyClosed).isTrue();
+  }
+
+  @Test
+  public void testDelayedResponseReleasesRequestThread() throws Exception {
+    setupResponse("delayed".getBytes(StandardCharsets.US_ASCII), 300);
+    request.setAsyncSupported(true);
+
+    long start = System.nanoTime();
+    filter.doFilter(request, response, new MockFilterChain());
+
+    // The request thread returns without waiting, and the response is written by the timer
+    assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+    assertThat(request.isAsyncStarted()).isTrue();
+    assertThat(response.getContentAsString()).isEmpty();
+    verify(requestLimitSupport, never()).release(request);
+
+    verify(requestLimitSupport, timeout(5000)).release(request);
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(300));
+    assertThat(response.getContentAsString()).isEqualTo("delayed");
+    assertThat(request.isAsyncStarted()).isFalse();
+  }
+
+  @Test
+  public void testDelayedResponseWithoutAsyncSupport() throws Exception {
+    setupResponse("delayed".getBytes(StandardCharsets.US_ASCII), 100);
+
+    long start = System.nanoTime();
+    filter.doFilter(request, response, new MockFilterChain());
+
+    // The request thread waits when the request does not support the async processing
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(response.getContentAsString()).isEqualTo("delayed");
+    verify(requestLimitSupport).release(request);
+  }
+
+  @Test
+  public void testRejectedByAdmissionControl() throws Exception {
+    when(admissionControlSupport.admit(request)).thenReturn(false);
+    when(admissionControlSupport.getRejectedStatus()).thenReturn(503);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(503);
+    verify(requestHandler, never()).handleApiRequest(any(), any(), any());
+    verify(admissionControlSupport, never()).release(request);
+  }
+
+  @Test
+  public void testHandleRequestOnExecutor() throws Exception {
+    List<Runnable> tasks = setupExecutor();
+    setupResponse("executed".getBytes(StandardCharsets.US_ASCII), 0);
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    // The container thread is released before handling
+    assertThat(request.isAsyncStarted()).isTrue();
+    verify(requestHandler, never()).handleApiRequest(any(), any(), any());
+    verify(requestLimitSupport, never()).release(request);
+
+    tasks.forEach(Runnable::run);
+    assertThat(response.getContentAsString()).isEqualTo("executed");
+    assertThat(request.isAsyncStarted()).isFalse();
+    verify(requestLimitSupport).release(request);
+  }
+
+  @Test
+  public void testHandleRequestOnExecutorWithError() throws Exception {
+    List<Runnable> tasks = setupExecutor();
+    when(requestHandler.handleApiRequest(any(), any(), any())).thenThrow(new IllegalStateException("failure"));
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, new MockFilterChain());
+    tasks.forEach(Runnable::run);
+
+    // The error is responded, and the permits are returned on the completion
+    assertThat(response.getStatus()).isEqualTo(500);
+    assertThat(request.isAsyncStarted()).isFalse();
+    verify(requestLimitSupport).release(request);
+  }
+
+  @Test
+  public void testHandleRequestOnContainerThreadWhenExecutorRejects() throws Exception {
+    when(requestExecutionSupport.isEnabled()).thenReturn(true);
+    doThrow(new RejectedExecutionException()).when(requestExecutionSupport).execute(any());
+    setupResponse("rejected".getBytes(StandardCharsets.US_ASCII), 0);
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getContentAsString()).isEqualTo("rejected");
+    assertThat(request.isAsyncStarted()).isFalse();
+    verify(requestLimitSupport, atLeastOnce()).release(request);
+  }
+
+  @Test
+  public void testThrottledBlobResponseIsWrittenAndClosed() throws Exception {
+    byte[] body = new byte[10_000];
+    setupResponse(body, 0);
+    responseThrottlingSupport.storeThrottling(null, 10L, 1024, request);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    assertThat(bodyClosed).isTrue();
+    verify(requestLimitSupport).release(request);
+  }
+
+  @Test
+  public void testBlobIsClosedWhenNonBlockingWritingIsNotStarted() throws Exception {
+    // The mock output stream does not support a write listener
+    setupResponse(new byte[10_000], 50);
+    responseThrottlingSupport.storeThrottling(null, 10L, 1024, request);
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    verify(requestLimitSupport, timeout(5000)).release(request);
+    assertThat(bodyClosed).isTrue();
+  }
+
+  @Test
+  public void testFileResponseSetsContentLengthOfRangeOnce() throws Exception {
+    File file = folder.newFile();
+    Files.write(file.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    when(requestHandler.handleApiRequest(any(), any(), any())).thenReturn(ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(file.length()))
+        .header(HttpHeaders.CONTENT_TYPE, "text/plain")
+        .body(new FileSystemResource(file)));
+    request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+    List<String> addedHeaders = new ArrayList<>();
+
+    filter.doFilter(request, new HttpServletResponseWrapper(response) {
+      @Override
+      public void addHeader(String name, String value) {
+        addedHeaders.add(name);
+        super.addHeader(name, value);
+      }
+    }, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(addedHeaders).doesNotContain(HttpHeaders.CONTENT_LENGTH).contains(HttpHeaders.CONTENT_TYPE);
+    assertThat(response.getHeaders(HttpHeaders.CONTENT_LENGTH)).containsExactly("4");
+    assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+    assertThat(response.getContentAsString()).isEqualTo("2345");
+  }
+
+  @Test
+  public void testRejectDeclaredRequestBodyOverMaxSize() throws Exception {
+    properties.getServer().setMaxRequestBodySize(16);
+    request.setMethod("POST");
+    request.setContent(new byte[17]);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(413);
+    assertThat(response.getHeader(HttpHeaders.CONNECTION)).isEqualTo("close");
+    verify(requestHandler, never()).handleApiRequest(any(), any(), any());
+    verify(requestLimitSupport).release(request);
+  }
+
+  @Test
+  public void testRejectChunkedRequestBodyOverMaxSize() throws Exception {
+    properties.getServer().setMaxRequestBodySize(16);
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/uploads") {
+      @Override
+      public long getContentLengthLong() {
+        return -1;
+      }
+    };
+    request.addHeader(HttpHeaders.TRANSFER_ENCODING, "chunked");
+    request.setContent(new byte[17]);
+
+    filter.doFilter(request, response, new MockFilterChain());
+
+    assertThat(response.getStatus()).isEqualTo(413);
+    verify(requestHandler, never()).handleApiRequest(any(), any(), any());
+  }
+
+  // The tasks are run by the test after the filter returns, like an executor running them on other threads
+  private List<Runnable> setupExecutor() {
+    List<Runnable> tasks = new ArrayList<>();
+    when(requestExecutionSupport.isEnabled()).thenReturn(true);
+    doAnswer(invocation -> tasks.add(invocation.getArgument(0))).when(requestExecutionSupport).execute(any());
+    return tasks;
+  }
+
+  private void setupResponse(byte[] body, long waitingMsec) throws IOException, ServletException {
+    Resource resource = new AbstractResource() {
+      @Override
+      public InputStream getInputStream() {
+        return new ByteArrayInputStream(body) {
+          @Override
+          public void close() {
+            bodyClosed.set(true);
+          }
+        };
+      }
+
+      @Override
+      public String getDescription() {
+        return "blob";
+      }
+    };
+    when(requestHandler.handleApiRequest(any(), any(), any())).thenAnswer(invocation -> {
+      responseWaitingSupport.storeWaitingMsec(waitingMsec, request);
+      return ResponseEntity.ok(resource);
+    });
+  }
+
+}
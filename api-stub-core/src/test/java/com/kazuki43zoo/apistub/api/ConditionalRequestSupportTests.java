@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConditionalRequestSupportTests {
+
+  private static final long LAST_MODIFIED = 1500000000000L;
+
+  private final ConditionalRequestSupport support = new ConditionalRequestSupport();
+
+  @Test
+  public void testGetETag() {
+    ApiResponse apiResponse = apiResponse(LocalDateTime.of(2018, 10, 1, 10, 0));
+
+    String etag = support.getETag(apiResponse);
+
+    assertThat(etag).matches("\"[0-9a-f]{32}\"");
+    assertThat(support.getETag(apiResponse)).isEqualTo(etag);
+    // The entity tag is changed by the new version of the response
+    assertThat(support.getETag(apiResponse(LocalDateTime.of(2018, 10, 1, 10, 1)))).isNotEqualTo(etag);
+  }
+
+  @Test
+  public void testGetETagWithoutVersion() {
+    assertThat(support.getETag(apiResponse(null))).isNull();
+  }
+
+  @Test
+  public void testToEncodedETag() {
+    assertThat(support.toEncodedETag("\"abc\"", "gzip")).isEqualTo("\"abc-gzip\"");
+  }
+
+  @Test
+  public void testIfNoneMatch() {
+    assertThat(support.isNotModified(ifNoneMatch("\"abc\""), "\"abc\"", LAST_MODIFIED)).isTrue();
+    assertThat(support.isNotModified(ifNoneMatch("\"xyz\", W/\"abc\""), "\"abc\"", LAST_MODIFIED)).isTrue();
+    assertThat(support.isNotModified(ifNoneMatch("*"), "\"abc\"", LAST_MODIFIED)).isTrue();
+    assertThat(support.isNotModified(ifNoneMatch("\"xyz\""), "\"abc\"", LAST_MODIFIED)).isFalse();
+    assertThat(support.isNotModified(ifNoneMatch("\"abc\""), "\"abc-gzip\"", LAST_MODIFIED)).isFalse();
+  }
+
+  @Test
+  public void testIfNoneMatchPrecedesIfModifiedSince() {
+    MockHttpServletRequest request = ifNoneMatch("\"xyz\"");
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+
+    assertThat(support.isNotModified(request, "\"abc\"", LAST_MODIFIED)).isFalse();
+  }
+
+  @Test
+  public void testIfModifiedSince() {
+    assertThat(support.isNotModified(ifModifiedSince(LAST_MODIFIED), "\"abc\"", LAST_MODIFIED)).isTrue();
+    // The milliseconds of the last modified are ignored
+    assertThat(support.isNotModified(ifModifiedSince(LAST_MODIFIED), "\"abc\"", LAST_MODIFIED + 999)).isTrue();
+    assertThat(support.isNotModified(ifModifiedSince(LAST_MODIFIED), "\"abc\"", LAST_MODIFIED + 1000)).isFalse();
+    // The last modified is unknown
+    assertThat(support.isNotModified(ifModifiedSince(LAST_MODIFIED), "\"abc\"", -1)).isFalse();
+  }
+
+  @Test
+  public void testInvalidIfModifiedSince() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "invalid");
+
+    assertThat(support.isNotModified(request, "\"abc\"", LAST_MODIFIED)).isFalse();
+  }
+
+  @Test
+  public void testWithoutConditions() {
+    assertThat(support.isNotModified(new MockHttpServletRequest(), "\"abc\"", LAST_MODIFIED)).isFalse();
+  }
+
+  private ApiResponse apiResponse(LocalDateTime updatedAt) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setId(1);
+    apiResponse.setStatusCode(200);
+    apiResponse.setBodyDigest("digest");
+    apiResponse.setUpdatedAt(updatedAt);
+    return apiResponse;
+  }
+
+  private MockHttpServletRequest ifNoneMatch(String value) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, value);
+    return request;
+  }
+
+  private MockHttpServletRequest ifModifiedSince(long value) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, value);
+    return request;
+  }
+
+}
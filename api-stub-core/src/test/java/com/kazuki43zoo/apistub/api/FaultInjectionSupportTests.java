@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.FaultType;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.DelegatingServletOutputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FaultInjectionSupportTests {
+
+  private final FaultInjectionSupport support = new FaultInjectionSupport();
+
+  @Test
+  public void testDecideFault() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    assertThat(support.decideFault(null, response("EMPTY_REPLY=1"), request)).isEqualTo(FaultType.EMPTY_REPLY);
+    assertThat(support.getFault(request)).isEqualTo(FaultType.EMPTY_REPLY);
+    assertThat(support.getInjectedCounts()).containsEntry("EMPTY_REPLY", 1L);
+
+    // An invalid profile injects no fault
+    assertThat(support.decideFault(null, response("UNKNOWN=1"), new MockHttpServletRequest())).isNull();
+    assertThat(support.decideFault(null, response(null), new MockHttpServletRequest())).isNull();
+  }
+
+  @Test
+  public void testDecideFaultWithManyProfiles() {
+    // The profiles over the cache size are evicted one by one, and the decisions are not affected
+    for (int i = 0; i < 2000; i++) {
+      String profile = "EMPTY_REPLY=1" + String.join("", Collections.nCopies(i, " "));
+      assertThat(support.decideFault(null, response(profile), new MockHttpServletRequest()))
+          .isEqualTo(FaultType.EMPTY_REPLY);
+    }
+  }
+
+  @Test
+  public void testCloseConnectionOfNonTomcatResponse() throws IOException {
+    // The connection is closed after the response via the servlet api
+    AtomicBoolean closed = new AtomicBoolean();
+    MockHttpServletResponse response = new MockHttpServletResponse() {
+      @Override
+      public ServletOutputStream getOutputStream() {
+        return new DelegatingServletOutputStream(new ByteArrayOutputStream()) {
+          @Override
+          public void close() throws IOException {
+            closed.set(true);
+            super.close();
+          }
+        };
+      }
+    };
+    support.closeConnection(response);
+    assertThat(response.getHeader(HttpHeaders.CONNECTION)).isEqualTo("close");
+    assertThat(closed).isTrue();
+  }
+
+  private static ApiResponse response(String faultProfile) {
+    ApiResponse response = new ApiResponse();
+    response.setFaultProfile(faultProfile);
+    return response;
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestBodyReaderTests {
+
+  private final SlowServletInputStream in = new SlowServletInputStream();
+  private final AtomicReference<byte[]> body = new AtomicReference<>();
+  private final AtomicBoolean overflowed = new AtomicBoolean();
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+  @Test
+  public void testReadSlowChunkedUpload() throws IOException {
+    new RequestBodyReader(in, -1, 16, body::set, () -> overflowed.set(true), error::set).start();
+
+    // The chunks arrive one by one, and the reader returns when no more data is ready
+    in.arrive("0123");
+    assertThat(in.readCount).isEqualTo(1);
+    in.arrive("4567");
+    in.arrive("89abcdef");
+    assertThat(body.get()).isNull();
+    in.finish();
+
+    assertThat(new String(body.get(), StandardCharsets.US_ASCII)).isEqualTo("0123456789abcdef");
+    assertThat(overflowed).isFalse();
+    assertThat(error.get()).isNull();
+  }
+
+  @Test
+  public void testRejectChunkedUploadOverMaxSize() throws IOException {
+    new RequestBodyReader(in, -1, 16, body::set, () -> overflowed.set(true), error::set).start();
+
+    in.arrive("0123456789");
+    assertThat(overflowed).isFalse();
+    in.arrive("abcdefg");
+    assertThat(overflowed).isTrue();
+
+    // The rest of the body is neither read nor passed to the handling
+    in.arrive("hijk");
+    in.finish();
+    in.listener.onError(new IOException("connection reset"));
+    assertThat(body.get()).isNull();
+    assertThat(error.get()).isNull();
+  }
+
+  @Test
+  public void testReadWithUnlimitedMaxSize() throws IOException {
+    new RequestBodyReader(in, 10, -1, body::set, () -> overflowed.set(true), error::set).start();
+
+    in.arrive("0123456789");
+    in.finish();
+
+    assertThat(body.get()).hasSize(10);
+  }
+
+  @Test
+  public void testPassError() throws IOException {
+    new RequestBodyReader(in, 10, 16, body::set, () -> overflowed.set(true), error::set).start();
+
+    in.arrive("01234");
+    IOException e = new IOException("connection reset");
+    in.listener.onError(e);
+
+    assertThat(error.get()).isSameAs(e);
+    assertThat(body.get()).isNull();
+  }
+
+  @Test
+  public void testReadBlocking() throws IOException {
+    byte[] data = new byte[20000];
+    assertThat(RequestBodyReader.readBlocking(new ByteArrayInputStream(data), 20000)).isEqualTo(data);
+    assertThat(RequestBodyReader.readBlocking(new ByteArrayInputStream(data), 19999)).isNull();
+    assertThat(RequestBodyReader.readBlocking(new ByteArrayInputStream(data), -1)).isEqualTo(data);
+  }
+
+  // The input stream that makes only the arrived data ready, like a non-blocking input of the container
+  private static class SlowServletInputStream extends ServletInputStream {
+
+    private ReadListener listener;
+    private ByteArrayInputStream arrived = new ByteArrayInputStream(new byte[0]);
+    private boolean finished;
+    private int readCount;
+
+    void arrive(String data) throws IOException {
+      arrived = new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII));
+      listener.onDataAvailable();
+    }
+
+    void finish() throws IOException {
+      finished = true;
+      listener.onAllDataRead();
+    }
+
+    @Override
+    public boolean isFinished() {
+      return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+      return arrived.available() > 0;
+    }
+
+    @Override
+    public void setReadListener(ReadListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public int read() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (arrived.available() == 0) {
+        throw new IllegalStateException("The data is not ready");
+      }
+      readCount++;
+      return arrived.read(b, off, len);
+    }
+
+  }
+
+}
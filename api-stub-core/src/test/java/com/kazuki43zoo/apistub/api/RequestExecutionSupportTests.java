@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestExecutionSupportTests {
+
+  @Test
+  public void testDisabledByDefault() {
+    RequestExecutionSupport support = new RequestExecutionSupport(new ApiStubProperties());
+    assertThat(support.isEnabled()).isFalse();
+    support.shutdown();
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    ApiStubProperties properties = new ApiStubProperties();
+    properties.getExecution().setVirtualThreads(true);
+    RequestExecutionSupport support = new RequestExecutionSupport(properties);
+    try {
+      // Falls back to the container threads on the runtime without virtual threads
+      boolean available = ReflectionUtils.findMethod(Executors.class, "newVirtualThreadPerTaskExecutor") != null;
+      assertThat(support.isEnabled()).isEqualTo(available);
+      if (!available) {
+        return;
+      }
+      CompletableFuture<Thread> thread = new CompletableFuture<>();
+      support.execute(() -> thread.complete(Thread.currentThread()));
+      Method isVirtual = ReflectionUtils.findMethod(Thread.class, "isVirtual");
+      assertThat(ReflectionUtils.invokeMethod(isVirtual, thread.get(5, TimeUnit.SECONDS))).isEqualTo(true);
+    } finally {
+      support.shutdown();
+    }
+  }
+
+}
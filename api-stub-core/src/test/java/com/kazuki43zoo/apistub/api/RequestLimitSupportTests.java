@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.Api;
+import org.junit.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestLimitSupportTests {
+
+  private final RequestLimitSupport support = new RequestLimitSupport();
+
+  @Test
+  public void testNoLimit() {
+    Api api = api(1, null, null, null);
+    for (int i = 0; i < 100; i++) {
+      assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    }
+    assertThat(support.acquire(null, new MockHttpServletRequest())).isNull();
+  }
+
+  @Test
+  public void testBurst() {
+    Api api = api(1, 1.0, 5, null);
+    for (int i = 0; i < 5; i++) {
+      assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    }
+    ResponseEntity<Resource> rejected = support.acquire(api, new MockHttpServletRequest());
+    assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+  }
+
+  @Test
+  public void testBurstIsOneWhenNotSpecified() {
+    Api api = api(1, 1.0, null, null);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNotNull();
+  }
+
+  @Test
+  public void testRefill() throws InterruptedException {
+    Api api = api(1, 5.0, 2, null);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNotNull();
+
+    // A permit is refilled every 200 msec, and the bucket holds the burst at most
+    TimeUnit.MILLISECONDS.sleep(250);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNotNull();
+
+    TimeUnit.MILLISECONDS.sleep(1000);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNotNull();
+  }
+
+  @Test
+  public void testLimitsAreResetOnDefinitionChange() {
+    assertThat(support.acquire(api(1, 1.0, 1, null), new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api(1, 1.0, 1, null), new MockHttpServletRequest())).isNotNull();
+
+    assertThat(support.acquire(api(1, 2.0, 1, null), new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api(2, 1.0, 1, null), new MockHttpServletRequest())).isNull();
+  }
+
+  @Test
+  public void testMaxConcurrency() {
+    Api api = api(1, null, null, 2);
+    MockHttpServletRequest first = new MockHttpServletRequest();
+    MockHttpServletRequest second = new MockHttpServletRequest();
+    assertThat(support.acquire(api, first)).isNull();
+    assertThat(support.acquire(api, second)).isNull();
+
+    ResponseEntity<Resource> rejected = support.acquire(api, new MockHttpServletRequest());
+    assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+
+    support.release(first);
+    support.release(first);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNotNull();
+  }
+
+  @Test
+  public void testLimitStatusCode() {
+    Api api = api(1, 1.0, 1, null);
+    api.setLimitStatusCode(503);
+    assertThat(support.acquire(api, new MockHttpServletRequest())).isNull();
+    assertThat(support.acquire(api, new MockHttpServletRequest()).getStatusCodeValue()).isEqualTo(503);
+  }
+
+  private static Api api(int id, Double rateLimit, Integer rateLimitBurst, Integer maxConcurrency) {
+    Api api = new Api();
+    api.setId(id);
+    api.setRateLimit(rateLimit);
+    api.setRateLimitBurst(rateLimitBurst);
+    api.setMaxConcurrency(maxConcurrency);
+    return api;
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCompressionSupportTests {
+
+  private final ApiStubProperties properties = new ApiStubProperties();
+  private final AtomicInteger readCount = new AtomicInteger();
+  private ResponseCompressionSupport support;
+
+  @Before
+  public void setup() {
+    properties.getResponse().getCompression().setEnabled(true);
+    properties.getResponse().getCompression().setMinSize(16);
+    support = new ResponseCompressionSupport(properties, new TemplateDetectionSupport(properties));
+  }
+
+  @Test
+  public void testIsCompressible() {
+    ApiResponse apiResponse = apiResponse("digest", 16);
+    HttpHeaders headers = new HttpHeaders();
+    assertThat(support.isCompressible(apiResponse, headers)).isTrue();
+
+    assertThat(support.isCompressible(apiResponse("digest", 15), headers)).isFalse();
+    assertThat(support.isCompressible(apiResponse(null, 16), headers)).isFalse();
+    headers.set(HttpHeaders.CONTENT_ENCODING, "br");
+    assertThat(support.isCompressible(apiResponse, headers)).isFalse();
+
+    properties.getResponse().getCompression().setEnabled(false);
+    assertThat(support.isCompressible(apiResponse, new HttpHeaders())).isFalse();
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assertThat(support.acceptsGzip(request("gzip"))).isTrue();
+    assertThat(support.acceptsGzip(request("deflate, GZIP;q=0.5"))).isTrue();
+    assertThat(support.acceptsGzip(request("*"))).isTrue();
+    assertThat(support.acceptsGzip(request("gzip;q=0.001"))).isTrue();
+
+    assertThat(support.acceptsGzip(request(null))).isFalse();
+    assertThat(support.acceptsGzip(request("deflate, br"))).isFalse();
+    assertThat(support.acceptsGzip(request("gzip;q=0"))).isFalse();
+    assertThat(support.acceptsGzip(request("gzip; Q=0.00"))).isFalse();
+    assertThat(support.acceptsGzip(request("x-gzip"))).isFalse();
+  }
+
+  @Test
+  public void testGetCompressedBody() throws IOException {
+    String body = repeat("{\"name\":\"test\"}", 100);
+
+    byte[] compressedBody = support.getCompressedBody(apiResponse("digest", body.length()), bodySupplier(body));
+
+    assertThat(compressedBody.length).isLessThan(body.length());
+    assertThat(decompress(compressedBody)).isEqualTo(body);
+    // The compressed body is reused per body digest
+    assertThat(support.getCompressedBody(apiResponse("digest", body.length()), bodySupplier(body))).isSameAs(compressedBody);
+    assertThat(readCount.get()).isEqualTo(1);
+    support.getCompressedBody(apiResponse("other", body.length()), bodySupplier(body));
+    assertThat(readCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGetCompressedBodyOfTemplate() {
+    String body = repeat("{\"name\":\"[[${name}]]\"}", 100);
+
+    assertThat(support.getCompressedBody(apiResponse("digest", body.length()), bodySupplier(body))).isNull();
+    // The result is cached as well
+    assertThat(support.getCompressedBody(apiResponse("digest", body.length()), bodySupplier(body))).isNull();
+    assertThat(readCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetCompressedBodyNotReduced() {
+    String body = "abcdefghijklmnopqrstuvwxyz";
+
+    assertThat(support.getCompressedBody(apiResponse("digest", body.length()), bodySupplier(body))).isNull();
+  }
+
+  @Test
+  public void testCacheSize() {
+    String body = repeat("{\"name\":\"test\"}", 100);
+    byte[] compressedBody = support.getCompressedBody(apiResponse("digest1", body.length()), bodySupplier(body));
+    properties.getResponse().getCompression().setCacheSize(compressedBody.length * 2L);
+
+    support.getCompressedBody(apiResponse("digest2", body.length()), bodySupplier(body));
+    support.getCompressedBody(apiResponse("digest3", body.length()), bodySupplier(body));
+    assertThat(readCount.get()).isEqualTo(3);
+
+    // The least recently used body is evicted when the cache exceeds the size
+    support.getCompressedBody(apiResponse("digest3", body.length()), bodySupplier(body));
+    assertThat(readCount.get()).isEqualTo(3);
+    support.getCompressedBody(apiResponse("digest1", body.length()), bodySupplier(body));
+    assertThat(readCount.get()).isEqualTo(4);
+  }
+
+  private ApiResponse apiResponse(String digest, long bodyLength) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setBodyDigest(digest);
+    apiResponse.setBodyLength(bodyLength);
+    return apiResponse;
+  }
+
+  private MockHttpServletRequest request(String acceptEncoding) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (acceptEncoding != null) {
+      request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+    return request;
+  }
+
+  private Supplier<InputStream> bodySupplier(String body) {
+    return () -> {
+      readCount.incrementAndGet();
+      return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    };
+  }
+
+  private String repeat(String value, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+  private String decompress(byte[] compressedBody) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedBody))) {
+      return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.LatencyDistribution;
+import com.kazuki43zoo.apistub.domain.model.LatencyProfile;
+import com.kazuki43zoo.apistub.domain.service.LatencyStatisticsService;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class ResponseLatencySupportTests {
+
+  private final ResponseLatencySupport support = new ResponseLatencySupport(mock(LatencyStatisticsService.class));
+
+  @Test
+  public void testProfileIsCachedUntilDefinitionIsChanged() {
+    ApiResponse apiResponse = response(1, LatencyDistribution.FIXED, "value=200");
+    LatencyProfile profile = support.getLatencyProfile(apiResponse);
+    assertThat(support.getLatencyProfile(response(1, LatencyDistribution.FIXED, "value=200"))).isSameAs(profile);
+
+    LatencyProfile changed = support.getLatencyProfile(response(1, LatencyDistribution.FIXED, "value=300"));
+    assertThat(changed).isNotSameAs(profile);
+    assertThat(changed.sample(new Random())).isEqualTo(300);
+  }
+
+  @Test
+  public void testInvalidProfile() {
+    ApiResponse apiResponse = response(1, LatencyDistribution.UNIFORM, "min=100");
+    assertThatThrownBy(() -> support.getLatencyProfile(apiResponse)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> support.getLatencyProfile(apiResponse)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedProfileIsEvicted() {
+    LatencyProfile hot = support.getLatencyProfile(response(0, LatencyDistribution.FIXED, "value=100"));
+    for (int id = 1; id <= 2000; id++) {
+      support.getLatencyProfile(response(id, LatencyDistribution.FIXED, "value=" + id));
+      // The profile used on every request is kept beyond the cache size
+      assertThat(support.getLatencyProfile(response(0, LatencyDistribution.FIXED, "value=100"))).isSameAs(hot);
+    }
+  }
+
+  private static ApiResponse response(int id, LatencyDistribution distribution, String parameters) {
+    ApiResponse apiResponse = new ApiResponse();
+    apiResponse.setId(id);
+    apiResponse.setLatencyDistribution(distribution);
+    apiResponse.setLatencyParameters(parameters);
+    return apiResponse;
+  }
+
+}
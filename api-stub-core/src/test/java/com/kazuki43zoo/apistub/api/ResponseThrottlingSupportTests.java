@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseThrottlingSupportTests {
+
+  private final ResponseThrottlingSupport support = new ResponseThrottlingSupport();
+  private final MockHttpServletRequest request = new MockHttpServletRequest();
+
+  @Test
+  public void testNoThrottling() {
+    support.storeThrottling(null, null, null, request);
+    assertThat(support.getThrottling(request)).isNull();
+    support.storeThrottling(0L, -1L, 0, request);
+    assertThat(support.getThrottling(request)).isNull();
+  }
+
+  @Test
+  public void testChunkSizeByBandwidth() {
+    // Split into ten chunks per second, up to the default chunk size
+    support.storeThrottling(1000L, null, null, request);
+    assertThat(support.getThrottling(request).getChunkSize()).isEqualTo(100);
+    support.storeThrottling(1_000_000L, null, null, request);
+    assertThat(support.getThrottling(request).getChunkSize()).isEqualTo(8192);
+    support.storeThrottling(5L, null, null, request);
+    assertThat(support.getThrottling(request).getChunkSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSpecifiedChunkSizeAndFirstByteDelay() {
+    support.storeThrottling(null, 200L, 512, request);
+    ResponseThrottlingSupport.Throttling throttling = support.getThrottling(request);
+    assertThat(throttling.getBytesPerSec()).isZero();
+    assertThat(throttling.getFirstByteMsec()).isEqualTo(200);
+    assertThat(throttling.getChunkSize()).isEqualTo(512);
+    assertThat(throttling.nanosToWrite(512)).isZero();
+  }
+
+  @Test
+  public void testNanosToWrite() {
+    support.storeThrottling(1000L, null, null, request);
+    assertThat(support.getThrottling(request).nanosToWrite(100)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+}
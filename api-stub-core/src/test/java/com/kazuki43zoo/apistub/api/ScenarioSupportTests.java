@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ScenarioState;
+import com.kazuki43zoo.apistub.domain.service.ApiChangedEvent;
+import com.kazuki43zoo.apistub.domain.service.ScenarioStateService;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScenarioSupportTests {
+
+  private static final String LOGIN_SCENARIO = "{\"name\":\"login\",\"initialState\":\"logged-out\",\"states\":{"
+      + "\"logged-out\":{\"response\":\"unauthorized\",\"next\":\"logged-in\"},"
+      + "\"logged-in\":{\"response\":\"ok\",\"next\":\"expired\"},"
+      + "\"expired\":{\"response\":\"expired\"}}}";
+
+  private final ScenarioStateService scenarioStateService = mock(ScenarioStateService.class);
+  private final ScenarioSupport support = new ScenarioSupport(new ObjectMapper(), scenarioStateService,
+      new ApiStubProperties());
+
+  @Test
+  public void testAdvance() {
+    Api api = api(LOGIN_SCENARIO);
+
+    assertTransition(support.advance(api, "user1"), "logged-out", "logged-in", "unauthorized");
+    assertThat(support.advance(api, "user1").getScenarioName()).isEqualTo("login");
+    // The final state is kept
+    assertTransition(support.advance(api, "user1"), "expired", "expired", "expired");
+    assertTransition(support.advance(api, "user1"), "expired", "expired", "expired");
+    // The states are kept per data key
+    assertTransition(support.advance(api, "user2"), "logged-out", "logged-in", "unauthorized");
+    assertTransition(support.advance(api, null), "logged-out", "logged-in", "unauthorized");
+  }
+
+  @Test
+  public void testAdvanceWithoutScenario() {
+    assertThat(support.advance(null, "user1")).isNull();
+    assertThat(support.advance(api(null), "user1")).isNull();
+    assertThat(support.advance(api(" "), "user1")).isNull();
+  }
+
+  @Test
+  public void testAdvanceInvalidScenario() {
+    assertThatThrownBy(() -> support.advance(api("{\"name\":"), "user1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("The scenario is not valid json.");
+    assertThatThrownBy(() -> support.advance(api("{\"name\":\"login\"}"), "user1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The 'initialState' is required.");
+  }
+
+  @Test
+  public void testResetOnApiChanged() {
+    Api api = api(LOGIN_SCENARIO);
+    support.advance(api, "user1");
+
+    // The states are kept while the definition is not changed
+    support.onApiChanged(event(api, api(LOGIN_SCENARIO)));
+    assertTransition(support.advance(api, "user1"), "logged-in", "expired", "ok");
+
+    Api changedApi = api(LOGIN_SCENARIO.replace("\"response\":\"ok\"", "\"response\":\"welcome\""));
+    support.onApiChanged(event(api, changedApi));
+    assertTransition(support.advance(changedApi, "user1"), "logged-out", "logged-in", "unauthorized");
+
+    // The states of the old definition are reset even if the new definition is invalid, and on a deletion
+    support.onApiChanged(event(changedApi, api("{\"name\":")));
+    assertTransition(support.advance(changedApi, "user1"), "logged-out", "logged-in", "unauthorized");
+    support.onApiChanged(event(changedApi, null));
+    assertTransition(support.advance(changedApi, "user1"), "logged-out", "logged-in", "unauthorized");
+  }
+
+  @Test
+  public void testReset() {
+    Api api = api(LOGIN_SCENARIO);
+    Api otherApi = api(LOGIN_SCENARIO.replace("\"login\"", "\"other\""));
+    support.advance(api, "user1");
+    support.advance(otherApi, "user1");
+
+    support.reset("login");
+    assertTransition(support.advance(api, "user1"), "logged-out", "logged-in", "unauthorized");
+    assertTransition(support.advance(otherApi, "user1"), "logged-in", "expired", "ok");
+
+    support.resetAll();
+    assertTransition(support.advance(otherApi, "user1"), "logged-out", "logged-in", "unauthorized");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSaveSnapshotOnlyWhenChanged() {
+    Api api = api(LOGIN_SCENARIO);
+    support.saveSnapshot();
+    verify(scenarioStateService, never()).replaceAll(any());
+
+    support.advance(api, "user1");
+    support.saveSnapshot();
+    support.saveSnapshot();
+
+    ArgumentCaptor<List<ScenarioState>> captor = ArgumentCaptor.forClass(List.class);
+    verify(scenarioStateService, times(1)).replaceAll(captor.capture());
+    assertThat(captor.getValue()).extracting("scenarioName", "dataKey", "state")
+        .containsExactly(tuple("login", "user1", "logged-in"));
+  }
+
+  private static void assertTransition(ScenarioSupport.Transition transition, String from, String to, String response) {
+    assertThat(transition.getFromState()).isEqualTo(from);
+    assertThat(transition.getToState()).isEqualTo(to);
+    assertThat(transition.getResponse()).isEqualTo(response);
+  }
+
+  private static Api api(String scenario) {
+    Api api = new Api();
+    api.setPath("/login");
+    api.setMethod("POST");
+    api.setScenario(scenario);
+    return api;
+  }
+
+  private static ApiChangedEvent event(Api oldApi, Api newApi) {
+    ApiChangedEvent event = mock(ApiChangedEvent.class);
+    when(event.getOldApi()).thenReturn(oldApi);
+    when(event.getNewApi()).thenReturn(newApi);
+    return event;
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ThrottledResponseWriterTests {
+
+  private final ResponseThrottlingSupport throttlingSupport = new ResponseThrottlingSupport();
+  private final AsyncContext asyncContext = mock(AsyncContext.class);
+  private final RecordingOutputStream out = new RecordingOutputStream();
+  private final AtomicBoolean bodyClosed = new AtomicBoolean();
+  private final AtomicBoolean completed = new AtomicBoolean();
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private ScheduledExecutorService timer;
+
+  @Before
+  public void setup() {
+    timer = Executors.newSingleThreadScheduledExecutor();
+    doAnswer(invocation -> {
+      ((Runnable) invocation.getArgument(0)).run();
+      return null;
+    }).when(asyncContext).start(any());
+    doAnswer(invocation -> {
+      finished.countDown();
+      return null;
+    }).when(asyncContext).complete();
+  }
+
+  @After
+  public void tearDown() {
+    timer.shutdownNow();
+  }
+
+  @Test
+  public void testWriteChunksWithBandwidth() throws Exception {
+    byte[] body = new byte[400];
+    body[399] = 1;
+    // 100 bytes per chunk, 1000 bytes per second and 200 msec before the first byte
+    ResponseThrottlingSupport.Throttling throttling = throttling(1000L, 200L, 100);
+
+    long start = System.nanoTime();
+    new ThrottledResponseWriter(asyncContext, out, body(body), throttling, timer, () -> completed.set(true)).start();
+
+    assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+    long elapsedMsec = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    // The first byte delay and three intervals between the four chunks
+    assertThat(elapsedMsec).isGreaterThanOrEqualTo(200 + 300 - 20);
+    assertThat(out.written.toByteArray()).isEqualTo(body);
+    assertThat(out.chunkSizes).containsExactly(100, 100, 100, 100);
+    // The headers are flushed after the first byte delay, before the first chunk
+    assertThat(out.firstFlushNanoTime - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200 - 20));
+    assertThat(completed).isTrue();
+    assertThat(bodyClosed).isTrue();
+  }
+
+  @Test
+  public void testWriteWithoutBody() throws Exception {
+    new ThrottledResponseWriter(asyncContext, out, null, throttling(null, 10L, null), timer,
+        () -> completed.set(true)).start();
+
+    assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(out.written.size()).isZero();
+    assertThat(completed).isTrue();
+  }
+
+  @Test
+  public void testError() throws Exception {
+    ThrottledResponseWriter writer = new ThrottledResponseWriter(asyncContext, out, body(new byte[400]),
+        throttling(1000L, 1000L, 100), timer, () -> completed.set(true));
+    writer.start();
+
+    writer.onError(new IOException("connection reset"));
+
+    assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(completed).isFalse();
+    assertThat(bodyClosed).isTrue();
+    // The scheduled writing does nothing after the error
+    Thread.sleep(1200);
+    assertThat(out.written.size()).isZero();
+    verify(asyncContext, times(1)).complete();
+  }
+
+  @Test
+  public void testWriteBlocking() throws IOException {
+    byte[] body = new byte[300];
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    long start = System.nanoTime();
+    ThrottledResponseWriter.writeBlocking(written, body(body), throttling(1000L, 100L, 100));
+
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100 + 200 - 20);
+    assertThat(written.toByteArray()).isEqualTo(body);
+  }
+
+  private ResponseThrottlingSupport.Throttling throttling(Long bytesPerSec, Long firstByteMsec, Integer chunkSize) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    throttlingSupport.storeThrottling(bytesPerSec, firstByteMsec, chunkSize, request);
+    return throttlingSupport.getThrottling(request);
+  }
+
+  private InputStream body(byte[] body) {
+    return new ByteArrayInputStream(body) {
+      @Override
+      public void close() {
+        bodyClosed.set(true);
+      }
+    };
+  }
+
+  // The output stream that is always ready, and records the chunks written
+  private static class RecordingOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private final List<Integer> chunkSizes = new ArrayList<>();
+    private volatile long firstFlushNanoTime;
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      try {
+        listener.onWritePossible();
+      } catch (IOException e) {
+        listener.onError(e);
+      }
+    }
+
+    @Override
+    public void write(int b) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      written.write(b, off, len);
+      chunkSizes.add(len);
+    }
+
+    @Override
+    public void flush() {
+      if (firstFlushNanoTime == 0) {
+        firstFlushNanoTime = System.nanoTime();
+      }
+    }
+
+  }
+
+}
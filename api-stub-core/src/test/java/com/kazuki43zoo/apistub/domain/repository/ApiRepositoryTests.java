@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.repository;
+
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.DATASOURCE_URL;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.MAP_UNDERSCORE_TO_CAMEL_CASE;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.USE_GENERATED_KEYS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = RepositoryTestConfiguration.class,
+    properties = {DATASOURCE_URL, MAP_UNDERSCORE_TO_CAMEL_CASE, USE_GENERATED_KEYS})
+@Transactional
+public class ApiRepositoryTests {
+
+  private static final String PATH = "^/paging/";
+  private static final int PAGE_SIZE = 3;
+
+  @Autowired
+  private ApiRepository repository;
+
+  @Autowired
+  private ApiResponseRepository responseRepository;
+
+  @Before
+  public void setup() {
+    for (String path : new String[]{"/paging/b", "/paging/a", "/paging/c/1", "/paging/c", "/paging/d"}) {
+      for (String method : new String[]{"POST", "GET"}) {
+        Api api = new Api();
+        api.setPath(path);
+        api.setMethod(method);
+        repository.create(api);
+      }
+    }
+  }
+
+  @Test
+  public void testFindPageAroundAnchor() {
+    List<Integer> expected = new ArrayList<>();
+    List<Api> page;
+    for (int offset = 0; !(page = repository.findPage(PATH, null, null, null, null, null, offset, PAGE_SIZE)).isEmpty();
+         offset += PAGE_SIZE) {
+      page.forEach(e -> expected.add(e.getId()));
+    }
+    assertThat(expected).hasSize(10);
+
+    List<Integer> forward = new ArrayList<>();
+    page = repository.findPage(PATH, null, null, null, null, null, 0, PAGE_SIZE);
+    while (!page.isEmpty()) {
+      page.forEach(e -> forward.add(e.getId()));
+      page = repository.findPage(PATH, null, null, null,
+          repository.findKeyById(page.get(page.size() - 1).getId()), null, 0, PAGE_SIZE);
+    }
+    assertThat(forward).isEqualTo(expected);
+
+    List<Integer> backward = new ArrayList<>();
+    Api anchor = repository.findKeyById(expected.get(expected.size() - 1));
+    backward.add(anchor.getId());
+    while (!(page = repository.findPage(PATH, null, null, null, null, anchor, 0, PAGE_SIZE)).isEmpty()) {
+      page.forEach(e -> backward.add(e.getId()));
+      anchor = repository.findKeyById(page.get(page.size() - 1).getId());
+    }
+    Collections.reverse(backward);
+    assertThat(backward).isEqualTo(expected);
+  }
+
+  @Test
+  public void testFindOneReturnsKeyedResponseNumber() {
+    for (String dataKey : new String[]{"", "default", "1", "2"}) {
+      ApiResponse response = new ApiResponse();
+      response.setPath("/paging/a");
+      response.setMethod("GET");
+      response.setDataKey(dataKey);
+      responseRepository.create(response);
+    }
+    responseRepository.refreshKeyedResponseNumber("/paging/a", "GET");
+
+    // The responses of the default data keys are not counted
+    assertThat(repository.findOne(repository.findIdByUk("/paging/a", "GET")).getKeyedResponseNumber()).isEqualTo(2);
+    assertThat(repository.findOne(repository.findIdByUk("/paging/a", "POST")).getKeyedResponseNumber()).isEqualTo(0);
+  }
+
+}
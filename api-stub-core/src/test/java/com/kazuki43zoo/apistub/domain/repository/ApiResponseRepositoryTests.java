@@ -0,0 +1,256 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.repository;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.DATASOURCE_URL;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.MAP_UNDERSCORE_TO_CAMEL_CASE;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.USE_GENERATED_KEYS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = RepositoryTestConfiguration.class,
+    properties = {DATASOURCE_URL, MAP_UNDERSCORE_TO_CAMEL_CASE, USE_GENERATED_KEYS})
+@Transactional
+public class ApiResponseRepositoryTests {
+
+  private static final String PATH = "^/paging/";
+  private static final int PAGE_SIZE = 4;
+
+  @Autowired
+  private ApiResponseRepository repository;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Before
+  public void setup() {
+    // The same paths and methods are shared by some responses, to page on every column of the unique key
+    for (String path : new String[]{"/paging/b", "/paging/a", "/paging/c/1", "/paging/c", "/paging/d"}) {
+      for (String method : new String[]{"POST", "GET"}) {
+        for (String dataKey : new String[]{"", "2", "10"}) {
+          create(path, method, dataKey);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFindPageAfterAnchor() {
+    List<Integer> expected = offsetPages();
+    List<Integer> actual = new ArrayList<>();
+    List<ApiResponse> page = repository.findPage(PATH, null, null, null, null, null, null, 0, PAGE_SIZE);
+    while (!page.isEmpty()) {
+      assertThat(page.size()).isLessThanOrEqualTo(PAGE_SIZE);
+      page.forEach(e -> actual.add(e.getId()));
+      ApiResponse anchor = repository.findKeyById(page.get(page.size() - 1).getId());
+      page = repository.findPage(PATH, null, null, null, null, anchor, null, 0, PAGE_SIZE);
+    }
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  @Test
+  public void testFindPageBeforeAnchor() {
+    List<Integer> expected = offsetPages();
+    Collections.reverse(expected);
+    List<Integer> actual = new ArrayList<>();
+    ApiResponse anchor = repository.findKeyById(expected.get(0));
+    actual.add(anchor.getId());
+    List<ApiResponse> page;
+    while (!(page = repository.findPage(PATH, null, null, null, null, null, anchor, 0, PAGE_SIZE)).isEmpty()) {
+      // The rows before the anchor are returned from the nearest one
+      assertThat(page.size()).isLessThanOrEqualTo(PAGE_SIZE);
+      page.forEach(e -> actual.add(e.getId()));
+      anchor = repository.findKeyById(page.get(page.size() - 1).getId());
+    }
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  @Test
+  public void testFindPageAroundAnchorWithConditions() {
+    List<Integer> all = repository.findPage(PATH, "get", null, null, null, null, null, 0, 100).stream()
+        .map(ApiResponse::getId).collect(Collectors.toList());
+    assertThat(all).hasSize(15);
+    ApiResponse anchor = repository.findKeyById(all.get(7));
+    assertThat(repository.findPage(PATH, "get", null, null, null, anchor, null, 0, PAGE_SIZE))
+        .extracting(ApiResponse::getId).isEqualTo(all.subList(8, 12));
+    assertThat(repository.findPage(PATH, "get", null, null, null, null, anchor, 0, PAGE_SIZE))
+        .extracting(ApiResponse::getId).containsExactly(all.get(6), all.get(5), all.get(4), all.get(3));
+  }
+
+  @Test
+  public void testFindKeyById() {
+    int id = repository.findPage(PATH, null, null, null, null, null, null, 0, 1).get(0).getId();
+    ApiResponse key = repository.findKeyById(id);
+    assertThat(key.getId()).isEqualTo(id);
+    assertThat(key.getPath()).isEqualTo("/paging/a");
+    assertThat(key.getMethod()).isEqualTo("GET");
+    assertThat(key.getDataKey()).isEqualTo("");
+    assertThat(repository.findKeyById(-1)).isNull();
+  }
+
+  @Test
+  public void testFindByUkWithLongDataKey() {
+    String dataKey = String.join("", Collections.nCopies(2047, "k"));
+    int id = create("/hash", "GET", dataKey + "1");
+    int otherId = create("/hash", "GET", dataKey + "2");
+
+    assertThat(repository.findIdByUk("/hash", "get", dataKey + "1")).isEqualTo(id);
+    assertThat(repository.findIdByUk("/hash", "get", dataKey + "2")).isEqualTo(otherId);
+    assertThat(repository.findIdByUk("/hash", "get", dataKey + "3")).isNull();
+    assertThat(repository.findOneByUk("/hash", "get", dataKey + "2").getDataKey()).isEqualTo(dataKey + "2");
+
+    ApiResponse response = repository.findOneByUk("/hash", "GET", dataKey + "1");
+    response.setStatusCode(404);
+    repository.updateByUk(response);
+    assertThat(repository.findOneByUk("/hash", "GET", dataKey + "1").getStatusCode()).isEqualTo(404);
+    assertThat(repository.findOneByUk("/hash", "GET", dataKey + "2").getStatusCode()).isEqualTo(200);
+  }
+
+  @Test
+  public void testFindByUkVerifiesEveryColumn() {
+    // The keys are joined with the line feed on hashing, and the columns are verified after the hash lookup
+    int id = create("/hash", "GET", "a");
+    int otherId = create("/hash/GET", "GET", "");
+    assertThat(repository.findIdByUk("/hash", "GET", "a")).isEqualTo(id);
+    assertThat(repository.findIdByUk("/hash/GET", "GET", null)).isEqualTo(otherId);
+    assertThat(repository.findIdByUk("/hash", "GET", "")).isNull();
+    assertThat(repository.findIdByUk("/hash", "POST", "a")).isNull();
+  }
+
+  @Test
+  public void testCreateDuplicateKey() {
+    create("/hash", "GET", "1");
+    assertThatThrownBy(() -> create("/hash", "get", "1")).isInstanceOf(DuplicateKeyException.class);
+  }
+
+  @Test
+  public void testAttachmentFileRefs() {
+    int id = create("/attachment", "GET", "", "ref-a");
+    ApiResponse history = new ApiResponse();
+    history.setId(id);
+    history.setSubId(1);
+    history.setStatusCode(200);
+    history.setAttachmentFileRef("ref-b");
+    repository.createHistory(history);
+    create("/attachment", "POST", "", "ref-b");
+
+    assertThat(repository.findAttachmentFileRefsById(id)).containsOnly("ref-a", "ref-b");
+    assertThat(repository.findAllAttachmentFileRefs()).containsOnly("ref-a", "ref-b");
+    assertThat(repository.countByAttachmentFileRef("ref-a")).isEqualTo(1);
+    assertThat(repository.countByAttachmentFileRef("ref-b")).isEqualTo(2);
+    assertThat(repository.countByAttachmentFileRef("ref-c")).isZero();
+
+    repository.delete(id);
+    repository.deleteAllHistory(id);
+    assertThat(repository.findAttachmentFileRefsById(id)).isEmpty();
+    assertThat(repository.countByAttachmentFileRef("ref-a")).isZero();
+    assertThat(repository.countByAttachmentFileRef("ref-b")).isEqualTo(1);
+  }
+
+  @Test
+  public void testHistoriesOutOfRetention() {
+    int id = create("/retention", "GET", "");
+    createHistory(id, 1, "2018-01-01 10:00:00");
+    createHistory(id, 2, "2018-01-01 12:00:00");
+    createHistory(id, 3, "2018-01-02 10:00:00");
+    createHistory(id, 4, "2018-01-03 10:00:00");
+    createHistory(id, 5, "2018-01-03 11:00:00");
+
+    assertThat(findSubIdsOutOfRetention(id, 2, null, null)).containsExactly(1, 2, 3);
+    assertThat(findSubIdsOutOfRetention(id, 5, null, null)).isEmpty();
+    assertThat(findSubIdsOutOfRetention(id, null, LocalDateTime.of(2018, 1, 2, 0, 0), null)).containsExactly(1, 2);
+    // The latest history is always kept
+    assertThat(findSubIdsOutOfRetention(id, null, LocalDateTime.of(2019, 1, 1, 0, 0), null)).containsExactly(1, 2, 3, 4);
+    // The latest history of each day is kept on thinning
+    assertThat(findSubIdsOutOfRetention(id, null, null, LocalDateTime.of(2018, 1, 4, 0, 0))).containsExactly(1, 4);
+    assertThat(findSubIdsOutOfRetention(id, null, null, LocalDateTime.of(2018, 1, 2, 0, 0))).containsExactly(1);
+    // The policies are combined with OR
+    assertThat(findSubIdsOutOfRetention(id, 4, null, LocalDateTime.of(2018, 1, 4, 0, 0))).containsExactly(1, 4);
+    assertThat(repository.findHistoryKeysOutOfRetention(id, 1, null, null, new RowBounds(0, 2)))
+        .extracting(ApiResponse::getSubId).containsExactly(1, 2);
+
+    assertThat(repository.findIdsHavingHistoriesOutOfRetention(4, null, null)).contains(id);
+    assertThat(repository.findIdsHavingHistoriesOutOfRetention(5, null, null)).doesNotContain(id);
+    assertThat(repository.findIdsHavingHistoriesOutOfRetention(null, LocalDateTime.of(2018, 1, 2, 0, 0), null)).contains(id);
+
+    assertThat(repository.deleteHistories(id, Arrays.asList(1, 2, 3))).isEqualTo(3);
+    assertThat(findSubIdsOutOfRetention(id, 1, null, null)).containsExactly(4);
+  }
+
+  private void createHistory(int id, int subId, String createdAt) {
+    ApiResponse history = new ApiResponse();
+    history.setId(id);
+    history.setSubId(subId);
+    history.setStatusCode(200);
+    repository.createHistory(history);
+    new JdbcTemplate(dataSource).update("UPDATE mock_api_response_history SET created_at = ? WHERE id = ? AND sub_id = ?",
+        Timestamp.valueOf(createdAt), id, subId);
+  }
+
+  private List<Integer> findSubIdsOutOfRetention(int id, Integer maxCount, LocalDateTime expiredAt, LocalDateTime thinnedAt) {
+    return repository.findHistoryKeysOutOfRetention(id, maxCount, expiredAt, thinnedAt, RowBounds.DEFAULT).stream()
+        .map(ApiResponse::getSubId).collect(Collectors.toList());
+  }
+
+  private int create(String path, String method, String dataKey) {
+    return create(path, method, dataKey, null);
+  }
+
+  private int create(String path, String method, String dataKey, String attachmentFileRef) {
+    ApiResponse response = new ApiResponse();
+    response.setPath(path);
+    response.setMethod(method);
+    response.setDataKey(dataKey);
+    response.setStatusCode(200);
+    response.setAttachmentFileRef(attachmentFileRef);
+    repository.create(response);
+    return response.getId();
+  }
+
+  private List<Integer> offsetPages() {
+    List<Integer> ids = new ArrayList<>();
+    List<ApiResponse> page;
+    for (int offset = 0; !(page = repository.findPage(PATH, null, null, null, null, null, null, offset, PAGE_SIZE)).isEmpty();
+         offset += PAGE_SIZE) {
+      page.forEach(e -> ids.add(e.getId()));
+    }
+    assertThat(ids).hasSize(30);
+    return ids;
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.repository;
+
+import org.mybatis.spring.annotation.MapperScan;
+import org.mybatis.spring.boot.autoconfigure.MybatisAutoConfiguration;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+
+// The repositories on the in-memory database migrated by the schema of the application
+@SpringBootConfiguration
+@ImportAutoConfiguration({DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class,
+    TransactionAutoConfiguration.class, FlywayAutoConfiguration.class, MybatisAutoConfiguration.class})
+@MapperScan("com.kazuki43zoo.apistub.domain.repository")
+public class RepositoryTestConfiguration {
+
+  public static final String DATASOURCE_URL = "spring.datasource.url=jdbc:h2:mem:repository;DB_CLOSE_DELAY=-1";
+  public static final String MAP_UNDERSCORE_TO_CAMEL_CASE = "mybatis.configuration.map-underscore-to-camel-case=true";
+  public static final String USE_GENERATED_KEYS = "mybatis.configuration.use-generated-keys=true";
+
+}
@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.DATASOURCE_URL;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.MAP_UNDERSCORE_TO_CAMEL_CASE;
+import static com.kazuki43zoo.apistub.domain.repository.RepositoryTestConfiguration.USE_GENERATED_KEYS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The chunks are committed in their own transactions, so the test is not transactional and cleans up the rows
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RepositoryTestConfiguration.class, ApiService.class, BatchSupport.class, ApiServiceStreamingTests.Config.class},
+    properties = {DATASOURCE_URL, MAP_UNDERSCORE_TO_CAMEL_CASE, USE_GENERATED_KEYS, "apistub.domain.import.batch-size=2"})
+public class ApiServiceStreamingTests {
+
+  @Autowired
+  private ApiService service;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @After
+  public void cleanup() {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("DELETE FROM api_proxy WHERE id IN (SELECT id FROM mock_api WHERE path LIKE '/streaming/%')");
+    jdbcTemplate.update("DELETE FROM mock_api WHERE path LIKE '/streaming/%'");
+  }
+
+  @Test
+  public void testImportAll() {
+    service.create(api("/streaming/b", "GET", "old"));
+    ImportProgress progress = new ImportProgress();
+
+    service.importAll(Arrays.asList(api("/streaming/a", "GET", "a"), api("/streaming/b", "GET", "new"),
+        api("/streaming/a", "get", "duplicated"), api("/streaming/c", "POST", "c"),
+        api("/api/streaming/d", "GET", "d")).iterator(), false, progress);
+
+    assertThat(progress.getCreated()).isEqualTo(3);
+    assertThat(progress.getUpdated()).isEqualTo(0);
+    assertThat(progress.getIgnored()).isEqualTo(2);
+    assertThat(service.findOne("/streaming/a", "GET").getDescription()).isEqualTo("a");
+    assertThat(service.findOne("/streaming/b", "GET").getDescription()).isEqualTo("old");
+    assertThat(service.findOne("/streaming/c", "POST").getDescription()).isEqualTo("c");
+    // The root path is removed from the imported path
+    assertThat(service.findOne("/streaming/d", "GET").getDescription()).isEqualTo("d");
+  }
+
+  @Test
+  public void testImportAllWithOverride() {
+    service.create(api("/streaming/b", "GET", "old"));
+    ImportProgress progress = new ImportProgress();
+
+    service.importAll(Arrays.asList(api("/streaming/a", "GET", "a"), api("/streaming/b", "GET", "new")).iterator(),
+        true, progress);
+
+    assertThat(progress.getCreated()).isEqualTo(1);
+    assertThat(progress.getUpdated()).isEqualTo(1);
+    assertThat(service.findOne("/streaming/b", "GET").getDescription()).isEqualTo("new");
+  }
+
+  @Test
+  public void testChunksBeforeFailureStayCommitted() {
+    Api invalid = api("/streaming/e", "GET", "e");
+    invalid.setScenario("{\"initialState\":");
+    List<Api> apis = Arrays.asList(api("/streaming/a", "GET", "a"), api("/streaming/b", "GET", "b"),
+        api("/streaming/c", "GET", "c"), api("/streaming/d", "GET", "d"), invalid, api("/streaming/f", "GET", "f"));
+    ImportProgress progress = new ImportProgress();
+
+    assertThatThrownBy(() -> service.importAll(apis.iterator(), false, progress))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("path = /streaming/e");
+
+    // The first two chunks are committed, and the failed chunk is rolled back as a whole
+    assertThat(progress.getCreated()).isEqualTo(4);
+    assertThat(service.findIdByUk("/streaming/d", "GET")).isNotNull();
+    assertThat(service.findIdByUk("/streaming/e", "GET")).isNull();
+    assertThat(service.findIdByUk("/streaming/f", "GET")).isNull();
+  }
+
+  @Test
+  public void testExportAll() {
+    Api proxied = api("/streaming/b", "GET", "b");
+    proxied.getProxy().setEnabled(true);
+    proxied.getProxy().setUrl("http://localhost:8080");
+    service.create(proxied);
+    service.create(api("/streaming/a", "POST", "a"));
+    service.create(api("/streaming/a", "GET", "a"));
+    List<Api> exported = new ArrayList<>();
+
+    service.exportAll(api -> {
+      if (api.getPath().startsWith("/streaming/")) {
+        exported.add(api);
+      }
+    });
+
+    // The apis are exported in the order of the list
+    assertThat(exported).extracting(e -> e.getPath() + " " + e.getMethod())
+        .containsExactly("/streaming/a GET", "/streaming/a POST", "/streaming/b GET");
+    assertThat(exported.get(2).getProxy().getEnabled()).isTrue();
+    assertThat(exported.get(2).getProxy().getUrl()).isEqualTo("http://localhost:8080");
+    assertThat(exported.get(0).getProxy().getEnabled()).isFalse();
+  }
+
+  private Api api(String path, String method, String description) {
+    Api api = new Api();
+    api.setPath(path);
+    api.setMethod(method);
+    api.setDescription(description);
+    return api;
+  }
+
+  @Configuration
+  static class Config {
+    @Bean
+    PathMatcher pathMatcher() {
+      return new AntPathMatcher();
+    }
+
+    @Bean
+    ObjectMapper objectMapper() {
+      return new ObjectMapper();
+    }
+  }
+
+}
@@ -17,8 +17,8 @@ package com.kazuki43zoo.apistub.domain.repository
 
 import com.kazuki43zoo.apistub.domain.model.Api
 import org.apache.ibatis.annotations.*
+import org.apache.ibatis.cursor.Cursor
 import org.apache.ibatis.jdbc.SQL
-import org.apache.ibatis.session.RowBounds
 import org.springframework.util.StringUtils
 
 //language=SQL
@@ -30,7 +30,19 @@ interface ApiRepository {
   @Options(useCache = false)
   List<Api> findPage(
       @Param("path") String path,
-      @Param("method") String method, @Param("description") String description, RowBounds rowBounds)
+      @Param("method") String method, @Param("description") String description, @Param("ids") List<Integer> ids,
+      @Param("after") Api after, @Param("before") Api before, @Param("offset") long offset, @Param("limit") int limit)
+
+  @Select('''
+    SELECT
+      id, path, method
+    FROM
+      mock_api
+    WHERE
+      id = #{id}
+  ''')
+  @Options(useCache = false)
+  Api findKeyById(int id)
 
   @Select('''
     SELECT
@@ -47,13 +59,14 @@ interface ApiRepository {
   @SelectProvider(type = SqlProvider.class, method = "count")
   @Options(useCache = false)
   long count(
-      @Param("path") String path, @Param("method") String method, @Param("description") String description)
+      @Param("path") String path, @Param("method") String method, @Param("description") String description,
+      @Param("ids") List<Integer> ids)
 
   @Select('''
     SELECT
-      a.id, a.path, a.method, a.key_extractor, a.key_generating_strategy, a.expressions, a.description
-      , SELECT COUNT(r.id) FROM mock_api_response r
-            WHERE r.path = a.path AND r.method = a.method AS keyed_response_number
+      a.id, a.path, a.method, a.key_extractor, a.key_generating_strategy, a.expressions
+      , a.fault_profile, a.scenario, a.rate_limit, a.rate_limit_burst, a.max_concurrency, a.limit_status_code
+      , a.description, a.keyed_response_number
       , p.enabled, p.url, p.capturing
     FROM
       mock_api a
@@ -71,7 +84,9 @@ interface ApiRepository {
 
   @Select('''
     SELECT
-      a.id, a.path, a.method, a.key_extractor, a.key_generating_strategy, a.expressions, a.description
+      a.id, a.path, a.method, a.key_extractor, a.key_generating_strategy, a.expressions
+      , a.fault_profile, a.scenario, a.rate_limit, a.rate_limit_burst, a.max_concurrency, a.limit_status_code
+      , a.description
       , p.enabled, p.url, p.capturing
     FROM
       mock_api a
@@ -89,6 +104,60 @@ interface ApiRepository {
   ])
   Api findOneByUk(@Param("path") String path, @Param("method") String method)
 
+  @Select('''
+    SELECT
+      a.id, a.path, a.method, a.key_extractor, a.key_generating_strategy, a.expressions
+      , a.fault_profile, a.scenario, a.rate_limit, a.rate_limit_burst, a.max_concurrency, a.limit_status_code
+      , a.description
+      , p.enabled, p.url, p.capturing
+    FROM
+      mock_api a
+    LEFT OUTER JOIN
+      api_proxy p ON p.id = a.id
+    ORDER BY
+      a.path, a.method
+  ''')
+  @Results([
+      @Result(property = "proxy.enabled", column = "enabled")
+      , @Result(property = "proxy.url", column = "url")
+      , @Result(property = "proxy.capturing", column = "capturing")
+  ])
+  @Options(useCache = false)
+  Cursor<Api> findAllForExport()
+
+  @Select('''
+    SELECT
+      id, path, description
+    FROM
+      mock_api
+    ORDER BY
+      id
+  ''')
+  @Options(useCache = false)
+  Cursor<Api> findAllForSearchIndex()
+
+  @Select('''
+    SELECT
+      id, path, description
+    FROM
+      mock_api
+    WHERE
+      id > #{id}
+    ORDER BY
+      id
+  ''')
+  @Options(useCache = false)
+  List<Api> findAllForSearchIndexAfter(int id)
+
+  @Select('''
+    SELECT
+      IFNULL(MAX(id), 0)
+    FROM
+      mock_api
+  ''')
+  @Options(useCache = false)
+  int findMaxId()
+
   @Select('''
     SELECT
       id
@@ -105,11 +174,15 @@ interface ApiRepository {
   @Insert('''
     INSERT INTO mock_api
       (
-        path, method, key_extractor, key_generating_strategy, expressions, description
+        path, method, key_extractor, key_generating_strategy, expressions, fault_profile, scenario
+        , rate_limit, rate_limit_burst, max_concurrency, limit_status_code, description, keyed_response_number
       )
     VALUES
       (
-        #{path}, UPPER(#{method}), #{keyExtractor}, #{keyGeneratingStrategy}, #{expressions}, #{description}
+        #{path}, UPPER(#{method}), #{keyExtractor}, #{keyGeneratingStrategy}, #{expressions}, #{faultProfile}, #{scenario}
+        , #{rateLimit}, #{rateLimitBurst}, #{maxConcurrency}, #{limitStatusCode}, #{description}
+        , SELECT COUNT(r.id) FROM mock_api_response r
+            WHERE r.path = #{path} AND r.method = UPPER(#{method}) AND r.data_key NOT IN ('', 'default')
       )
   ''')
   void create(Api api)
@@ -126,11 +199,63 @@ interface ApiRepository {
   ''')
   void createProxy(Api api)
 
+  @Insert('''
+    INSERT INTO mock_api
+      (
+        path, method, key_extractor, key_generating_strategy, expressions, fault_profile, scenario
+        , rate_limit, rate_limit_burst, max_concurrency, limit_status_code, description, keyed_response_number
+      )
+    VALUES
+      (
+        #{path}, UPPER(#{method}), #{keyExtractor}, #{keyGeneratingStrategy}, #{expressions}, #{faultProfile}, #{scenario}
+        , #{rateLimit}, #{rateLimitBurst}, #{maxConcurrency}, #{limitStatusCode}, #{description}
+        , SELECT COUNT(r.id) FROM mock_api_response r
+            WHERE r.path = #{path} AND r.method = UPPER(#{method}) AND r.data_key NOT IN ('', 'default')
+      )
+  ''')
+  @Options(useGeneratedKeys = false)
+  void createInBatch(Api api)
+
   @Update('''
     UPDATE mock_api
     SET
       description = #{description}, key_extractor = #{keyExtractor}
       , key_generating_strategy = #{keyGeneratingStrategy}, expressions = #{expressions}
+      , fault_profile = #{faultProfile}, scenario = #{scenario}
+      , rate_limit = #{rateLimit}, rate_limit_burst = #{rateLimitBurst}
+      , max_concurrency = #{maxConcurrency}, limit_status_code = #{limitStatusCode}
+    WHERE
+      path = #{path}
+    AND
+      method = UPPER(#{method})
+  ''')
+  void updateByUk(Api newApi)
+
+  @Insert('''
+    MERGE INTO api_proxy
+      (
+        id, enabled, url, capturing
+      )
+    KEY (id)
+    SELECT
+      id, IFNULL(#{proxy.enabled},false), #{proxy.url}, IFNULL(#{proxy.capturing},false)
+    FROM
+      mock_api
+    WHERE
+      path = #{path}
+    AND
+      method = UPPER(#{method})
+  ''')
+  void mergeProxyByUk(Api api)
+
+  @Update('''
+    UPDATE mock_api
+    SET
+      description = #{description}, key_extractor = #{keyExtractor}
+      , key_generating_strategy = #{keyGeneratingStrategy}, expressions = #{expressions}
+      , fault_profile = #{faultProfile}, scenario = #{scenario}
+      , rate_limit = #{rateLimit}, rate_limit_burst = #{rateLimitBurst}
+      , max_concurrency = #{maxConcurrency}, limit_status_code = #{limitStatusCode}
     WHERE
       id = #{id}
   ''')
@@ -162,30 +287,49 @@ interface ApiRepository {
   void deleteProxy(int id)
 
   static class SqlProvider {
+    // Seek from the keys of the anchor api when it is given, otherwise skip rows on the database side.
+    // The leading bound on the path narrows down the range of the unique key, because H2 cannot use an index
+    // for the row value comparison. The rows before the anchor are fetched in descending order.
     public String findPage(
-        @Param("path") String path, @Param("method") String method, @Param("description") String description) {
+        @Param("path") String path, @Param("method") String method, @Param("description") String description,
+        @Param("ids") List<Integer> ids, @Param("after") Api after, @Param("before") Api before) {
       return new SQL() {
         {
-          SELECT("a.id", "a.path", "a.method", "a.description", "SELECT COUNT(r.id) FROM mock_api_response r WHERE r.path = a.path AND r.method = a.method AND r.data_key NOT IN ('', 'default') AS keyed_response_number")
+          SELECT("a.id", "a.path", "a.method", "a.description", "a.keyed_response_number")
           FROM("mock_api a")
-          where(this, path, method, description)
-          ORDER_BY("a.path", "a.method")
+          where(this, path, method, description, ids)
+          if (after != null) {
+            WHERE("a.path >= #{after.path}")
+            WHERE("(a.path, a.method) > (#{after.path}, #{after.method})")
+            ORDER_BY("a.path", "a.method")
+          } else if (before != null) {
+            WHERE("a.path <= #{before.path}")
+            WHERE("(a.path, a.method) < (#{before.path}, #{before.method})")
+            ORDER_BY("a.path DESC", "a.method DESC")
+          } else {
+            ORDER_BY("a.path", "a.method")
+          }
         }
-      }.toString()
+      }.toString() + " LIMIT #{limit} OFFSET #{offset}"
     }
 
     public String count(
-        @Param("path") String path, @Param("method") String method, @Param("description") String description) {
+        @Param("path") String path, @Param("method") String method, @Param("description") String description,
+        @Param("ids") List<Integer> ids) {
       return new SQL() {
         {
           SELECT("COUNT(*)")
           FROM("mock_api a")
-          where(this, path, method, description)
+          where(this, path, method, description, ids)
         }
       }.toString()
     }
 
-    private static void where(SQL sql, String path, String method, String description) {
+    // The ids are the candidates narrowed down by the search index, and the conditions are verified for them
+    private static void where(SQL sql, String path, String method, String description, List<Integer> ids) {
+      if (ids != null) {
+        sql.WHERE("a.id IN (" + (0..<ids.size()).collect { '#{ids[' + it + ']}' }.join(", ") + ")")
+      }
       if (StringUtils.hasLength(path)) {
         sql.WHERE("a.path REGEXP #{path}")
       }
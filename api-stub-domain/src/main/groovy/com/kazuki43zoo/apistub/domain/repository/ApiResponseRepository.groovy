@@ -17,10 +17,13 @@ package com.kazuki43zoo.apistub.domain.repository
 
 import com.kazuki43zoo.apistub.domain.model.ApiResponse
 import org.apache.ibatis.annotations.*
+import org.apache.ibatis.cursor.Cursor
 import org.apache.ibatis.jdbc.SQL
 import org.apache.ibatis.session.RowBounds
 import org.springframework.util.StringUtils
 
+import java.time.LocalDateTime
+
 //language=SQL
 @Mapper
 interface ApiResponseRepository {
@@ -28,10 +31,25 @@ interface ApiResponseRepository {
   @SelectProvider(type = SqlProvider.class, method = "findPage")
   List<ApiResponse> findPage(
       @Param("path") String path,
-      @Param("method") String method, @Param("description") String description, RowBounds rowBounds)
+      @Param("method") String method, @Param("dataKey") String dataKey, @Param("description") String description,
+      @Param("ids") List<Integer> ids,
+      @Param("after") ApiResponse after, @Param("before") ApiResponse before,
+      @Param("offset") long offset, @Param("limit") int limit)
+
+  @Select('''
+    SELECT
+      id, path, method, data_key
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+  ''')
+  @Options(useCache = false)
+  ApiResponse findKeyById(int id)
 
   @SelectProvider(type = SqlProvider.class, method = "count")
-  long count(@Param("path") String path, @Param("method") String method, @Param("description") String description)
+  long count(@Param("path") String path, @Param("method") String method, @Param("dataKey") String dataKey,
+             @Param("description") String description, @Param("ids") List<Integer> ids)
 
   @Select('''
     SELECT
@@ -61,11 +79,16 @@ interface ApiResponseRepository {
 
   @Select('''
     SELECT
-      id, path, method, data_key, status_code, header, body, body_editor_mode
-      , attachment_file, file_name, waiting_msec, description
+      id, path, method, data_key, status_code, header, body_editor_mode, body_digest
+      , LENGTH(body) AS body_length, LENGTH(attachment_file) AS attachment_file_length
+      , attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+      , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+      , variant_strategy, variants, description, updated_at
     FROM
       mock_api_response
     WHERE
+      uk_hash = CAST(HASH('SHA256', STRINGTOUTF8(#{path} || CHAR(10) || UPPER(#{method}) || CHAR(10) || IFNULL(#{dataKey},'')), 1) AS BINARY(16))
+    AND
       path = #{path}
     AND
       method = UPPER(#{method})
@@ -75,12 +98,34 @@ interface ApiResponseRepository {
   ApiResponse findOneByUk(
       @Param("path") String path, @Param("method") String method, @Param("dataKey") String dataKey)
 
+  @Select('''
+    SELECT
+      body
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+  ''')
+  InputStream findBodyById(int id)
+
+  @Select('''
+    SELECT
+      attachment_file
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+  ''')
+  InputStream findAttachmentFileById(int id)
+
   @Select('''
     SELECT
       id
     FROM
       mock_api_response
     WHERE
+      uk_hash = CAST(HASH('SHA256', STRINGTOUTF8(#{path} || CHAR(10) || UPPER(#{method}) || CHAR(10) || IFNULL(#{dataKey},'')), 1) AS BINARY(16))
+    AND
       path = #{path}
     AND
       method = UPPER(#{method})
@@ -90,10 +135,24 @@ interface ApiResponseRepository {
   Integer findIdByUk(
       @Param("path") String path, @Param("method") String method, @Param("dataKey") String dataKey)
 
+  @Select('''
+    SELECT
+      data_key
+    FROM
+      mock_api_response
+    WHERE
+      path = #{path}
+    AND
+      method = UPPER(#{method})
+  ''')
+  List<String> findDataKeysByPathAndMethod(@Param("path") String path, @Param("method") String method)
+
   @Select('''
     SELECT
       id, path, method, data_key, status_code, header, body, body_editor_mode
-      , attachment_file, file_name, waiting_msec, description
+      , attachment_file, attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+      , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+      , variant_strategy, variants, description
       , SELECT COUNT(sub_id) FROM mock_api_response_history WHERE id = #{id} AS historyNumber
     FROM
       mock_api_response
@@ -104,8 +163,88 @@ interface ApiResponseRepository {
 
   @Select('''
     SELECT
-      h.id, h.sub_id, o.path, o.method, o.data_key, h.status_code, h.header, h.body, h.body_editor_mode
-      , h.attachment_file, h.file_name, h.waiting_msec, h.description, h.created_at
+      id, path, data_key, description
+    FROM
+      mock_api_response
+    ORDER BY
+      id
+  ''')
+  Cursor<ApiResponse> findAllForSearchIndex()
+
+  @Select('''
+    SELECT
+      id, path, data_key, description
+    FROM
+      mock_api_response
+    WHERE
+      id > #{id}
+    ORDER BY
+      id
+  ''')
+  List<ApiResponse> findAllForSearchIndexAfter(int id)
+
+  @Select('''
+    SELECT
+      IFNULL(MAX(id), 0)
+    FROM
+      mock_api_response
+  ''')
+  int findMaxId()
+
+  @Select('''
+    SELECT
+      attachment_file_ref
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+      AND attachment_file_ref IS NOT NULL
+    UNION
+    SELECT
+      attachment_file_ref
+    FROM
+      mock_api_response_history
+    WHERE
+      id = #{id}
+      AND attachment_file_ref IS NOT NULL
+  ''')
+  List<String> findAttachmentFileRefsById(int id)
+
+  @Select('''
+    SELECT
+      attachment_file_ref
+    FROM
+      mock_api_response
+    WHERE
+      attachment_file_ref IS NOT NULL
+    UNION
+    SELECT
+      attachment_file_ref
+    FROM
+      mock_api_response_history
+    WHERE
+      attachment_file_ref IS NOT NULL
+  ''')
+  @Options(useCache = false)
+  List<String> findAllAttachmentFileRefs()
+
+  @Select('''
+    SELECT
+      (SELECT COUNT(*) FROM mock_api_response WHERE attachment_file_ref = #{reference})
+      + (SELECT COUNT(*) FROM mock_api_response_history WHERE attachment_file_ref = #{reference})
+  ''')
+  @Options(useCache = false)
+  long countByAttachmentFileRef(String reference)
+
+  @SelectProvider(type = SqlProvider.class, method = "findAllForExport")
+  Cursor<ApiResponse> findAllForExport(@Param("ids") List<Integer> ids)
+
+  @Select('''
+    SELECT
+      h.id, h.sub_id, h.base_sub_id, o.path, o.method, o.data_key, h.status_code, h.header, h.body, h.body_editor_mode
+      , h.attachment_file, h.attachment_file_ref, h.file_name, h.waiting_msec, h.latency_distribution, h.latency_parameters
+      , h.bytes_per_sec, h.first_byte_msec, h.chunk_size, h.fault_profile, h.variant_strategy, h.variants
+      , h.description, h.created_at
     FROM
       mock_api_response_history h
     INNER JOIN
@@ -115,36 +254,212 @@ interface ApiResponseRepository {
   ''')
   ApiResponse findHistory(@Param("id") int id, @Param("subId") int subId)
 
+  @Select('''
+    SELECT
+      id, sub_id, base_sub_id, body, attachment_file
+    FROM
+      mock_api_response_history
+    WHERE
+      id = #{id} AND sub_id = #{subId}
+  ''')
+  ApiResponse findHistoryContent(@Param("id") int id, @Param("subId") int subId)
+
+  @Select('''
+    SELECT
+      id, sub_id, base_sub_id
+    FROM
+      mock_api_response_history
+    WHERE
+      id = #{id}
+    ORDER BY
+      sub_id
+  ''')
+  List<ApiResponse> findAllHistoryKeysById(int id)
+
+  @Select('''
+    SELECT
+      id, sub_id, base_sub_id, body, attachment_file
+    FROM
+      mock_api_response_history
+    WHERE
+      id = #{id} AND base_sub_id IS NULL
+    ORDER BY
+      sub_id DESC
+    LIMIT 1
+  ''')
+  ApiResponse findLatestHistorySnapshot(int id)
+
+  @Select('''
+    SELECT
+      sub_id
+    FROM
+      mock_api_response_history
+    WHERE
+      id = #{id} AND base_sub_id = #{baseSubId}
+    ORDER BY
+      sub_id
+  ''')
+  List<Integer> findHistorySubIdsByBase(@Param("id") int id, @Param("baseSubId") int baseSubId)
+
+  @Select('''
+    SELECT
+      h.id
+    FROM
+      mock_api_response_history h
+    INNER JOIN
+      mock_api_response r ON r.id = h.id
+    WHERE
+      h.base_sub_id IS NULL
+    AND
+      h.sub_id > r.history_compacted_seq
+    GROUP BY
+      h.id
+    ORDER BY
+      h.id
+  ''')
+  List<Integer> findIdsHavingUncompactedHistorySnapshots()
+
+  @Select('''
+    SELECT
+      history_compacted_seq
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+  ''')
+  int findHistoryCompactedSeq(int id)
+
+  @Update('''
+    UPDATE mock_api_response
+    SET
+      history_compacted_seq = #{seq}
+    WHERE
+      id = #{id}
+  ''')
+  void updateHistoryCompactedSeq(@Param("id") int id, @Param("seq") int seq)
+
+  @SelectProvider(type = SqlProvider.class, method = "findIdsHavingHistoriesOutOfRetention")
+  List<Integer> findIdsHavingHistoriesOutOfRetention(
+      @Param("maxCount") Integer maxCount,
+      @Param("expiredAt") LocalDateTime expiredAt, @Param("thinnedAt") LocalDateTime thinnedAt)
+
+  @SelectProvider(type = SqlProvider.class, method = "findHistoryKeysOutOfRetention")
+  List<ApiResponse> findHistoryKeysOutOfRetention(
+      @Param("id") int id, @Param("maxCount") Integer maxCount,
+      @Param("expiredAt") LocalDateTime expiredAt, @Param("thinnedAt") LocalDateTime thinnedAt, RowBounds rowBounds)
+
+  @Select('''
+    SELECT
+      history_seq
+    FROM
+      mock_api_response
+    WHERE
+      id = #{id}
+    FOR UPDATE
+  ''')
+  Integer findHistorySeqForUpdate(int id)
+
+  @Update('''
+    UPDATE mock_api_response
+    SET
+      history_seq = history_seq + 1
+    WHERE
+      id = #{id}
+  ''')
+  void incrementHistorySeq(int id)
+
   @Insert('''
     INSERT INTO mock_api_response
       (
-        path, method, data_key, status_code, header, body, body_editor_mode
-        , attachment_file, file_name, waiting_msec, description
+        path, method, data_key, status_code, header, body, body_digest, body_editor_mode
+        , attachment_file, attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+        , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+        , variant_strategy, variants, description, updated_at
       )
     VALUES
       (
-        #{path}, UPPER(#{method}), IFNULL(#{dataKey},''), #{statusCode}, #{header}, #{body}, #{bodyEditorMode}
-        , #{attachmentFile}, #{fileName}, #{waitingMsec}, #{description}
+        #{path}, UPPER(#{method}), IFNULL(#{dataKey},''), #{statusCode}, #{header}, #{body}, #{bodyDigest}, #{bodyEditorMode}
+        , #{attachmentFile}, #{attachmentFileRef}, #{fileName}, #{waitingMsec}, #{latencyDistribution}, #{latencyParameters}
+        , #{bytesPerSec}, #{firstByteMsec}, #{chunkSize}, #{faultProfile}
+        , #{variantStrategy}, #{variants}, #{description}, CURRENT_TIMESTAMP
       )
   ''')
   void create(ApiResponse mockResponse)
 
+  @Insert('''
+    INSERT INTO mock_api_response_history
+      (
+        id, sub_id, base_sub_id, status_code, header, body, body_editor_mode
+        , attachment_file, attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+        , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+        , variant_strategy, variants, description, created_at
+      )
+    VALUES
+      (
+        #{id}, #{subId}, #{baseSubId}, #{statusCode}, #{header}, #{body}, #{bodyEditorMode}
+        , #{attachmentFile}, #{attachmentFileRef}, #{fileName}, #{waitingMsec}, #{latencyDistribution}, #{latencyParameters}
+        , #{bytesPerSec}, #{firstByteMsec}, #{chunkSize}, #{faultProfile}
+        , #{variantStrategy}, #{variants}, #{description}, CURRENT_TIMESTAMP
+      )
+  ''')
+  void createHistory(ApiResponse history)
+
+  @Update('''
+    UPDATE mock_api_response_history
+    SET
+      base_sub_id = #{baseSubId}, body = #{body}, attachment_file = #{attachmentFile}
+    WHERE
+      id = #{id}
+    AND
+      sub_id = #{subId}
+  ''')
+  void updateHistoryContent(ApiResponse history)
+
+  @Insert('''
+    INSERT INTO mock_api_response
+      (
+        path, method, data_key, status_code, header, body, body_digest, body_editor_mode
+        , attachment_file, attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+        , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+        , variant_strategy, variants, description, updated_at, history_seq
+      )
+    VALUES
+      (
+        #{path}, UPPER(#{method}), IFNULL(#{dataKey},''), #{statusCode}, #{header}, #{body}, #{bodyDigest}, #{bodyEditorMode}
+        , #{attachmentFile}, #{attachmentFileRef}, #{fileName}, #{waitingMsec}, #{latencyDistribution}, #{latencyParameters}
+        , #{bytesPerSec}, #{firstByteMsec}, #{chunkSize}, #{faultProfile}
+        , #{variantStrategy}, #{variants}, #{description}, CURRENT_TIMESTAMP, 1
+      )
+  ''')
+  @Options(useGeneratedKeys = false)
+  void createInBatch(ApiResponse mockResponse)
+
   @Insert('''
     INSERT INTO mock_api_response_history
       (
         id, sub_id, status_code, header, body, body_editor_mode
-        , attachment_file, file_name, waiting_msec, description, created_at
+        , attachment_file, attachment_file_ref, file_name, waiting_msec, latency_distribution, latency_parameters
+        , bytes_per_sec, first_byte_msec, chunk_size, fault_profile
+        , variant_strategy, variants, description, created_at
       )
     SELECT
-      id, (SELECT IFNULL(MAX(sub_id), 0) + 1 FROM mock_api_response_history WHERE id = #{id})
-      , status_code, header, body, body_editor_mode, attachment_file, file_name, waiting_msec
-      , description, CURRENT_TIMESTAMP
+      r.id, r.history_seq
+      , r.status_code, r.header, r.body, r.body_editor_mode, r.attachment_file, r.attachment_file_ref, r.file_name
+      , r.waiting_msec, r.latency_distribution, r.latency_parameters
+      , r.bytes_per_sec, r.first_byte_msec, r.chunk_size, r.fault_profile
+      , r.variant_strategy, r.variants, r.description, CURRENT_TIMESTAMP
     FROM
-      mock_api_response
+      mock_api_response r
     WHERE
-      id = #{id}
+      r.uk_hash = CAST(HASH('SHA256', STRINGTOUTF8(#{path} || CHAR(10) || UPPER(#{method}) || CHAR(10) || IFNULL(#{dataKey},'')), 1) AS BINARY(16))
+    AND
+      r.path = #{path}
+    AND
+      r.method = UPPER(#{method})
+    AND
+      r.data_key = IFNULL(#{dataKey},'')
   ''')
-  void createHistory(int id)
+  void createHistoryByUk(ApiResponse mockResponse)
 
   @Insert('''
     INSERT INTO api_proxy_response
@@ -162,13 +477,52 @@ interface ApiResponseRepository {
     UPDATE mock_api_response
     SET
       data_key = IFNULL(#{dataKey},''), status_code = #{statusCode}, header = #{header}
-      , body = #{body}, body_editor_mode = #{bodyEditorMode}, attachment_file = #{attachmentFile}
-      , file_name = #{fileName}, waiting_msec = #{waitingMsec}, description = #{description}
+      , body = #{body}, body_digest = #{bodyDigest}, body_editor_mode = #{bodyEditorMode}, attachment_file = #{attachmentFile}
+      , attachment_file_ref = #{attachmentFileRef}, file_name = #{fileName}, waiting_msec = #{waitingMsec}, latency_distribution = #{latencyDistribution}
+      , latency_parameters = #{latencyParameters}, bytes_per_sec = #{bytesPerSec}
+      , first_byte_msec = #{firstByteMsec}, chunk_size = #{chunkSize}, fault_profile = #{faultProfile}
+      , variant_strategy = #{variantStrategy}, variants = #{variants}, description = #{description}
+      , updated_at = CURRENT_TIMESTAMP
     WHERE
       id = #{id}
   ''')
   void update(ApiResponse mockResponse)
 
+  @Update('''
+    UPDATE mock_api_response
+    SET
+      status_code = #{statusCode}, header = #{header}
+      , body = #{body}, body_digest = #{bodyDigest}, body_editor_mode = #{bodyEditorMode}, attachment_file = #{attachmentFile}
+      , attachment_file_ref = #{attachmentFileRef}, file_name = #{fileName}, waiting_msec = #{waitingMsec}
+      , latency_distribution = #{latencyDistribution}, latency_parameters = #{latencyParameters}
+      , bytes_per_sec = #{bytesPerSec}, first_byte_msec = #{firstByteMsec}, chunk_size = #{chunkSize}
+      , fault_profile = #{faultProfile}, variant_strategy = #{variantStrategy}, variants = #{variants}
+      , description = #{description}, updated_at = CURRENT_TIMESTAMP
+    WHERE
+      uk_hash = CAST(HASH('SHA256', STRINGTOUTF8(#{path} || CHAR(10) || UPPER(#{method}) || CHAR(10) || IFNULL(#{dataKey},'')), 1) AS BINARY(16))
+    AND
+      path = #{path}
+    AND
+      method = UPPER(#{method})
+    AND
+      data_key = IFNULL(#{dataKey},'')
+  ''')
+  void updateByUk(ApiResponse mockResponse)
+
+  @Update('''
+    UPDATE mock_api a
+    SET
+      keyed_response_number = (
+        SELECT COUNT(r.id) FROM mock_api_response r
+          WHERE r.path = a.path AND r.method = a.method AND r.data_key NOT IN ('', 'default')
+      )
+    WHERE
+      a.path = #{path}
+    AND
+      a.method = UPPER(#{method})
+  ''')
+  void refreshKeyedResponseNumber(@Param("path") String path, @Param("method") String method)
+
   @Delete('''
     DELETE FROM
       mock_api_response
@@ -195,38 +549,135 @@ interface ApiResponseRepository {
   ''')
   void deleteAllHistory(int id);
 
+  @DeleteProvider(type = SqlProvider.class, method = "deleteHistories")
+  int deleteHistories(@Param("id") int id, @Param("subIds") List<Integer> subIds)
+
   static class SqlProvider {
+    // Seek from the keys of the anchor response when it is given, otherwise skip rows on the database side.
+    // The leading bound on the path narrows down the range of the index, because H2 cannot use an index
+    // for the row value comparison. The rows before the anchor are fetched in descending order.
     public String findPage(
-        @Param("path") String path, @Param("method") String method, @Param("description") String description) {
+        @Param("path") String path, @Param("method") String method, @Param("dataKey") String dataKey,
+        @Param("description") String description, @Param("ids") List<Integer> ids,
+        @Param("after") ApiResponse after, @Param("before") ApiResponse before) {
       return new SQL() {
         {
           SELECT("id", "path", "method", "data_key", "status_code", "description")
           FROM("mock_api_response")
-          where(this, path, method, description)
+          where(this, path, method, dataKey, description, ids)
+          if (after != null) {
+            WHERE("path >= #{after.path}")
+            WHERE("(path, method, data_key) > (#{after.path}, #{after.method}, #{after.dataKey})")
+            ORDER_BY("path", "method", "data_key")
+          } else if (before != null) {
+            WHERE("path <= #{before.path}")
+            WHERE("(path, method, data_key) < (#{before.path}, #{before.method}, #{before.dataKey})")
+            ORDER_BY("path DESC", "method DESC", "data_key DESC")
+          } else {
+            ORDER_BY("path", "method", "data_key")
+          }
+        }
+      }.toString() + " LIMIT #{limit} OFFSET #{offset}"
+    }
+
+    public String findAllForExport(@Param("ids") List<Integer> ids) {
+      return new SQL() {
+        {
+          SELECT("id", "path", "method", "data_key", "status_code", "header", "body", "body_editor_mode")
+          SELECT("attachment_file", "attachment_file_ref", "file_name", "waiting_msec", "latency_distribution", "latency_parameters")
+          SELECT("bytes_per_sec", "first_byte_msec", "chunk_size", "fault_profile")
+          SELECT("variant_strategy", "variants", "description")
+          FROM("mock_api_response")
+          WHERE("id IN (" + (0..<ids.size()).collect { '#{ids[' + it + ']}' }.join(", ") + ")")
           ORDER_BY("path", "method", "data_key")
         }
       }.toString()
     }
 
+    public String findIdsHavingHistoriesOutOfRetention(@Param("maxCount") Integer maxCount,
+        @Param("expiredAt") LocalDateTime expiredAt, @Param("thinnedAt") LocalDateTime thinnedAt) {
+      List<String> conditions = []
+      if (maxCount != null) {
+        conditions << "COUNT(*) > #{maxCount}"
+      }
+      if (expiredAt != null) {
+        conditions << "(COUNT(*) > 1 AND MIN(created_at) < #{expiredAt})"
+      }
+      if (thinnedAt != null) {
+        conditions << "(COUNT(*) > 1 AND MIN(created_at) < #{thinnedAt})"
+      }
+      return new SQL() {
+        {
+          SELECT("id")
+          FROM("mock_api_response_history")
+          GROUP_BY("id")
+          HAVING(conditions.join(" OR "))
+          ORDER_BY("id")
+        }
+      }.toString()
+    }
+
+    // The latest history is always kept, and the latest history of each day is kept on thinning
+    public String findHistoryKeysOutOfRetention(@Param("id") int id, @Param("maxCount") Integer maxCount,
+        @Param("expiredAt") LocalDateTime expiredAt, @Param("thinnedAt") LocalDateTime thinnedAt) {
+      List<String> conditions = []
+      if (maxCount != null) {
+        conditions << "h.sub_id < (SELECT MIN(k.sub_id) FROM (SELECT sub_id FROM mock_api_response_history WHERE id = #{id} ORDER BY sub_id DESC LIMIT #{maxCount}) k)"
+      }
+      if (expiredAt != null) {
+        conditions << "(h.created_at < #{expiredAt} AND h.sub_id < (SELECT MAX(m.sub_id) FROM mock_api_response_history m WHERE m.id = #{id}))"
+      }
+      if (thinnedAt != null) {
+        conditions << "(h.created_at < #{thinnedAt} AND EXISTS (SELECT 1 FROM mock_api_response_history n WHERE n.id = h.id AND n.sub_id > h.sub_id AND CAST(n.created_at AS DATE) = CAST(h.created_at AS DATE)))"
+      }
+      return new SQL() {
+        {
+          SELECT("h.id", "h.sub_id", "h.base_sub_id")
+          FROM("mock_api_response_history h")
+          WHERE("h.id = #{id}")
+          WHERE("(" + conditions.join(" OR ") + ")")
+          ORDER_BY("h.sub_id")
+        }
+      }.toString()
+    }
+
+    public String deleteHistories(@Param("id") int id, @Param("subIds") List<Integer> subIds) {
+      return new SQL() {
+        {
+          DELETE_FROM("mock_api_response_history")
+          WHERE("id = #{id}")
+          WHERE("sub_id IN (" + (0..<subIds.size()).collect { '#{subIds[' + it + ']}' }.join(", ") + ")")
+        }
+      }.toString()
+    }
+
     public String count(
-        @Param("path") String path, @Param("method") String method, @Param("description") String description) {
+        @Param("path") String path, @Param("method") String method, @Param("dataKey") String dataKey,
+        @Param("description") String description, @Param("ids") List<Integer> ids) {
       return new SQL() {
         {
           SELECT("COUNT(*)")
           FROM("mock_api_response")
-          where(this, path, method, description)
+          where(this, path, method, dataKey, description, ids)
         }
 
       }.toString()
     }
 
-    private static void where(SQL sql, String path, String method, String description) {
+    // The ids are the candidates narrowed down by the search index, and the conditions are verified for them
+    private static void where(SQL sql, String path, String method, String dataKey, String description, List<Integer> ids) {
+      if (ids != null) {
+        sql.WHERE("id IN (" + (0..<ids.size()).collect { '#{ids[' + it + ']}' }.join(", ") + ")")
+      }
       if (StringUtils.hasLength(path)) {
         sql.WHERE("path REGEXP #{path}")
       }
       if (StringUtils.hasLength(method)) {
         sql.WHERE("method = UPPER(#{method})")
       }
+      if (StringUtils.hasLength(dataKey)) {
+        sql.WHERE("data_key REGEXP #{dataKey}")
+      }
       if (StringUtils.hasLength(description)) {
         sql.WHERE("description REGEXP #{description}")
       }
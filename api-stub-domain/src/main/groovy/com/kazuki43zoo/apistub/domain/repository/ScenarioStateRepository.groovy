@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.repository
+
+import com.kazuki43zoo.apistub.domain.model.ScenarioState
+import org.apache.ibatis.annotations.Delete
+import org.apache.ibatis.annotations.Insert
+import org.apache.ibatis.annotations.Mapper
+import org.apache.ibatis.annotations.Select
+
+//language=SQL
+@Mapper
+interface ScenarioStateRepository {
+
+  @Select('''
+    SELECT
+      scenario_name, data_key, state
+    FROM
+      mock_api_scenario_state
+  ''')
+  List<ScenarioState> findAll()
+
+  @Insert('''
+    INSERT INTO mock_api_scenario_state
+      (
+        scenario_name, data_key, state
+      )
+    VALUES
+      (
+        #{scenarioName}, #{dataKey}, #{state}
+      )
+  ''')
+  void create(ScenarioState scenarioState)
+
+  @Delete('''
+    DELETE FROM
+      mock_api_scenario_state
+  ''')
+  void deleteAll()
+
+}
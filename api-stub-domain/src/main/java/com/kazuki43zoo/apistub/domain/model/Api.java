@@ -27,6 +27,12 @@ public class Api implements Serializable {
   private String keyExtractor;
   private KeyGeneratingStrategy keyGeneratingStrategy;
   private String expressions;
+  private String faultProfile;
+  private String scenario;
+  private Double rateLimit;
+  private Integer rateLimitBurst;
+  private Integer maxConcurrency;
+  private Integer limitStatusCode;
   private String description;
   private ApiProxy proxy = new ApiProxy();
   @JsonIgnore
@@ -80,6 +86,54 @@ public class Api implements Serializable {
     this.expressions = expressions;
   }
 
+  public String getFaultProfile() {
+    return faultProfile;
+  }
+
+  public void setFaultProfile(String faultProfile) {
+    this.faultProfile = faultProfile;
+  }
+
+  public String getScenario() {
+    return scenario;
+  }
+
+  public void setScenario(String scenario) {
+    this.scenario = scenario;
+  }
+
+  public Double getRateLimit() {
+    return rateLimit;
+  }
+
+  public void setRateLimit(Double rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  public Integer getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  public void setRateLimitBurst(Integer rateLimitBurst) {
+    this.rateLimitBurst = rateLimitBurst;
+  }
+
+  public Integer getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(Integer maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public Integer getLimitStatusCode() {
+    return limitStatusCode;
+  }
+
+  public void setLimitStatusCode(Integer limitStatusCode) {
+    this.limitStatusCode = limitStatusCode;
+  }
+
   public String getDescription() {
     return description;
   }
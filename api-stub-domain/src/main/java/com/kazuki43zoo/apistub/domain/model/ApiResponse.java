@@ -24,11 +24,11 @@ import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import org.springframework.util.StreamUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
@@ -37,6 +37,8 @@ public class ApiResponse implements Serializable {
   private static final long serialVersionUID = 1L;
   private int id;
   private int subId;
+  @JsonIgnore
+  private Integer baseSubId;
   private String path;
   private String method;
   private String dataKey;
@@ -45,17 +47,35 @@ public class ApiResponse implements Serializable {
   @JsonDeserialize(using = TextJsonDeserializer.class)
   @JsonSerialize(using = TextJsonSerializer.class)
   private transient InputStream body;
+  @JsonIgnore
+  private String bodyDigest;
   private String bodyEditorMode;
   @JsonDeserialize(using = Base64JsonDeserializer.class)
   @JsonSerialize(using = Base64JsonSerializer.class)
   private transient InputStream attachmentFile;
+  @JsonIgnore
+  private String attachmentFileRef;
   private String fileName;
   private Long waitingMsec;
+  private LatencyDistribution latencyDistribution;
+  private String latencyParameters;
+  private Long bytesPerSec;
+  private Long firstByteMsec;
+  private Integer chunkSize;
+  private String faultProfile;
+  private VariantStrategy variantStrategy;
+  private String variants;
   private String description;
   @JsonIgnore
   private LocalDateTime createdAt;
   @JsonIgnore
+  private LocalDateTime updatedAt;
+  @JsonIgnore
   private int historyNumber;
+  @JsonIgnore
+  private Long bodyLength;
+  @JsonIgnore
+  private Long attachmentFileLength;
 
   public int getId() {
     return id;
@@ -73,6 +93,14 @@ public class ApiResponse implements Serializable {
     this.subId = subId;
   }
 
+  public Integer getBaseSubId() {
+    return baseSubId;
+  }
+
+  public void setBaseSubId(Integer baseSubId) {
+    this.baseSubId = baseSubId;
+  }
+
   public String getPath() {
     return path;
   }
@@ -121,6 +149,14 @@ public class ApiResponse implements Serializable {
     this.body = body;
   }
 
+  public String getBodyDigest() {
+    return bodyDigest;
+  }
+
+  public void setBodyDigest(String bodyDigest) {
+    this.bodyDigest = bodyDigest;
+  }
+
   public String getBodyEditorMode() {
     return bodyEditorMode;
   }
@@ -137,6 +173,14 @@ public class ApiResponse implements Serializable {
     this.attachmentFile = attachmentFile;
   }
 
+  public String getAttachmentFileRef() {
+    return attachmentFileRef;
+  }
+
+  public void setAttachmentFileRef(String attachmentFileRef) {
+    this.attachmentFileRef = attachmentFileRef;
+  }
+
   public String getFileName() {
     return fileName;
   }
@@ -153,6 +197,70 @@ public class ApiResponse implements Serializable {
     this.waitingMsec = waitingMsec;
   }
 
+  public LatencyDistribution getLatencyDistribution() {
+    return latencyDistribution;
+  }
+
+  public void setLatencyDistribution(LatencyDistribution latencyDistribution) {
+    this.latencyDistribution = latencyDistribution;
+  }
+
+  public String getLatencyParameters() {
+    return latencyParameters;
+  }
+
+  public void setLatencyParameters(String latencyParameters) {
+    this.latencyParameters = latencyParameters;
+  }
+
+  public Long getBytesPerSec() {
+    return bytesPerSec;
+  }
+
+  public void setBytesPerSec(Long bytesPerSec) {
+    this.bytesPerSec = bytesPerSec;
+  }
+
+  public Long getFirstByteMsec() {
+    return firstByteMsec;
+  }
+
+  public void setFirstByteMsec(Long firstByteMsec) {
+    this.firstByteMsec = firstByteMsec;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(Integer chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public String getFaultProfile() {
+    return faultProfile;
+  }
+
+  public void setFaultProfile(String faultProfile) {
+    this.faultProfile = faultProfile;
+  }
+
+  public VariantStrategy getVariantStrategy() {
+    return variantStrategy;
+  }
+
+  public void setVariantStrategy(VariantStrategy variantStrategy) {
+    this.variantStrategy = variantStrategy;
+  }
+
+  public String getVariants() {
+    return variants;
+  }
+
+  public void setVariants(String variants) {
+    this.variants = variants;
+  }
+
   public String getDescription() {
     return description;
   }
@@ -169,6 +277,14 @@ public class ApiResponse implements Serializable {
     this.createdAt = createdAt;
   }
 
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(LocalDateTime updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+
   public int getHistoryNumber() {
     return historyNumber;
   }
@@ -177,10 +293,26 @@ public class ApiResponse implements Serializable {
     this.historyNumber = historyNumber;
   }
 
+  public Long getBodyLength() {
+    return bodyLength;
+  }
+
+  public void setBodyLength(Long bodyLength) {
+    this.bodyLength = bodyLength;
+  }
+
+  public Long getAttachmentFileLength() {
+    return attachmentFileLength;
+  }
+
+  public void setAttachmentFileLength(Long attachmentFileLength) {
+    this.attachmentFileLength = attachmentFileLength;
+  }
+
   private static class Base64JsonSerializer extends JsonSerializer<InputStream> {
     @Override
     public void serialize(InputStream value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
-      gen.writeBinary(StreamUtils.copyToByteArray(value));
+      gen.writeBinary(value, -1);
     }
   }
 
@@ -194,7 +326,7 @@ public class ApiResponse implements Serializable {
   private static class TextJsonSerializer extends JsonSerializer<InputStream> {
     @Override
     public void serialize(InputStream value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
-      gen.writeString(StreamUtils.copyToString(value, StandardCharsets.UTF_8));
+      gen.writeString(new InputStreamReader(value, StandardCharsets.UTF_8), -1);
     }
   }
 
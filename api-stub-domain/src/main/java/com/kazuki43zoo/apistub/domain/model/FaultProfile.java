@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.springframework.util.StringUtils;
+
+public final class FaultProfile {
+
+  private static final String PARAMETER_SEPARATOR = ",";
+  private static final String NAME_VALUE_SEPARATOR = "=";
+  private static final FaultType[] TYPES = FaultType.values();
+
+  private final double[] cumulativeProbabilities;
+
+  private FaultProfile(double[] cumulativeProbabilities) {
+    this.cumulativeProbabilities = cumulativeProbabilities;
+  }
+
+  public static FaultProfile of(String profile) {
+    double[] probabilities = new double[TYPES.length];
+    if (StringUtils.hasText(profile)) {
+      for (String parameter : profile.split(PARAMETER_SEPARATOR)) {
+        if (!StringUtils.hasText(parameter)) {
+          continue;
+        }
+        String[] nameAndValue = parameter.split(NAME_VALUE_SEPARATOR, 2);
+        if (nameAndValue.length != 2) {
+          throw new IllegalArgumentException("The fault must be specified as 'TYPE=probability'. fault: " + parameter.trim());
+        }
+        FaultType type;
+        try {
+          type = FaultType.valueOf(nameAndValue[0].trim());
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("The fault type is unknown. type: " + nameAndValue[0].trim(), e);
+        }
+        double probability;
+        try {
+          probability = Double.parseDouble(nameAndValue[1].trim());
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("The probability must be a number. fault: " + parameter.trim(), e);
+        }
+        if (!(probability >= 0 && probability <= 1)) {
+          throw new IllegalArgumentException("The probability must be between 0 and 1. fault: " + parameter.trim());
+        }
+        probabilities[type.ordinal()] = probability;
+      }
+    }
+    double total = 0;
+    for (int i = 0; i < probabilities.length; i++) {
+      total += probabilities[i];
+      probabilities[i] = total;
+    }
+    if (total > 1.000001) {
+      throw new IllegalArgumentException("The total of probabilities must be less than or equal to 1.");
+    }
+    return new FaultProfile(probabilities);
+  }
+
+  public boolean isEmpty() {
+    return cumulativeProbabilities[cumulativeProbabilities.length - 1] == 0;
+  }
+
+  public FaultType select(double random) {
+    for (int i = 0; i < cumulativeProbabilities.length; i++) {
+      if (random < cumulativeProbabilities[i]) {
+        return TYPES[i];
+      }
+    }
+    return null;
+  }
+
+}
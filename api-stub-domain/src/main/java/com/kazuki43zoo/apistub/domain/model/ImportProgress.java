@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ImportProgress {
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong updated = new AtomicLong();
+  private final AtomicLong ignored = new AtomicLong();
+
+  public void add(long created, long updated, long ignored) {
+    this.created.addAndGet(created);
+    this.updated.addAndGet(updated);
+    this.ignored.addAndGet(ignored);
+  }
+
+  public long getProcessed() {
+    return getCreated() + getUpdated() + getIgnored();
+  }
+
+  public long getCreated() {
+    return created.get();
+  }
+
+  public long getUpdated() {
+    return updated.get();
+  }
+
+  public long getIgnored() {
+    return ignored.get();
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+public enum LatencyDistribution {
+
+  FIXED {
+    @Override
+    double[] toValues(Map<String, Double> parameters, Long waitingMsec) {
+      return new double[]{parameters.containsKey("value") ? parameters.get("value") : waitingMsec == null ? 0 : waitingMsec};
+    }
+
+    @Override
+    double sample(double[] values, Random random) {
+      return values[0];
+    }
+  },
+
+  UNIFORM {
+    @Override
+    double[] toValues(Map<String, Double> parameters, Long waitingMsec) {
+      double min = required(parameters, "min");
+      double max = required(parameters, "max");
+      if (min > max) {
+        throw new IllegalArgumentException("The 'min' must be less than or equal to 'max'.");
+      }
+      return new double[]{min, max};
+    }
+
+    @Override
+    double sample(double[] values, Random random) {
+      return values[0] + random.nextDouble() * (values[1] - values[0]);
+    }
+  },
+
+  NORMAL {
+    @Override
+    double[] toValues(Map<String, Double> parameters, Long waitingMsec) {
+      return new double[]{required(parameters, "mean"), required(parameters, "stddev")};
+    }
+
+    @Override
+    double sample(double[] values, Random random) {
+      return values[0] + random.nextGaussian() * values[1];
+    }
+  },
+
+  LOG_NORMAL {
+    @Override
+    double[] toValues(Map<String, Double> parameters, Long waitingMsec) {
+      double median = required(parameters, "median");
+      if (median <= 0) {
+        throw new IllegalArgumentException("The 'median' must be greater than 0.");
+      }
+      return new double[]{Math.log(median), required(parameters, "sigma")};
+    }
+
+    @Override
+    double sample(double[] values, Random random) {
+      return Math.exp(values[0] + random.nextGaussian() * values[1]);
+    }
+  },
+
+  PERCENTILE {
+    @Override
+    double[] toValues(Map<String, Double> parameters, Long waitingMsec) {
+      // Layout: [percent0, value0, percent1, value1, ...] ordered by percent (starts with 0 percent)
+      double[][] points = parameters.entrySet().stream()
+          .map(e -> new double[]{toPercent(e.getKey()), e.getValue()})
+          .sorted((a, b) -> Double.compare(a[0], b[0]))
+          .toArray(double[][]::new);
+      if (points.length == 0) {
+        throw new IllegalArgumentException("Specify one or more percentiles. e.g.) p50=100,p99=800,p99.9=2000");
+      }
+      double[] values = new double[(points.length + 1) * 2];
+      int index = 0;
+      if (points[0][0] > 0) {
+        values[index++] = 0;
+        values[index++] = 0;
+      }
+      for (double[] point : points) {
+        if (index > 0 && point[0] == values[index - 2]) {
+          throw new IllegalArgumentException("The same percentile is specified more than once. percentile: " + point[0]);
+        }
+        if (index > 0 && point[1] < values[index - 1]) {
+          throw new IllegalArgumentException("The latency of a higher percentile must be greater than or equal to the latency of a lower percentile.");
+        }
+        values[index++] = point[0];
+        values[index++] = point[1];
+      }
+      return Arrays.copyOf(values, index);
+    }
+
+    @Override
+    double sample(double[] values, Random random) {
+      double percent = random.nextDouble() * 100;
+      for (int i = 2; i < values.length; i += 2) {
+        if (percent <= values[i]) {
+          double ratio = (percent - values[i - 2]) / (values[i] - values[i - 2]);
+          return values[i - 1] + ratio * (values[i + 1] - values[i - 1]);
+        }
+      }
+      return values[values.length - 1];
+    }
+
+    private double toPercent(String name) {
+      if (!name.startsWith("p")) {
+        throw new IllegalArgumentException("The percentile name must start with 'p'. name: " + name);
+      }
+      double percent = Double.parseDouble(name.substring(1));
+      if (percent < 0 || percent > 100) {
+        throw new IllegalArgumentException("The percentile must be between 0 and 100. name: " + name);
+      }
+      return percent;
+    }
+  };
+
+  abstract double[] toValues(Map<String, Double> parameters, Long waitingMsec);
+
+  abstract double sample(double[] values, Random random);
+
+  private static double required(Map<String, Double> parameters, String name) {
+    Double value = parameters.get(name);
+    if (value == null) {
+      throw new IllegalArgumentException("The '" + name + "' parameter is required.");
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public final class LatencyProfile {
+
+  private static final String PARAMETER_SEPARATOR = ",";
+  private static final String NAME_VALUE_SEPARATOR = "=";
+  private static final int SAMPLING_SIZE_FOR_PERCENTILES = 10000;
+
+  private final LatencyDistribution distribution;
+  private final double[] values;
+
+  private LatencyProfile(LatencyDistribution distribution, double[] values) {
+    this.distribution = distribution;
+    this.values = values;
+  }
+
+  public static LatencyProfile of(LatencyDistribution distribution, String parameters, Long waitingMsec) {
+    LatencyDistribution actualDistribution = distribution == null ? LatencyDistribution.FIXED : distribution;
+    return new LatencyProfile(actualDistribution, actualDistribution.toValues(parseParameters(parameters), waitingMsec));
+  }
+
+  public static LatencyProfile of(ApiResponse apiResponse) {
+    return of(apiResponse.getLatencyDistribution(), apiResponse.getLatencyParameters(), apiResponse.getWaitingMsec());
+  }
+
+  public LatencyDistribution getDistribution() {
+    return distribution;
+  }
+
+  public long sample(Random random) {
+    return Math.max(0, Math.round(distribution.sample(values, random)));
+  }
+
+  public long[] percentiles(double... percents) {
+    // Calculate by sampling with a fixed seed to display same values every time
+    Random random = new Random(0);
+    long[] samples = new long[SAMPLING_SIZE_FOR_PERCENTILES];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = sample(random);
+    }
+    Arrays.sort(samples);
+    long[] percentiles = new long[percents.length];
+    for (int i = 0; i < percents.length; i++) {
+      int index = (int) Math.ceil(percents[i] / 100 * samples.length) - 1;
+      percentiles[i] = samples[Math.min(samples.length - 1, Math.max(0, index))];
+    }
+    return percentiles;
+  }
+
+  private static Map<String, Double> parseParameters(String parameters) {
+    Map<String, Double> map = new LinkedHashMap<>();
+    if (!StringUtils.hasText(parameters)) {
+      return map;
+    }
+    for (String parameter : parameters.split(PARAMETER_SEPARATOR)) {
+      if (!StringUtils.hasText(parameter)) {
+        continue;
+      }
+      String[] nameAndValue = parameter.split(NAME_VALUE_SEPARATOR);
+      if (nameAndValue.length != 2) {
+        throw new IllegalArgumentException("The parameter format must be 'name=value'. parameter: " + parameter.trim());
+      }
+      try {
+        map.put(nameAndValue[0].trim(), Double.valueOf(nameAndValue[1].trim()));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("The parameter value must be a number. parameter: " + parameter.trim(), e);
+      }
+    }
+    return map;
+  }
+
+}
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class LatencyStatistics implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final long observedCount;
+  private final List<Percentile> percentiles;
+
+  public LatencyStatistics(long observedCount, List<Percentile> percentiles) {
+    this.observedCount = observedCount;
+    this.percentiles = percentiles;
+  }
+
+  public long getObservedCount() {
+    return observedCount;
+  }
+
+  public List<Percentile> getPercentiles() {
+    return percentiles;
+  }
+
+  public static class Percentile implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String name;
+    private final Long configured;
+    private final Long observed;
+
+    public Percentile(String name, Long configured, Long observed) {
+      this.name = name;
+      this.configured = configured;
+      this.observed = observed;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Long getConfigured() {
+      return configured;
+    }
+
+    public Long getObserved() {
+      return observed;
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ResponseVariants {
+
+  public static final String SELF = "@self";
+  private static final String VARIANT_SEPARATOR = ",";
+  private static final String KEY_COUNT_SEPARATOR = "=";
+
+  private final VariantStrategy strategy;
+  private final String[] dataKeys;
+  private final long[] cumulativeCounts;
+
+  private ResponseVariants(VariantStrategy strategy, String[] dataKeys, long[] cumulativeCounts) {
+    this.strategy = strategy;
+    this.dataKeys = dataKeys;
+    this.cumulativeCounts = cumulativeCounts;
+  }
+
+  public static ResponseVariants of(VariantStrategy strategy, String variants) {
+    if (strategy == null) {
+      throw new IllegalArgumentException("The variant strategy is required.");
+    }
+    List<String> dataKeys = new ArrayList<>();
+    List<Long> counts = new ArrayList<>();
+    if (StringUtils.hasText(variants)) {
+      for (String variant : variants.split(VARIANT_SEPARATOR)) {
+        if (!StringUtils.hasText(variant)) {
+          continue;
+        }
+        int separatorIndex = variant.lastIndexOf(KEY_COUNT_SEPARATOR);
+        String dataKey = (separatorIndex == -1 ? variant : variant.substring(0, separatorIndex)).trim();
+        long count = 1;
+        if (separatorIndex != -1) {
+          try {
+            count = Long.parseLong(variant.substring(separatorIndex + 1).trim());
+          } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The weight or count must be an integer. variant: " + variant.trim(), e);
+          }
+        }
+        if (count <= 0) {
+          throw new IllegalArgumentException("The weight or count must be greater than 0. variant: " + variant.trim());
+        }
+        dataKeys.add(dataKey);
+        counts.add(count);
+      }
+    }
+    if (dataKeys.isEmpty()) {
+      throw new IllegalArgumentException("Specify one or more variants. e.g.) " + SELF + "=3,error=1");
+    }
+    long[] cumulativeCounts = new long[counts.size()];
+    long total = 0;
+    for (int i = 0; i < cumulativeCounts.length; i++) {
+      try {
+        total = Math.addExact(total, counts.get(i));
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("The total of weights or counts is too large.", e);
+      }
+      cumulativeCounts[i] = total;
+    }
+    return new ResponseVariants(strategy, dataKeys.toArray(new String[0]), cumulativeCounts);
+  }
+
+  public VariantStrategy getStrategy() {
+    return strategy;
+  }
+
+  // The sequence is used by ROUND_ROBIN and SEQUENCE, and the non-negative random is used by WEIGHTED
+  public String select(long sequence, long random) {
+    return dataKeys[strategy.select(cumulativeCounts, sequence, random)];
+  }
+
+}
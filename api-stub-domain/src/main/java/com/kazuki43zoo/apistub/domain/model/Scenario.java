@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.springframework.util.StringUtils;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Scenario implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private String name;
+  private String initialState;
+  private Map<String, State> states = new LinkedHashMap<>();
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getInitialState() {
+    return initialState;
+  }
+
+  public void setInitialState(String initialState) {
+    this.initialState = initialState;
+  }
+
+  public Map<String, State> getStates() {
+    return states;
+  }
+
+  public void setStates(Map<String, State> states) {
+    this.states = states;
+  }
+
+  public void validate() {
+    if (!StringUtils.hasText(name)) {
+      throw new IllegalArgumentException("The 'name' is required.");
+    }
+    if (!StringUtils.hasText(initialState)) {
+      throw new IllegalArgumentException("The 'initialState' is required.");
+    }
+    if (states == null || states.isEmpty()) {
+      throw new IllegalArgumentException("Specify one or more states.");
+    }
+    if (!states.containsKey(initialState)) {
+      throw new IllegalArgumentException("The 'initialState' is not defined in the states. state: " + initialState);
+    }
+    states.forEach((stateName, state) -> {
+      if (state == null) {
+        throw new IllegalArgumentException("The state definition is required. state: " + stateName);
+      }
+      if (state.getNext() != null && !StringUtils.hasText(state.getNext())) {
+        throw new IllegalArgumentException("The 'next' must not be blank. state: " + stateName);
+      }
+      if (state.getNext() != null && !states.containsKey(state.getNext())) {
+        throw new IllegalArgumentException("The 'next' is not defined in the states. state: " + stateName
+            + ", next: " + state.getNext());
+      }
+    });
+  }
+
+  public static class State implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String response;
+    private String next;
+
+    public String getResponse() {
+      return response;
+    }
+
+    public void setResponse(String response) {
+      this.response = response;
+    }
+
+    public String getNext() {
+      return next;
+    }
+
+    public void setNext(String next) {
+      this.next = next;
+    }
+  }
+
+}
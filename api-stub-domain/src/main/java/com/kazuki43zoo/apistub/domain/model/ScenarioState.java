@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import java.io.Serializable;
+
+public class ScenarioState implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private String scenarioName;
+  private String dataKey;
+  private String state;
+
+  public String getScenarioName() {
+    return scenarioName;
+  }
+
+  public void setScenarioName(String scenarioName) {
+    this.scenarioName = scenarioName;
+  }
+
+  public String getDataKey() {
+    return dataKey;
+  }
+
+  public void setDataKey(String dataKey) {
+    this.dataKey = dataKey;
+  }
+
+  public String getState() {
+    return state;
+  }
+
+  public void setState(String state) {
+    this.state = state;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+public enum VariantStrategy {
+
+  WEIGHTED {
+    @Override
+    int select(long[] cumulativeCounts, long sequence, long random) {
+      return indexOf(cumulativeCounts, random % cumulativeCounts[cumulativeCounts.length - 1]);
+    }
+  },
+
+  ROUND_ROBIN {
+    @Override
+    int select(long[] cumulativeCounts, long sequence, long random) {
+      return indexOf(cumulativeCounts, sequence % cumulativeCounts[cumulativeCounts.length - 1]);
+    }
+  },
+
+  SEQUENCE {
+    @Override
+    int select(long[] cumulativeCounts, long sequence, long random) {
+      // Use the last variant after all counts are consumed
+      return Math.min(indexOf(cumulativeCounts, sequence), cumulativeCounts.length - 1);
+    }
+  };
+
+  abstract int select(long[] cumulativeCounts, long sequence, long random);
+
+  private static int indexOf(long[] cumulativeCounts, long value) {
+    int low = 0;
+    int high = cumulativeCounts.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (value < cumulativeCounts[middle]) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
+}
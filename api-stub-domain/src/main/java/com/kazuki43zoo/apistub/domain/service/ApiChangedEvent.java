@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.Api;
+
+// The event of a created, updated or deleted api, that is published after the commit.
+// The old api is null on a creation, and the new api is null on a deletion.
+public class ApiChangedEvent {
+
+  private final Api oldApi;
+  private final Api newApi;
+
+  ApiChangedEvent(Api oldApi, Api newApi) {
+    this.oldApi = oldApi;
+    this.newApi = newApi;
+  }
+
+  public Api getOldApi() {
+    return oldApi;
+  }
+
+  public Api getNewApi() {
+    return newApi;
+  }
+
+}
@@ -16,47 +16,96 @@
 package com.kazuki43zoo.apistub.domain.service;
 
 import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
 import com.kazuki43zoo.apistub.domain.model.KeyGeneratingStrategy;
 import com.kazuki43zoo.apistub.domain.repository.ApiResponseRepository;
+import com.kazuki43zoo.apistub.domain.store.AttachmentStore;
+import com.kazuki43zoo.apistub.domain.util.Sha256;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Transactional
 @Service
 public class ApiResponseService {
 
+  private static final Logger log = LoggerFactory.getLogger(ApiResponseService.class);
   private static final Pattern PATH_VARIABLE_PATTERN = Pattern.compile("\\{.+}");
 
   private final ApiResponseRepository repository;
+  private final LatencyStatisticsService latencyStatisticsService;
+  private final AttachmentStore attachmentStore;
+  private final BatchSupport batchSupport;
+  private final CountCache countCache = new CountCache();
+  private final SearchIndex searchIndex;
+  private final DataKeyTrieCache dataKeyTries = new DataKeyTrieCache();
 
   @Value("${api.root-path:/api}")
   private String rootPath;
 
-  public ApiResponseService(ApiResponseRepository repository) {
+  @Value("${apistub.domain.history.snapshot-interval:10}")
+  private int snapshotInterval;
+
+  @Value("${apistub.domain.pagination.count-cache-ttl-sec:60}")
+  private long countCacheTtlSec;
+
+  @Value("${apistub.domain.search-index.max-candidates:1000}")
+  private int maxSearchCandidates;
+
+  public ApiResponseService(ApiResponseRepository repository, LatencyStatisticsService latencyStatisticsService,
+                            ObjectProvider<AttachmentStore> attachmentStore, BatchSupport batchSupport,
+                            ApplicationEventPublisher eventPublisher) {
     this.repository = repository;
+    this.latencyStatisticsService = latencyStatisticsService;
+    this.attachmentStore = attachmentStore.getIfAvailable();
+    this.batchSupport = batchSupport;
+    this.searchIndex = new SearchIndex(3, () -> eventPublisher.publishEvent(new SearchIndexStaleEvent()));
   }
 
   public ApiResponse findOne(String path, String apiPath, String method, String dataKey) {
     ApiResponse mockResponse = Optional.ofNullable(repository.findOneByUk(path, method, dataKey))
         .orElseGet(() -> apiPath != null ? repository.findOneByUk(apiPath, method, dataKey) : null);
     if (mockResponse == null && StringUtils.hasLength(dataKey)) {
-      String defaultDataKey = KeyGeneratingStrategy.split(dataKey).stream()
-          .map(e -> "")
-          .collect(Collectors.joining(KeyGeneratingStrategy.KEY_DELIMITER));
-      mockResponse = Optional.ofNullable(repository.findOneByUk(path, method, defaultDataKey))
-          .orElseGet(() -> apiPath != null ? repository.findOneByUk(apiPath, method, defaultDataKey) : null);
+      if (apiPath != null && !apiPath.equals(path)) {
+        mockResponse = Optional.ofNullable(repository.findOneByUk(path, method, defaultDataKey(dataKey)))
+            .orElseGet(() -> findOneByPartialKey(apiPath, method, dataKey));
+      } else {
+        mockResponse = findOneByPartialKey(path, method, dataKey);
+      }
     }
     if (mockResponse == null) {
       mockResponse = new ApiResponse();
@@ -66,6 +115,36 @@ public class ApiResponseService {
     return mockResponse;
   }
 
+  // The response of a concrete path is looked up by the default data key only, because the tries are kept
+  // per API and the concrete paths of an API are unbounded
+  private static String defaultDataKey(String dataKey) {
+    return KeyGeneratingStrategy.split(dataKey).stream()
+        .map(e -> "")
+        .collect(Collectors.joining(KeyGeneratingStrategy.KEY_DELIMITER));
+  }
+
+  // Resolve the most specific data key with the trie of the API, and fetch only the matched response
+  private ApiResponse findOneByPartialKey(String path, String method, String dataKey) {
+    String matchedDataKey = dataKeyTries.get(path, method,
+        () -> repository.findDataKeysByPathAndMethod(path, method)).match(dataKey);
+    return matchedDataKey == null ? null : repository.findOneByUk(path, method, matchedDataKey);
+  }
+
+  public InputStream findBody(int id) {
+    return repository.findBodyById(id);
+  }
+
+  public InputStream findAttachmentFile(int id) {
+    return repository.findAttachmentFileById(id);
+  }
+
+  public Resource loadAttachmentFile(String reference) {
+    if (attachmentStore == null) {
+      throw new IllegalStateException("Attachment store is not configured. reference = " + reference);
+    }
+    return attachmentStore.load(reference);
+  }
+
   public ApiResponse findOne(int id) {
     return repository.findOne(id);
   }
@@ -74,14 +153,26 @@ public class ApiResponseService {
     return repository.findIdByUk(path, method, dataKey);
   }
 
-  public Page<ApiResponse> findPage(String path, String method, String description, Pageable pageable) {
+  public Page<ApiResponse> findPage(String path, String method, String dataKey, String description,
+                                    Pageable pageable, Integer after, Integer before) {
     String searchingPath = Optional.ofNullable(path)
         .map(e -> PATH_VARIABLE_PATTERN.matcher(e).replaceAll(".+"))
         .orElse(null);
-    long count = repository.count(searchingPath, method, description);
+    int[] candidates = searchIndex.find(maxSearchCandidates,
+        () -> repository.count(null, null, null, null, null), repository::findMaxId,
+        StringUtils.hasLength(searchingPath) ? searchingPath : null,
+        StringUtils.hasLength(dataKey) ? dataKey : null, StringUtils.hasLength(description) ? description : null);
+    if (candidates != null && candidates.length == 0) {
+      return new PageImpl<>(Collections.emptyList(), pageable, 0);
+    }
+    List<Integer> ids = candidates != null ? IntStream.of(candidates).boxed().collect(Collectors.toList()) : null;
+    long count = countCache.get(Arrays.asList(searchingPath, method, dataKey, description),
+        TimeUnit.SECONDS.toMillis(countCacheTtlSec), () -> repository.count(searchingPath, method, dataKey, description, ids));
     List<ApiResponse> content;
     if (count != 0) {
-      content = repository.findPage(searchingPath, method, description, new RowBounds(Long.valueOf(pageable.getOffset()).intValue(), Long.valueOf(pageable.getPageSize()).intValue()));
+      PageQuery<ApiResponse> query = (afterKey, beforeKey, offset, limit) ->
+          repository.findPage(searchingPath, method, dataKey, description, ids, afterKey, beforeKey, offset, limit);
+      content = query.find(pageable, after, before, repository::findKeyById);
     } else {
       content = Collections.emptyList();
     }
@@ -100,13 +191,27 @@ public class ApiResponseService {
   }
 
   public ApiResponse findHistory(int id, int subId) {
-    return repository.findHistory(id, subId);
+    ApiResponse history = repository.findHistory(id, subId);
+    if (history != null && history.getBaseSubId() != null) {
+      HistoryContent snapshot = HistoryContent.of(repository.findHistoryContent(id, history.getBaseSubId()));
+      HistoryContent.of(history).patch(snapshot).applyTo(history);
+    }
+    return history;
   }
 
   public void create(ApiResponse newMockResponse) {
     newMockResponse.setPath(newMockResponse.getPath().replace(rootPath, ""));
+    digestBody(newMockResponse);
+    storeAttachmentFile(newMockResponse);
     repository.create(newMockResponse);
-    repository.createHistory(newMockResponse.getId());
+    repository.refreshKeyedResponseNumber(newMockResponse.getPath(), newMockResponse.getMethod());
+    saveHistory(newMockResponse.getId());
+    countCache.clear();
+    SearchIndex.afterCommit(() -> {
+      searchIndex.add(newMockResponse.getId(), newMockResponse.getPath(),
+          Optional.ofNullable(newMockResponse.getDataKey()).orElse(""), newMockResponse.getDescription());
+      dataKeyTries.invalidate(newMockResponse.getPath(), newMockResponse.getMethod());
+    });
   }
 
   public void createProxyResponse(ApiResponse newMockResponse) {
@@ -116,39 +221,170 @@ public class ApiResponseService {
 
   public void update(int id, ApiResponse newMockResponse, boolean keepAttachmentFile, boolean saveHistory) {
     newMockResponse.setId(id);
+    digestBody(newMockResponse);
+    ApiResponse mockResponse = repository.findOne(id);
     if (keepAttachmentFile) {
-      ApiResponse mockResponse = findOne(id);
       newMockResponse.setAttachmentFile(mockResponse.getAttachmentFile());
+      newMockResponse.setAttachmentFileRef(mockResponse.getAttachmentFileRef());
       newMockResponse.setFileName(mockResponse.getFileName());
+    } else {
+      storeAttachmentFile(newMockResponse);
     }
     repository.update(newMockResponse);
+    repository.refreshKeyedResponseNumber(mockResponse.getPath(), mockResponse.getMethod());
+    latencyStatisticsService.clear(id);
+    countCache.clear();
+    SearchIndex.afterCommit(() -> {
+      searchIndex.remove(id, mockResponse.getPath(), mockResponse.getDataKey(), mockResponse.getDescription());
+      searchIndex.add(id, mockResponse.getPath(),
+          Optional.ofNullable(newMockResponse.getDataKey()).orElse(""), newMockResponse.getDescription());
+      dataKeyTries.invalidate(mockResponse.getPath(), mockResponse.getMethod());
+    });
     if (saveHistory) {
-      repository.createHistory(id);
+      saveHistory(id);
     }
   }
 
+  // Upsert the mock responses with JDBC batches, and commit per chunk.
+  // A history is saved for a created response, and is not saved for an updated response.
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void importAll(Iterator<ApiResponse> newMockResponses, boolean override, ImportProgress progress) {
+    ApiResponseRepository batchRepository = batchSupport.getMapper(ApiResponseRepository.class);
+    batchSupport.executeInChunks(newMockResponses, chunk -> {
+      List<ApiResponse> creatingResponses = new ArrayList<>();
+      List<ApiResponse> updatingResponses = new ArrayList<>();
+      List<Integer> updatingIds = new ArrayList<>();
+      List<ApiResponse> indexingResponses = new ArrayList<>();
+      Set<String> keys = new HashSet<>();
+      int maxId = batchRepository.findMaxId();
+      for (ApiResponse newMockResponse : chunk) {
+        newMockResponse.setPath(newMockResponse.getPath().replace(rootPath, ""));
+        Integer id = batchRepository.findIdByUk(
+            newMockResponse.getPath(), newMockResponse.getMethod(), newMockResponse.getDataKey());
+        boolean exists = id != null || !keys.add(newMockResponse.getPath() + " "
+            + newMockResponse.getMethod().toUpperCase() + " " + Optional.ofNullable(newMockResponse.getDataKey()).orElse(""));
+        if (!exists) {
+          creatingResponses.add(newMockResponse);
+        } else if (override) {
+          updatingResponses.add(newMockResponse);
+          if (id != null) {
+            newMockResponse.setId(id);
+            updatingIds.add(id);
+            indexingResponses.add(newMockResponse);
+          }
+        }
+      }
+      creatingResponses.forEach(newMockResponse -> {
+        digestBody(newMockResponse);
+        storeAttachmentFile(newMockResponse);
+        batchRepository.createInBatch(newMockResponse);
+      });
+      updatingResponses.forEach(newMockResponse -> {
+        digestBody(newMockResponse);
+        storeAttachmentFile(newMockResponse);
+        batchRepository.updateByUk(newMockResponse);
+      });
+      creatingResponses.forEach(batchRepository::createHistoryByUk);
+      List<List<String>> creatingApis = creatingResponses.stream()
+          .map(e -> Arrays.asList(e.getPath(), e.getMethod().toUpperCase()))
+          .distinct()
+          .collect(Collectors.toList());
+      creatingApis.forEach(e -> batchRepository.refreshKeyedResponseNumber(e.get(0), e.get(1)));
+      // The created responses are read back for their ids, and the old values of the updated responses are left in the index
+      if (!creatingResponses.isEmpty()) {
+        indexingResponses.addAll(batchRepository.findAllForSearchIndexAfter(maxId));
+      }
+      return () -> {
+        indexingResponses.forEach(e -> searchIndex.add(e.getId(),
+            e.getPath(), Optional.ofNullable(e.getDataKey()).orElse(""), e.getDescription()));
+        creatingApis.forEach(e -> dataKeyTries.invalidate(e.get(0), e.get(1)));
+        countCache.clear();
+        updatingIds.forEach(latencyStatisticsService::clear);
+        progress.add(creatingResponses.size(), updatingResponses.size(),
+            chunk.size() - creatingResponses.size() - updatingResponses.size());
+      };
+    });
+  }
+
   public void restoreHistory(int id, int subId) {
-    ApiResponse history = repository.findHistory(id, subId);
+    ApiResponse history = findHistory(id, subId);
     ApiResponse target = repository.findOne(id);
+    String attachmentFileRef = target.getAttachmentFileRef();
     target.setStatusCode(history.getStatusCode());
     target.setHeader(history.getHeader());
     target.setBody(history.getBody());
+    digestBody(target);
     target.setAttachmentFile(history.getAttachmentFile());
+    target.setAttachmentFileRef(history.getAttachmentFileRef());
     target.setFileName(history.getFileName());
+    target.setWaitingMsec(history.getWaitingMsec());
+    target.setLatencyDistribution(history.getLatencyDistribution());
+    target.setLatencyParameters(history.getLatencyParameters());
+    target.setBytesPerSec(history.getBytesPerSec());
+    target.setFirstByteMsec(history.getFirstByteMsec());
+    target.setChunkSize(history.getChunkSize());
+    target.setFaultProfile(history.getFaultProfile());
+    target.setVariantStrategy(history.getVariantStrategy());
+    target.setVariants(history.getVariants());
+    String description = target.getDescription();
     target.setDescription(history.getDescription());
     repository.update(target);
+    if (attachmentFileRef != null) {
+      deleteAttachmentFilesIfUnreferenced(Collections.singletonList(attachmentFileRef));
+    }
+    latencyStatisticsService.clear(id);
+    countCache.clear();
+    SearchIndex.afterCommit(() -> {
+      searchIndex.remove(id, target.getPath(), target.getDataKey(), description);
+      searchIndex.add(id, target.getPath(), target.getDataKey(), target.getDescription());
+    });
   }
 
   public void delete(int id) {
+    ApiResponse mockResponse = repository.findOne(id);
+    List<String> attachmentFileRefs = attachmentStore == null
+        ? Collections.emptyList() : repository.findAttachmentFileRefsById(id);
     repository.delete(id);
     repository.deleteAllHistory(id);
+    deleteAttachmentFilesIfUnreferenced(attachmentFileRefs);
+    if (mockResponse != null) {
+      repository.refreshKeyedResponseNumber(mockResponse.getPath(), mockResponse.getMethod());
+      SearchIndex.afterCommit(() -> {
+        searchIndex.remove(id, mockResponse.getPath(), mockResponse.getDataKey(), mockResponse.getDescription());
+        dataKeyTries.invalidate(mockResponse.getPath(), mockResponse.getMethod());
+      });
+    }
+    latencyStatisticsService.clear(id);
+    countCache.clear();
   }
 
   public void delete(List<Integer> ids) {
     ids.forEach(this::delete);
   }
 
+  // The histories based on the deleting snapshot are rebased on the first one of them
   public void deleteHistory(int id, int subId) {
+    repository.findHistorySeqForUpdate(id);
+    List<Integer> dependentSubIds = repository.findHistorySubIdsByBase(id, subId);
+    if (!dependentSubIds.isEmpty()) {
+      HistoryContent snapshot = HistoryContent.of(repository.findHistoryContent(id, subId));
+      HistoryContent newSnapshot = null;
+      int newSnapshotSubId = 0;
+      for (int dependentSubId : dependentSubIds) {
+        ApiResponse dependent = repository.findHistoryContent(id, dependentSubId);
+        HistoryContent content = HistoryContent.of(dependent).patch(snapshot);
+        if (newSnapshot == null) {
+          newSnapshot = content;
+          newSnapshotSubId = dependentSubId;
+          dependent.setBaseSubId(null);
+          content.applyTo(dependent);
+        } else {
+          dependent.setBaseSubId(newSnapshotSubId);
+          content.diff(newSnapshot).applyTo(dependent);
+        }
+        repository.updateHistoryContent(dependent);
+      }
+    }
     repository.deleteHistory(id, subId);
   }
 
@@ -156,10 +392,232 @@ public class ApiResponseService {
     subIds.forEach(subId -> deleteHistory(id, subId));
   }
 
-  public List<ApiResponse> findAllForExport(List<Integer> ids) {
-    return ids.stream()
-        .map(repository::findOne)
+  // Pass the mock responses to the action one by one while the cursor is open
+  @Transactional(readOnly = true)
+  public void exportAll(List<Integer> ids, Consumer<ApiResponse> action) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    try (Cursor<ApiResponse> mockResponses = repository.findAllForExport(ids)) {
+      mockResponses.forEach(mockResponse -> action.accept(loadAttachmentFile(mockResponse)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  // Load all responses into a new search index while the cursor is open, and return the number of them
+  @Transactional(readOnly = true)
+  public int loadSearchIndex() {
+    AtomicInteger count = new AtomicInteger();
+    searchIndex.load(index -> {
+      try (Cursor<ApiResponse> mockResponses = repository.findAllForSearchIndex()) {
+        mockResponses.forEach(mockResponse -> {
+          index.add(mockResponse.getId(), mockResponse.getPath(), mockResponse.getDataKey(), mockResponse.getDescription());
+          count.incrementAndGet();
+        });
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    return count.get();
+  }
+
+  public int getSearchIndexTrigramCount() {
+    return searchIndex.getTrigramCount();
+  }
+
+
+  @Transactional(readOnly = true)
+  public List<Integer> findIdsForHistoryCompaction() {
+    return repository.findIdsHavingUncompactedHistorySnapshots();
+  }
+
+  // Re-encode the histories saved as full contents (e.g. saved before the delta encoding was introduced)
+  // into the deltas from the preceding snapshot. Snapshots that other histories are based on are kept as is.
+  // The histories up to the compacted sequence have been examined already, and the contents are loaded
+  // only for the ones that can be re-encoded, so that the compaction converges.
+  public int compactHistory(int id) {
+    Integer seq = repository.findHistorySeqForUpdate(id);
+    if (seq == null) {
+      return 0;
+    }
+    int compactedSeq = repository.findHistoryCompactedSeq(id);
+    List<ApiResponse> histories = repository.findAllHistoryKeysById(id);
+    Set<Integer> baseSubIds = histories.stream()
+        .map(ApiResponse::getBaseSubId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    HistoryContent snapshot = null;
+    int snapshotSubId = 0;
+    int deltaCount = 0;
+    int compactedCount = 0;
+    for (ApiResponse history : histories) {
+      if (history.getBaseSubId() != null) {
+        if (history.getBaseSubId() != snapshotSubId) {
+          snapshotSubId = history.getBaseSubId();
+          snapshot = null;
+          deltaCount = 0;
+        }
+        deltaCount++;
+        continue;
+      }
+      if (snapshotSubId != 0 && history.getSubId() > compactedSeq && deltaCount + 1 < snapshotInterval
+          && !baseSubIds.contains(history.getSubId())) {
+        if (snapshot == null) {
+          snapshot = HistoryContent.of(repository.findHistoryContent(id, snapshotSubId));
+        }
+        HistoryContent content = HistoryContent.of(repository.findHistoryContent(id, history.getSubId()));
+        HistoryContent delta = content.diff(snapshot);
+        if (isSmallEnough(delta, content)) {
+          history.setBaseSubId(snapshotSubId);
+          delta.applyTo(history);
+          repository.updateHistoryContent(history);
+          deltaCount++;
+          compactedCount++;
+          continue;
+        }
+        snapshot = content;
+      } else {
+        snapshot = null;
+      }
+      snapshotSubId = history.getSubId();
+      deltaCount = 0;
+    }
+    repository.updateHistoryCompactedSeq(id, seq);
+    return compactedCount;
+  }
+
+  // Delete the attachment files that neither the responses nor the histories reference,
+  // e.g. the ones left by the histories deleted with the retention
+  @Transactional(readOnly = true)
+  public int deleteUnreferencedAttachmentFiles() {
+    if (attachmentStore == null) {
+      return 0;
+    }
+    Set<String> references = new HashSet<>(repository.findAllAttachmentFileRefs());
+    try {
+      return attachmentStore.deleteUnreferenced(references::contains);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Transactional(readOnly = true)
+  public List<Integer> findIdsForHistoryRetention(Integer maxCount, LocalDateTime expiredAt, LocalDateTime thinnedAt) {
+    return repository.findIdsHavingHistoriesOutOfRetention(maxCount, expiredAt, thinnedAt);
+  }
+
+  // Delete up to the limit of histories that are out of the retention. The deltas and the snapshots that no
+  // remaining history is based on are deleted at once, and the other snapshots are deleted with rebasing.
+  public int deleteHistoriesOutOfRetention(int id, Integer maxCount, LocalDateTime expiredAt, LocalDateTime thinnedAt, int limit) {
+    if (repository.findHistorySeqForUpdate(id) == null) {
+      return 0;
+    }
+    List<ApiResponse> histories = repository.findHistoryKeysOutOfRetention(id, maxCount, expiredAt, thinnedAt, new RowBounds(0, limit));
+    List<Integer> deltaSubIds = histories.stream()
+        .filter(history -> history.getBaseSubId() != null)
+        .map(ApiResponse::getSubId)
         .collect(Collectors.toList());
+    if (!deltaSubIds.isEmpty()) {
+      repository.deleteHistories(id, deltaSubIds);
+    }
+    List<Integer> snapshotSubIds = new ArrayList<>();
+    histories.stream()
+        .filter(history -> history.getBaseSubId() == null)
+        .map(ApiResponse::getSubId)
+        .forEach(subId -> {
+          if (repository.findHistorySubIdsByBase(id, subId).isEmpty()) {
+            snapshotSubIds.add(subId);
+          } else {
+            deleteHistory(id, subId);
+          }
+        });
+    if (!snapshotSubIds.isEmpty()) {
+      repository.deleteHistories(id, snapshotSubIds);
+    }
+    return histories.size();
+  }
+
+  // Save the current state as a new history. The body and the attachment file are saved as the deltas from
+  // the latest snapshot, unless the snapshot interval is reached or the deltas are not small enough.
+  private void saveHistory(int id) {
+    repository.incrementHistorySeq(id);
+    ApiResponse history = repository.findOne(id);
+    history.setSubId(repository.findHistorySeqForUpdate(id));
+    ApiResponse snapshot = repository.findLatestHistorySnapshot(id);
+    if (snapshot != null && repository.findHistorySubIdsByBase(id, snapshot.getSubId()).size() + 1 < snapshotInterval) {
+      HistoryContent content = HistoryContent.of(history);
+      HistoryContent delta = content.diff(HistoryContent.of(snapshot));
+      if (isSmallEnough(delta, content)) {
+        history.setBaseSubId(snapshot.getSubId());
+        delta.applyTo(history);
+      } else {
+        content.applyTo(history);
+      }
+    }
+    repository.createHistory(history);
+  }
+
+  private boolean isSmallEnough(HistoryContent delta, HistoryContent content) {
+    return delta.size() * 2 < content.size();
+  }
+
+  private void digestBody(ApiResponse mockResponse) {
+    if (mockResponse.getBody() == null) {
+      mockResponse.setBodyDigest(null);
+      return;
+    }
+    byte[] body;
+    try (InputStream in = mockResponse.getBody()) {
+      body = StreamUtils.copyToByteArray(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    mockResponse.setBody(new ByteArrayInputStream(body));
+    mockResponse.setBodyDigest(Sha256.digestAsHex(body));
+  }
+
+  private void storeAttachmentFile(ApiResponse mockResponse) {
+    if (attachmentStore == null || mockResponse.getAttachmentFile() == null) {
+      return;
+    }
+    try (InputStream attachmentFile = mockResponse.getAttachmentFile()) {
+      mockResponse.setAttachmentFileRef(attachmentStore.store(attachmentFile));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    mockResponse.setAttachmentFile(null);
+  }
+
+  // The files are deleted after the commit, because the deletion of the rows may be rolled back
+  private void deleteAttachmentFilesIfUnreferenced(List<String> references) {
+    if (attachmentStore == null) {
+      return;
+    }
+    List<String> unreferenced = references.stream()
+        .filter(reference -> repository.countByAttachmentFileRef(reference) == 0)
+        .collect(Collectors.toList());
+    if (unreferenced.isEmpty()) {
+      return;
+    }
+    SearchIndex.afterCommit(() -> unreferenced.forEach(reference -> {
+      try {
+        attachmentStore.delete(reference);
+      } catch (IOException e) {
+        log.warn("Could not delete an attachment file. reference = " + reference, e);
+      }
+    }));
+  }
+
+  private ApiResponse loadAttachmentFile(ApiResponse mockResponse) {
+    if (mockResponse == null || mockResponse.getAttachmentFileRef() == null) {
+      return mockResponse;
+    }
+    try {
+      mockResponse.setAttachmentFile(loadAttachmentFile(mockResponse.getAttachmentFileRef()).getInputStream());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return mockResponse;
   }
 
 }
@@ -15,35 +15,66 @@
  */
 package com.kazuki43zoo.apistub.domain.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import com.kazuki43zoo.apistub.domain.model.Scenario;
 import com.kazuki43zoo.apistub.domain.repository.ApiRepository;
-import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Transactional
 @Service
 public class ApiService {
-  private static final Pageable pageableForExport = PageRequest.of(0, Integer.MAX_VALUE);
   private final ApiRepository repository;
   private final PathMatcher pathMatcher;
+  private final BatchSupport batchSupport;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ObjectMapper objectMapper;
+  private final CountCache countCache = new CountCache();
+  private final SearchIndex searchIndex;
 
   @Value("${api.root-path:/api}")
   private String rootPath;
 
-  public ApiService(ApiRepository repository, PathMatcher pathMatcher) {
+  @Value("${apistub.domain.pagination.count-cache-ttl-sec:60}")
+  private long countCacheTtlSec;
+
+  @Value("${apistub.domain.search-index.max-candidates:1000}")
+  private int maxSearchCandidates;
+
+  public ApiService(ApiRepository repository, PathMatcher pathMatcher, BatchSupport batchSupport,
+                    ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper) {
     this.repository = repository;
     this.pathMatcher = pathMatcher;
+    this.batchSupport = batchSupport;
+    this.eventPublisher = eventPublisher;
+    this.objectMapper = objectMapper;
+    this.searchIndex = new SearchIndex(2, () -> eventPublisher.publishEvent(new SearchIndexStaleEvent()));
   }
 
   public Api findOne(String path, String method) {
@@ -66,11 +97,21 @@ public class ApiService {
     return repository.findOne(id);
   }
 
-  public Page<Api> findAll(String path, String method, String description, Pageable pageable) {
-    long count = repository.count(path, method, description);
+  public Page<Api> findAll(String path, String method, String description, Pageable pageable, Integer after, Integer before) {
+    int[] candidates = searchIndex.find(maxSearchCandidates,
+        () -> repository.count(null, null, null, null), repository::findMaxId,
+        StringUtils.hasLength(path) ? path : null, StringUtils.hasLength(description) ? description : null);
+    if (candidates != null && candidates.length == 0) {
+      return new PageImpl<>(Collections.emptyList(), pageable, 0);
+    }
+    List<Integer> ids = candidates != null ? IntStream.of(candidates).boxed().collect(Collectors.toList()) : null;
+    long count = countCache.get(Arrays.asList(path, method, description), TimeUnit.SECONDS.toMillis(countCacheTtlSec),
+        () -> repository.count(path, method, description, ids));
     List<Api> content;
     if (count != 0) {
-      content = repository.findPage(path, method, description, new RowBounds(Long.valueOf(pageable.getOffset()).intValue(), Long.valueOf(pageable.getPageSize()).intValue()));
+      PageQuery<Api> query = (afterKey, beforeKey, offset, limit) ->
+          repository.findPage(path, method, description, ids, afterKey, beforeKey, offset, limit);
+      content = query.find(pageable, after, before, repository::findKeyById);
     } else {
       content = Collections.emptyList();
     }
@@ -81,14 +122,87 @@ public class ApiService {
     newApi.setPath(newApi.getPath().replace(rootPath, ""));
     repository.create(newApi);
     repository.createProxy(newApi);
+    countCache.clear();
+    SearchIndex.afterCommit(() -> {
+      searchIndex.add(newApi.getId(), newApi.getPath(), newApi.getDescription());
+      eventPublisher.publishEvent(new ApiChangedEvent(null, newApi));
+    });
   }
 
   public void update(int id, Api newApi) {
     newApi.setId(id);
+    Api api = repository.findOne(id);
     repository.update(newApi);
     if (!repository.updateProxy(newApi)) {
       repository.createProxy(newApi);
     }
+    countCache.clear();
+    if (api != null) {
+      SearchIndex.afterCommit(() -> {
+        searchIndex.remove(id, api.getPath(), api.getDescription());
+        searchIndex.add(id, api.getPath(), newApi.getDescription());
+        eventPublisher.publishEvent(new ApiChangedEvent(api, newApi));
+      });
+    }
+  }
+
+  // Upsert the apis with JDBC batches, and commit per chunk. A chunk including an invalid scenario is not committed,
+  // because the stub would fail on every request matched to the api.
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void importAll(Iterator<Api> newApis, boolean override, ImportProgress progress) {
+    ApiRepository batchRepository = batchSupport.getMapper(ApiRepository.class);
+    batchSupport.executeInChunks(newApis, chunk -> {
+      chunk.forEach(this::validateScenario);
+      List<Api> creatingApis = new ArrayList<>();
+      List<Api> updatingApis = new ArrayList<>();
+      List<Api> indexingApis = new ArrayList<>();
+      List<ApiChangedEvent> events = new ArrayList<>();
+      Set<String> keys = new HashSet<>();
+      int maxId = batchRepository.findMaxId();
+      for (Api newApi : chunk) {
+        newApi.setPath(newApi.getPath().replace(rootPath, ""));
+        Integer id = batchRepository.findIdByUk(newApi.getPath(), newApi.getMethod());
+        boolean exists = id != null || !keys.add(newApi.getPath() + " " + newApi.getMethod().toUpperCase());
+        if (!exists) {
+          creatingApis.add(newApi);
+        } else if (override) {
+          updatingApis.add(newApi);
+          if (id != null) {
+            newApi.setId(id);
+            indexingApis.add(newApi);
+            events.add(new ApiChangedEvent(batchRepository.findOne(id), newApi));
+          }
+        }
+      }
+      creatingApis.forEach(batchRepository::createInBatch);
+      updatingApis.forEach(batchRepository::updateByUk);
+      creatingApis.forEach(batchRepository::mergeProxyByUk);
+      updatingApis.forEach(batchRepository::mergeProxyByUk);
+      // The created apis are read back for their ids, and the old values of the updated apis are left in the index
+      if (!creatingApis.isEmpty()) {
+        indexingApis.addAll(batchRepository.findAllForSearchIndexAfter(maxId));
+      }
+      return () -> {
+        indexingApis.forEach(e -> searchIndex.add(e.getId(), e.getPath(), e.getDescription()));
+        creatingApis.forEach(e -> events.add(new ApiChangedEvent(null, e)));
+        events.forEach(eventPublisher::publishEvent);
+        countCache.clear();
+        progress.add(creatingApis.size(), updatingApis.size(),
+            chunk.size() - creatingApis.size() - updatingApis.size());
+      };
+    });
+  }
+
+  private void validateScenario(Api api) {
+    if (!StringUtils.hasText(api.getScenario())) {
+      return;
+    }
+    try {
+      objectMapper.readValue(api.getScenario(), Scenario.class).validate();
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("The scenario is not valid. path = " + api.getPath()
+          + ", method = " + api.getMethod() + ", cause: " + e.getMessage(), e);
+    }
   }
 
   public void delete(List<Integer> ids) {
@@ -96,14 +210,47 @@ public class ApiService {
   }
 
   public void delete(int id) {
+    Api api = repository.findOne(id);
     repository.delete(id);
     repository.deleteProxy(id);
+    countCache.clear();
+    if (api != null) {
+      SearchIndex.afterCommit(() -> {
+        searchIndex.remove(id, api.getPath(), api.getDescription());
+        eventPublisher.publishEvent(new ApiChangedEvent(api, null));
+      });
+    }
+  }
+
+  // Pass the apis to the action one by one while the cursor is open
+  @Transactional(readOnly = true)
+  public void exportAll(Consumer<Api> action) {
+    try (Cursor<Api> apis = repository.findAllForExport()) {
+      apis.forEach(action);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Load all apis into a new search index while the cursor is open, and return the number of them
+  @Transactional(readOnly = true)
+  public int loadSearchIndex() {
+    AtomicInteger count = new AtomicInteger();
+    searchIndex.load(index -> {
+      try (Cursor<Api> apis = repository.findAllForSearchIndex()) {
+        apis.forEach(api -> {
+          index.add(api.getId(), api.getPath(), api.getDescription());
+          count.incrementAndGet();
+        });
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    return count.get();
   }
 
-  public List<Api> findAllForExport() {
-    return findAll(null, null, null, pageableForExport).getContent().stream()
-        .map(api -> repository.findOne(api.getId()))
-        .collect(Collectors.toList());
+  public int getSearchIndexTrigramCount() {
+    return searchIndex.getTrigramCount();
   }
 
 }
@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+@Component
+public class BatchSupport {
+
+  private final SqlSessionTemplate batchSqlSession;
+  private final TransactionTemplate transactionTemplate;
+
+  @Value("${apistub.domain.import.batch-size:500}")
+  private int batchSize;
+
+  public BatchSupport(SqlSessionFactory sqlSessionFactory, PlatformTransactionManager transactionManager) {
+    this.batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  // Return the mapper that sends the updates as JDBC batches (a query flushes the pending updates)
+  public <T> T getMapper(Class<T> type) {
+    return batchSqlSession.getMapper(type);
+  }
+
+  // Process the items per chunk, and commit each chunk in its own transaction.
+  // The chunk processor returns the action that is performed after the commit.
+  public <T> void executeInChunks(Iterator<T> items, Function<List<T>, Runnable> chunkProcessor) {
+    List<T> chunk = new ArrayList<>(batchSize);
+    while (items.hasNext()) {
+      chunk.add(items.next());
+      if (chunk.size() >= batchSize) {
+        execute(chunk, chunkProcessor);
+        chunk = new ArrayList<>(batchSize);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      execute(chunk, chunkProcessor);
+    }
+  }
+
+  private <T> void execute(List<T> chunk, Function<List<T>, Runnable> chunkProcessor) {
+    Runnable afterCommit = transactionTemplate.execute(status -> {
+      Runnable action = chunkProcessor.apply(chunk);
+      batchSqlSession.flushStatements();
+      return action;
+    });
+    if (afterCommit != null) {
+      afterCommit.run();
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// The total counts of the list screens, that are kept for a while to avoid counting all rows on every page
+final class CountCache {
+
+  private static final int MAX_ENTRIES = 256;
+
+  private final Map<List<?>, Entry> entries = new ConcurrentHashMap<>();
+
+  long get(List<?> conditions, long ttlMillis, LongSupplier counter) {
+    if (ttlMillis <= 0) {
+      return counter.getAsLong();
+    }
+    long now = System.currentTimeMillis();
+    Entry entry = entries.get(conditions);
+    if (entry == null || entry.expiresAt <= now) {
+      if (entries.size() >= MAX_ENTRIES) {
+        entries.values().removeIf(e -> e.expiresAt <= now);
+      }
+      entry = new Entry(counter.getAsLong(), now + ttlMillis);
+      if (entries.size() < MAX_ENTRIES) {
+        entries.put(conditions, entry);
+      }
+    }
+    return entry.count;
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  private static final class Entry {
+    private final long count;
+    private final long expiresAt;
+
+    private Entry(long count, long expiresAt) {
+      this.count = count;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
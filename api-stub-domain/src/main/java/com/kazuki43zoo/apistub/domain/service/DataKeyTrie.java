@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.KeyGeneratingStrategy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The trie of the data keys of an API over the segments delimited by KeyGeneratingStrategy.KEY_DELIMITER.
+// A blank or "*" segment of a data key matches any segment, and a data key with fewer segments than a request key
+// matches it as a prefix unless all of its segments are wildcards.
+//
+// The most specific data key is resolved in one walk: an exact segment is preferred to a wildcard,
+// a wildcard is preferred to the end of a prefix, and they are compared from the first segment.
+final class DataKeyTrie {
+
+  private static final String WILDCARD = "*";
+
+  private final Node root = new Node();
+
+  DataKeyTrie(Iterable<String> dataKeys) {
+    dataKeys.forEach(this::add);
+  }
+
+  private void add(String dataKey) {
+    Node node = root;
+    boolean prefix = false;
+    for (String segment : segments(dataKey)) {
+      if (segment.isEmpty() || WILDCARD.equals(segment)) {
+        if (node.wildcard == null) {
+          node.wildcard = new Node();
+        }
+        node = node.wildcard;
+      } else {
+        node = node.children.computeIfAbsent(segment, k -> new Node());
+        prefix = true;
+      }
+    }
+    node.dataKey = dataKey;
+    node.prefix = prefix;
+  }
+
+  // Return the most specific data key matching with the request key, or null when no data key matches
+  String match(String requestKey) {
+    return match(root, segments(requestKey), 0);
+  }
+
+  private String match(Node node, List<String> segments, int depth) {
+    if (depth == segments.size()) {
+      return node.dataKey;
+    }
+    String dataKey = null;
+    Node child = node.children.get(segments.get(depth));
+    if (child != null) {
+      dataKey = match(child, segments, depth + 1);
+    }
+    if (dataKey == null && node.wildcard != null) {
+      dataKey = match(node.wildcard, segments, depth + 1);
+    }
+    if (dataKey == null && node.prefix) {
+      dataKey = node.dataKey;
+    }
+    return dataKey;
+  }
+
+  // An empty key is a key of one blank segment, that is the default data key of a key of one segment
+  private static List<String> segments(String key) {
+    return key.isEmpty() ? Collections.singletonList("") : KeyGeneratingStrategy.split(key);
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private Node wildcard;
+    private String dataKey;
+    private boolean prefix;
+  }
+
+}
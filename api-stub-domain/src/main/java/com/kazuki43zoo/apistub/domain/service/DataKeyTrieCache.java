@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.util.LruCache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// The data key tries of the APIs, that are built on the first partial match of an API and discarded on its changes.
+// The tries are keyed by the path patterns of the APIs, and the least recently used one is evicted when the number
+// of the tries exceeds the maximum.
+// A trie built while a change is committed is not kept, because it may have been built from the old data keys.
+final class DataKeyTrieCache {
+
+  private static final int MAX_ENTRIES = 1024;
+
+  private final LruCache<List<String>, DataKeyTrie> tries = new LruCache<>(MAX_ENTRIES);
+  private final AtomicLong generation = new AtomicLong();
+
+  DataKeyTrie get(String path, String method, Supplier<List<String>> loader) {
+    List<String> api = Arrays.asList(path, method.toUpperCase());
+    DataKeyTrie trie = tries.get(api);
+    if (trie == null) {
+      long loadingGeneration = generation.get();
+      trie = new DataKeyTrie(loader.get());
+      if (generation.get() == loadingGeneration && tries.putIfAbsent(api, trie) == null
+          && generation.get() != loadingGeneration) {
+        tries.remove(api, trie);
+      }
+    }
+    return trie;
+  }
+
+  void invalidate(String path, String method) {
+    generation.incrementAndGet();
+    tries.remove(Arrays.asList(path, method.toUpperCase()));
+  }
+
+}
@@ -0,0 +1,214 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Enforce the retention of the response histories, compact the remaining ones and delete the attachment files
+// left unreferenced periodically on the background thread. The results are exposed as JMX attributes.
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=HistoryCompactor")
+public class HistoryCompactor {
+
+  private static final Logger log = LoggerFactory.getLogger(HistoryCompactor.class);
+
+  private final ApiResponseService apiResponseService;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "api-stub-history-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicLong runCount = new AtomicLong();
+  private final AtomicLong deletedCount = new AtomicLong();
+  private final AtomicLong compactedCount = new AtomicLong();
+  private final AtomicLong deletedAttachmentFileCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private volatile long lastDeletedCount;
+  private volatile long lastCompactedCount;
+  private volatile long lastDeletedAttachmentFileCount;
+  private volatile long lastElapsedMsec;
+  private volatile LocalDateTime lastRunAt;
+
+  @Value("${apistub.domain.history.compaction-interval-sec:3600}")
+  private long compactionIntervalSec;
+
+  @Value("${apistub.domain.history.retention.max-count:0}")
+  private int maxCount;
+
+  @Value("${apistub.domain.history.retention.max-age-days:0}")
+  private int maxAgeDays;
+
+  @Value("${apistub.domain.history.retention.daily-after-days:0}")
+  private int dailyAfterDays;
+
+  @Value("${apistub.domain.history.retention.batch-size:500}")
+  private int batchSize;
+
+  public HistoryCompactor(ApiResponseService apiResponseService) {
+    this.apiResponseService = apiResponseService;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (compactionIntervalSec > 0) {
+      executor.scheduleWithFixedDelay(this::run, compactionIntervalSec, compactionIntervalSec, TimeUnit.SECONDS);
+    }
+  }
+
+  @ManagedOperation
+  public synchronized void run() {
+    long start = System.currentTimeMillis();
+    long deleted = deleteHistoriesOutOfRetention();
+    long compacted = compact();
+    long deletedAttachmentFiles = deleteUnreferencedAttachmentFiles();
+    lastDeletedCount = deleted;
+    lastCompactedCount = compacted;
+    lastDeletedAttachmentFileCount = deletedAttachmentFiles;
+    lastElapsedMsec = System.currentTimeMillis() - start;
+    lastRunAt = LocalDateTime.now();
+    deletedCount.addAndGet(deleted);
+    compactedCount.addAndGet(compacted);
+    deletedAttachmentFileCount.addAndGet(deletedAttachmentFiles);
+    runCount.incrementAndGet();
+    if (deleted > 0 || compacted > 0) {
+      log.info("{} histories have been deleted by the retention and {} histories have been compacted into deltas in {} msec.",
+          deleted, compacted, lastElapsedMsec);
+    }
+    if (deletedAttachmentFiles > 0) {
+      log.info("{} attachment files have been deleted because no response references them.", deletedAttachmentFiles);
+    }
+  }
+
+  // Each batch of deletion is performed in its own transaction
+  private long deleteHistoriesOutOfRetention() {
+    Integer maxCount = this.maxCount > 0 ? this.maxCount : null;
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime expiredAt = maxAgeDays > 0 ? now.minusDays(maxAgeDays) : null;
+    LocalDateTime thinnedAt = dailyAfterDays > 0 ? now.minusDays(dailyAfterDays) : null;
+    if (maxCount == null && expiredAt == null && thinnedAt == null) {
+      return 0;
+    }
+    long deleted = 0;
+    for (int id : apiResponseService.findIdsForHistoryRetention(maxCount, expiredAt, thinnedAt)) {
+      try {
+        int count;
+        do {
+          count = apiResponseService.deleteHistoriesOutOfRetention(id, maxCount, expiredAt, thinnedAt, batchSize);
+          deleted += count;
+        } while (count >= batchSize);
+      } catch (RuntimeException e) {
+        failureCount.incrementAndGet();
+        log.warn("Could not delete the histories out of the retention. id = " + id, e);
+      }
+    }
+    return deleted;
+  }
+
+  // Each response is compacted in its own transaction
+  private long compact() {
+    long compacted = 0;
+    for (int id : apiResponseService.findIdsForHistoryCompaction()) {
+      try {
+        compacted += apiResponseService.compactHistory(id);
+      } catch (RuntimeException e) {
+        failureCount.incrementAndGet();
+        log.warn("Could not compact the histories. id = " + id, e);
+      }
+    }
+    return compacted;
+  }
+
+  // The attachment files are deleted after the histories referencing them are deleted by the retention
+  private long deleteUnreferencedAttachmentFiles() {
+    try {
+      return apiResponseService.deleteUnreferencedAttachmentFiles();
+    } catch (RuntimeException e) {
+      failureCount.incrementAndGet();
+      log.warn("Could not delete the unreferenced attachment files.", e);
+      return 0;
+    }
+  }
+
+  @ManagedAttribute
+  public long getRunCount() {
+    return runCount.get();
+  }
+
+  @ManagedAttribute
+  public long getDeletedCount() {
+    return deletedCount.get();
+  }
+
+  @ManagedAttribute
+  public long getCompactedCount() {
+    return compactedCount.get();
+  }
+
+  @ManagedAttribute
+  public long getDeletedAttachmentFileCount() {
+    return deletedAttachmentFileCount.get();
+  }
+
+  @ManagedAttribute
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  @ManagedAttribute
+  public long getLastDeletedCount() {
+    return lastDeletedCount;
+  }
+
+  @ManagedAttribute
+  public long getLastCompactedCount() {
+    return lastCompactedCount;
+  }
+
+  @ManagedAttribute
+  public long getLastDeletedAttachmentFileCount() {
+    return lastDeletedAttachmentFileCount;
+  }
+
+  @ManagedAttribute
+  public long getLastElapsedMsec() {
+    return lastElapsedMsec;
+  }
+
+  @ManagedAttribute
+  public String getLastRunAt() {
+    return lastRunAt == null ? null : lastRunAt.toString();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.util.BinaryDelta;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+// The body and the attachment file of a history, that are full contents or deltas from a snapshot
+final class HistoryContent {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private final byte[] body;
+  private final byte[] attachmentFile;
+
+  private HistoryContent(byte[] body, byte[] attachmentFile) {
+    this.body = body;
+    this.attachmentFile = attachmentFile;
+  }
+
+  static HistoryContent of(ApiResponse history) {
+    return new HistoryContent(read(history.getBody()), read(history.getAttachmentFile()));
+  }
+
+  HistoryContent diff(HistoryContent snapshot) {
+    return new HistoryContent(diff(snapshot.body, body), diff(snapshot.attachmentFile, attachmentFile));
+  }
+
+  HistoryContent patch(HistoryContent snapshot) {
+    return new HistoryContent(patch(snapshot.body, body), patch(snapshot.attachmentFile, attachmentFile));
+  }
+
+  long size() {
+    return (body == null ? 0 : body.length) + (attachmentFile == null ? 0 : attachmentFile.length);
+  }
+
+  void applyTo(ApiResponse history) {
+    history.setBody(body == null ? null : new ByteArrayInputStream(body));
+    history.setAttachmentFile(attachmentFile == null ? null : new ByteArrayInputStream(attachmentFile));
+  }
+
+  private static byte[] diff(byte[] source, byte[] target) {
+    return target == null ? null : BinaryDelta.diff(source == null ? EMPTY : source, target);
+  }
+
+  private static byte[] patch(byte[] source, byte[] delta) {
+    return delta == null ? null : BinaryDelta.patch(source == null ? EMPTY : source, delta);
+  }
+
+  private static byte[] read(InputStream in) {
+    if (in == null) {
+      return null;
+    }
+    try (InputStream stream = in) {
+      return StreamUtils.copyToByteArray(stream);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.LatencyProfile;
+import com.kazuki43zoo.apistub.domain.model.LatencyStatistics;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Service
+public class LatencyStatisticsService {
+
+  private static final double[] PERCENTS = {50, 90, 99, 99.9};
+
+  private final ConcurrentMap<Integer, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+  public void record(int id, long latencyMsec) {
+    LatencyHistogram histogram = histograms.get(id);
+    if (histogram == null) {
+      histogram = histograms.computeIfAbsent(id, k -> new LatencyHistogram());
+    }
+    histogram.record(latencyMsec);
+  }
+
+  public void clear(int id) {
+    histograms.remove(id);
+  }
+
+  public LatencyStatistics findStatistics(ApiResponse apiResponse) {
+    long[] configured;
+    try {
+      configured = LatencyProfile.of(apiResponse).percentiles(PERCENTS);
+    } catch (IllegalArgumentException e) {
+      configured = null;
+    }
+    LatencyHistogram histogram = histograms.get(apiResponse.getId());
+    long observedCount = histogram == null ? 0 : histogram.getTotalCount();
+    List<LatencyStatistics.Percentile> percentiles = new ArrayList<>();
+    for (int i = 0; i < PERCENTS.length; i++) {
+      percentiles.add(new LatencyStatistics.Percentile(toName(PERCENTS[i]),
+          configured == null ? null : configured[i],
+          observedCount == 0 ? null : histogram.percentile(PERCENTS[i])));
+    }
+    return new LatencyStatistics(observedCount, percentiles);
+  }
+
+  private static String toName(double percent) {
+    return "p" + (percent == Math.rint(percent) ? String.valueOf((long) percent) : String.valueOf(percent));
+  }
+
+}
@@ -0,0 +1,420 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import com.kazuki43zoo.apistub.domain.util.Sha256;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Apply the definition files of a directory to the apis and the responses, and watch the directory to apply
+// the changed files only. The definitions are read from the json files under the "apis" and "responses" directories,
+// that have an object or an array of objects in the export format.
+//
+// The definitions of a changed file are upserted by the import of the services, that update the indexes of the
+// changed rows only, and the definitions removed from a file are deleted unless another file defines them, in which
+// case the definitions of the other file are imported again.
+// The events are gathered until the quiet period passes, so that the files changed by a "git pull" are applied
+// at once. The results are exposed as JMX attributes.
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=MockSourceWatcher")
+public class MockSourceWatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(MockSourceWatcher.class);
+
+  private static final String APIS_DIRECTORY = "apis";
+  private static final String RESPONSES_DIRECTORY = "responses";
+  private static final String FILE_EXTENSION = ".json";
+
+  private final ApiService apiService;
+  private final ApiResponseService apiResponseService;
+  private final ObjectMapper objectMapper;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "api-stub-mock-source-watcher");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final Map<Path, Source> sources = new HashMap<>();
+  private final Map<List<String>, Integer> definedCounts = new HashMap<>();
+  private final AtomicLong applyCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private volatile WatchService watchService;
+  private volatile int lastFileCount;
+  private volatile long lastElapsedMsec;
+  private volatile LocalDateTime lastAppliedAt;
+
+  @Value("${apistub.domain.mock-source.dir:}")
+  private String dir;
+
+  @Value("${apistub.domain.mock-source.quiet-period-msec:200}")
+  private long quietPeriodMsec;
+
+  public MockSourceWatcher(ApiService apiService, ApiResponseService apiResponseService, ObjectMapper objectMapper) {
+    this.apiService = apiService;
+    this.apiResponseService = apiResponseService;
+    this.objectMapper = objectMapper;
+  }
+
+  // Start after the application is ready because the database schema is migrated on startup
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!StringUtils.hasLength(dir)) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        watchService = FileSystems.getDefault().newWatchService();
+        register(Paths.get(dir));
+        rescan();
+        watch();
+      } catch (IOException e) {
+        log.warn("Could not watch the mock source. dir = " + dir, e);
+      }
+    });
+  }
+
+  private void watch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watchService.take();
+        Set<Path> changedFiles = new LinkedHashSet<>();
+        boolean overflowed = false;
+        do {
+          overflowed |= collect(key, changedFiles);
+          key = watchService.poll(quietPeriodMsec, TimeUnit.MILLISECONDS);
+        } while (key != null);
+        if (overflowed) {
+          rescan();
+        } else {
+          apply(changedFiles);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // NOP
+    }
+  }
+
+  // Return true when some events have been lost
+  private boolean collect(WatchKey key, Set<Path> changedFiles) {
+    Path directory = directories.get(key);
+    boolean overflowed = directory == null;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+        overflowed = true;
+        continue;
+      }
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+        try {
+          register(path);
+          changedFiles.addAll(listFiles(path));
+        } catch (IOException | UncheckedIOException e) {
+          overflowed = true;
+        }
+      } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+        // A moved directory has no events of its files
+        changedFiles.add(path);
+        changedFiles.addAll(appliedFiles(path));
+      } else {
+        changedFiles.add(path);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return overflowed;
+  }
+
+  // The applied files are read under the lock because they are changed by the rescan of JMX too
+  private synchronized List<Path> appliedFiles(Path root) {
+    return sources.keySet().stream().filter(e -> e.startsWith(root)).collect(Collectors.toList());
+  }
+
+  private void register(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+        directories.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), path);
+      }
+    }
+  }
+
+  private List<Path> listFiles(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  // Apply all files and the deletions of the files, that are skipped when they have not been changed
+  @ManagedOperation
+  public synchronized void rescan() {
+    if (!StringUtils.hasLength(dir)) {
+      return;
+    }
+    Set<Path> files = new LinkedHashSet<>(sources.keySet());
+    try {
+      files.addAll(listFiles(Paths.get(dir)));
+    } catch (IOException | UncheckedIOException e) {
+      failureCount.incrementAndGet();
+      log.warn("Could not list the mock source files. dir = " + dir, e);
+      return;
+    }
+    apply(files);
+  }
+
+  private synchronized void apply(Set<Path> files) {
+    long start = System.currentTimeMillis();
+    Map<Path, Source> changedSources = new HashMap<>();
+    List<Api> apis = new ArrayList<>();
+    List<ApiResponse> responses = new ArrayList<>();
+    for (Path file : files) {
+      String kind = kind(file);
+      if (kind == null) {
+        continue;
+      }
+      Source appliedSource = sources.get(file);
+      Source source;
+      try {
+        source = read(file, kind, appliedSource);
+      } catch (IOException | RuntimeException e) {
+        failureCount.incrementAndGet();
+        log.warn("Could not read the mock source file. file = " + file, e);
+        continue;
+      }
+      if (source == appliedSource) {
+        continue;
+      }
+      if (source != null) {
+        apis.addAll(source.apis);
+        responses.addAll(source.responses);
+      }
+      changedSources.put(file, source);
+    }
+    if (changedSources.isEmpty()) {
+      return;
+    }
+    ImportProgress progress = new ImportProgress();
+    try {
+      apiService.importAll(apis.iterator(), true, progress);
+      apiResponseService.importAll(responses.iterator(), true, progress);
+      redefine(define(changedSources), changedSources.values(), progress);
+    } catch (IOException | RuntimeException e) {
+      failureCount.incrementAndGet();
+      log.warn("Could not apply the mock source files. files = " + changedSources.keySet(), e);
+      return;
+    }
+    lastFileCount = changedSources.size();
+    lastElapsedMsec = System.currentTimeMillis() - start;
+    lastAppliedAt = LocalDateTime.now();
+    applyCount.incrementAndGet();
+    log.info("{} mock source files have been applied in {} msec. created = {}, updated = {}",
+        lastFileCount, lastElapsedMsec, progress.getCreated(), progress.getUpdated());
+  }
+
+  // Return the directory of the kind of a definition file, or null when the file is not a definition file
+  private String kind(Path file) {
+    Path relative = Paths.get(dir).relativize(file);
+    if (relative.getNameCount() < 2 || !relative.getFileName().toString().endsWith(FILE_EXTENSION)) {
+      return null;
+    }
+    String kind = relative.getName(0).toString();
+    return APIS_DIRECTORY.equals(kind) || RESPONSES_DIRECTORY.equals(kind) ? kind : null;
+  }
+
+  // Return null when the file has been deleted, and the applied source when the file has not been changed.
+  // The content is parsed only when the digest differs from the applied one.
+  private Source read(Path file, String kind, Source appliedSource) throws IOException {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    byte[] content = Files.readAllBytes(file);
+    String digest = Sha256.digestAsHex(content);
+    if (appliedSource != null && appliedSource.digest.equals(digest)) {
+      return appliedSource;
+    }
+    if (APIS_DIRECTORY.equals(kind)) {
+      return new Source(digest, objectMapper.readerFor(Api.class).<Api>readValues(content).readAll(), new ArrayList<>());
+    } else {
+      return new Source(digest,
+          new ArrayList<>(), objectMapper.readerFor(ApiResponse.class).<ApiResponse>readValues(content).readAll());
+    }
+  }
+
+  // Replace the definitions of the files, and delete the ones that are no longer defined by any file.
+  // The keys of all changed files are counted before the applied ones are released, so that a moved file keeps
+  // its definitions. The keys that are still defined by other files are returned to redefine because the changed
+  // files may have won them. The keys are taken after the import because the import normalizes the paths.
+  private Set<List<String>> define(Map<Path, Source> changedSources) {
+    List<Source> appliedSources = new ArrayList<>();
+    changedSources.forEach((file, source) -> {
+      Optional.ofNullable(source != null ? sources.put(file, source) : sources.remove(file)).ifPresent(appliedSources::add);
+      if (source != null) {
+        source.keys().forEach(key -> definedCounts.merge(key, 1, Integer::sum));
+      }
+    });
+    Set<List<String>> redefiningKeys = new LinkedHashSet<>();
+    for (Source appliedSource : appliedSources) {
+      for (List<String> key : appliedSource.keys()) {
+        if (definedCounts.merge(key, -1, Integer::sum) > 0) {
+          redefiningKeys.add(key);
+          continue;
+        }
+        definedCounts.remove(key);
+        if (key.size() == 3) {
+          Optional.ofNullable(apiService.findIdByUk(key.get(1), key.get(2))).ifPresent(apiService::delete);
+        } else {
+          Optional.ofNullable(apiResponseService.findIdByUk(key.get(1), key.get(2), key.get(3)))
+              .ifPresent(apiResponseService::delete);
+        }
+      }
+    }
+    return redefiningKeys;
+  }
+
+  // Import again the files that define the keys, except the changed files that have just been imported.
+  // The files are read again because the definitions are not kept.
+  private void redefine(Set<List<String>> keys, Collection<Source> changedSources, ImportProgress progress)
+      throws IOException {
+    changedSources.stream().filter(Objects::nonNull).forEach(e -> keys.removeAll(e.keys()));
+    List<Api> apis = new ArrayList<>();
+    List<ApiResponse> responses = new ArrayList<>();
+    for (Map.Entry<Path, Source> entry : sources.entrySet()) {
+      if (keys.isEmpty()) {
+        break;
+      }
+      if (!keys.removeAll(entry.getValue().keys())) {
+        continue;
+      }
+      Source source = read(entry.getKey(), kind(entry.getKey()), null);
+      if (source != null) {
+        apis.addAll(source.apis);
+        responses.addAll(source.responses);
+      }
+    }
+    apiService.importAll(apis.iterator(), true, progress);
+    apiResponseService.importAll(responses.iterator(), true, progress);
+  }
+
+  @ManagedAttribute
+  public long getApplyCount() {
+    return applyCount.get();
+  }
+
+  @ManagedAttribute
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  @ManagedAttribute
+  public synchronized int getFileCount() {
+    return sources.size();
+  }
+
+  @ManagedAttribute
+  public int getLastFileCount() {
+    return lastFileCount;
+  }
+
+  @ManagedAttribute
+  public long getLastElapsedMsec() {
+    return lastElapsedMsec;
+  }
+
+  @ManagedAttribute
+  public String getLastAppliedAt() {
+    return lastAppliedAt != null ? lastAppliedAt.toString() : null;
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException {
+    executor.shutdownNow();
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+
+  private static final class Source {
+    private final String digest;
+    private final List<Api> apis;
+    private final List<ApiResponse> responses;
+    private Set<List<String>> keys;
+
+    private Source(String digest, List<Api> apis, List<ApiResponse> responses) {
+      this.digest = digest;
+      this.apis = apis;
+      this.responses = responses;
+    }
+
+    // The definitions are not kept after the keys are taken
+    private Set<List<String>> keys() {
+      if (keys == null) {
+        keys = new HashSet<>();
+        apis.forEach(e -> keys.add(Arrays.asList(APIS_DIRECTORY, e.getPath(), e.getMethod().toUpperCase())));
+        responses.forEach(e -> keys.add(Arrays.asList(RESPONSES_DIRECTORY, e.getPath(), e.getMethod().toUpperCase(),
+            Optional.ofNullable(e.getDataKey()).orElse(""))));
+        apis.clear();
+        responses.clear();
+      }
+      return keys;
+    }
+  }
+
+}
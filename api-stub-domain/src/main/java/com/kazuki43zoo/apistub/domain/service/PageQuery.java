@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// The query of a list screen, that seeks from the keys of the anchor row or skips rows on the database side
+@FunctionalInterface
+interface PageQuery<T> {
+
+  // The rows after the anchor are returned in ascending order, and the rows before the anchor in descending order
+  List<T> find(T after, T before, long offset, int limit);
+
+  // Seek from the anchor row on moving to the next or previous page,
+  // and fall back to the offset of the page when the anchor row has been gone
+  default List<T> find(Pageable pageable, Integer after, Integer before, IntFunction<T> keyFinder) {
+    T anchor = after != null ? keyFinder.apply(after) : before != null ? keyFinder.apply(before) : null;
+    if (anchor != null) {
+      List<T> content = new ArrayList<>(
+          after != null ? find(anchor, null, 0, pageable.getPageSize()) : find(null, anchor, 0, pageable.getPageSize()));
+      if (!content.isEmpty()) {
+        if (after == null) {
+          Collections.reverse(content);
+        }
+        return content;
+      }
+    }
+    return find(null, null, pageable.getOffset(), pageable.getPageSize());
+  }
+
+}
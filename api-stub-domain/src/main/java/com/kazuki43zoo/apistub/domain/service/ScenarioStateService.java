@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.ScenarioState;
+import com.kazuki43zoo.apistub.domain.repository.ScenarioStateRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Transactional
+@Service
+public class ScenarioStateService {
+
+  private final ScenarioStateRepository repository;
+
+  public ScenarioStateService(ScenarioStateRepository repository) {
+    this.repository = repository;
+  }
+
+  public List<ScenarioState> findAll() {
+    return repository.findAll();
+  }
+
+  public void replaceAll(List<ScenarioState> scenarioStates) {
+    repository.deleteAll();
+    scenarioStates.forEach(repository::create);
+  }
+
+}
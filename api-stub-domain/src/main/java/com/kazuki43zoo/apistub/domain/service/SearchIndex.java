@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.util.TrigramIndex;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// The trigram index for the search of a list screen. The index is loaded into a new one and swapped with
+// the current one, and the changes while loading are applied to both of them.
+// The searches are not narrowed down until the first load completes, nor while the rows of the index differ from
+// the rows of the table because others (e.g. the H2 console) have inserted or deleted rows. The stale listener is
+// notified in that case to reload the index.
+final class SearchIndex {
+
+  private final int fieldCount;
+  private final Runnable staleListener;
+  private final Object monitor = new Object();
+  private volatile TrigramIndex current;
+  private TrigramIndex loading;
+
+  SearchIndex(int fieldCount, Runnable staleListener) {
+    this.fieldCount = fieldCount;
+    this.staleListener = staleListener;
+  }
+
+  void add(int id, String... values) {
+    synchronized (monitor) {
+      if (current != null) {
+        current.add(id, values);
+      }
+      if (loading != null) {
+        loading.add(id, values);
+      }
+    }
+  }
+
+  void remove(int id, String... values) {
+    synchronized (monitor) {
+      if (current != null) {
+        current.remove(id, values);
+      }
+      if (loading != null) {
+        loading.remove(id, values);
+      }
+    }
+  }
+
+  // Apply the change after the commit, so that a load started after that always reads the changed row
+  static void afterCommit(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          change.run();
+        }
+      });
+    } else {
+      change.run();
+    }
+  }
+
+  synchronized void load(Consumer<TrigramIndex> loader) {
+    TrigramIndex index = new TrigramIndex(fieldCount);
+    synchronized (monitor) {
+      loading = index;
+    }
+    try {
+      loader.accept(index);
+      synchronized (monitor) {
+        current = index;
+      }
+    } finally {
+      synchronized (monitor) {
+        loading = null;
+      }
+    }
+  }
+
+  // Return the ascending ids of the candidates, or null when the search cannot be narrowed down enough.
+  // The row count and the max id of the table are fetched only when the candidates are found.
+  int[] find(int maxCandidates, LongSupplier rowCount, IntSupplier maxId, String... patterns) {
+    TrigramIndex index = current;
+    if (index == null) {
+      return null;
+    }
+    int[] ids = index.candidates(patterns);
+    if (ids == null || ids.length > maxCandidates) {
+      return null;
+    }
+    if (index.getRowCount() != rowCount.getAsLong() || index.getMaxId() != maxId.getAsInt()) {
+      staleListener.run();
+      return null;
+    }
+    return ids;
+  }
+
+  int getTrigramCount() {
+    TrigramIndex index = current;
+    return index == null ? 0 : index.getTrigramCount();
+  }
+
+}
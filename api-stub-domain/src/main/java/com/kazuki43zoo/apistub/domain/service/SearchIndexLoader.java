@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load the search indexes of the apis and the responses on the background thread, and reload them periodically
+// to drop the stale trigrams and to pick up the rows updated by others. The rows inserted or deleted by others are
+// detected on searching, and the indexes are reloaded on demand then. The results are exposed as JMX attributes.
+@Component
+@ManagedResource(objectName = "com.kazuki43zoo.apistub:type=SearchIndexLoader")
+public class SearchIndexLoader {
+
+  private static final Logger log = LoggerFactory.getLogger(SearchIndexLoader.class);
+
+  private final ApiService apiService;
+  private final ApiResponseService apiResponseService;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "api-stub-search-index-loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicLong loadCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicBoolean reloadRequested = new AtomicBoolean();
+  private volatile int lastApiCount;
+  private volatile int lastResponseCount;
+  private volatile long lastElapsedMsec;
+  private volatile LocalDateTime lastLoadedAt;
+
+  @Value("${apistub.domain.search-index.enabled:true}")
+  private boolean enabled;
+
+  @Value("${apistub.domain.search-index.reload-interval-sec:300}")
+  private long reloadIntervalSec;
+
+  public SearchIndexLoader(ApiService apiService, ApiResponseService apiResponseService) {
+    this.apiService = apiService;
+    this.apiResponseService = apiResponseService;
+  }
+
+  // Load after the application is ready because the database schema is migrated on startup
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (reloadIntervalSec > 0) {
+      executor.scheduleWithFixedDelay(this::reload, 0, reloadIntervalSec, TimeUnit.SECONDS);
+    } else {
+      executor.execute(this::reload);
+    }
+  }
+
+  // The requests while a reload is waiting are merged into it
+  @EventListener
+  public void onSearchIndexStale(SearchIndexStaleEvent event) {
+    if (enabled && reloadRequested.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        reloadRequested.set(false);
+        reload();
+      });
+    }
+  }
+
+  @ManagedOperation
+  public synchronized void reload() {
+    long start = System.currentTimeMillis();
+    try {
+      lastApiCount = apiService.loadSearchIndex();
+      lastResponseCount = apiResponseService.loadSearchIndex();
+    } catch (RuntimeException e) {
+      failureCount.incrementAndGet();
+      log.warn("Could not load the search indexes.", e);
+      return;
+    }
+    lastElapsedMsec = System.currentTimeMillis() - start;
+    lastLoadedAt = LocalDateTime.now();
+    loadCount.incrementAndGet();
+    log.info("The search indexes of {} apis and {} responses have been loaded in {} msec.",
+        lastApiCount, lastResponseCount, lastElapsedMsec);
+  }
+
+  @ManagedAttribute
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  @ManagedAttribute
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  @ManagedAttribute
+  public int getLastApiCount() {
+    return lastApiCount;
+  }
+
+  @ManagedAttribute
+  public int getLastResponseCount() {
+    return lastResponseCount;
+  }
+
+  @ManagedAttribute
+  public int getApiTrigramCount() {
+    return apiService.getSearchIndexTrigramCount();
+  }
+
+  @ManagedAttribute
+  public int getResponseTrigramCount() {
+    return apiResponseService.getSearchIndexTrigramCount();
+  }
+
+  @ManagedAttribute
+  public long getLastElapsedMsec() {
+    return lastElapsedMsec;
+  }
+
+  @ManagedAttribute
+  public String getLastLoadedAt() {
+    return lastLoadedAt != null ? lastLoadedAt.toString() : null;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.store;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Predicate;
+
+public interface AttachmentStore {
+
+  // Store the content and return the reference that is saved into the database instead of the content
+  String store(InputStream content) throws IOException;
+
+  Resource load(String reference);
+
+  // Delete the content unless it has been stored recently, and return whether it has been deleted.
+  // The caller should ensure that the reference is no longer saved into the database.
+  boolean delete(String reference) throws IOException;
+
+  // Delete the contents that are not referenced and have not been stored recently, and return the number of them
+  int deleteUnreferenced(Predicate<String> referenced) throws IOException;
+
+}
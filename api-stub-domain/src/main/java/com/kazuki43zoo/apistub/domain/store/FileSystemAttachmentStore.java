@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.store;
+
+import com.kazuki43zoo.apistub.domain.util.Sha256;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Content addressed store that saves an attachment as '{dir}/{first 2 chars of sha-256}/{sha-256}'.
+// A content is stored before the reference is committed, so the contents stored or shared within the grace period
+// are never deleted even if no committed row references them yet.
+@ConditionalOnProperty(prefix = "apistub.domain.attachment-store", name = "dir")
+@Component
+public class FileSystemAttachmentStore implements AttachmentStore {
+
+  private static final Pattern REFERENCE_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+  private final Path dir;
+  private final long gracePeriodMsec;
+
+  public FileSystemAttachmentStore(@Value("${apistub.domain.attachment-store.dir}") String dir,
+                                   @Value("${apistub.domain.attachment-store.grace-period-sec:3600}") long gracePeriodSec) {
+    this.dir = Paths.get(dir).toAbsolutePath();
+    this.gracePeriodMsec = TimeUnit.SECONDS.toMillis(gracePeriodSec);
+    try {
+      Files.createDirectories(this.dir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public String store(InputStream content) throws IOException {
+    Path tempFile = Files.createTempFile(dir, "upload", ".tmp");
+    try {
+      MessageDigest digest = Sha256.newDigest();
+      try (InputStream in = new DigestInputStream(content, digest);
+           OutputStream out = Files.newOutputStream(tempFile)) {
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+          out.write(buffer, 0, length);
+        }
+      }
+      String reference = Sha256.toHex(digest.digest());
+      Path file = resolve(reference);
+      synchronized (this) {
+        if (Files.exists(file)) {
+          // The same content is shared by the same reference, and it is protected from the deletion again
+          Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+          Files.createDirectories(file.getParent());
+          Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        }
+      }
+      return reference;
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  @Override
+  public Resource load(String reference) {
+    if (!REFERENCE_PATTERN.matcher(reference).matches()) {
+      throw new IllegalArgumentException("Attachment reference is invalid. reference = " + reference);
+    }
+    return new FileSystemResource(resolve(reference).toFile());
+  }
+
+  @Override
+  public boolean delete(String reference) throws IOException {
+    if (!REFERENCE_PATTERN.matcher(reference).matches()) {
+      throw new IllegalArgumentException("Attachment reference is invalid. reference = " + reference);
+    }
+    return deleteIfExpired(resolve(reference), System.currentTimeMillis() - gracePeriodMsec);
+  }
+
+  @Override
+  public int deleteUnreferenced(Predicate<String> referenced) throws IOException {
+    long expiredAt = System.currentTimeMillis() - gracePeriodMsec;
+    int deleted = 0;
+    try (Stream<Path> files = Files.walk(dir, 2)) {
+      for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+        Path file = it.next();
+        String reference = file.getFileName().toString();
+        if (REFERENCE_PATTERN.matcher(reference).matches() && Files.isRegularFile(file)
+            && !referenced.test(reference) && deleteIfExpired(file, expiredAt)) {
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  // Checked and deleted exclusively with the storing, so that a content shared just now is never deleted
+  private synchronized boolean deleteIfExpired(Path file, long expiredAt) throws IOException {
+    try {
+      if (Files.getLastModifiedTime(file).toMillis() > expiredAt) {
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    return Files.deleteIfExists(file);
+  }
+
+  private Path resolve(String reference) {
+    return dir.resolve(reference.substring(0, 2)).resolve(reference);
+  }
+
+}
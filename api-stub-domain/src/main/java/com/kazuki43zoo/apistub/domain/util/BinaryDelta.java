@@ -0,0 +1,184 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import java.io.ByteArrayOutputStream;
+
+// A copy/insert binary delta. The source is indexed by the hash of its aligned blocks, and the target is scanned
+// with a rolling hash to find the blocks that can be copied from the source.
+//
+// format : version(1 byte) targetLength(varint) { COPY offset(varint) length(varint) | INSERT length(varint) bytes }*
+public final class BinaryDelta {
+
+  private static final int VERSION = 1;
+  private static final int COPY = 0;
+  private static final int INSERT = 1;
+  private static final int BLOCK_SIZE = 16;
+  private static final int PRIME = 31;
+  private static final int PRIME_POWER;
+
+  static {
+    int power = 1;
+    for (int i = 1; i < BLOCK_SIZE; i++) {
+      power *= PRIME;
+    }
+    PRIME_POWER = power;
+  }
+
+  private BinaryDelta() {
+    // NOP
+  }
+
+  public static byte[] diff(byte[] source, byte[] target) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, target.length / 8));
+    out.write(VERSION);
+    writeVarInt(out, target.length);
+    if (source.length < BLOCK_SIZE || target.length < BLOCK_SIZE) {
+      writeInsert(out, target, 0, target.length);
+      return out.toByteArray();
+    }
+    int bits = 32 - Integer.numberOfLeadingZeros(Math.max(16, source.length / BLOCK_SIZE * 2) - 1);
+    int[] index = new int[1 << bits];
+    for (int offset = 0; offset + BLOCK_SIZE <= source.length; offset += BLOCK_SIZE) {
+      int slot = slot(hash(source, offset), bits);
+      if (index[slot] == 0) {
+        index[slot] = offset + 1;
+      }
+    }
+    int insertStart = 0;
+    int position = 0;
+    int hash = hash(target, 0);
+    while (position + BLOCK_SIZE <= target.length) {
+      int candidate = index[slot(hash, bits)] - 1;
+      if (candidate >= 0 && matches(source, candidate, target, position)) {
+        int sourceStart = candidate;
+        int targetStart = position;
+        while (sourceStart > 0 && targetStart > insertStart && source[sourceStart - 1] == target[targetStart - 1]) {
+          sourceStart--;
+          targetStart--;
+        }
+        int sourceEnd = candidate + BLOCK_SIZE;
+        int targetEnd = position + BLOCK_SIZE;
+        while (sourceEnd < source.length && targetEnd < target.length && source[sourceEnd] == target[targetEnd]) {
+          sourceEnd++;
+          targetEnd++;
+        }
+        writeInsert(out, target, insertStart, targetStart);
+        out.write(COPY);
+        writeVarInt(out, sourceStart);
+        writeVarInt(out, sourceEnd - sourceStart);
+        position = targetEnd;
+        insertStart = targetEnd;
+        if (position + BLOCK_SIZE <= target.length) {
+          hash = hash(target, position);
+        }
+      } else {
+        if (position + BLOCK_SIZE < target.length) {
+          hash = (hash - (target[position] & 0xff) * PRIME_POWER) * PRIME + (target[position + BLOCK_SIZE] & 0xff);
+        }
+        position++;
+      }
+    }
+    writeInsert(out, target, insertStart, target.length);
+    return out.toByteArray();
+  }
+
+  public static byte[] patch(byte[] source, byte[] delta) {
+    int[] position = {0};
+    if (delta.length == 0 || delta[position[0]++] != VERSION) {
+      throw new IllegalArgumentException("Unsupported delta version.");
+    }
+    byte[] target = new byte[readVarInt(delta, position)];
+    int targetPosition = 0;
+    try {
+      while (position[0] < delta.length) {
+        int operation = delta[position[0]++];
+        if (operation == COPY) {
+          int offset = readVarInt(delta, position);
+          int length = readVarInt(delta, position);
+          System.arraycopy(source, offset, target, targetPosition, length);
+          targetPosition += length;
+        } else if (operation == INSERT) {
+          int length = readVarInt(delta, position);
+          System.arraycopy(delta, position[0], target, targetPosition, length);
+          position[0] += length;
+          targetPosition += length;
+        } else {
+          throw new IllegalArgumentException("Unknown delta operation. operation = " + operation);
+        }
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Delta is corrupted. an operation is out of bounds.", e);
+    }
+    if (targetPosition != target.length) {
+      throw new IllegalArgumentException("Delta is corrupted. expected length = " + target.length + ", actual length = " + targetPosition);
+    }
+    return target;
+  }
+
+  private static int hash(byte[] bytes, int offset) {
+    int hash = 0;
+    for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+      hash = hash * PRIME + (bytes[i] & 0xff);
+    }
+    return hash;
+  }
+
+  private static int slot(int hash, int bits) {
+    return (hash * 0x9E3779B1) >>> (32 - bits);
+  }
+
+  private static boolean matches(byte[] source, int sourceOffset, byte[] target, int targetOffset) {
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      if (source[sourceOffset + i] != target[targetOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeInsert(ByteArrayOutputStream out, byte[] bytes, int from, int to) {
+    if (from < to) {
+      out.write(INSERT);
+      writeVarInt(out, to - from);
+      out.write(bytes, from, to - from);
+    }
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(byte[] bytes, int[] position) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (position[0] >= bytes.length) {
+        throw new IllegalArgumentException("Delta is corrupted. varint is truncated.");
+      }
+      byte b = bytes[position[0]++];
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Delta is corrupted. varint is too long.");
+  }
+
+}
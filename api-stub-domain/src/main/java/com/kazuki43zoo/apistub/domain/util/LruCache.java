@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// A thread-safe cache that evicts the least recently used entry when the number of entries exceeds the maximum.
+// The accesses are serialized, so it suits the small caches that are looked up once per request.
+public final class LruCache<K, V> {
+
+  private final Map<K, V> entries;
+
+  public LruCache(int maxEntries) {
+    this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  public synchronized V get(K key) {
+    return entries.get(key);
+  }
+
+  public synchronized void put(K key, V value) {
+    entries.put(Objects.requireNonNull(key), Objects.requireNonNull(value));
+  }
+
+  // Return the current value, or null when the value has been put
+  public synchronized V putIfAbsent(K key, V value) {
+    return entries.putIfAbsent(Objects.requireNonNull(key), Objects.requireNonNull(value));
+  }
+
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+
+  public synchronized boolean remove(K key, V value) {
+    return entries.remove(key, value);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+}
@@ -0,0 +1,389 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// An in-memory trigram index of the text fields of rows. The candidates of regular expressions are narrowed down
+// with the trigrams of the literals that any matching text must contain, and should be verified with the expressions.
+//
+// The texts are indexed in lower case and the trigrams are hashed, so the candidates may contain false positives
+// but never miss a matching row that has been indexed with its current texts. The stale trigrams of a row only add
+// false positives as well. The ids of the indexed rows are tracked, so that the rows inserted or deleted without
+// this index can be detected by the row count and the max id, but the rows updated without it cannot.
+public final class TrigramIndex {
+
+  private static final int[] NO_IDS = new int[0];
+
+  private final int fieldCount;
+  private final Map<Integer, Postings> postings = new HashMap<>();
+  private final BitSet rows = new BitSet();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public TrigramIndex(int fieldCount) {
+    this.fieldCount = fieldCount;
+  }
+
+  // The values are given in the order of the fields, and a null value is not indexed
+  public void add(int id, String... values) {
+    int[] trigrams = trigrams(values);
+    lock.writeLock().lock();
+    try {
+      rows.set(id);
+      for (int trigram : trigrams) {
+        postings.computeIfAbsent(trigram, k -> new Postings()).add(id);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(int id, String... values) {
+    int[] trigrams = trigrams(values);
+    lock.writeLock().lock();
+    try {
+      rows.clear(id);
+      for (int trigram : trigrams) {
+        Postings ids = postings.get(trigram);
+        if (ids != null && ids.remove(id) && ids.size == 0) {
+          postings.remove(trigram);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Return the ascending ids of the candidates, or null when the patterns cannot narrow down the candidates.
+  // The patterns are given in the order of the fields, and a null pattern matches any value.
+  public int[] candidates(String... patterns) {
+    List<Integer> trigrams = new ArrayList<>();
+    for (int field = 0; field < patterns.length; field++) {
+      if (patterns[field] == null) {
+        continue;
+      }
+      for (String literal : requiredLiterals(patterns[field])) {
+        for (int trigram : trigrams(field, literal)) {
+          trigrams.add(trigram);
+        }
+      }
+    }
+    if (trigrams.isEmpty()) {
+      return null;
+    }
+    lock.readLock().lock();
+    try {
+      List<Postings> lists = new ArrayList<>(trigrams.size());
+      for (int trigram : trigrams) {
+        Postings ids = postings.get(trigram);
+        if (ids == null) {
+          return NO_IDS;
+        }
+        lists.add(ids);
+      }
+      lists.sort(Comparator.comparingInt(e -> e.size));
+      int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+      int size = result.length;
+      for (int i = 1; i < lists.size() && size > 0; i++) {
+        size = lists.get(i).retainIn(result, size);
+      }
+      return Arrays.copyOf(result, size);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getRowCount() {
+    lock.readLock().lock();
+    try {
+      return rows.cardinality();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Return 0 when no row is indexed
+  public int getMaxId() {
+    lock.readLock().lock();
+    try {
+      return Math.max(rows.length() - 1, 0);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getTrigramCount() {
+    lock.readLock().lock();
+    try {
+      return postings.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Extract the literals that any text matching the regular expression must contain.
+  // The groups, the character classes and the optional characters are skipped, and
+  // an expression with alternations, inline flags or quotations yields no literal.
+  public static List<String> requiredLiterals(String regex) {
+    List<String> literals = new ArrayList<>();
+    if (regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q")) {
+      return literals;
+    }
+    StringBuilder literal = new StringBuilder();
+    int length = regex.length();
+    int i = 0;
+    while (i < length) {
+      char c = regex.charAt(i);
+      switch (c) {
+        case '\\':
+          if (i + 1 >= length) {
+            return new ArrayList<>();
+          }
+          char escaped = regex.charAt(i + 1);
+          if (Character.isLetterOrDigit(escaped)) {
+            if ("dDsSwWbBAzZGtnrfae".indexOf(escaped) < 0) {
+              return new ArrayList<>();
+            }
+            flush(literal, literals);
+          } else {
+            literal.append(escaped);
+          }
+          i += 2;
+          break;
+        case '[':
+          flush(literal, literals);
+          i = skipClass(regex, i);
+          break;
+        case '(':
+          flush(literal, literals);
+          i = skipGroup(regex, i);
+          break;
+        case '*':
+        case '?':
+        case '{':
+          // The preceding character may not appear
+          if (literal.length() > 0) {
+            literal.setLength(literal.length() - 1);
+          }
+          flush(literal, literals);
+          i = skipQuantifier(regex, i);
+          break;
+        case '+':
+          // The preceding character may be repeated
+          flush(literal, literals);
+          i = skipQuantifier(regex, i);
+          break;
+        case '.':
+        case '^':
+        case '$':
+          flush(literal, literals);
+          i++;
+          break;
+        case ')':
+        case ']':
+        case '}':
+          return new ArrayList<>();
+        default:
+          literal.append(c);
+          i++;
+      }
+      if (i < 0) {
+        return new ArrayList<>();
+      }
+    }
+    flush(literal, literals);
+    return literals;
+  }
+
+  private static void flush(StringBuilder literal, List<String> literals) {
+    if (literal.length() >= 3) {
+      literals.add(literal.toString());
+    }
+    literal.setLength(0);
+  }
+
+  private static int skipClass(String regex, int start) {
+    int i = start + 1;
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < regex.length() && regex.charAt(i) == ']') {
+      i++;
+    }
+    int depth = 1;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i += 2;
+        continue;
+      }
+      if (c == '[') {
+        depth++;
+      } else if (c == ']' && --depth == 0) {
+        return i + 1;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  private static int skipGroup(String regex, int start) {
+    int depth = 0;
+    int i = start;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i += 2;
+        continue;
+      }
+      if (c == '[') {
+        i = skipClass(regex, i);
+        if (i < 0) {
+          return -1;
+        }
+        continue;
+      }
+      if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i + 1;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  private static int skipQuantifier(String regex, int start) {
+    int i = start;
+    if (regex.charAt(i) == '{') {
+      i = regex.indexOf('}', i);
+      if (i < 0) {
+        return -1;
+      }
+    }
+    i++;
+    // Skip the reluctant or possessive modifier
+    if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+      i++;
+    }
+    return i;
+  }
+
+  private int[] trigrams(String... values) {
+    if (values.length != fieldCount) {
+      throw new IllegalArgumentException("The number of values must be " + fieldCount + ". values: " + values.length);
+    }
+    int[] trigrams = NO_IDS;
+    for (int field = 0; field < values.length; field++) {
+      if (values[field] != null) {
+        int[] fieldTrigrams = trigrams(field, values[field]);
+        int length = trigrams.length;
+        trigrams = Arrays.copyOf(trigrams, length + fieldTrigrams.length);
+        System.arraycopy(fieldTrigrams, 0, trigrams, length, fieldTrigrams.length);
+      }
+    }
+    Arrays.sort(trigrams);
+    int size = 0;
+    for (int i = 0; i < trigrams.length; i++) {
+      if (size == 0 || trigrams[size - 1] != trigrams[i]) {
+        trigrams[size++] = trigrams[i];
+      }
+    }
+    return Arrays.copyOf(trigrams, size);
+  }
+
+  private static int[] trigrams(int field, String value) {
+    String text = value.toLowerCase(Locale.ROOT);
+    if (text.length() < 3) {
+      return NO_IDS;
+    }
+    int[] trigrams = new int[text.length() - 2];
+    for (int i = 0; i < trigrams.length; i++) {
+      int hash = field;
+      hash = hash * 65599 + text.charAt(i);
+      hash = hash * 65599 + text.charAt(i + 1);
+      hash = hash * 65599 + text.charAt(i + 2);
+      trigrams[i] = hash;
+    }
+    return trigrams;
+  }
+
+  // The ascending ids that contain a trigram. The ids are mostly appended because they are generated in order.
+  private static final class Postings {
+    private int[] ids = new int[4];
+    private int size;
+
+    private void add(int id) {
+      if (size > 0 && ids[size - 1] >= id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+          return;
+        }
+        insert(-index - 1, id);
+        return;
+      }
+      insert(size, id);
+    }
+
+    private void insert(int index, int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      System.arraycopy(ids, index, ids, index + 1, size - index);
+      ids[index] = id;
+      size++;
+    }
+
+    private boolean remove(int id) {
+      int index = Arrays.binarySearch(ids, 0, size, id);
+      if (index < 0) {
+        return false;
+      }
+      System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+      size--;
+      if (size > 4 && size < ids.length / 4) {
+        ids = Arrays.copyOf(ids, ids.length / 2);
+      }
+      return true;
+    }
+
+    // Keep the ids of the array that are contained in this postings, and return the number of them
+    private int retainIn(int[] candidates, int length) {
+      int kept = 0;
+      int from = 0;
+      for (int i = 0; i < length; i++) {
+        int index = Arrays.binarySearch(ids, from, size, candidates[i]);
+        if (index >= 0) {
+          candidates[kept++] = candidates[i];
+          from = index + 1;
+        } else {
+          from = -index - 1;
+        }
+      }
+      return kept;
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FaultProfileTests {
+
+  @Test
+  public void testEmpty() {
+    assertThat(FaultProfile.of(null).isEmpty()).isTrue();
+    assertThat(FaultProfile.of(" , ").isEmpty()).isTrue();
+    assertThat(FaultProfile.of("RANDOM_5XX=0").isEmpty()).isTrue();
+    assertThat(FaultProfile.of(null).select(0)).isNull();
+  }
+
+  @Test
+  public void testSelect() {
+    FaultProfile profile = FaultProfile.of(" ABRUPT_CLOSE = 0.1 , RANDOM_5XX=0.2");
+    assertThat(profile.isEmpty()).isFalse();
+    assertThat(profile.select(0)).isEqualTo(FaultType.ABRUPT_CLOSE);
+    assertThat(profile.select(0.099)).isEqualTo(FaultType.ABRUPT_CLOSE);
+    assertThat(profile.select(0.1)).isEqualTo(FaultType.RANDOM_5XX);
+    assertThat(profile.select(0.299)).isEqualTo(FaultType.RANDOM_5XX);
+    assertThat(profile.select(0.31)).isNull();
+    assertThat(profile.select(0.999)).isNull();
+  }
+
+  @Test
+  public void testTotalIsOne() {
+    FaultProfile profile = FaultProfile.of("EMPTY_REPLY=0.7,STALLED_BODY=0.3");
+    assertThat(profile.select(0.69)).isEqualTo(FaultType.EMPTY_REPLY);
+    assertThat(profile.select(0.999999)).isEqualTo(FaultType.STALLED_BODY);
+  }
+
+  @Test
+  public void testParseErrors() {
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The fault must be specified as 'TYPE=probability'. fault: RANDOM_5XX");
+    assertThatThrownBy(() -> FaultProfile.of("UNKNOWN=0.1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The fault type is unknown. type: UNKNOWN");
+    assertThatThrownBy(() -> FaultProfile.of("random_5xx=0.1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The fault type is unknown. type: random_5xx");
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX=often"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The probability must be a number. fault: RANDOM_5XX=often");
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX=1.5"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The probability must be between 0 and 1. fault: RANDOM_5XX=1.5");
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX=-0.1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The probability must be between 0 and 1. fault: RANDOM_5XX=-0.1");
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX=NaN"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The probability must be between 0 and 1. fault: RANDOM_5XX=NaN");
+    assertThatThrownBy(() -> FaultProfile.of("RANDOM_5XX=0.6,EMPTY_REPLY=0.6"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The total of probabilities must be less than or equal to 1.");
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyProfileTests {
+
+  @Test
+  public void testFixed() {
+    assertThat(LatencyProfile.of(null, null, 100L).sample(new Random())).isEqualTo(100);
+    assertThat(LatencyProfile.of(LatencyDistribution.FIXED, "value=200", 100L).sample(new Random())).isEqualTo(200);
+    assertThat(LatencyProfile.of(LatencyDistribution.FIXED, null, null).sample(new Random())).isEqualTo(0);
+  }
+
+  @Test
+  public void testUniform() {
+    LatencyProfile profile = LatencyProfile.of(LatencyDistribution.UNIFORM, "min=100, max=200", null);
+    assertThat(profile.sample(fixed(0))).isEqualTo(100);
+    assertThat(profile.sample(fixed(0.5))).isEqualTo(150);
+    assertThat(profile.percentiles(50)[0]).isCloseTo(150, within(5L));
+  }
+
+  @Test
+  public void testPercentileInterpolation() {
+    LatencyProfile profile = LatencyProfile.of(LatencyDistribution.PERCENTILE, "p50=100,p90=500,p100=1000", null);
+    // The latency below the lowest percentile is interpolated from 0
+    assertThat(profile.sample(fixed(0))).isEqualTo(0);
+    assertThat(profile.sample(fixed(0.25))).isEqualTo(50);
+    assertThat(profile.sample(fixed(0.5))).isEqualTo(100);
+    assertThat(profile.sample(fixed(0.7))).isEqualTo(300);
+    assertThat(profile.sample(fixed(0.95))).isEqualTo(750);
+    assertThat(profile.sample(fixed(0.999999))).isEqualTo(1000);
+  }
+
+  @Test
+  public void testPercentileBeyondHighestPercentile() {
+    LatencyProfile profile = LatencyProfile.of(LatencyDistribution.PERCENTILE, "p0=10,p50=20", null);
+    assertThat(profile.sample(fixed(0))).isEqualTo(10);
+    assertThat(profile.sample(fixed(0.25))).isEqualTo(15);
+    assertThat(profile.sample(fixed(0.75))).isEqualTo(20);
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyProfile profile = LatencyProfile.of(LatencyDistribution.PERCENTILE, "p50=100,p99=800,p99.9=2000", null);
+    long[] percentiles = profile.percentiles(50, 99, 100);
+    assertThat(percentiles[0]).isCloseTo(100, within(5L));
+    assertThat(percentiles[1]).isCloseTo(800, within(50L));
+    assertThat(percentiles[2]).isLessThanOrEqualTo(2000);
+    assertThat(profile.percentiles(50)).isEqualTo(profile.percentiles(50));
+  }
+
+  @Test
+  public void testNegativeLatencyIsZero() {
+    LatencyProfile profile = LatencyProfile.of(LatencyDistribution.NORMAL, "mean=10,stddev=100", null);
+    for (int i = 0; i < 100; i++) {
+      assertThat(profile.sample(new Random(i))).isGreaterThanOrEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testInvalidParameters() {
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.UNIFORM, "min=100", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The 'max' parameter is required.");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.UNIFORM, "min=200,max=100", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The 'min' must be less than or equal to 'max'.");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.LOG_NORMAL, "median=0,sigma=1", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The 'median' must be greater than 0.");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.NORMAL, "mean", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The parameter format must be 'name=value'. parameter: mean");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.NORMAL, "mean=a,stddev=1", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The parameter value must be a number. parameter: mean=a");
+  }
+
+  @Test
+  public void testInvalidPercentiles() {
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.PERCENTILE, "", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("Specify one or more percentiles.");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.PERCENTILE, "q50=100", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The percentile name must start with 'p'. name: q50");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.PERCENTILE, "p101=100", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The percentile must be between 0 and 100. name: p101");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.PERCENTILE, "p50=100,p50.0=200", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The same percentile is specified more than once. percentile: 50.0");
+    assertThatThrownBy(() -> LatencyProfile.of(LatencyDistribution.PERCENTILE, "p50=100,p90=50", null))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("The latency of a higher percentile must be greater than or equal to");
+  }
+
+  private static Random fixed(double value) {
+    return new Random() {
+      @Override
+      public double nextDouble() {
+        return value;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ResponseVariantsTests {
+
+  @Test
+  public void testRoundRobin() {
+    ResponseVariants variants = ResponseVariants.of(VariantStrategy.ROUND_ROBIN, "@self=2, error=1");
+    StringBuilder selected = new StringBuilder();
+    for (long sequence = 0; sequence < 6; sequence++) {
+      selected.append(variants.select(sequence, 0)).append(" ");
+    }
+    assertThat(selected.toString()).isEqualTo("@self @self error @self @self error ");
+  }
+
+  @Test
+  public void testSequenceUsesLastVariantAfterCountsAreConsumed() {
+    ResponseVariants variants = ResponseVariants.of(VariantStrategy.SEQUENCE, "first,second=2,last");
+    StringBuilder selected = new StringBuilder();
+    for (long sequence = 0; sequence < 6; sequence++) {
+      selected.append(variants.select(sequence, 0)).append(" ");
+    }
+    assertThat(selected.toString()).isEqualTo("first second second last last last ");
+  }
+
+  @Test
+  public void testWeighted() {
+    ResponseVariants variants = ResponseVariants.of(VariantStrategy.WEIGHTED, "@self=3,error=1");
+    assertThat(variants.select(0, 0)).isEqualTo("@self");
+    assertThat(variants.select(0, 2)).isEqualTo("@self");
+    assertThat(variants.select(0, 3)).isEqualTo("error");
+    assertThat(variants.select(0, 4)).isEqualTo("@self");
+    assertThat(variants.select(0, Long.MAX_VALUE)).isEqualTo("error");
+
+    Map<String, Integer> counts = new HashMap<>();
+    for (long random = 0; random < 4000; random++) {
+      counts.merge(variants.select(0, random * 7919), 1, Integer::sum);
+    }
+    assertThat(counts).containsEntry("@self", 3000).containsEntry("error", 1000);
+  }
+
+  @Test
+  public void testWeightIsOneWhenNotSpecified() {
+    ResponseVariants variants = ResponseVariants.of(VariantStrategy.ROUND_ROBIN, "a, ,b,");
+    assertThat(variants.select(0, 0)).isEqualTo("a");
+    assertThat(variants.select(1, 0)).isEqualTo("b");
+    assertThat(variants.select(2, 0)).isEqualTo("a");
+    assertThat(variants.getStrategy()).isEqualTo(VariantStrategy.ROUND_ROBIN);
+  }
+
+  @Test
+  public void testDataKeyContainingSeparator() {
+    ResponseVariants variants = ResponseVariants.of(VariantStrategy.SEQUENCE, "key=a=2,b");
+    assertThat(variants.select(1, 0)).isEqualTo("key=a");
+    assertThat(variants.select(2, 0)).isEqualTo("b");
+  }
+
+  @Test
+  public void testInvalidVariants() {
+    assertThatThrownBy(() -> ResponseVariants.of(null, "a"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The variant strategy is required.");
+    assertThatThrownBy(() -> ResponseVariants.of(VariantStrategy.WEIGHTED, " , "))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("Specify one or more variants.");
+    assertThatThrownBy(() -> ResponseVariants.of(VariantStrategy.WEIGHTED, "a=x"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The weight or count must be an integer. variant: a=x");
+    assertThatThrownBy(() -> ResponseVariants.of(VariantStrategy.WEIGHTED, "a=0"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The weight or count must be greater than 0. variant: a=0");
+    assertThatThrownBy(() -> ResponseVariants.of(VariantStrategy.WEIGHTED, "a=9223372036854775807,b=1"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("The total of weights or counts is too large.");
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.repository.ApiResponseRepository;
+import com.kazuki43zoo.apistub.domain.store.AttachmentStore;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApiResponseServiceTests {
+
+  private final ApiResponseRepository repository = mock(ApiResponseRepository.class);
+  @SuppressWarnings("unchecked")
+  private final ApiResponseService service = new ApiResponseService(repository, mock(LatencyStatisticsService.class),
+      mock(ObjectProvider.class), mock(BatchSupport.class), mock(ApplicationEventPublisher.class));
+
+  @Test
+  public void testFindOneByPartialKeyWithTrieOfApi() {
+    when(repository.findDataKeysByPathAndMethod("/users/{id}", "GET")).thenReturn(Arrays.asList("1/*", "/"));
+    when(repository.findOneByUk("/users/{id}", "GET", "1/*")).thenReturn(response(5));
+
+    // The trie is built once for the api, not for each concrete path
+    for (int i = 0; i < 100; i++) {
+      assertThat(service.findOne("/users/" + i, "/users/{id}", "GET", "1/x").getId()).isEqualTo(5);
+    }
+    verify(repository, times(1)).findDataKeysByPathAndMethod(anyString(), anyString());
+    verify(repository, never()).findDataKeysByPathAndMethod(eq("/users/1"), anyString());
+  }
+
+  @Test
+  public void testFindOneByDefaultKeyOfConcretePath() {
+    when(repository.findOneByUk("/users/1", "GET", "/")).thenReturn(response(7));
+    when(repository.findOneByUk("/users/{id}", "GET", "1/*")).thenReturn(response(5));
+    when(repository.findDataKeysByPathAndMethod("/users/{id}", "GET")).thenReturn(Arrays.asList("1/*"));
+
+    assertThat(service.findOne("/users/1", "/users/{id}", "GET", "1/x").getId()).isEqualTo(7);
+    assertThat(service.findOne("/users/2", "/users/{id}", "GET", "1/x").getId()).isEqualTo(5);
+    assertThat(service.findOne("/users/2", "/users/{id}", "GET", "2/x").getId()).isZero();
+  }
+
+  @Test
+  public void testFindOneByPartialKeyWithoutApi() {
+    when(repository.findDataKeysByPathAndMethod("/variants", "GET")).thenReturn(Arrays.asList("a"));
+    when(repository.findOneByUk("/variants", "GET", "a")).thenReturn(response(9));
+
+    assertThat(service.findOne("/variants", null, "GET", "a/b").getId()).isEqualTo(9);
+  }
+
+  @Test
+  public void testDeleteRemovesUnreferencedAttachmentFiles() throws IOException {
+    AttachmentStore attachmentStore = mock(AttachmentStore.class);
+    ApiResponseService service = new ApiResponseService(repository, mock(LatencyStatisticsService.class),
+        provider(attachmentStore), mock(BatchSupport.class), mock(ApplicationEventPublisher.class));
+    ApiResponse mockResponse = response(1);
+    mockResponse.setPath("/attachments");
+    mockResponse.setMethod("GET");
+    mockResponse.setDataKey("");
+    when(repository.findOne(1)).thenReturn(mockResponse);
+    when(repository.findAttachmentFileRefsById(1)).thenReturn(Arrays.asList("own", "shared"));
+    when(repository.countByAttachmentFileRef("shared")).thenReturn(1L);
+
+    service.delete(1);
+
+    verify(attachmentStore).delete("own");
+    verify(attachmentStore, never()).delete("shared");
+  }
+
+  @Test
+  public void testRestoreHistoryRemovesUnreferencedAttachmentFile() throws IOException {
+    AttachmentStore attachmentStore = mock(AttachmentStore.class);
+    ApiResponseService service = new ApiResponseService(repository, mock(LatencyStatisticsService.class),
+        provider(attachmentStore), mock(BatchSupport.class), mock(ApplicationEventPublisher.class));
+    ApiResponse current = response(1);
+    current.setPath("/attachments");
+    current.setMethod("GET");
+    current.setDataKey("");
+    current.setAttachmentFileRef("current");
+    ApiResponse history = response(1);
+    history.setAttachmentFileRef("restored");
+    when(repository.findOne(1)).thenReturn(current);
+    when(repository.findHistory(1, 2)).thenReturn(history);
+
+    service.restoreHistory(1, 2);
+
+    verify(repository).update(current);
+    assertThat(current.getAttachmentFileRef()).isEqualTo("restored");
+    verify(attachmentStore).delete("current");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDeleteUnreferencedAttachmentFiles() throws IOException {
+    AttachmentStore attachmentStore = mock(AttachmentStore.class);
+    ApiResponseService service = new ApiResponseService(repository, mock(LatencyStatisticsService.class),
+        provider(attachmentStore), mock(BatchSupport.class), mock(ApplicationEventPublisher.class));
+    when(repository.findAllAttachmentFileRefs()).thenReturn(Arrays.asList("a", "b"));
+    when(attachmentStore.deleteUnreferenced(any())).thenAnswer(invocation -> {
+      Predicate<String> referenced = invocation.getArgument(0);
+      assertThat(new HashSet<>(Arrays.asList("a", "b", "c")).stream().filter(referenced.negate())).containsOnly("c");
+      return 1;
+    });
+
+    assertThat(service.deleteUnreferencedAttachmentFiles()).isEqualTo(1);
+    assertThat(this.service.deleteUnreferencedAttachmentFiles()).isZero();
+  }
+
+  @Test
+  public void testDeleteHistoriesOutOfRetention() throws IOException {
+    LocalDateTime expiredAt = LocalDateTime.now();
+    when(repository.findHistorySeqForUpdate(1)).thenReturn(5);
+    // The snapshot 1 is depended on by the remaining delta 3, and the snapshot 4 is not depended on
+    when(repository.findHistoryKeysOutOfRetention(eq(1), eq(null), eq(expiredAt), eq(null), any()))
+        .thenReturn(Arrays.asList(history(1, null), history(2, 1), history(4, null)));
+    when(repository.findHistorySubIdsByBase(1, 1)).thenReturn(Collections.singletonList(3));
+    when(repository.findHistorySubIdsByBase(1, 4)).thenReturn(Collections.emptyList());
+    ApiResponse snapshot = history(1, null);
+    snapshot.setBody(new ByteArrayInputStream("snapshot body".getBytes(StandardCharsets.UTF_8)));
+    ApiResponse dependent = history(3, 1);
+    dependent.setBody(new ByteArrayInputStream("dependent body".getBytes(StandardCharsets.UTF_8)));
+    HistoryContent.of(dependent).diff(HistoryContent.of(history(1, null, "snapshot body"))).applyTo(dependent);
+    when(repository.findHistoryContent(1, 1)).thenReturn(snapshot);
+    when(repository.findHistoryContent(1, 3)).thenReturn(dependent);
+
+    assertThat(service.deleteHistoriesOutOfRetention(1, null, expiredAt, null, 10)).isEqualTo(3);
+
+    // The deltas and the snapshot that is not depended on are deleted at once
+    verify(repository).deleteHistories(1, Collections.singletonList(2));
+    verify(repository).deleteHistories(1, Collections.singletonList(4));
+    // The dependent of the other snapshot is rebased as a new snapshot before the deletion
+    verify(repository).updateHistoryContent(dependent);
+    assertThat(dependent.getBaseSubId()).isNull();
+    assertThat(StreamUtils.copyToString(dependent.getBody(), StandardCharsets.UTF_8)).isEqualTo("dependent body");
+    verify(repository).deleteHistory(1, 1);
+  }
+
+  @Test
+  public void testDeleteHistoriesOutOfRetentionOfDeletedResponse() {
+    when(repository.findHistorySeqForUpdate(1)).thenReturn(null);
+
+    assertThat(service.deleteHistoriesOutOfRetention(1, 2, null, null, 10)).isZero();
+    verify(repository, never()).findHistoryKeysOutOfRetention(anyInt(), any(), any(), any(), any());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ObjectProvider<AttachmentStore> provider(AttachmentStore attachmentStore) {
+    ObjectProvider<AttachmentStore> provider = mock(ObjectProvider.class);
+    when(provider.getIfAvailable()).thenReturn(attachmentStore);
+    return provider;
+  }
+
+  private static ApiResponse history(int subId, Integer baseSubId) {
+    ApiResponse history = response(1);
+    history.setSubId(subId);
+    history.setBaseSubId(baseSubId);
+    return history;
+  }
+
+  private static ApiResponse history(int subId, Integer baseSubId, String body) {
+    ApiResponse history = history(subId, baseSubId);
+    history.setBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    return history;
+  }
+
+  private static ApiResponse response(int id) {
+    ApiResponse response = new ApiResponse();
+    response.setId(id);
+    return response;
+  }
+
+}
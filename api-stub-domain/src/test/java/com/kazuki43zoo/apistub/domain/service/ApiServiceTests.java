@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import com.kazuki43zoo.apistub.domain.repository.ApiRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApiServiceTests {
+
+  private static final String VALID_SCENARIO = "{\"name\":\"login\",\"initialState\":\"logged-out\","
+      + "\"states\":{\"logged-out\":{\"next\":\"logged-in\"},\"logged-in\":{}}}";
+
+  private final ApiRepository repository = mock(ApiRepository.class);
+  private final ApiRepository batchRepository = mock(ApiRepository.class);
+  private final BatchSupport batchSupport = mock(BatchSupport.class);
+  private final ApiService service = new ApiService(repository, new AntPathMatcher(), batchSupport,
+      mock(ApplicationEventPublisher.class), new ObjectMapper());
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    ReflectionTestUtils.setField(service, "rootPath", "/api");
+    when(batchSupport.getMapper(ApiRepository.class)).thenReturn(batchRepository);
+    when(batchRepository.findIdByUk(anyString(), anyString())).thenReturn(null);
+    // Each chunk has a single api
+    doAnswer(invocation -> {
+      Iterator<Api> apis = invocation.getArgument(0);
+      Function<List<Api>, Runnable> chunkProcessor = invocation.getArgument(1);
+      while (apis.hasNext()) {
+        List<Api> chunk = new ArrayList<>();
+        chunk.add(apis.next());
+        chunkProcessor.apply(chunk).run();
+      }
+      return null;
+    }).when(batchSupport).executeInChunks(any(), any());
+  }
+
+  @Test
+  public void testImportValidScenario() {
+    Api api = api("/login", VALID_SCENARIO);
+
+    service.importAll(Arrays.asList(api, api("/logout", null)).iterator(), true, new ImportProgress());
+
+    verify(batchRepository).createInBatch(api);
+  }
+
+  @Test
+  public void testImportInvalidScenario() {
+    Api valid = api("/login", VALID_SCENARIO);
+    Api brokenJson = api("/broken", "{\"name\":");
+    Api undefinedState = api("/undefined", VALID_SCENARIO.replace("\"next\":\"logged-in\"", "\"next\":\"unknown\""));
+
+    assertThatThrownBy(() -> service.importAll(Arrays.asList(valid, brokenJson).iterator(), true, new ImportProgress()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("path = /broken, method = GET");
+    assertThatThrownBy(() -> service.importAll(Arrays.asList(undefinedState).iterator(), true, new ImportProgress()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("The 'next' is not defined in the states.");
+
+    // The chunks before the invalid one are kept
+    verify(batchRepository).createInBatch(valid);
+    verify(batchRepository, never()).createInBatch(brokenJson);
+    verify(batchRepository, never()).createInBatch(undefinedState);
+  }
+
+  private static Api api(String path, String scenario) {
+    Api api = new Api();
+    api.setPath(path);
+    api.setMethod("GET");
+    api.setScenario(scenario);
+    return api;
+  }
+
+}
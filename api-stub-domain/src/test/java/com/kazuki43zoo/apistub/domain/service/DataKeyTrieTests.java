@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataKeyTrieTests {
+
+  @Test
+  public void testExactIsPreferredToWildcard() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("1/a", "1/*", "*/a", "*/*"));
+
+    assertThat(trie.match("1/a")).isEqualTo("1/a");
+    assertThat(trie.match("1/b")).isEqualTo("1/*");
+    assertThat(trie.match("2/a")).isEqualTo("*/a");
+    assertThat(trie.match("2/b")).isEqualTo("*/*");
+  }
+
+  @Test
+  public void testWildcardIsPreferredToPrefix() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("1", "1/*", "2", "2/*/c"));
+
+    assertThat(trie.match("1/b")).isEqualTo("1/*");
+    assertThat(trie.match("1/b/c")).isEqualTo("1/*");
+    assertThat(trie.match("1")).isEqualTo("1");
+    assertThat(trie.match("2/b/c")).isEqualTo("2/*/c");
+    assertThat(trie.match("2/b/d")).isEqualTo("2");
+    assertThat(trie.match("3/b")).isNull();
+  }
+
+  @Test
+  public void testPrecedenceIsComparedFromFirstSegment() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("1/*/*", "*/b/c"));
+
+    assertThat(trie.match("1/b/c")).isEqualTo("1/*/*");
+    assertThat(trie.match("2/b/c")).isEqualTo("*/b/c");
+    assertThat(trie.match("2/b/d")).isNull();
+  }
+
+  @Test
+  public void testBacktrackToWildcard() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("1/a/z", "*/a/c"));
+
+    assertThat(trie.match("1/a/c")).isEqualTo("*/a/c");
+    assertThat(trie.match("1/a/z")).isEqualTo("1/a/z");
+  }
+
+  @Test
+  public void testBlankSegmentIsWildcard() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("1//c"));
+
+    assertThat(trie.match("1/b/c")).isEqualTo("1//c");
+    assertThat(trie.match("1/b/d")).isNull();
+  }
+
+  @Test
+  public void testAllWildcardsDoNotMatchAsPrefix() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("*", "*/*"));
+
+    assertThat(trie.match("1")).isEqualTo("*");
+    assertThat(trie.match("1/2")).isEqualTo("*/*");
+    assertThat(trie.match("1/2/3")).isNull();
+  }
+
+  @Test
+  public void testEmptyDataKey() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList("", "1/a"));
+
+    assertThat(trie.match("")).isEqualTo("");
+    assertThat(trie.match("2")).isEqualTo("");
+    assertThat(trie.match("2/a")).isNull();
+    assertThat(trie.match("1/a")).isEqualTo("1/a");
+  }
+
+  @Test
+  public void testNoDataKey() {
+    DataKeyTrie trie = new DataKeyTrie(Arrays.asList());
+
+    assertThat(trie.match("1")).isNull();
+    assertThat(trie.match("")).isNull();
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HistoryCompactorTests {
+
+  private final ApiResponseService apiResponseService = mock(ApiResponseService.class);
+  private final HistoryCompactor compactor = new HistoryCompactor(apiResponseService);
+
+  @Test
+  public void testRetentionIsDisabledByDefault() {
+    compactor.run();
+
+    verify(apiResponseService, never()).findIdsForHistoryRetention(any(), any(), any());
+    verify(apiResponseService, never()).deleteHistoriesOutOfRetention(anyInt(), any(), any(), any(), anyInt());
+    verify(apiResponseService).findIdsForHistoryCompaction();
+    assertThat(compactor.getRunCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRetention() {
+    ReflectionTestUtils.setField(compactor, "maxCount", 10);
+    ReflectionTestUtils.setField(compactor, "maxAgeDays", 30);
+    ReflectionTestUtils.setField(compactor, "batchSize", 2);
+    when(apiResponseService.findIdsForHistoryRetention(eq(10), any(), isNull())).thenReturn(Arrays.asList(1, 2, 3));
+    // The histories of a response are deleted per batch until a batch is not full
+    when(apiResponseService.deleteHistoriesOutOfRetention(eq(1), eq(10), any(), isNull(), eq(2))).thenReturn(2, 2, 1);
+    when(apiResponseService.deleteHistoriesOutOfRetention(eq(2), eq(10), any(), isNull(), eq(2)))
+        .thenThrow(new IllegalStateException("failure"));
+    when(apiResponseService.deleteHistoriesOutOfRetention(eq(3), eq(10), any(), isNull(), eq(2))).thenReturn(0);
+    LocalDateTime before = LocalDateTime.now().minusDays(30);
+
+    compactor.run();
+
+    verify(apiResponseService, times(3)).deleteHistoriesOutOfRetention(eq(1), eq(10), any(), isNull(), eq(2));
+    // The failure of a response does not stop the others
+    verify(apiResponseService).deleteHistoriesOutOfRetention(eq(3), eq(10), any(), isNull(), eq(2));
+    assertThat(compactor.getLastDeletedCount()).isEqualTo(5);
+    assertThat(compactor.getDeletedCount()).isEqualTo(5);
+    assertThat(compactor.getFailureCount()).isEqualTo(1);
+    verify(apiResponseService).findIdsForHistoryRetention(eq(10),
+        argThat(expiredAt -> !expiredAt.isBefore(before)), isNull());
+  }
+
+  @Test
+  public void testRetentionBeforeCompaction() {
+    ReflectionTestUtils.setField(compactor, "dailyAfterDays", 7);
+    ReflectionTestUtils.setField(compactor, "batchSize", 500);
+    when(apiResponseService.findIdsForHistoryRetention(isNull(), isNull(), any())).thenReturn(Collections.singletonList(1));
+    when(apiResponseService.deleteHistoriesOutOfRetention(eq(1), isNull(), isNull(), any(), anyInt())).thenReturn(3);
+    when(apiResponseService.findIdsForHistoryCompaction()).thenReturn(Collections.singletonList(1));
+    when(apiResponseService.compactHistory(1)).thenAnswer(invocation -> {
+      // The histories out of the retention are not compacted
+      verify(apiResponseService).deleteHistoriesOutOfRetention(eq(1), isNull(), isNull(), any(), anyInt());
+      return 4;
+    });
+
+    compactor.run();
+
+    assertThat(compactor.getLastDeletedCount()).isEqualTo(3);
+    assertThat(compactor.getLastCompactedCount()).isEqualTo(4);
+  }
+
+}
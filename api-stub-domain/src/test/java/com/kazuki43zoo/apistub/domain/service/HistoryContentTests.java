@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistoryContentTests {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    HistoryContent snapshot = HistoryContent.of(history("{\"id\":1,\"name\":\"foo\",\"description\":\"snapshot\"}", "file v1"));
+    HistoryContent content = HistoryContent.of(history("{\"id\":1,\"name\":\"bar\",\"description\":\"snapshot\"}", "file v2"));
+
+    ApiResponse patched = new ApiResponse();
+    content.diff(snapshot).patch(snapshot).applyTo(patched);
+    assertThat(read(patched.getBody())).isEqualTo("{\"id\":1,\"name\":\"bar\",\"description\":\"snapshot\"}");
+    assertThat(read(patched.getAttachmentFile())).isEqualTo("file v2");
+  }
+
+  @Test
+  public void testContentIsNull() throws IOException {
+    HistoryContent snapshot = HistoryContent.of(history("body", "file"));
+    HistoryContent content = HistoryContent.of(history(null, null));
+
+    HistoryContent delta = content.diff(snapshot);
+    assertThat(delta.size()).isEqualTo(0);
+    ApiResponse patched = new ApiResponse();
+    delta.patch(snapshot).applyTo(patched);
+    assertThat(patched.getBody()).isNull();
+    assertThat(patched.getAttachmentFile()).isNull();
+  }
+
+  @Test
+  public void testSnapshotIsNull() throws IOException {
+    HistoryContent snapshot = HistoryContent.of(history(null, null));
+    HistoryContent content = HistoryContent.of(history("body", "file"));
+
+    ApiResponse patched = new ApiResponse();
+    content.diff(snapshot).patch(snapshot).applyTo(patched);
+    assertThat(read(patched.getBody())).isEqualTo("body");
+    assertThat(read(patched.getAttachmentFile())).isEqualTo("file");
+  }
+
+  @Test
+  public void testContentIsEmpty() throws IOException {
+    HistoryContent snapshot = HistoryContent.of(history("body", "file"));
+    HistoryContent content = HistoryContent.of(history("", ""));
+
+    ApiResponse patched = new ApiResponse();
+    content.diff(snapshot).patch(snapshot).applyTo(patched);
+    assertThat(read(patched.getBody())).isEmpty();
+    assertThat(read(patched.getAttachmentFile())).isEmpty();
+  }
+
+  @Test
+  public void testShiftedContent() throws IOException {
+    String body = "0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz";
+    HistoryContent snapshot = HistoryContent.of(history(body, null));
+    HistoryContent content = HistoryContent.of(history("inserted " + body, null));
+
+    HistoryContent delta = content.diff(snapshot);
+    assertThat(delta.size()).isLessThan(body.length());
+    ApiResponse patched = new ApiResponse();
+    delta.patch(snapshot).applyTo(patched);
+    assertThat(read(patched.getBody())).isEqualTo("inserted " + body);
+    assertThat(patched.getAttachmentFile()).isNull();
+  }
+
+  private static ApiResponse history(String body, String attachmentFile) {
+    ApiResponse history = new ApiResponse();
+    history.setBody(stream(body));
+    history.setAttachmentFile(stream(attachmentFile));
+    return history;
+  }
+
+  private static InputStream stream(String value) {
+    return value == null ? null : new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(InputStream in) throws IOException {
+    return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTests {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThat(histogram.getTotalCount()).isZero();
+    assertThat(histogram.percentile(50)).isZero();
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    assertThat(histogram.getTotalCount()).isEqualTo(10);
+    assertThat(histogram.percentile(0)).isEqualTo(1);
+    assertThat(histogram.percentile(50)).isEqualTo(5);
+    assertThat(histogram.percentile(51)).isEqualTo(6);
+    assertThat(histogram.percentile(100)).isEqualTo(10);
+  }
+
+  @Test
+  public void testRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i);
+    }
+    for (double percent : new double[]{1, 50, 90, 99, 99.9, 100}) {
+      long expected = (long) Math.ceil(percent * 100);
+      assertThat(histogram.percentile(percent)).as("p%s", percent)
+          .isGreaterThanOrEqualTo(expected)
+          .isCloseTo(expected, within((long) Math.ceil(expected * 0.0625)));
+    }
+  }
+
+  @Test
+  public void testOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+    histogram.record(Long.MAX_VALUE);
+    assertThat(histogram.percentile(50)).isZero();
+    assertThat(histogram.percentile(100)).isEqualTo((1L << 41) - 1);
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MockSourceWatcherTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final ApiService apiService = mock(ApiService.class);
+  private final ApiResponseService apiResponseService = mock(ApiResponseService.class);
+  private final ObjectMapper objectMapper = spy(new ObjectMapper());
+  private final List<Api> importedApis = new ArrayList<>();
+  private final List<ApiResponse> importedResponses = new ArrayList<>();
+  private MockSourceWatcher watcher;
+
+  @Before
+  public void setup() {
+    doAnswer(invocation -> {
+      invocation.<Iterator<Api>>getArgument(0).forEachRemaining(importedApis::add);
+      return null;
+    }).when(apiService).importAll(any(), anyBoolean(), any());
+    doAnswer(invocation -> {
+      invocation.<Iterator<ApiResponse>>getArgument(0).forEachRemaining(importedResponses::add);
+      return null;
+    }).when(apiResponseService).importAll(any(), anyBoolean(), any());
+    watcher = new MockSourceWatcher(apiService, apiResponseService, objectMapper);
+    ReflectionTestUtils.setField(watcher, "dir", folder.getRoot().toString());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    watcher.shutdown();
+  }
+
+  @Test
+  public void testUnchangedFileIsNotParsed() throws IOException {
+    write("apis/a.json", "[{\"path\":\"/a\",\"method\":\"GET\"}]");
+    watcher.rescan();
+    assertThat(importedApis).extracting(Api::getPath).containsExactly("/a");
+    assertThat(watcher.getApplyCount()).isEqualTo(1);
+
+    importedApis.clear();
+    clearInvocations(objectMapper);
+    watcher.rescan();
+    assertThat(importedApis).isEmpty();
+    assertThat(watcher.getApplyCount()).isEqualTo(1);
+    verify(objectMapper, never()).readerFor(any(Class.class));
+
+    write("apis/a.json", "[{\"path\":\"/a\",\"method\":\"GET\",\"description\":\"changed\"}]");
+    watcher.rescan();
+    assertThat(importedApis).extracting(Api::getDescription).containsExactly("changed");
+    assertThat(watcher.getApplyCount()).isEqualTo(2);
+    verify(objectMapper, times(1)).readerFor(any(Class.class));
+  }
+
+  @Test
+  public void testDeletedFile() throws IOException {
+    write("responses/r.json", "[{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"1\"}"
+        + ",{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"2\"}]");
+    watcher.rescan();
+    assertThat(importedResponses).extracting(ApiResponse::getDataKey).containsExactly("1", "2");
+    when(apiResponseService.findIdByUk("/a", "GET", "1")).thenReturn(10);
+    when(apiResponseService.findIdByUk("/a", "GET", "2")).thenReturn(11);
+
+    Files.delete(folder.getRoot().toPath().resolve("responses/r.json"));
+    watcher.rescan();
+    verify(apiResponseService).delete(10);
+    verify(apiResponseService).delete(11);
+    assertThat(watcher.getFileCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMovedFile() throws IOException {
+    Path file = write("apis/a.json", "[{\"path\":\"/a\",\"method\":\"GET\"},{\"path\":\"/b\",\"method\":\"POST\"}]");
+    watcher.rescan();
+    when(apiService.findIdByUk("/a", "GET")).thenReturn(1);
+    when(apiService.findIdByUk("/b", "POST")).thenReturn(2);
+
+    // The definitions are released by the source file after they are counted for the destination file
+    importedApis.clear();
+    Path destination = folder.getRoot().toPath().resolve("apis/moved/a.json");
+    Files.createDirectories(destination.getParent());
+    Files.move(file, destination);
+    watcher.rescan();
+    verify(apiService, never()).delete(anyInt());
+    assertThat(importedApis).extracting(Api::getPath).containsExactly("/a", "/b");
+    assertThat(watcher.getFileCount()).isEqualTo(1);
+
+    Files.delete(destination);
+    watcher.rescan();
+    verify(apiService).delete(1);
+    verify(apiService).delete(2);
+  }
+
+  @Test
+  public void testRedefine() throws IOException {
+    write("responses/r1.json", "[{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"1\",\"body\":\"r1\"}"
+        + ",{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"2\",\"body\":\"r1\"}]");
+    write("responses/r2.json", "[{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"2\",\"body\":\"r2\"}]");
+    watcher.rescan();
+    when(apiResponseService.findIdByUk("/a", "GET", "2")).thenReturn(11);
+
+    // The key that is no longer defined by the changed file is imported again from the other file
+    importedResponses.clear();
+    write("responses/r1.json", "[{\"path\":\"/a\",\"method\":\"GET\",\"dataKey\":\"1\",\"body\":\"r1\"}]");
+    watcher.rescan();
+    verify(apiResponseService, never()).delete(anyInt());
+    assertThat(importedResponses).extracting(ApiResponse::getDataKey).containsExactly("1", "2");
+    assertThat(importedResponses).extracting(MockSourceWatcherTests::body).containsExactly("r1", "r2");
+
+    // The key is deleted when the last file defining it is changed
+    write("responses/r2.json", "[]");
+    watcher.rescan();
+    verify(apiResponseService).delete(11);
+  }
+
+  private Path write(String name, String content) throws IOException {
+    Path file = folder.getRoot().toPath().resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String body(ApiResponse response) {
+    try {
+      return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
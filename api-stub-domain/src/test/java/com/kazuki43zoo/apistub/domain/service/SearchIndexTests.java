@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchIndexTests {
+
+  private final AtomicInteger staleCount = new AtomicInteger();
+  private final SearchIndex searchIndex = new SearchIndex(1, staleCount::incrementAndGet);
+
+  @Test
+  public void testNotNarrowedDownBeforeLoad() {
+    assertThat(searchIndex.find(10, () -> 0, () -> 0, "/users/")).isNull();
+    assertThat(staleCount).hasValue(0);
+  }
+
+  @Test
+  public void testFind() {
+    searchIndex.load(index -> {
+      index.add(1, "/users/1");
+      index.add(2, "/items/2");
+    });
+    searchIndex.add(3, "/users/3");
+    assertThat(searchIndex.find(10, () -> 3, () -> 3, "/users/")).containsExactly(1, 3);
+    assertThat(searchIndex.find(1, () -> 3, () -> 3, "/users/")).isNull();
+    assertThat(searchIndex.find(10, () -> 3, () -> 3, "/orders/")).isEmpty();
+    assertThat(staleCount).hasValue(0);
+  }
+
+  @Test
+  public void testFindWhenRowsAreChangedByOthers() {
+    searchIndex.load(index -> {
+      index.add(1, "/users/1");
+      index.add(2, "/items/2");
+    });
+
+    // A row has been inserted by others
+    assertThat(searchIndex.find(10, () -> 3, () -> 3, "/orders/")).isNull();
+    assertThat(staleCount).hasValue(1);
+
+    // A row has been inserted and another one has been deleted by others
+    assertThat(searchIndex.find(10, () -> 2, () -> 3, "/orders/")).isNull();
+    assertThat(staleCount).hasValue(2);
+
+    searchIndex.load(index -> {
+      index.add(1, "/users/1");
+      index.add(3, "/orders/3");
+    });
+    assertThat(searchIndex.find(10, () -> 2, () -> 3, "/orders/")).containsExactly(3);
+    assertThat(staleCount).hasValue(2);
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.store;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSystemAttachmentStoreTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystemAttachmentStore store;
+
+  @Before
+  public void setup() {
+    store = new FileSystemAttachmentStore(folder.getRoot().getPath(), 60);
+  }
+
+  @Test
+  public void testStoreSharesSameContent() throws IOException {
+    String reference = store.store(content("attachment"));
+    assertThat(store.store(content("attachment"))).isEqualTo(reference);
+    assertThat(store.store(content("other"))).isNotEqualTo(reference);
+    try (InputStream in = store.load(reference).getInputStream()) {
+      assertThat(StreamUtils.copyToString(in, StandardCharsets.UTF_8)).isEqualTo("attachment");
+    }
+  }
+
+  @Test
+  public void testDeleteKeepsContentWithinGracePeriod() throws IOException {
+    String reference = store.store(content("attachment"));
+    assertThat(store.delete(reference)).isFalse();
+    assertThat(store.load(reference).exists()).isTrue();
+
+    expire(reference);
+    assertThat(store.delete(reference)).isTrue();
+    assertThat(store.load(reference).exists()).isFalse();
+    assertThat(store.delete(reference)).isFalse();
+  }
+
+  @Test
+  public void testStoreProtectsSharedContentFromDeletion() throws IOException {
+    String reference = store.store(content("attachment"));
+    expire(reference);
+    // The content shared by a new response is not committed yet
+    store.store(content("attachment"));
+    assertThat(store.delete(reference)).isFalse();
+    assertThat(store.deleteUnreferenced(e -> false)).isZero();
+    assertThat(store.load(reference).exists()).isTrue();
+  }
+
+  @Test
+  public void testDeleteUnreferenced() throws IOException {
+    String referenced = store.store(content("referenced"));
+    String unreferenced = store.store(content("unreferenced"));
+    String recent = store.store(content("recent"));
+    expire(referenced);
+    expire(unreferenced);
+    assertThat(folder.newFile("upload.tmp")).exists();
+
+    assertThat(store.deleteUnreferenced(Collections.singleton(referenced)::contains)).isEqualTo(1);
+    assertThat(store.load(referenced).exists()).isTrue();
+    assertThat(store.load(unreferenced).exists()).isFalse();
+    assertThat(store.load(recent).exists()).isTrue();
+    assertThat(new File(folder.getRoot(), "upload.tmp")).exists();
+  }
+
+  private InputStream content(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void expire(String reference) throws IOException {
+    assertThat(store.load(reference).getFile().setLastModified(System.currentTimeMillis() - 120_000)).isTrue();
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryDeltaTests {
+
+  @Test
+  public void testBothAreEmpty() {
+    byte[] delta = BinaryDelta.diff(new byte[0], new byte[0]);
+    assertThat(BinaryDelta.patch(new byte[0], delta)).isEmpty();
+  }
+
+  @Test
+  public void testSourceIsEmpty() {
+    byte[] target = bytes("0123456789abcdefghijklmnopqrstuvwxyz");
+    byte[] delta = BinaryDelta.diff(new byte[0], target);
+    assertThat(BinaryDelta.patch(new byte[0], delta)).isEqualTo(target);
+  }
+
+  @Test
+  public void testTargetIsEmpty() {
+    byte[] source = bytes("0123456789abcdefghijklmnopqrstuvwxyz");
+    byte[] delta = BinaryDelta.diff(source, new byte[0]);
+    assertThat(BinaryDelta.patch(source, delta)).isEmpty();
+  }
+
+  @Test
+  public void testShorterThanBlock() {
+    byte[] source = bytes("abc");
+    byte[] target = bytes("abcd");
+    assertThat(BinaryDelta.patch(source, BinaryDelta.diff(source, target))).isEqualTo(target);
+  }
+
+  @Test
+  public void testSameContentIsCopied() {
+    byte[] source = random(4096, 1);
+    byte[] delta = BinaryDelta.diff(source, source.clone());
+    assertThat(BinaryDelta.patch(source, delta)).isEqualTo(source);
+    assertThat(delta.length).isLessThan(16);
+  }
+
+  @Test
+  public void testShiftedContent() {
+    byte[] source = random(4096, 2);
+    byte[] target = new byte[source.length + 7];
+    System.arraycopy(bytes("shifted"), 0, target, 0, 7);
+    System.arraycopy(source, 0, target, 7, source.length);
+    byte[] delta = BinaryDelta.diff(source, target);
+    assertThat(BinaryDelta.patch(source, delta)).isEqualTo(target);
+    assertThat(delta.length).isLessThan(32);
+  }
+
+  @Test
+  public void testChangedInTheMiddle() {
+    byte[] source = random(4096, 3);
+    byte[] target = source.clone();
+    Arrays.fill(target, 1000, 1010, (byte) 0);
+    byte[] removed = new byte[target.length - 100];
+    System.arraycopy(target, 0, removed, 0, 2000);
+    System.arraycopy(target, 2100, removed, 2000, target.length - 2100);
+    byte[] delta = BinaryDelta.diff(source, removed);
+    assertThat(BinaryDelta.patch(source, delta)).isEqualTo(removed);
+    assertThat(delta.length).isLessThan(128);
+  }
+
+  @Test
+  public void testUnrelatedContent() {
+    byte[] source = random(1024, 4);
+    byte[] target = random(2048, 5);
+    assertThat(BinaryDelta.patch(source, BinaryDelta.diff(source, target))).isEqualTo(target);
+  }
+
+  @Test
+  public void testRepeatedContent() {
+    byte[] source = bytes(repeat("0123456789abcdef", 64));
+    byte[] target = bytes(repeat("0123456789abcdef", 100) + "end");
+    assertThat(BinaryDelta.patch(source, BinaryDelta.diff(source, target))).isEqualTo(target);
+  }
+
+  @Test
+  public void testUnsupportedVersion() {
+    assertThatThrownBy(() -> BinaryDelta.patch(new byte[0], new byte[0]))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unsupported delta version.");
+    assertThatThrownBy(() -> BinaryDelta.patch(new byte[0], new byte[]{2, 0}))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unsupported delta version.");
+  }
+
+  @Test
+  public void testCorruptedDelta() {
+    byte[] source = bytes("0123456789abcdefghijklmnopqrstuvwxyz");
+    byte[] delta = BinaryDelta.diff(source, source);
+    assertThatThrownBy(() -> BinaryDelta.patch(source, Arrays.copyOf(delta, delta.length - 1)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("Delta is corrupted.");
+    assertThatThrownBy(() -> BinaryDelta.patch(source, new byte[]{1, 0, 9}))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Unknown delta operation. operation = 9");
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] random(int length, long seed) {
+    byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static String repeat(String value, int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(value);
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LruCacheTests {
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    LruCache<String, Integer> cache = new LruCache<>(2);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    assertThat(cache.get("a")).isEqualTo(1);
+
+    cache.put("c", 3);
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a")).isEqualTo(1);
+    assertThat(cache.get("c")).isEqualTo(3);
+  }
+
+  @Test
+  public void testPutIfAbsentAndRemove() {
+    LruCache<String, Integer> cache = new LruCache<>(2);
+    assertThat(cache.putIfAbsent("a", 1)).isNull();
+    assertThat(cache.putIfAbsent("a", 2)).isEqualTo(1);
+
+    assertThat(cache.remove("a", 2)).isFalse();
+    assertThat(cache.remove("a", 1)).isTrue();
+    assertThat(cache.get("a")).isNull();
+
+    cache.put("b", 2);
+    cache.remove("b");
+    assertThat(cache.size()).isZero();
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.domain.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrigramIndexTests {
+
+  @Test
+  public void testRequiredLiteralsOfPlainText() {
+    assertThat(TrigramIndex.requiredLiterals("/users/profile")).containsExactly("/users/profile");
+    assertThat(TrigramIndex.requiredLiterals("ab")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("")).isEmpty();
+  }
+
+  @Test
+  public void testRequiredLiteralsOfAlternation() {
+    assertThat(TrigramIndex.requiredLiterals("users|items")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("/api/(users|items)")).isEmpty();
+  }
+
+  @Test
+  public void testRequiredLiteralsOfEscapes() {
+    assertThat(TrigramIndex.requiredLiterals("a\\.b\\.c")).containsExactly("a.b.c");
+    assertThat(TrigramIndex.requiredLiterals("\\d+users\\sitems")).containsExactly("users", "items");
+    assertThat(TrigramIndex.requiredLiterals("abc\\.?")).containsExactly("abc");
+    assertThat(TrigramIndex.requiredLiterals("\\Qa.b.c\\E")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("\\p{L}users")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("\\x41users")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("users\\")).isEmpty();
+  }
+
+  @Test
+  public void testRequiredLiteralsOfQuantifiers() {
+    assertThat(TrigramIndex.requiredLiterals("abcd?ef")).containsExactly("abc");
+    assertThat(TrigramIndex.requiredLiterals("abcd*efgh")).containsExactly("abc", "efgh");
+    assertThat(TrigramIndex.requiredLiterals("abcd+efgh")).containsExactly("abcd", "efgh");
+    assertThat(TrigramIndex.requiredLiterals("abcd{0,2}efgh")).containsExactly("abc", "efgh");
+    assertThat(TrigramIndex.requiredLiterals("abcd*?efgh")).containsExactly("abc", "efgh");
+    assertThat(TrigramIndex.requiredLiterals("/users/.+/items")).containsExactly("/users/", "/items");
+    assertThat(TrigramIndex.requiredLiterals("^/users$")).containsExactly("/users");
+    assertThat(TrigramIndex.requiredLiterals("abc{2")).isEmpty();
+  }
+
+  @Test
+  public void testRequiredLiteralsOfClassesAndGroups() {
+    assertThat(TrigramIndex.requiredLiterals("[abc]def[^x]ghi")).containsExactly("def", "ghi");
+    assertThat(TrigramIndex.requiredLiterals("users[0-9]+")).containsExactly("users");
+    assertThat(TrigramIndex.requiredLiterals("[]abc]users")).containsExactly("users");
+    assertThat(TrigramIndex.requiredLiterals("[a[bc]]users")).containsExactly("users");
+    assertThat(TrigramIndex.requiredLiterals("(foo)+barbaz")).containsExactly("barbaz");
+    assertThat(TrigramIndex.requiredLiterals("(f[)]o)?barbaz")).containsExactly("barbaz");
+    assertThat(TrigramIndex.requiredLiterals("(?i)users")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("[abc")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("(abc")).isEmpty();
+    assertThat(TrigramIndex.requiredLiterals("abc)")).isEmpty();
+  }
+
+  @Test
+  public void testCandidates() {
+    TrigramIndex index = new TrigramIndex(2);
+    index.add(1, "/users/1", "Alice");
+    index.add(2, "/users/2", null);
+    index.add(3, "/items/1", "Alice's item");
+
+    assertThat(index.candidates("/users/", null)).containsExactly(1, 2);
+    assertThat(index.candidates("/users/", "alice")).containsExactly(1);
+    assertThat(index.candidates(null, "ALICE")).containsExactly(1, 3);
+    assertThat(index.candidates("/orders/", null)).isEmpty();
+    assertThat(index.candidates("alice", null)).isEmpty();
+    assertThat(index.candidates("/.*", null)).isNull();
+    assertThat(index.candidates(null, null)).isNull();
+  }
+
+  @Test
+  public void testRemove() {
+    TrigramIndex index = new TrigramIndex(1);
+    index.add(1, "/users/1");
+    index.add(2, "/users/2");
+    int trigramCount = index.getTrigramCount();
+
+    index.remove(2, "/users/2");
+    assertThat(index.candidates("/users/")).containsExactly(1);
+    assertThat(index.candidates("/users/2")).isEmpty();
+
+    index.remove(1, "/users/1");
+    assertThat(index.candidates("/users/")).isEmpty();
+    assertThat(index.getTrigramCount()).isZero();
+
+    index.add(2, "/users/2");
+    assertThat(index.getTrigramCount()).isLessThan(trigramCount);
+  }
+
+  @Test
+  public void testRowCountAndMaxId() {
+    TrigramIndex index = new TrigramIndex(2);
+    assertThat(index.getRowCount()).isZero();
+    assertThat(index.getMaxId()).isZero();
+
+    index.add(3, "/users/3", null);
+    index.add(7, null, null);
+    assertThat(index.getRowCount()).isEqualTo(2);
+    assertThat(index.getMaxId()).isEqualTo(7);
+
+    // An updated row is removed and added again
+    index.remove(3, "/users/3", null);
+    index.add(3, "/users/3", "updated");
+    assertThat(index.getRowCount()).isEqualTo(2);
+
+    index.remove(7, null, null);
+    assertThat(index.getRowCount()).isEqualTo(1);
+    assertThat(index.getMaxId()).isEqualTo(3);
+  }
+
+  @Test
+  public void testCandidatesNeverMissMatchingTexts() {
+    Random random = new Random(0);
+    String[] fragments = {"users", "items", "/", "-", ".", "ab", "abc", "x", "1", "42", "Users"};
+    List<String> texts = new ArrayList<>();
+    TrigramIndex index = new TrigramIndex(1);
+    for (int id = 0; id < 500; id++) {
+      String text = randomText(random, fragments);
+      texts.add(text);
+      index.add(id, text);
+    }
+    String[] regexFragments = {"users", "items", "/", "\\.", "\\d+", ".*", "[a-z]+", "(ab)?", "c?", "x*", "s+", "abc",
+        "[/.]", "\\-", "^", "$", "Users", "1{1,2}"};
+    for (int i = 0; i < 2000; i++) {
+      String regex = randomText(random, regexFragments);
+      Pattern pattern = Pattern.compile(regex);
+      int[] candidates = index.candidates(regex);
+      int[] matches = IntStream.range(0, texts.size()).filter(id -> pattern.matcher(texts.get(id)).find()).toArray();
+      if (candidates != null && matches.length > 0) {
+        assertThat(candidates).as("regex = %s", regex).contains(matches);
+      }
+    }
+  }
+
+  private static String randomText(Random random, String[] fragments) {
+    StringBuilder text = new StringBuilder();
+    int count = 1 + random.nextInt(5);
+    for (int i = 0; i < count; i++) {
+      text.append(fragments[random.nextInt(fragments.length)]);
+    }
+    return text.toString();
+  }
+
+}
@@ -0,0 +1,260 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+// The archive is a zip file that holds a manifest and the metadata, body and attachment file of each mock response
+// as separate entries, so that bodies and attachment files are stored as raw bytes instead of json strings.
+@Component
+public class ArchiveSupport {
+
+  private static final String MANIFEST_ENTRY = "manifest.json";
+  private static final String FORMAT = "api-stub-archive";
+  private static final int VERSION = 1;
+  private static final String TYPE_RESPONSES = "responses";
+  private static final String ENTRY_NAME_FORMAT = TYPE_RESPONSES + "/%06d";
+  private static final String METADATA_SUFFIX = ".json";
+  private static final String BODY_SUFFIX = ".body";
+  private static final String ATTACHMENT_FILE_SUFFIX = ".attachment";
+  private static final Pattern METADATA_ENTRY_PATTERN = Pattern.compile(TYPE_RESPONSES + "/\\d+\\" + METADATA_SUFFIX);
+
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter objectWriter;
+  private final ExecutorService decodeExecutor;
+  private final int decodeThreads;
+
+  public ArchiveSupport(ObjectMapper objectMapper, @Value("${apistub.ui.import.decode-threads:0}") int decodeThreads) {
+    this.objectMapper = objectMapper;
+    this.objectWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.decodeThreads = decodeThreads;
+    if (decodeThreads > 0) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      this.decodeExecutor = Executors.newFixedThreadPool(decodeThreads, runnable -> {
+        Thread thread = new Thread(runnable, "api-stub-import-decode-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.decodeExecutor = null;
+    }
+  }
+
+  public boolean isArchive(String fileName) {
+    return fileName != null && fileName.toLowerCase().endsWith(".zip");
+  }
+
+  // Write the mock responses supplied by the source to the archive one by one
+  public void writeApiResponses(OutputStream out, Consumer<Consumer<ApiResponse>> source) throws IOException {
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      // Most of the time is spent on deflating, so prefer the speed to the size
+      zip.setLevel(Deflater.BEST_SPEED);
+      Map<String, Object> manifest = new LinkedHashMap<>();
+      manifest.put("format", FORMAT);
+      manifest.put("version", VERSION);
+      manifest.put("type", TYPE_RESPONSES);
+      zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+      objectWriter.writeValue(zip, manifest);
+      AtomicInteger sequence = new AtomicInteger();
+      source.accept(mockResponse -> {
+        try {
+          writeApiResponse(zip, String.format(ENTRY_NAME_FORMAT, sequence.incrementAndGet()), mockResponse);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void writeApiResponse(ZipOutputStream zip, String name, ApiResponse mockResponse) throws IOException {
+    try (InputStream body = mockResponse.getBody(); InputStream attachmentFile = mockResponse.getAttachmentFile()) {
+      mockResponse.setBody(null);
+      mockResponse.setAttachmentFile(null);
+      zip.putNextEntry(new ZipEntry(name + METADATA_SUFFIX));
+      objectWriter.writeValue(zip, mockResponse);
+      if (body != null) {
+        zip.putNextEntry(new ZipEntry(name + BODY_SUFFIX));
+        StreamUtils.copy(body, zip);
+      }
+      if (attachmentFile != null) {
+        zip.putNextEntry(new ZipEntry(name + ATTACHMENT_FILE_SUFFIX));
+        StreamUtils.copy(attachmentFile, zip);
+      }
+    }
+  }
+
+  public ArchiveReader readApiResponses(Path file) throws IOException {
+    return new ArchiveReader(new ZipFile(file.toFile()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (decodeExecutor != null) {
+      decodeExecutor.shutdownNow();
+    }
+  }
+
+  // Read the mock responses in the order of the archive. When the decode threads are configured, the entries of
+  // the following mock responses are inflated in parallel while the preceding ones are being imported.
+  public class ArchiveReader implements Iterator<ApiResponse>, Closeable {
+
+    private final ZipFile zip;
+    private final Iterator<String> names;
+    private final Deque<CompletableFuture<ApiResponse>> decoding = new ArrayDeque<>();
+    private final Executor executor;
+    private final int window;
+
+    private ArchiveReader(ZipFile zip) throws IOException {
+      this.zip = zip;
+      try {
+        verifyManifest();
+        List<String> metadataEntryNames = zip.stream()
+            .map(ZipEntry::getName)
+            .filter(name -> METADATA_ENTRY_PATTERN.matcher(name).matches())
+            .collect(Collectors.toList());
+        this.names = metadataEntryNames.stream()
+            .map(name -> name.substring(0, name.length() - METADATA_SUFFIX.length()))
+            .iterator();
+      } catch (IOException | RuntimeException e) {
+        zip.close();
+        throw e;
+      }
+      this.executor = decodeExecutor != null ? decodeExecutor : Runnable::run;
+      this.window = decodeExecutor != null ? decodeThreads * 4 : 1;
+    }
+
+    private void verifyManifest() throws IOException {
+      ZipEntry entry = zip.getEntry(MANIFEST_ENTRY);
+      if (entry == null) {
+        throw new ZipException("The manifest is not found.");
+      }
+      Map<?, ?> manifest;
+      try (InputStream in = zip.getInputStream(entry)) {
+        manifest = objectMapper.readValue(in, Map.class);
+      }
+      if (!FORMAT.equals(manifest.get("format")) || !TYPE_RESPONSES.equals(manifest.get("type"))) {
+        throw new ZipException("The archive is not a mock responses archive. manifest = " + manifest);
+      }
+      if (!(manifest.get("version") instanceof Integer) || (Integer) manifest.get("version") > VERSION) {
+        throw new ZipException("The archive version is not supported. manifest = " + manifest);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      fill();
+      return !decoding.isEmpty();
+    }
+
+    @Override
+    public ApiResponse next() {
+      fill();
+      CompletableFuture<ApiResponse> future = decoding.poll();
+      if (future == null) {
+        throw new NoSuchElementException();
+      }
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Decoding has been interrupted.", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    private void fill() {
+      while (decoding.size() < window && names.hasNext()) {
+        String name = names.next();
+        decoding.add(CompletableFuture.supplyAsync(() -> decode(name), executor));
+      }
+    }
+
+    private ApiResponse decode(String name) {
+      try {
+        ApiResponse mockResponse;
+        try (InputStream in = zip.getInputStream(zip.getEntry(name + METADATA_SUFFIX))) {
+          mockResponse = objectMapper.readValue(in, ApiResponse.class);
+        }
+        mockResponse.setBody(readEntry(name + BODY_SUFFIX));
+        mockResponse.setAttachmentFile(readEntry(name + ATTACHMENT_FILE_SUFFIX));
+        return mockResponse;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private InputStream readEntry(String name) throws IOException {
+      ZipEntry entry = zip.getEntry(name);
+      if (entry == null) {
+        return null;
+      }
+      try (InputStream in = zip.getInputStream(entry)) {
+        return new ByteArrayInputStream(StreamUtils.copyToByteArray(in));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      decoding.forEach(future -> future.cancel(true));
+      decoding.clear();
+      zip.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+
+import java.util.UUID;
+
+public class ImportJob {
+
+  public enum Status {
+    RUNNING, COMPLETED, FAILED
+  }
+
+  private final String id = UUID.randomUUID().toString();
+  private final String name;
+  private final ImportProgress progress = new ImportProgress();
+  private final long startedAt = System.currentTimeMillis();
+  private volatile long finishedAt;
+  private volatile Status status = Status.RUNNING;
+  private volatile Exception cause;
+
+  ImportJob(String name) {
+    this.name = name;
+  }
+
+  void complete() {
+    this.finishedAt = System.currentTimeMillis();
+    this.status = Status.COMPLETED;
+  }
+
+  void fail(Exception e) {
+    this.finishedAt = System.currentTimeMillis();
+    this.cause = e;
+    this.status = Status.FAILED;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public ImportProgress getProgress() {
+    return progress;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public Exception getCause() {
+    return cause;
+  }
+
+  public String getError() {
+    return cause == null ? null : cause.getMessage();
+  }
+
+  public long getElapsedMsec() {
+    return (status == Status.RUNNING ? System.currentTimeMillis() : finishedAt) - startedAt;
+  }
+
+  // Processed items per second
+  public long getThroughput() {
+    long elapsedMsec = getElapsedMsec();
+    return elapsedMsec == 0 ? 0 : progress.getProcessed() * 1000 / elapsedMsec;
+  }
+
+}
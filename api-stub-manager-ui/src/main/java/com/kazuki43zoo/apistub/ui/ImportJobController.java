@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import com.kazuki43zoo.apistub.ui.component.message.MessageCode;
+import org.springframework.context.MessageSource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+@Controller
+@RequestMapping("/manager/import-jobs")
+public class ImportJobController {
+
+  private final ImportSupport importSupport;
+  private final MessageSource messageSource;
+
+  public ImportJobController(ImportSupport importSupport, MessageSource messageSource) {
+    this.importSupport = importSupport;
+    this.messageSource = messageSource;
+  }
+
+  @GetMapping(path = "{id}")
+  public ResponseEntity<Map<String, Object>> status(@PathVariable String id, Locale locale) {
+    ImportJob job = importSupport.findJob(id);
+    if (job == null) {
+      return ResponseEntity.notFound().build();
+    }
+    ImportProgress progress = job.getProgress();
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("id", job.getId());
+    status.put("name", job.getName());
+    status.put("status", job.getStatus());
+    status.put("processed", progress.getProcessed());
+    status.put("created", progress.getCreated());
+    status.put("updated", progress.getUpdated());
+    status.put("ignored", progress.getIgnored());
+    status.put("elapsedMsec", job.getElapsedMsec());
+    status.put("throughput", job.getThroughput());
+    status.put("result", getMessage(resultCode(job), locale, job.getError()));
+    status.put("message", getMessage(MessageCode.IMPORT_JOB_PROGRESS, locale, progress.getProcessed(),
+        progress.getCreated(), progress.getUpdated(), progress.getIgnored(), job.getElapsedMsec(), job.getThroughput()));
+    return ResponseEntity.ok(status);
+  }
+
+  private MessageCode resultCode(ImportJob job) {
+    ImportProgress progress = job.getProgress();
+    switch (job.getStatus()) {
+      case FAILED:
+        if (job.getCause() instanceof JsonProcessingException) {
+          return MessageCode.INVALID_JSON;
+        } else if (job.getCause() instanceof ZipException) {
+          return MessageCode.INVALID_ARCHIVE;
+        }
+        return MessageCode.IMPORT_JOB_FAILED;
+      case COMPLETED:
+        if (progress.getProcessed() == 0) {
+          return MessageCode.IMPORT_DATA_EMPTY;
+        } else if (progress.getIgnored() == progress.getProcessed()) {
+          return MessageCode.ALL_DATA_HAS_NOT_BEEN_IMPORTED;
+        } else if (progress.getIgnored() > 0) {
+          return MessageCode.PARTIALLY_DATA_HAS_NOT_BEEN_IMPORTED;
+        }
+        return MessageCode.DATA_HAS_BEEN_IMPORTED;
+      default:
+        return MessageCode.IMPORT_JOB_STARTED;
+    }
+  }
+
+  private String getMessage(MessageCode code, Locale locale, Object... args) {
+    return messageSource.getMessage(code.getValue(), args, locale);
+  }
+
+}
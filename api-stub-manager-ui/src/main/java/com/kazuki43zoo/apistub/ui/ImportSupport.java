@@ -15,27 +15,81 @@
  */
 package com.kazuki43zoo.apistub.ui;
 
-import com.kazuki43zoo.apistub.ui.component.message.ErrorMessage;
-import com.kazuki43zoo.apistub.ui.component.message.InfoMessage;
-import com.kazuki43zoo.apistub.ui.component.message.MessageCode;
-import com.kazuki43zoo.apistub.ui.component.message.SuccessMessage;
+import com.kazuki43zoo.apistub.domain.model.ImportProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Component
 public class ImportSupport {
 
-  public void storeProcessingResultMessages(RedirectAttributes redirectAttributes, List<?> newList, List<?> ignoredList) {
-    if (newList.size() == ignoredList.size()) {
-      redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.ALL_DATA_HAS_NOT_BEEN_IMPORTED).build());
-    } else {
-      redirectAttributes.addFlashAttribute(SuccessMessage.builder().code(MessageCode.DATA_HAS_BEEN_IMPORTED).build());
-      if (!ignoredList.isEmpty()) {
-        redirectAttributes.addFlashAttribute(InfoMessage.builder().code(MessageCode.PARTIALLY_DATA_HAS_NOT_BEEN_IMPORTED).build());
+  private static final Logger log = LoggerFactory.getLogger(ImportSupport.class);
+  private static final int MAX_KEEPING_JOBS = 100;
+
+  // Import jobs are performed one by one on the background thread
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "api-stub-import");
+    thread.setDaemon(true);
+    return thread;
+  });
+  // Recent import jobs keyed by the job id (guarded by itself)
+  private final Map<String, ImportJob> jobs = new LinkedHashMap<String, ImportJob>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ImportJob> eldest) {
+      return size() > MAX_KEEPING_JOBS;
+    }
+  };
+
+  @FunctionalInterface
+  public interface Importer {
+    void importAll(Path file, ImportProgress progress) throws IOException;
+  }
+
+  // Copy the uploaded file because it is deleted after the request, and import it on the background thread
+  public ImportJob submit(String name, MultipartFile file, Importer importer) throws IOException {
+    Path tempFile = Files.createTempFile("api-stub-import", null);
+    file.transferTo(tempFile.toFile());
+    ImportJob job = new ImportJob(name);
+    synchronized (jobs) {
+      jobs.put(job.getId(), job);
+    }
+    executor.execute(() -> {
+      try {
+        importer.importAll(tempFile, job.getProgress());
+        job.complete();
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not import the " + name + ".", e);
+        job.fail(e);
+      } finally {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+          log.debug("Could not delete a temporary file.", e);
+        }
       }
+    });
+    return job;
+  }
+
+  public ImportJob findJob(String id) {
+    synchronized (jobs) {
+      return jobs.get(id);
     }
   }
 
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
 }
@@ -15,17 +15,22 @@
  */
 package com.kazuki43zoo.apistub.ui;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.kazuki43zoo.apistub.domain.model.Api;
-import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.kazuki43zoo.apistub.domain.model.Scenario;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 public class JsonSupport {
@@ -49,12 +54,33 @@ public class JsonSupport {
     return objectMapper.writeValueAsString(list);
   }
 
-  public List<Api> toApiList(InputStream json) throws IOException {
-    return Arrays.asList(objectMapper.readValue(json, Api[].class));
+  // Read the elements of a json array one by one with the streaming parser
+  public <T> Iterator<T> readValues(InputStream json, Class<T> type) throws IOException {
+    JsonParser parser = objectMapper.getFactory().createParser(json);
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "Json array is required.");
+    }
+    parser.clearCurrentToken();
+    return objectMapper.readerFor(type).readValues(parser);
+  }
+
+  // Write the elements supplied by the source as a json array one by one with the streaming generator
+  public <T> void writeValues(OutputStream json, Consumer<Consumer<T>> source) throws IOException {
+    try (SequenceWriter writer = objectMapper.writer().writeValuesAsArray(json)) {
+      source.accept(value -> {
+        try {
+          writer.write(value);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
   }
 
-  public List<ApiResponse> toApiResponseList(InputStream json) throws IOException {
-    return Arrays.asList(objectMapper.readValue(json, ApiResponse[].class));
+  public Scenario toScenario(String json) throws IOException {
+    return objectMapper.readValue(json, Scenario.class);
   }
 
 }
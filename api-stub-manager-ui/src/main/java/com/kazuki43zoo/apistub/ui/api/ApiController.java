@@ -15,13 +15,13 @@
  */
 package com.kazuki43zoo.apistub.ui.api;
 
-import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.kazuki43zoo.apistub.domain.model.Api;
+import com.kazuki43zoo.apistub.domain.model.FaultProfile;
 import com.kazuki43zoo.apistub.domain.model.KeyGeneratingStrategy;
 import com.kazuki43zoo.apistub.domain.service.ApiService;
 import com.kazuki43zoo.apistub.ui.DownloadSupport;
+import com.kazuki43zoo.apistub.ui.ImportJob;
 import com.kazuki43zoo.apistub.ui.ImportSupport;
 import com.kazuki43zoo.apistub.ui.JsonSupport;
 import com.kazuki43zoo.apistub.ui.PaginationSupport;
@@ -30,8 +30,6 @@ import com.kazuki43zoo.apistub.ui.component.message.InfoMessage;
 import com.kazuki43zoo.apistub.ui.component.message.MessageCode;
 import com.kazuki43zoo.apistub.ui.component.message.SuccessMessage;
 import com.kazuki43zoo.apistub.ui.component.pagination.Pagination;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
@@ -55,12 +53,14 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.SessionAttributes;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.util.CookieGenerator;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -70,7 +70,6 @@ import java.util.stream.Stream;
 @Controller
 @SessionAttributes(types = ApiSearchForm.class)
 public class ApiController {
-  private static final Logger log = LoggerFactory.getLogger(ApiController.class);
   private static final String COOKIE_NAME_PAGE_SIZE = "api.pageSize";
   private static final CookieGenerator pageSizeCookieGenerator;
   private static final List<String> keyExtractors = Collections.unmodifiableList(Stream.of(
@@ -123,6 +122,8 @@ public class ApiController {
   public String list(@Validated ApiSearchForm form, BindingResult result,
                      Pageable pageable,
                      @RequestParam(name = Pagination.PARAM_NAME_SIZE_IN_PAGE, defaultValue = "0") int paramPageSize,
+                     @RequestParam(name = Pagination.PARAM_NAME_AFTER, required = false) Integer after,
+                     @RequestParam(name = Pagination.PARAM_NAME_BEFORE, required = false) Integer before,
                      @CookieValue(name = COOKIE_NAME_PAGE_SIZE, defaultValue = "0") int cookiePageSize,
                      @RequestParam MultiValueMap<String, String> requestParams,
                      Model model, HttpServletResponse response) {
@@ -133,11 +134,11 @@ public class ApiController {
       return "api/list";
     }
     Page<Api> page = service.findAll(form.getPath(), form.getMethod(), form.getDescription(),
-        paginationSupport.decidePageable(pageable, pageSize));
+        paginationSupport.decidePageable(pageable, pageSize), after, before);
     if (!page.hasContent()) {
       model.addAttribute(InfoMessage.builder().code(MessageCode.DATA_NOT_FOUND).build());
     }
-    model.addAttribute(new Pagination(page, requestParams));
+    model.addAttribute(new Pagination(page, requestParams, Api::getId));
     return "api/list";
   }
 
@@ -154,9 +155,10 @@ public class ApiController {
     return "api/form";
   }
 
-
   @PostMapping(path = "create")
   public String create(@Validated ApiForm form, BindingResult result, Model model, RedirectAttributes redirectAttributes) throws JsonProcessingException {
+    validateFaultProfile(form, result);
+    validateScenario(form, result);
     if (result.hasErrors()) {
       return "api/form";
     }
@@ -175,7 +177,6 @@ public class ApiController {
     return "redirect:/manager/apis/{id}";
   }
 
-
   @GetMapping(path = "{id}")
   public String editForm(@PathVariable int id, Model model, RedirectAttributes redirectAttributes) {
     Api api = service.findOne(id);
@@ -195,9 +196,10 @@ public class ApiController {
     return "api/form";
   }
 
-
   @PostMapping(path = "{id}", params = "update")
   public String edit(@PathVariable int id, @Validated ApiForm form, BindingResult result, Model model, RedirectAttributes redirectAttributes) throws JsonProcessingException {
+    validateFaultProfile(form, result);
+    validateScenario(form, result);
     if (result.hasErrors()) {
       model.addAttribute(service.findOne(id));
       return "api/form";
@@ -219,8 +221,8 @@ public class ApiController {
   }
 
   @PostMapping(params = "export")
-  public ResponseEntity<List<Api>> exportApis() {
-    List<Api> apis = service.findAllForExport();
+  public ResponseEntity<StreamingResponseBody> exportApis() {
+    StreamingResponseBody apis = out -> jsonSupport.writeValues(out, service::exportAll);
     HttpHeaders headers = new HttpHeaders();
     downloadSupport.addContentDisposition(headers, "exportApis.json");
     return ResponseEntity
@@ -240,32 +242,36 @@ public class ApiController {
       redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.IMPORT_FILE_EMPTY).build());
       return "redirect:/manager/apis";
     }
-    List<Api> newApis;
-    try {
-      newApis = jsonSupport.toApiList(file.getInputStream());
-    } catch (JsonParseException | JsonMappingException e) {
-      log.warn(e.getMessage(), e);
-      redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.INVALID_JSON).build());
-      return "redirect:/manager/apis";
-    }
-    if (newApis.isEmpty()) {
-      redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.IMPORT_DATA_EMPTY).build());
-      return "redirect:/manager/apis";
-    }
-
-    List<Api> ignoredApis = new ArrayList<>();
-    newApis.forEach(newApi -> {
-      Integer id = service.findIdByUk(newApi.getPath(), newApi.getMethod());
-      if (id == null) {
-        service.create(newApi);
-      } else if (override) {
-        service.update(id, newApi);
-      } else {
-        ignoredApis.add(newApi);
+    ImportJob importJob = importSupport.submit("apis", file, (path, progress) -> {
+      try (InputStream in = Files.newInputStream(path)) {
+        service.importAll(jsonSupport.readValues(in, Api.class), override, progress);
       }
     });
-    importSupport.storeProcessingResultMessages(redirectAttributes, newApis, ignoredApis);
+    redirectAttributes.addFlashAttribute(importJob);
+    redirectAttributes.addFlashAttribute(InfoMessage.builder().code(MessageCode.IMPORT_JOB_STARTED).build());
     return "redirect:/manager/apis";
   }
 
+  private void validateFaultProfile(ApiForm form, BindingResult result) {
+    if (result.hasFieldErrors("faultProfile")) {
+      return;
+    }
+    try {
+      FaultProfile.of(form.getFaultProfile());
+    } catch (IllegalArgumentException e) {
+      result.rejectValue("faultProfile", "FaultProfile", new Object[]{e.getMessage()}, null);
+    }
+  }
+
+  private void validateScenario(ApiForm form, BindingResult result) {
+    if (result.hasFieldErrors("scenario") || !StringUtils.hasText(form.getScenario())) {
+      return;
+    }
+    try {
+      jsonSupport.toScenario(form.getScenario()).validate();
+    } catch (IOException | IllegalArgumentException e) {
+      result.rejectValue("scenario", "Scenario", new Object[]{e.getMessage()}, null);
+    }
+  }
+
 }
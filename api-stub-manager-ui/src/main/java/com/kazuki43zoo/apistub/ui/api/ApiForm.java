@@ -18,6 +18,9 @@ package com.kazuki43zoo.apistub.ui.api;
 import com.kazuki43zoo.apistub.domain.model.KeyGeneratingStrategy;
 import com.kazuki43zoo.apistub.ui.component.validation.HttpMethod;
 
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
 import java.io.Serializable;
@@ -34,6 +37,18 @@ class ApiForm implements Serializable {
   private String keyExtractor;
   private KeyGeneratingStrategy keyGeneratingStrategy;
   private List<String> expressions;
+  @Size(max = 512)
+  private String faultProfile;
+  private String scenario;
+  @DecimalMin(value = "0", inclusive = false)
+  private Double rateLimit;
+  @Min(1)
+  private Integer rateLimitBurst;
+  @Min(1)
+  private Integer maxConcurrency;
+  @Min(100)
+  @Max(599)
+  private Integer limitStatusCode;
   private String description;
   private Proxy proxy = new Proxy();
 
@@ -77,6 +92,54 @@ class ApiForm implements Serializable {
     this.expressions = expressions;
   }
 
+  public String getFaultProfile() {
+    return faultProfile;
+  }
+
+  public void setFaultProfile(String faultProfile) {
+    this.faultProfile = faultProfile;
+  }
+
+  public String getScenario() {
+    return scenario;
+  }
+
+  public void setScenario(String scenario) {
+    this.scenario = scenario;
+  }
+
+  public Double getRateLimit() {
+    return rateLimit;
+  }
+
+  public void setRateLimit(Double rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  public Integer getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  public void setRateLimitBurst(Integer rateLimitBurst) {
+    this.rateLimitBurst = rateLimitBurst;
+  }
+
+  public Integer getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(Integer maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public Integer getLimitStatusCode() {
+    return limitStatusCode;
+  }
+
+  public void setLimitStatusCode(Integer limitStatusCode) {
+    this.limitStatusCode = limitStatusCode;
+  }
+
   public String getDescription() {
     return description;
   }
@@ -45,7 +45,15 @@ public enum MessageCode {
   /** */
   , IMPORT_DATA_EMPTY("msg.importDataEmpty")
   /** */
-  , INVALID_JSON("msg.invalidJson");
+  , INVALID_JSON("msg.invalidJson")
+  /** */
+  , INVALID_ARCHIVE("msg.invalidArchive")
+  /** */
+  , IMPORT_JOB_STARTED("msg.importJobStarted")
+  /** */
+  , IMPORT_JOB_PROGRESS("msg.importJobProgress")
+  /** */
+  , IMPORT_JOB_FAILED("msg.importJobFailed");
 
   private final String value;
 
@@ -19,20 +19,37 @@ import org.springframework.data.domain.Page;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.List;
+import java.util.function.Function;
+
 public class Pagination {
 
   public static final String ATTR_NAME_SIZE_IN_PAGE = "pageSize";
   public static final String PARAM_NAME_SIZE_IN_PAGE = "size";
+  public static final String PARAM_NAME_AFTER = "after";
+  public static final String PARAM_NAME_BEFORE = "before";
   private static final String PARAM_NAME_PAGE_POSITION = "page";
 
   private final Page<?> page;
   private final String query;
+  private final Object firstKey;
+  private final Object lastKey;
 
   public Pagination(Page<?> page, MultiValueMap<String, String> params) {
+    this(page, params, null);
+  }
+
+  // The keys of the first and last rows are used as anchors for seeking the previous and next page
+  public <T> Pagination(Page<T> page, MultiValueMap<String, String> params, Function<? super T, ?> keyMapper) {
     this.page = page;
+    List<T> content = page.getContent();
+    this.firstKey = (keyMapper != null && !content.isEmpty()) ? keyMapper.apply(content.get(0)) : null;
+    this.lastKey = (keyMapper != null && !content.isEmpty()) ? keyMapper.apply(content.get(content.size() - 1)) : null;
     String query = null;
     if (params != null) {
       params.remove(PARAM_NAME_PAGE_POSITION);
+      params.remove(PARAM_NAME_AFTER);
+      params.remove(PARAM_NAME_BEFORE);
       query = UriComponentsBuilder.fromPath("").queryParams(params).build().encode().getQuery();
     }
     this.query = (query != null) ? ("?" + query) : "";
@@ -46,6 +63,14 @@ public class Pagination {
     return query;
   }
 
+  public Object getFirstKey() {
+    return firstKey;
+  }
+
+  public Object getLastKey() {
+    return lastKey;
+  }
+
   public Range getRange(int maxSize) {
     int begin = Math.max(0, page.getNumber() - maxSize / 2);
     int end = begin + (maxSize - 1);
@@ -15,13 +15,19 @@
  */
 package com.kazuki43zoo.apistub.ui.response;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import com.kazuki43zoo.apistub.domain.model.FaultProfile;
 import com.kazuki43zoo.apistub.domain.model.KeyGeneratingStrategy;
+import com.kazuki43zoo.apistub.domain.model.LatencyDistribution;
+import com.kazuki43zoo.apistub.domain.model.LatencyProfile;
+import com.kazuki43zoo.apistub.domain.model.ResponseVariants;
+import com.kazuki43zoo.apistub.domain.model.VariantStrategy;
 import com.kazuki43zoo.apistub.domain.service.ApiResponseService;
 import com.kazuki43zoo.apistub.domain.service.ApiService;
+import com.kazuki43zoo.apistub.domain.service.LatencyStatisticsService;
+import com.kazuki43zoo.apistub.ui.ArchiveSupport;
 import com.kazuki43zoo.apistub.ui.DownloadSupport;
+import com.kazuki43zoo.apistub.ui.ImportJob;
 import com.kazuki43zoo.apistub.ui.ImportSupport;
 import com.kazuki43zoo.apistub.ui.JsonSupport;
 import com.kazuki43zoo.apistub.ui.PaginationSupport;
@@ -31,8 +37,6 @@ import com.kazuki43zoo.apistub.ui.component.message.InfoMessage;
 import com.kazuki43zoo.apistub.ui.component.message.MessageCode;
 import com.kazuki43zoo.apistub.ui.component.message.SuccessMessage;
 import com.kazuki43zoo.apistub.ui.component.pagination.Pagination;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
@@ -62,28 +66,35 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.SessionAttributes;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.util.CookieGenerator;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RequestMapping("/manager/responses")
 @Controller
 @SessionAttributes(types = ApiResponseSearchForm.class)
 class ApiResponseController {
-  private static final Logger log = LoggerFactory.getLogger(ApiController.class);
   private static final String COOKIE_NAME_PAGE_SIZE = "apiResponse.pageSize";
   private static final Pageable pageableForExistingCheck = PageRequest.of(0, 1);
+  private static final MediaType MEDIA_TYPE_ZIP = new MediaType("application", "zip");
   private static final CookieGenerator pageSizeCookieGenerator;
+  private static final List<String> latencyDistributions = Stream.of(LatencyDistribution.values())
+      .map(LatencyDistribution::name).collect(Collectors.toList());
+  private static final List<String> variantStrategies = Stream.of(VariantStrategy.values())
+      .map(VariantStrategy::name).collect(Collectors.toList());
 
   static {
     pageSizeCookieGenerator = new CookieGenerator();
@@ -96,14 +107,18 @@ class ApiResponseController {
   private final ImportSupport importHelper;
   private final DownloadSupport downloadSupport;
   private final JsonSupport jsonSupport;
+  private final ArchiveSupport archiveSupport;
+  private final LatencyStatisticsService latencyStatisticsService;
 
-  public ApiResponseController(ApiResponseService apiResponseService, ApiService apiService, PaginationSupport paginationSupport, ImportSupport importHelper, DownloadSupport downloadSupport, JsonSupport jsonSupport) {
+  public ApiResponseController(ApiResponseService apiResponseService, ApiService apiService, PaginationSupport paginationSupport, ImportSupport importHelper, DownloadSupport downloadSupport, JsonSupport jsonSupport, ArchiveSupport archiveSupport, LatencyStatisticsService latencyStatisticsService) {
     this.apiResponseService = apiResponseService;
     this.apiService = apiService;
     this.paginationSupport = paginationSupport;
     this.importHelper = importHelper;
     this.downloadSupport = downloadSupport;
     this.jsonSupport = jsonSupport;
+    this.archiveSupport = archiveSupport;
+    this.latencyStatisticsService = latencyStatisticsService;
   }
 
   @ModelAttribute("apiResponseSearchForm")
@@ -111,10 +126,22 @@ class ApiResponseController {
     return new ApiResponseSearchForm();
   }
 
+  @ModelAttribute("latencyDistributions")
+  public List<String> latencyDistributions() {
+    return latencyDistributions;
+  }
+
+  @ModelAttribute("variantStrategies")
+  public List<String> variantStrategies() {
+    return variantStrategies;
+  }
+
   @GetMapping
   public String list(@Validated ApiResponseSearchForm form, BindingResult result,
                      Pageable pageable,
                      @RequestParam(name = Pagination.PARAM_NAME_SIZE_IN_PAGE, defaultValue = "0") int paramPageSize,
+                     @RequestParam(name = Pagination.PARAM_NAME_AFTER, required = false) Integer after,
+                     @RequestParam(name = Pagination.PARAM_NAME_BEFORE, required = false) Integer before,
                      @CookieValue(name = COOKIE_NAME_PAGE_SIZE, defaultValue = "0") int cookiePageSize,
                      @RequestParam MultiValueMap<String, String> requestParams,
                      Model model, HttpServletResponse response) {
@@ -123,12 +150,12 @@ class ApiResponseController {
     if (result.hasErrors()) {
       return "response/list";
     }
-    Page<ApiResponse> page = apiResponseService.findPage(form.getPath(), form.getMethod(), form.getDescription(),
-        paginationSupport.decidePageable(pageable, pageSize));
+    Page<ApiResponse> page = apiResponseService.findPage(form.getPath(), form.getMethod(), form.getDataKey(), form.getDescription(),
+        paginationSupport.decidePageable(pageable, pageSize), after, before);
     if (!page.hasContent()) {
       model.addAttribute(InfoMessage.builder().code(MessageCode.DATA_NOT_FOUND).build());
     }
-    model.addAttribute(new Pagination(page, requestParams));
+    model.addAttribute(new Pagination(page, requestParams, ApiResponse::getId));
     return "response/list";
   }
 
@@ -157,6 +184,9 @@ class ApiResponseController {
 
   @PostMapping(path = "create")
   public String create(@Validated ApiResponseForm form, BindingResult result, Model model, RedirectAttributes redirectAttributes) throws IOException {
+    validateLatencyProfile(form, result);
+    validateFaultProfile(form, result);
+    validateVariants(form, result);
     if (result.hasErrors()) {
       Optional.ofNullable(apiService.findOne(form.getPath(), form.getMethod())).ifPresent(model::addAttribute);
       return "response/form";
@@ -209,14 +239,20 @@ class ApiResponseController {
     }
     model.addAttribute(apiResponse);
     model.addAttribute(form);
+    model.addAttribute(latencyStatisticsService.findStatistics(apiResponse));
     Optional.ofNullable(apiService.findOne(form.getPath(), form.getMethod())).ifPresent(model::addAttribute);
     return "response/form";
   }
 
   @PostMapping(path = "{id}", params = "update")
   public String edit(@PathVariable int id, @Validated ApiResponseForm form, BindingResult result, Model model, RedirectAttributes redirectAttributes) throws IOException {
+    validateLatencyProfile(form, result);
+    validateFaultProfile(form, result);
+    validateVariants(form, result);
     if (result.hasErrors()) {
-      model.addAttribute(apiResponseService.findOne(id));
+      ApiResponse apiResponse = apiResponseService.findOne(id);
+      model.addAttribute(apiResponse);
+      model.addAttribute(latencyStatisticsService.findStatistics(apiResponse));
       Optional.ofNullable(apiService.findOne(form.getPath(), form.getMethod())).ifPresent(model::addAttribute);
       return "response/form";
     }
@@ -236,7 +272,9 @@ class ApiResponseController {
       apiResponseService.update(id, apiResponse, keepAttachmentFile, form.isSaveHistory());
     } catch (DuplicateKeyException e) {
       model.addAttribute(ErrorMessage.builder().code(MessageCode.DATA_ALREADY_EXISTS).build());
-      model.addAttribute(apiResponseService.findOne(id));
+      ApiResponse currentApiResponse = apiResponseService.findOne(id);
+      model.addAttribute(currentApiResponse);
+      model.addAttribute(latencyStatisticsService.findStatistics(currentApiResponse));
       Optional.ofNullable(apiService.findOne(apiResponse.getPath(), apiResponse.getMethod())).ifPresent(model::addAttribute);
       return "response/form";
     }
@@ -251,13 +289,11 @@ class ApiResponseController {
     return "redirect:/manager/responses";
   }
 
-
   @GetMapping(path = "{id}/file")
   public ResponseEntity<Resource> download(@PathVariable int id) {
     return download(apiResponseService.findOne(id));
   }
 
-
   @GetMapping(path = "{id}/histories")
   public String histories(@PathVariable int id, Pageable pageable,
                           @CookieValue(name = COOKIE_NAME_PAGE_SIZE, defaultValue = "0") int cookiePageSize,
@@ -308,7 +344,6 @@ class ApiResponseController {
     return "response/history";
   }
 
-
   @PostMapping(path = "{id}/histories/{subId}", params = "restore")
   public String restoreHistory(@PathVariable int id, @PathVariable int subId, RedirectAttributes redirectAttributes) {
     apiResponseService.restoreHistory(id, subId);
@@ -333,8 +368,8 @@ class ApiResponseController {
   }
 
   @PostMapping(params = "export")
-  public ResponseEntity<List<ApiResponse>> exportApiResponses(@RequestParam List<Integer> ids) {
-    List<ApiResponse> apiResponses = apiResponseService.findAllForExport(ids);
+  public ResponseEntity<StreamingResponseBody> exportApiResponses(@RequestParam List<Integer> ids) {
+    StreamingResponseBody apiResponses = out -> jsonSupport.<ApiResponse>writeValues(out, action -> apiResponseService.exportAll(ids, action));
     HttpHeaders headers = new HttpHeaders();
     downloadSupport.addContentDisposition(headers, "exportApiResponses.json");
     return ResponseEntity
@@ -344,6 +379,18 @@ class ApiResponseController {
         .body(apiResponses);
   }
 
+  @PostMapping(params = "exportArchive")
+  public ResponseEntity<StreamingResponseBody> exportApiResponsesAsArchive(@RequestParam List<Integer> ids) {
+    StreamingResponseBody apiResponses = out -> archiveSupport.writeApiResponses(out, action -> apiResponseService.exportAll(ids, action));
+    HttpHeaders headers = new HttpHeaders();
+    downloadSupport.addContentDisposition(headers, "exportApiResponses.zip");
+    return ResponseEntity
+        .status(HttpStatus.OK)
+        .contentType(MEDIA_TYPE_ZIP)
+        .headers(headers)
+        .body(apiResponses);
+  }
+
   @PostMapping(params = "import")
   public String importApiResponses(@RequestParam MultipartFile file, @RequestParam(defaultValue = "false") boolean override, RedirectAttributes redirectAttributes) throws IOException {
     if (!StringUtils.hasLength(file.getOriginalFilename())) {
@@ -354,34 +401,55 @@ class ApiResponseController {
       redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.IMPORT_FILE_EMPTY).build());
       return "redirect:/manager/responses";
     }
-    List<ApiResponse> newApiResponses;
-    try {
-      newApiResponses = jsonSupport.toApiResponseList(file.getInputStream());
-    } catch (JsonParseException | JsonMappingException e) {
-      log.warn(e.getMessage(), e);
-      redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.INVALID_JSON).build());
-      return "redirect:/manager/responses";
-    }
-    if (newApiResponses.isEmpty()) {
-      redirectAttributes.addFlashAttribute(ErrorMessage.builder().code(MessageCode.IMPORT_DATA_EMPTY).build());
-      return "redirect:/manager/responses";
-    }
-
-    List<ApiResponse> ignoredApiResponses = new ArrayList<>();
-    newApiResponses.forEach(newApiResponse -> {
-      Integer id = apiResponseService.findIdByUk(newApiResponse.getPath(), newApiResponse.getMethod(), newApiResponse.getDataKey());
-      if (id == null) {
-        apiResponseService.create(newApiResponse);
-      } else if (override) {
-        apiResponseService.update(id, newApiResponse, false, false);
+    boolean archive = archiveSupport.isArchive(file.getOriginalFilename());
+    ImportJob importJob = importHelper.submit("responses", file, (path, progress) -> {
+      if (archive) {
+        try (ArchiveSupport.ArchiveReader reader = archiveSupport.readApiResponses(path)) {
+          apiResponseService.importAll(reader, override, progress);
+        }
       } else {
-        ignoredApiResponses.add(newApiResponse);
+        try (InputStream in = Files.newInputStream(path)) {
+          apiResponseService.importAll(jsonSupport.readValues(in, ApiResponse.class), override, progress);
+        }
       }
     });
-    importHelper.storeProcessingResultMessages(redirectAttributes, newApiResponses, ignoredApiResponses);
+    redirectAttributes.addFlashAttribute(importJob);
+    redirectAttributes.addFlashAttribute(InfoMessage.builder().code(MessageCode.IMPORT_JOB_STARTED).build());
     return "redirect:/manager/responses";
   }
 
+  private void validateLatencyProfile(ApiResponseForm form, BindingResult result) {
+    if (form.getLatencyDistribution() == null || result.hasFieldErrors("latencyParameters")) {
+      return;
+    }
+    try {
+      LatencyProfile.of(form.getLatencyDistribution(), form.getLatencyParameters(), form.getWaitingMsec());
+    } catch (IllegalArgumentException e) {
+      result.rejectValue("latencyParameters", "LatencyParameters", new Object[]{e.getMessage()}, null);
+    }
+  }
+
+  private void validateFaultProfile(ApiResponseForm form, BindingResult result) {
+    if (result.hasFieldErrors("faultProfile")) {
+      return;
+    }
+    try {
+      FaultProfile.of(form.getFaultProfile());
+    } catch (IllegalArgumentException e) {
+      result.rejectValue("faultProfile", "FaultProfile", new Object[]{e.getMessage()}, null);
+    }
+  }
+
+  private void validateVariants(ApiResponseForm form, BindingResult result) {
+    if (form.getVariantStrategy() == null || result.hasFieldErrors("variants")) {
+      return;
+    }
+    try {
+      ResponseVariants.of(form.getVariantStrategy(), form.getVariants());
+    } catch (IllegalArgumentException e) {
+      result.rejectValue("variants", "Variants", new Object[]{e.getMessage()}, null);
+    }
+  }
 
   private ResponseEntity<Resource> download(ApiResponse apiResponse) {
     HttpHeaders headers = new HttpHeaders();
@@ -390,7 +458,9 @@ class ApiResponseController {
         .status(HttpStatus.OK)
         .contentType(MediaType.APPLICATION_OCTET_STREAM)
         .headers(headers)
-        .body(new InputStreamResource(apiResponse.getAttachmentFile()));
+        .body(apiResponse.getAttachmentFileRef() != null
+            ? apiResponseService.loadAttachmentFile(apiResponse.getAttachmentFileRef())
+            : new InputStreamResource(apiResponse.getAttachmentFile()));
   }
 
 }
@@ -15,6 +15,8 @@
  */
 package com.kazuki43zoo.apistub.ui.response;
 
+import com.kazuki43zoo.apistub.domain.model.LatencyDistribution;
+import com.kazuki43zoo.apistub.domain.model.VariantStrategy;
 import com.kazuki43zoo.apistub.ui.component.validation.HttpMethod;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -43,6 +45,20 @@ class ApiResponseForm implements Serializable {
   private transient MultipartFile file;
   private boolean deleteFile;
   private Long waitingMsec;
+  private LatencyDistribution latencyDistribution;
+  @Size(max = 1024)
+  private String latencyParameters;
+  @Min(1)
+  private Long bytesPerSec;
+  @Min(0)
+  private Long firstByteMsec;
+  @Min(1)
+  private Integer chunkSize;
+  @Size(max = 512)
+  private String faultProfile;
+  private VariantStrategy variantStrategy;
+  @Size(max = 1024)
+  private String variants;
   private String description;
   private boolean saveHistory;
 
@@ -126,6 +142,70 @@ class ApiResponseForm implements Serializable {
     this.waitingMsec = waitingMsec;
   }
 
+  public LatencyDistribution getLatencyDistribution() {
+    return latencyDistribution;
+  }
+
+  public void setLatencyDistribution(LatencyDistribution latencyDistribution) {
+    this.latencyDistribution = latencyDistribution;
+  }
+
+  public String getLatencyParameters() {
+    return latencyParameters;
+  }
+
+  public void setLatencyParameters(String latencyParameters) {
+    this.latencyParameters = latencyParameters;
+  }
+
+  public Long getBytesPerSec() {
+    return bytesPerSec;
+  }
+
+  public void setBytesPerSec(Long bytesPerSec) {
+    this.bytesPerSec = bytesPerSec;
+  }
+
+  public Long getFirstByteMsec() {
+    return firstByteMsec;
+  }
+
+  public void setFirstByteMsec(Long firstByteMsec) {
+    this.firstByteMsec = firstByteMsec;
+  }
+
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(Integer chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public String getFaultProfile() {
+    return faultProfile;
+  }
+
+  public void setFaultProfile(String faultProfile) {
+    this.faultProfile = faultProfile;
+  }
+
+  public VariantStrategy getVariantStrategy() {
+    return variantStrategy;
+  }
+
+  public void setVariantStrategy(VariantStrategy variantStrategy) {
+    this.variantStrategy = variantStrategy;
+  }
+
+  public String getVariants() {
+    return variants;
+  }
+
+  public void setVariants(String variants) {
+    this.variants = variants;
+  }
+
   public String getDescription() {
     return description;
   }
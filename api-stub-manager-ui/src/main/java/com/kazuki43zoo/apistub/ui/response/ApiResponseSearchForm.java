@@ -24,6 +24,7 @@ class ApiResponseSearchForm implements Serializable {
   private String path;
   @HttpMethod
   private String method;
+  private String dataKey;
   private String description;
 
   public String getPath() {
@@ -42,6 +43,14 @@ class ApiResponseSearchForm implements Serializable {
     this.method = method;
   }
 
+  public String getDataKey() {
+    return dataKey;
+  }
+
+  public void setDataKey(String dataKey) {
+    this.dataKey = dataKey;
+  }
+
   public String getDescription() {
     return description;
   }
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2016 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+$(function () {
+
+    var importJob = $("#importJob");
+    if (importJob.length === 0) {
+        return;
+    }
+
+    // Poll the status of the import job that is running on the background
+    var poll = function () {
+        $.getJSON(importJob.data("url")).done(function (job) {
+            importJob.find(".importJobResult").text(job.result);
+            importJob.find(".importJobProgress").text(job.message);
+            if (job.status === "RUNNING") {
+                setTimeout(poll, 1000);
+                return;
+            }
+            importJob.removeClass("alert-info")
+                .addClass(job.status === "COMPLETED" && job.ignored < job.processed ? "alert-success" : "alert-danger");
+        });
+    };
+    poll();
+
+});
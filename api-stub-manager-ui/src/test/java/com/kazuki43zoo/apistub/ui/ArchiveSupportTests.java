@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.ApiResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArchiveSupportTests {
+
+  private static final int RESPONSE_COUNT = 20;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testIsArchive() {
+    ArchiveSupport support = new ArchiveSupport(objectMapper, 0);
+    assertThat(support.isArchive("responses.zip")).isTrue();
+    assertThat(support.isArchive("RESPONSES.ZIP")).isTrue();
+    assertThat(support.isArchive("responses.json")).isFalse();
+    assertThat(support.isArchive(null)).isFalse();
+  }
+
+  @Test
+  public void testWriteAndReadApiResponses() throws IOException {
+    assertRoundTrip(new ArchiveSupport(objectMapper, 0));
+  }
+
+  @Test
+  public void testWriteAndReadApiResponsesWithDecodeThreads() throws IOException {
+    ArchiveSupport support = new ArchiveSupport(objectMapper, 2);
+    try {
+      // The mock responses are read in the order of the archive even if they are decoded in parallel
+      assertRoundTrip(support);
+    } finally {
+      support.shutdown();
+    }
+  }
+
+  @Test
+  public void testReadWithoutManifest() throws IOException {
+    Path file = writeZip("other.json", "{}");
+
+    assertThatThrownBy(() -> new ArchiveSupport(objectMapper, 0).readApiResponses(file))
+        .isInstanceOf(ZipException.class)
+        .hasMessage("The manifest is not found.");
+  }
+
+  @Test
+  public void testReadUnknownFormat() throws IOException {
+    Path file = writeZip("manifest.json", "{\"format\":\"other\",\"version\":1,\"type\":\"responses\"}");
+
+    assertThatThrownBy(() -> new ArchiveSupport(objectMapper, 0).readApiResponses(file))
+        .isInstanceOf(ZipException.class)
+        .hasMessageStartingWith("The archive is not a mock responses archive.");
+  }
+
+  @Test
+  public void testReadUnsupportedVersion() throws IOException {
+    Path file = writeZip("manifest.json", "{\"format\":\"api-stub-archive\",\"version\":2,\"type\":\"responses\"}");
+
+    assertThatThrownBy(() -> new ArchiveSupport(objectMapper, 0).readApiResponses(file))
+        .isInstanceOf(ZipException.class)
+        .hasMessageStartingWith("The archive version is not supported.");
+  }
+
+  private void assertRoundTrip(ArchiveSupport support) throws IOException {
+    Path file = temporaryFolder.newFile("responses.zip").toPath();
+    try (OutputStream out = Files.newOutputStream(file)) {
+      support.writeApiResponses(out, action -> {
+        for (int i = 1; i <= RESPONSE_COUNT; i++) {
+          action.accept(apiResponse(i));
+        }
+      });
+    }
+
+    List<ApiResponse> actual = new ArrayList<>();
+    try (ArchiveSupport.ArchiveReader reader = support.readApiResponses(file)) {
+      while (reader.hasNext()) {
+        actual.add(reader.next());
+      }
+    }
+
+    assertThat(actual).hasSize(RESPONSE_COUNT);
+    for (int i = 1; i <= RESPONSE_COUNT; i++) {
+      ApiResponse mockResponse = actual.get(i - 1);
+      assertThat(mockResponse.getDataKey()).isEqualTo(String.valueOf(i));
+      assertThat(read(mockResponse.getBody())).isEqualTo("body" + i);
+      // Only the even responses have attachment files, and their bytes are kept as is
+      if (i % 2 == 0) {
+        assertThat(StreamUtils.copyToByteArray(mockResponse.getAttachmentFile())).containsExactly(0, 1, (byte) 0xff, i);
+      } else {
+        assertThat(mockResponse.getAttachmentFile()).isNull();
+      }
+    }
+  }
+
+  private ApiResponse apiResponse(int number) {
+    ApiResponse mockResponse = new ApiResponse();
+    mockResponse.setPath("/archives");
+    mockResponse.setMethod("GET");
+    mockResponse.setDataKey(String.valueOf(number));
+    mockResponse.setStatusCode(200);
+    mockResponse.setBody(new ByteArrayInputStream(("body" + number).getBytes(StandardCharsets.UTF_8)));
+    if (number % 2 == 0) {
+      mockResponse.setAttachmentFile(new ByteArrayInputStream(new byte[]{0, 1, (byte) 0xff, (byte) number}));
+      mockResponse.setFileName("file" + number + ".bin");
+    }
+    return mockResponse;
+  }
+
+  private String read(InputStream in) throws IOException {
+    return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+  }
+
+  private Path writeZip(String entryName, String content) throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+      zip.putNextEntry(new ZipEntry(entryName));
+      zip.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+
+}
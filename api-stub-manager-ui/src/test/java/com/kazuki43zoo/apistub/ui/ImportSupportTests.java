@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImportSupportTests {
+
+  private final ImportSupport support = new ImportSupport();
+  private final MockMultipartFile file =
+      new MockMultipartFile("file", "apis.json", "application/json", "[]".getBytes(StandardCharsets.UTF_8));
+
+  @After
+  public void shutdown() {
+    support.shutdown();
+  }
+
+  @Test
+  public void testCompleted() throws Exception {
+    AtomicReference<Path> importedFile = new AtomicReference<>();
+    ImportJob job = support.submit("apis", file, (path, progress) -> {
+      importedFile.set(path);
+      assertThat(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).isEqualTo("[]");
+      progress.add(2, 1, 0);
+    });
+
+    awaitFinished(job);
+
+    assertThat(job.getStatus()).isEqualTo(ImportJob.Status.COMPLETED);
+    assertThat(job.getProgress().getProcessed()).isEqualTo(3);
+    assertThat(job.getError()).isNull();
+    assertThat(support.findJob(job.getId())).isSameAs(job);
+    // The copy of the uploaded file is deleted after the import
+    assertThat(Files.exists(importedFile.get())).isFalse();
+  }
+
+  @Test
+  public void testFailed() throws Exception {
+    AtomicReference<Path> importedFile = new AtomicReference<>();
+    ImportJob job = support.submit("apis", file, (path, progress) -> {
+      importedFile.set(path);
+      // The progress of the chunks committed before the failure is kept
+      progress.add(2, 0, 0);
+      throw new IOException("failure");
+    });
+
+    awaitFinished(job);
+
+    assertThat(job.getStatus()).isEqualTo(ImportJob.Status.FAILED);
+    assertThat(job.getError()).isEqualTo("failure");
+    assertThat(job.getProgress().getCreated()).isEqualTo(2);
+    assertThat(Files.exists(importedFile.get())).isFalse();
+  }
+
+  @Test
+  public void testUnknownJob() {
+    assertThat(support.findJob("unknown")).isNull();
+  }
+
+  // The jobs are performed one by one, so the clean-up of the job has been done when the next job finishes
+  private void awaitFinished(ImportJob job) throws Exception {
+    awaitStatus(job);
+    awaitStatus(support.submit("next", file, (path, progress) -> {
+    }));
+  }
+
+  private void awaitStatus(ImportJob job) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (job.getStatus() == ImportJob.Status.RUNNING && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+}
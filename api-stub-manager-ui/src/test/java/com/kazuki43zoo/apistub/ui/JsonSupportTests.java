@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.kazuki43zoo.apistub.ui;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kazuki43zoo.apistub.domain.model.Api;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonSupportTests {
+
+  private final JsonSupport jsonSupport = new JsonSupport(new ObjectMapper());
+
+  @Test
+  public void testWriteAndReadValues() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    jsonSupport.<Api>writeValues(out, action -> {
+      action.accept(api("/a", "GET"));
+      action.accept(api("/b", "POST"));
+    });
+
+    Iterator<Api> apis = jsonSupport.readValues(new ByteArrayInputStream(out.toByteArray()), Api.class);
+    List<Api> actual = new ArrayList<>();
+    apis.forEachRemaining(actual::add);
+    assertThat(actual).extracting(e -> e.getPath() + " " + e.getMethod()).containsExactly("/a GET", "/b POST");
+  }
+
+  @Test
+  public void testWriteValuesWithoutElements() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    jsonSupport.writeValues(out, action -> {
+    });
+
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("[]");
+  }
+
+  @Test
+  public void testWriteValuesWithIOException() {
+    IOException failure = new IOException("failure");
+
+    // The error of the output is thrown as is
+    assertThatThrownBy(() -> jsonSupport.writeValues(new ByteArrayOutputStream(), action -> {
+      throw new UncheckedIOException(failure);
+    })).isSameAs(failure);
+  }
+
+  @Test
+  public void testReadValuesOfNotArray() {
+    assertThatThrownBy(() -> jsonSupport.readValues(
+        new ByteArrayInputStream("{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8)), Api.class))
+        .isInstanceOf(JsonParseException.class)
+        .hasMessageContaining("Json array is required.");
+  }
+
+  private Api api(String path, String method) {
+    Api api = new Api();
+    api.setPath(path);
+    api.setMethod(method);
+    return api;
+  }
+
+}
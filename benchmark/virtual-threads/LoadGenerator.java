@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2016-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The load generator of the virtual thread benchmark, that is run as a single file program on Java 21.
+// Usage: java LoadGenerator.java <url> <requests> <concurrency>
+public class LoadGenerator {
+
+  public static void main(String[] args) throws InterruptedException {
+    String url = args[0];
+    int requests = Integer.parseInt(args[1]);
+    int concurrency = Integer.parseInt(args[2]);
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(120)).build();
+    Semaphore permits = new Semaphore(concurrency);
+    AtomicInteger succeeded = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < requests; i++) {
+        permits.acquire();
+        executor.execute(() -> {
+          try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            (status == 200 ? succeeded : failed).incrementAndGet();
+          } catch (Exception e) {
+            failed.incrementAndGet();
+          } finally {
+            permits.release();
+          }
+        });
+      }
+    }
+    double elapsedSec = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d requests (succeeded = %d, failed = %d) in %.2f sec = %.1f req/s%n",
+        requests, succeeded.get(), failed.get(), elapsedSec, requests / elapsedSec);
+  }
+
+}
@@ -0,0 +1,68 @@
+#!/bin/bash
+#
+# Compare the throughput of a proxied api that waits for a slow upstream, handled on the Tomcat worker threads
+# and on virtual threads (apistub.core.execution.virtual-threads).
+#
+# Usage: JAVA_HOME=<Java 21> benchmark/virtual-threads/run.sh [requests] [concurrency]
+#
+# The application jar should be built by "./mvnw package" in advance. Another instance of the application
+# on port 18081 serves as the upstream, that answers after 1 second.
+#
+# Results of this script on a 1 CPU machine with Java 21 (1000 requests, 200 concurrent clients):
+#
+#   virtual-threads=false: 17.3 req/s
+#   virtual-threads=true:  43.3 req/s
+#
+# The gain applies only while a stub request waits on the proxy call or a sleep. The JDBC paths of H2 1.4
+# are synchronized, so a virtual thread pins its carrier thread on every database access under Java 21,
+# and the mock responses served from the database do not scale beyond the number of carrier threads.
+#
+set -eu
+
+REQUESTS=${1:-1000}
+CONCURRENCY=${2:-200}
+BASE_DIR=$(cd "$(dirname "$0")/../.." && pwd)
+JAR=${BASE_DIR}/api-stub-app/target/api-stub.jar
+JAVA=${JAVA_HOME:?JAVA_HOME of Java 21 is required}/bin/java
+WORK_DIR=$(mktemp -d)
+
+start() {
+  local port=$1
+  shift
+  "${JAVA}" --add-opens java.base/java.lang=ALL-UNNAMED -jar "${JAR}" --server.port=${port} \
+    --spring.datasource.url=jdbc:h2:mem:benchmark --server.servlet.context-parameters.db.url=jdbc:h2:mem:benchmark-console \
+    --apistub.core.evidence.dir=${WORK_DIR}/evidence-${port} --logging.level.root=WARN "$@" > ${WORK_DIR}/app-${port}.log 2>&1 &
+  for i in $(seq 1 60); do
+    curl -s -o /dev/null http://localhost:${port}/manager/apis && return
+    sleep 1
+  done
+  echo "Could not start the application on port ${port}. See ${WORK_DIR}/app-${port}.log" >&2
+  exit 1
+}
+
+stop() {
+  kill $1
+  wait $1 2> /dev/null || true
+}
+
+trap 'kill $(jobs -p) 2> /dev/null || true' EXIT
+
+start 18081
+UPSTREAM_PID=$!
+curl -s -o /dev/null -X POST http://localhost:18081/manager/responses/create -F path=/benchmark -F method=GET \
+  -F statusCode=200 -F body=ok -F waitingMsec=1000 -F create=
+
+for virtualThreads in false true; do
+  start 18080 --apistub.core.execution.virtual-threads=${virtualThreads} \
+    --server.tomcat.max-threads=20 --server.tomcat.max-connections=10000
+  STUB_PID=$!
+  curl -s -o /dev/null -X POST http://localhost:18080/manager/apis/create -F path=/benchmark -F method=GET \
+    -F "expressions[0]=" -F proxy.enabled=true -F proxy.url=http://localhost:18081/api -F create=
+  "${JAVA}" "${BASE_DIR}/benchmark/virtual-threads/LoadGenerator.java" http://localhost:18080/api/benchmark 100 100 > /dev/null
+  echo -n "virtual-threads=${virtualThreads}: "
+  "${JAVA}" "${BASE_DIR}/benchmark/virtual-threads/LoadGenerator.java" http://localhost:18080/api/benchmark ${REQUESTS} ${CONCURRENCY}
+  stop ${STUB_PID}
+done
+
+stop ${UPSTREAM_PID}
+rm -rf "${WORK_DIR}"